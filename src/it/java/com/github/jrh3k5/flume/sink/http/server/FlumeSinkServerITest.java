@@ -19,24 +19,35 @@ package com.github.jrh3k5.flume.sink.http.server;
 
 import static org.fest.assertions.Assertions.assertThat;
 
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.apache.flume.Event;
 import org.apache.flume.event.SimpleEvent;
 import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.filter.EncodingFeature;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
 import com.github.jrh3k5.flume.sink.http.server.FlumeSinkServer;
 
@@ -53,13 +64,15 @@ public class FlumeSinkServerITest {
     private Client client;
 
     /**
-     * Set up the client for each test.
+     * Start the server and set up the client for each test.
      * 
      * @throws Exception
      *             If any errors occur during the setup.
      */
     @Before
     public void setUpClient() throws Exception {
+        server.start();
+
         final Configuration clientConfig = new ClientConfig(JacksonJsonProvider.class);
         client = ClientBuilder.newClient(clientConfig);
 
@@ -114,4 +127,271 @@ public class FlumeSinkServerITest {
         assertThat(gottenEvents[0].getHeaders()).isEqualTo(toPost.getHeaders());
         assertThat(gottenEvents[0].getBody()).isEqualTo(toPost.getBody());
     }
+
+    /**
+     * Test that a retrieval repeated with the entity tag of an unchanged response is answered as not modified, and that storing an event changes the tag.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testEntityTag() throws Exception {
+        final SimpleEvent toPost = new SimpleEvent();
+        toPost.setBody(UUID.randomUUID().toString().getBytes("utf-8"));
+        client.target(server.getBaseUri()).path("events").request().post(Entity.entity(new Event[] { toPost }, MediaType.APPLICATION_JSON_TYPE));
+
+        final Response firstResponse = client.target(server.getBaseUri()).path("events").request(MediaType.APPLICATION_JSON_TYPE).get();
+        assertThat(firstResponse.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        firstResponse.readEntity(String.class);
+        final EntityTag entityTag = firstResponse.getEntityTag();
+        assertThat(entityTag).isNotNull();
+
+        final Response unchangedResponse = client.target(server.getBaseUri()).path("events").request(MediaType.APPLICATION_JSON_TYPE).header(HttpHeaders.IF_NONE_MATCH, entityTag).get();
+        assertThat(unchangedResponse.getStatus()).isEqualTo(Response.Status.NOT_MODIFIED.getStatusCode());
+        unchangedResponse.close();
+
+        client.target(server.getBaseUri()).path("events").request().post(Entity.entity(new Event[] { toPost }, MediaType.APPLICATION_JSON_TYPE));
+        final Response changedResponse = client.target(server.getBaseUri()).path("events").request(MediaType.APPLICATION_JSON_TYPE).header(HttpHeaders.IF_NONE_MATCH, entityTag).get();
+        assertThat(changedResponse.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(changedResponse.readEntity(SimpleEvent[].class)).hasSize(2);
+        assertThat(changedResponse.getEntityTag()).isNotEqualTo(entityTag);
+    }
+
+    /**
+     * Test that events can be posted and retrieved in the binary form, and that JSON remains the default form.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testBinaryEvents() throws Exception {
+        client.register(BinaryEventsProvider.class);
+
+        final SimpleEvent toPost = new SimpleEvent();
+        toPost.setHeaders(Collections.singletonMap("a-header", UUID.randomUUID().toString()));
+        toPost.setBody(new byte[] { 0, 1, 2, (byte) 0xff });
+
+        final Response postResponse = client.target(server.getBaseUri()).path("events").request().post(Entity.entity(new Event[] { toPost }, BinaryEventsProvider.MEDIA_TYPE_TYPE));
+        assertThat(postResponse.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+
+        final Response binaryResponse = client.target(server.getBaseUri()).path("events").request(BinaryEventsProvider.MEDIA_TYPE_TYPE).get();
+        assertThat(binaryResponse.getMediaType()).isEqualTo(BinaryEventsProvider.MEDIA_TYPE_TYPE);
+        final Event[] binaryEvents = binaryResponse.readEntity(SimpleEvent[].class);
+        assertThat(binaryEvents).hasSize(1);
+        assertThat(binaryEvents[0].getHeaders()).isEqualTo(toPost.getHeaders());
+        assertThat(binaryEvents[0].getBody()).isEqualTo(toPost.getBody());
+
+        final Response defaultResponse = client.target(server.getBaseUri()).path("events").request().get();
+        assertThat(defaultResponse.getMediaType()).isEqualTo(MediaType.APPLICATION_JSON_TYPE);
+        defaultResponse.close();
+    }
+
+    /**
+     * Test that events posted to the server are pushed to a connected stream.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test(timeout = 30000)
+    public void testStreamEvents() throws Exception {
+        final Response streamResponse = client.target(server.getBaseUri()).path("events/stream").request("text/event-stream").get();
+        try {
+            assertThat(streamResponse.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+
+            final String headerValue = UUID.randomUUID().toString();
+            final SimpleEvent toPost = new SimpleEvent();
+            toPost.setHeaders(Collections.singletonMap("a-header", headerValue));
+            toPost.setBody(UUID.randomUUID().toString().getBytes("utf-8"));
+            client.target(server.getBaseUri()).path("events").request().post(Entity.entity(new Event[] { toPost }, MediaType.APPLICATION_JSON_TYPE));
+
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(streamResponse.readEntity(InputStream.class), "utf-8"));
+            assertThat(reader.readLine()).startsWith("id: ");
+            assertThat(reader.readLine()).startsWith("data: [").contains(headerValue);
+        } finally {
+            streamResponse.close();
+        }
+    }
+
+    /**
+     * Test that a server configured with compression decompresses request bodies, compresses response bodies for clients that accept it, and leaves event streams uncompressed.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCompression() throws Exception {
+        final FlumeSinkServerConfig config = new FlumeSinkServerConfig();
+        config.setCompression(Compression.GZIP);
+        final FlumeSinkServer compressedServer = new FlumeSinkServer(bindAddress, serverPort + 1, config);
+        compressedServer.start();
+        try {
+            final String headerValue = UUID.randomUUID().toString();
+            final SimpleEvent toPost = new SimpleEvent();
+            toPost.setHeaders(Collections.singletonMap("a-header", headerValue));
+            toPost.setBody(UUID.randomUUID().toString().getBytes("utf-8"));
+            final Client compressingClient = ClientBuilder.newClient(new ClientConfig(JacksonJsonProvider.class).register(new EncodingFeature("gzip", GZipEncoder.class)));
+            final Response postResponse;
+            try {
+                postResponse = compressingClient.target(compressedServer.getBaseUri()).path("events").request().post(Entity.entity(new Event[] { toPost }, MediaType.APPLICATION_JSON_TYPE));
+            } finally {
+                compressingClient.close();
+            }
+            assertThat(postResponse.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+
+            final Response getResponse = client.target(compressedServer.getBaseUri()).path("events").request(MediaType.APPLICATION_JSON_TYPE).header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+            assertThat(getResponse.getHeaderString(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+            final List<?> events = new ObjectMapper().readValue(new GZIPInputStream(getResponse.readEntity(InputStream.class)), List.class);
+            assertThat(events).hasSize(1);
+            assertThat(events.get(0).toString()).contains(headerValue);
+
+            final ServerSinkClient sinkClient = new ServerSinkClient("localhost", serverPort + 1);
+            try {
+                assertThat(sinkClient.getNewEvents()).hasSize(1);
+            } finally {
+                sinkClient.close();
+            }
+
+            final Response streamResponse = client.target(compressedServer.getBaseUri()).path("events/stream").queryParam("after", 0).request("text/event-stream")
+                    .header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+            try {
+                assertThat(streamResponse.getHeaderString(HttpHeaders.CONTENT_ENCODING)).isNull();
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(streamResponse.readEntity(InputStream.class), "utf-8"));
+                assertThat(reader.readLine()).startsWith("id: ");
+                assertThat(reader.readLine()).contains(headerValue);
+            } finally {
+                streamResponse.close();
+            }
+        } finally {
+            compressedServer.stop();
+        }
+    }
+
+    /**
+     * Test that the partitions of a partitioned store are served separately and can be read in parallel.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testPartitions() throws Exception {
+        final PartitionedEventStore partitionedStore = new PartitionedEventStore(Arrays.asList(new RingBufferEventStore(), new RingBufferEventStore(), new RingBufferEventStore()), "user");
+        final FlumeSinkServerConfig config = new FlumeSinkServerConfig();
+        config.setEventStore(partitionedStore);
+        final FlumeSinkServer partitionedServer = new FlumeSinkServer(bindAddress, serverPort + 2, config);
+        partitionedServer.start();
+        try {
+            final Event[] toPost = new Event[12];
+            for (int i = 0; i < toPost.length; i++) {
+                final SimpleEvent event = new SimpleEvent();
+                event.setHeaders(Collections.singletonMap("user", "user-" + (i % 4)));
+                event.setBody(Integer.toString(i).getBytes("utf-8"));
+                toPost[i] = event;
+            }
+            final Response postResponse = client.target(partitionedServer.getBaseUri()).path("events").request().post(Entity.entity(toPost, MediaType.APPLICATION_JSON_TYPE));
+            assertThat(postResponse.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+
+            final ServerSinkClient sinkClient = new ServerSinkClient("localhost", serverPort + 2);
+            try {
+                assertThat(sinkClient.getPartitionCount()).isEqualTo(3);
+                final List<List<Event>> partitionEvents = sinkClient.getNewEventsByPartition();
+                assertThat(partitionEvents).hasSize(3);
+                int total = 0;
+                for (int i = 0; i < partitionEvents.size(); i++) {
+                    for (Event event : partitionEvents.get(i)) {
+                        assertThat(partitionedStore.partitionOf(event)).isEqualTo(i);
+                    }
+                    total += partitionEvents.get(i).size();
+                }
+                assertThat(total).isEqualTo(toPost.length);
+
+                // Each partition's cursor has moved past its events
+                for (List<Event> events : sinkClient.getNewEventsByPartition()) {
+                    assertThat(events).isEmpty();
+                }
+            } finally {
+                sinkClient.close();
+            }
+
+            final ServerSinkClient partitionClient = new ServerSinkClient("localhost", serverPort + 2, MediaType.APPLICATION_JSON_TYPE, 1);
+            try {
+                assertThat(partitionClient.getNewEvents()).hasSize((int) partitionedStore.getPartition(1).getLastSequence());
+            } finally {
+                partitionClient.close();
+            }
+
+            final Response missingResponse = client.target(partitionedServer.getBaseUri()).path("partitions/3/events").request(MediaType.APPLICATION_JSON_TYPE).get();
+            assertThat(missingResponse.getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+        } finally {
+            partitionedServer.stop();
+        }
+    }
+
+    /**
+     * Test that a server with a tuned transport serves requests and refuses request bodies over its maximum size.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testTransportConfig() throws Exception {
+        final ServerTransportConfig transportConfig = new ServerTransportConfig();
+        transportConfig.setSelectorRunners(1);
+        transportConfig.setWorkerPoolSize(2);
+        transportConfig.setWorkerQueueLimit(100);
+        transportConfig.setKeepAliveTimeoutSeconds(5);
+        transportConfig.setMaxRequestBytes(1024L);
+        final FlumeSinkServerConfig config = new FlumeSinkServerConfig();
+        config.setTransportConfig(transportConfig);
+        final FlumeSinkServer tunedServer = new FlumeSinkServer(bindAddress, serverPort + 3, config);
+        tunedServer.start();
+        try {
+            final SimpleEvent small = new SimpleEvent();
+            small.setBody(new byte[16]);
+            final Response smallResponse = client.target(tunedServer.getBaseUri()).path("events").request().post(Entity.entity(new Event[] { small }, MediaType.APPLICATION_JSON_TYPE));
+            assertThat(smallResponse.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+
+            final SimpleEvent large = new SimpleEvent();
+            large.setBody(new byte[4096]);
+            final Response largeResponse = client.target(tunedServer.getBaseUri()).path("events").request().post(Entity.entity(new Event[] { large }, MediaType.APPLICATION_JSON_TYPE));
+            assertThat(largeResponse.getStatus()).isEqualTo(413);
+
+            assertThat(client.target(tunedServer.getBaseUri()).path("events").request(MediaType.APPLICATION_JSON_TYPE).get(SimpleEvent[].class)).hasSize(1);
+        } finally {
+            tunedServer.stop();
+        }
+    }
+
+    /**
+     * Test that the maximum request size also applies to a compressed request body once it is decompressed.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testMaxRequestBytesDecompressed() throws Exception {
+        final ServerTransportConfig transportConfig = new ServerTransportConfig();
+        transportConfig.setMaxRequestBytes(4096L);
+        final FlumeSinkServerConfig config = new FlumeSinkServerConfig();
+        config.setCompression(Compression.GZIP);
+        config.setTransportConfig(transportConfig);
+        final FlumeSinkServer limitedServer = new FlumeSinkServer(bindAddress, serverPort + 4, config);
+        limitedServer.start();
+        try {
+            final SimpleEvent large = new SimpleEvent();
+            // Compresses to far less than the maximum, but decompresses to far more
+            large.setBody(new byte[64 * 1024]);
+            final Client compressingClient = ClientBuilder.newClient(new ClientConfig(JacksonJsonProvider.class).register(new EncodingFeature("gzip", GZipEncoder.class)));
+            try {
+                final Response largeResponse = compressingClient.target(limitedServer.getBaseUri()).path("events").request()
+                        .post(Entity.entity(new Event[] { large }, MediaType.APPLICATION_JSON_TYPE));
+                assertThat(largeResponse.getStatus()).isEqualTo(413);
+            } finally {
+                compressingClient.close();
+            }
+
+            assertThat(client.target(limitedServer.getBaseUri()).path("events").request(MediaType.APPLICATION_JSON_TYPE).get(SimpleEvent[].class)).isEmpty();
+        } finally {
+            limitedServer.stop();
+        }
+    }
 }
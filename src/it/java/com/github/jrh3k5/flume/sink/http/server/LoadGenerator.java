@@ -0,0 +1,622 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.glassfish.jersey.client.ClientConfig;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+
+/**
+ * A tool that starts a {@link FlumeSinkServer} and drives it with a configurable mix of producers posting events, readers polling for them through {@link ServerSinkClient} instances and callers
+ * deleting them, for a fixed duration. It reports the throughput and latency percentiles of each kind of call, the garbage collection done while the load ran and the high-water mark of the heap.
+ * Because the server and the load share a JVM, the garbage collection and heap figures cover both.
+ * <p />
+ * The tool is configured by {@code name=value} arguments, which are read as a Flume {@link Context}:
+ * <ul>
+ * <li>{@code duration.ms}: how long, in milliseconds, the load is to run; defaults to 30000.</li>
+ * <li>{@code server.port}: the port on which the server listens; defaults to 7895.</li>
+ * <li>{@code store.capacity} and {@code store.overflow.policy}: the capacity and {@link OverflowPolicy} of the {@link RingBufferEventStore} backing the server; default to
+ * {@value RingBufferEventStore#DEFAULT_CAPACITY} and {@code drop_oldest}.</li>
+ * <li>{@code store.retention.max.age.ms}, {@code store.retention.max.bytes} and {@code store.retention.max.count}: the limits within which the store is kept by an {@link EventRetainer}; not
+ * set by default, so that events only leave the store when it overflows or they are deleted.</li>
+ * <li>{@code http.server.index.headers}: a comma-delimited list of the headers indexed by the server.</li>
+ * <li>{@code http.server.selector.runners} and {@code http.server.worker.pool.size}: the number of selector and worker threads of the server.</li>
+ * <li>{@code producers}, {@code readers} and {@code deleters}: the number of threads making each kind of call; default to 2, 2 and 0.</li>
+ * <li>{@code producer.batch.size}: the number of events posted by each call; defaults to 100.</li>
+ * <li>{@code producer.interval.ms}, {@code reader.interval.ms} and {@code delete.interval.ms}: the number of milliseconds for which each thread pauses between calls; default to 0, 0 and 1000.</li>
+ * <li>{@code reader.limit}: the maximum number of events retrieved by each read; defaults to 1000.</li>
+ * <li>{@code reader.wait.ms}: if positive, readers wait up to this many milliseconds for events rather than polling; defaults to 0.</li>
+ * <li>{@code reader.media.type}: the media type in which readers retrieve events; defaults to {@code application/json}.</li>
+ * <li>{@code event.body.distribution}: the {@link SizeDistribution} of the sizes of event bodies; defaults to {@code uniform}.</li>
+ * <li>{@code event.body.min.bytes}, {@code event.body.max.bytes} and {@code event.body.mean.bytes}: the bounds and, for the exponential distribution, the mean of the sizes of event bodies; default
+ * to 64, 4096 and 512.</li>
+ * <li>{@code event.header.count} and {@code event.header.cardinality}: the number of headers of each event and the number of distinct values of each header; default to 2 and 100.</li>
+ * <li>{@code report.file}: a file to which the report is written; if not given, the report is written to standard output.</li>
+ * </ul>
+ * 
+ * @author Joshua Hyde
+ */
+
+public class LoadGenerator {
+    private final Context context;
+    private final long durationMillis;
+    private final int serverPort;
+    private final int producerCount;
+    private final int readerCount;
+    private final int deleterCount;
+    private final int batchSize;
+    private final int readerLimit;
+    private final long readerWaitMillis;
+    private final MediaType readerMediaType;
+    private final SizeDistribution bodyDistribution;
+    private final int minBodyBytes;
+    private final int maxBodyBytes;
+    private final int meanBodyBytes;
+    private final int headerCount;
+    private final int headerCardinality;
+    private final OperationStats produceStats = new OperationStats();
+    private final OperationStats readStats = new OperationStats();
+    private final OperationStats deleteStats = new OperationStats();
+
+    /**
+     * Create a load generator.
+     * 
+     * @param context
+     *            A {@link Context} containing the configuration of the load.
+     * @throws IllegalArgumentException
+     *             If the configuration is invalid.
+     */
+    public LoadGenerator(Context context) {
+        this.context = context;
+        durationMillis = context.getLong("duration.ms", 30000L).longValue();
+        serverPort = context.getInteger("server.port", 7895).intValue();
+        producerCount = context.getInteger("producers", 2).intValue();
+        readerCount = context.getInteger("readers", 2).intValue();
+        deleterCount = context.getInteger("deleters", 0).intValue();
+        batchSize = context.getInteger("producer.batch.size", 100).intValue();
+        readerLimit = context.getInteger("reader.limit", 1000).intValue();
+        readerWaitMillis = context.getLong("reader.wait.ms", 0L).longValue();
+        readerMediaType = MediaType.valueOf(context.getString("reader.media.type", MediaType.APPLICATION_JSON));
+        bodyDistribution = SizeDistribution.valueOf(context.getString("event.body.distribution", SizeDistribution.UNIFORM.name()).toUpperCase(Locale.ENGLISH));
+        minBodyBytes = context.getInteger("event.body.min.bytes", 64).intValue();
+        maxBodyBytes = context.getInteger("event.body.max.bytes", 4096).intValue();
+        meanBodyBytes = context.getInteger("event.body.mean.bytes", 512).intValue();
+        headerCount = context.getInteger("event.header.count", 2).intValue();
+        headerCardinality = context.getInteger("event.header.cardinality", 100).intValue();
+
+        if (durationMillis < 1) {
+            throw new IllegalArgumentException("duration.ms must be positive: " + durationMillis);
+        }
+        if (producerCount < 0 || readerCount < 0 || deleterCount < 0) {
+            throw new IllegalArgumentException("The numbers of producers, readers and deleters must not be negative.");
+        }
+        if (batchSize < 1 || readerLimit < 1) {
+            throw new IllegalArgumentException("producer.batch.size and reader.limit must be positive.");
+        }
+        if (minBodyBytes < 0 || maxBodyBytes < minBodyBytes) {
+            throw new IllegalArgumentException("The event body sizes must satisfy 0 <= event.body.min.bytes <= event.body.max.bytes: " + minBodyBytes + ", " + maxBodyBytes);
+        }
+        if (headerCount < 0 || headerCardinality < 1) {
+            throw new IllegalArgumentException("event.header.count must not be negative and event.header.cardinality must be positive.");
+        }
+    }
+
+    /**
+     * Run a load configured by {@code name=value} arguments, writing its report as JSON.
+     * 
+     * @param args
+     *            The {@code name=value} pairs configuring the load.
+     * @throws Exception
+     *             If any errors occur during the run.
+     */
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> parameters = new HashMap<String, String>();
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Arguments must be given as name=value pairs: " + arg);
+            }
+            parameters.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        final Context context = new Context(parameters);
+        final Map<String, Object> report = new LoadGenerator(context).run();
+        final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        final String reportFile = context.getString("report.file");
+        if (reportFile == null) {
+            System.out.println(objectMapper.writeValueAsString(report));
+        } else {
+            objectMapper.writeValue(new File(reportFile), report);
+        }
+    }
+
+    /**
+     * Start the server, run the load against it and stop it.
+     * 
+     * @return A {@link Map} of the report of the run, keyed by name.
+     * @throws Exception
+     *             If any errors occur during the run.
+     */
+    public Map<String, Object> run() throws Exception {
+        final RingBufferEventStore eventStore = new RingBufferEventStore(context.getInteger("store.capacity", RingBufferEventStore.DEFAULT_CAPACITY).intValue(),
+                OverflowPolicy.valueOf(context.getString("store.overflow.policy", OverflowPolicy.DROP_OLDEST.name()).toUpperCase(Locale.ENGLISH)));
+        final List<String> indexedHeaders = new ArrayList<String>();
+        for (String indexedHeader : context.getString("http.server.index.headers", "").split(",")) {
+            if (indexedHeader.trim().length() > 0) {
+                indexedHeaders.add(indexedHeader.trim());
+            }
+        }
+        final ServerTransportConfig transportConfig = new ServerTransportConfig();
+        transportConfig.setSelectorRunners(context.getInteger("http.server.selector.runners"));
+        transportConfig.setWorkerPoolSize(context.getInteger("http.server.worker.pool.size"));
+        final RetentionConfig retentionConfig = new RetentionConfig();
+        retentionConfig.setMaxAgeMillis(context.getLong("store.retention.max.age.ms"));
+        retentionConfig.setMaxBytes(context.getLong("store.retention.max.bytes"));
+        retentionConfig.setMaxCount(context.getLong("store.retention.max.count"));
+        final FlumeSinkServerConfig config = new FlumeSinkServerConfig();
+        config.setEventStore(eventStore);
+        config.setIndexedHeaders(indexedHeaders);
+        config.setTransportConfig(transportConfig);
+        config.setRetentionConfig(retentionConfig);
+        final FlumeSinkServer server = new FlumeSinkServer("127.0.0.1", serverPort, config);
+        server.start();
+
+        final Client client = ClientBuilder.newClient(new ClientConfig(JacksonJsonProvider.class, BinaryEventsProvider.class));
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, producerCount + readerCount + deleterCount), new DaemonThreadFactory("load-generator-"));
+        final Map<String, Object> report = new LinkedHashMap<String, Object>();
+        try {
+            final WebTarget eventsTarget = client.target(server.getBaseUri()).path("events");
+            final Map<String, long[]> startingCollections = getCollections();
+            final List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                    heapPools.add(pool);
+                }
+            }
+
+            final long start = System.nanoTime();
+            final long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+            final long seed = System.currentTimeMillis();
+            for (int i = 0; i < producerCount; i++) {
+                executor.execute(new Producer(eventsTarget, new Random(seed + i), deadline, context.getLong("producer.interval.ms", 0L).longValue()));
+            }
+            final List<ServerSinkClient> readerClients = new ArrayList<ServerSinkClient>();
+            for (int i = 0; i < readerCount; i++) {
+                final ServerSinkClient readerClient = new ServerSinkClient("127.0.0.1", serverPort, readerMediaType);
+                readerClients.add(readerClient);
+                executor.execute(new Reader(readerClient, deadline, context.getLong("reader.interval.ms", 0L).longValue()));
+            }
+            for (int i = 0; i < deleterCount; i++) {
+                executor.execute(new Deleter(eventsTarget, deadline, context.getLong("delete.interval.ms", 1000L).longValue()));
+            }
+            executor.shutdown();
+            // Give calls in flight at the deadline, including waiting reads, time to finish
+            if (!executor.awaitTermination(durationMillis + readerWaitMillis + TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("The load did not finish within a minute of its deadline.");
+            }
+            final long elapsedNanos = System.nanoTime() - start;
+            for (ServerSinkClient readerClient : readerClients) {
+                readerClient.close();
+            }
+
+            report.put("durationMillis", Long.valueOf(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+            report.put("settings", new LinkedHashMap<String, String>(context.getParameters()));
+            report.put("produce", produceStats.toMap(elapsedNanos));
+            report.put("read", readStats.toMap(elapsedNanos));
+            report.put("delete", deleteStats.toMap(elapsedNanos));
+            report.put("gc", getCollectionReport(startingCollections));
+            report.put("heap", getHeapReport(heapPools));
+            final Map<String, Object> storeReport = new LinkedHashMap<String, Object>();
+            storeReport.put("storedEvents", Long.valueOf(eventStore.getEventCount()));
+            storeReport.put("droppedEvents", Long.valueOf(eventStore.getDroppedCount()));
+            storeReport.put("lastSequence", Long.valueOf(eventStore.getLastSequence()));
+            final EventRetainer retainer = server.getEventRetainers().get("/");
+            if (retainer != null) {
+                storeReport.put("retention", retainer.toMap());
+            }
+            report.put("store", storeReport);
+        } finally {
+            executor.shutdownNow();
+            client.close();
+            server.stop();
+        }
+        return report;
+    }
+
+    /**
+     * Get the number and duration of the collections done so far by each garbage collector.
+     * 
+     * @return A {@link Map} of the number of collections and their total milliseconds, keyed by the name of the collector.
+     */
+    private static Map<String, long[]> getCollections() {
+        final Map<String, long[]> collections = new LinkedHashMap<String, long[]>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections.put(collector.getName(), new long[] { collector.getCollectionCount(), collector.getCollectionTime() });
+        }
+        return collections;
+    }
+
+    /**
+     * Report the garbage collection done since a given point.
+     * 
+     * @param startingCollections
+     *            The {@link #getCollections() collections} done up to the point.
+     * @return A {@link Map} of the total collection time and the collections done by each collector, keyed by name.
+     */
+    private static Map<String, Object> getCollectionReport(Map<String, long[]> startingCollections) {
+        final Map<String, Object> report = new LinkedHashMap<String, Object>();
+        long totalMillis = 0;
+        final Map<String, Object> collectors = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, long[]> collection : getCollections().entrySet()) {
+            final long[] starting = startingCollections.containsKey(collection.getKey()) ? startingCollections.get(collection.getKey()) : new long[2];
+            final long millis = collection.getValue()[1] - starting[1];
+            final Map<String, Object> collector = new LinkedHashMap<String, Object>();
+            collector.put("collections", Long.valueOf(collection.getValue()[0] - starting[0]));
+            collector.put("timeMillis", Long.valueOf(millis));
+            collectors.put(collection.getKey(), collector);
+            totalMillis += millis;
+        }
+        report.put("timeMillis", Long.valueOf(totalMillis));
+        report.put("collectors", collectors);
+        return report;
+    }
+
+    /**
+     * Report the peak usage of the heap.
+     * 
+     * @param heapPools
+     *            The {@link MemoryPoolMXBean} objects of the heap, whose peak usage was reset at the start of the load.
+     * @return A {@link Map} of the maximum size of the heap, the peak usage of each pool and the sum of those peaks, keyed by name. The pools need not peak at the same time, so the sum is an upper
+     *         bound of the high-water mark of the heap.
+     */
+    private static Map<String, Object> getHeapReport(List<MemoryPoolMXBean> heapPools) {
+        final Map<String, Object> report = new LinkedHashMap<String, Object>();
+        long peakBytes = 0;
+        final Map<String, Object> pools = new LinkedHashMap<String, Object>();
+        for (MemoryPoolMXBean pool : heapPools) {
+            final long poolPeakBytes = pool.getPeakUsage().getUsed();
+            pools.put(pool.getName(), Long.valueOf(poolPeakBytes));
+            peakBytes += poolPeakBytes;
+        }
+        report.put("maxBytes", Long.valueOf(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax()));
+        report.put("peakUsedBytes", Long.valueOf(peakBytes));
+        report.put("pools", pools);
+        return report;
+    }
+
+    /**
+     * Distributions of the sizes of event bodies.
+     * 
+     * @author Joshua Hyde
+     */
+
+    public static enum SizeDistribution {
+        /**
+         * Every body has the maximum size.
+         */
+        FIXED,
+        /**
+         * Sizes are spread evenly between the minimum and the maximum.
+         */
+        UNIFORM,
+        /**
+         * Sizes are exponentially distributed around the mean, bounded by the minimum and the maximum, so that most bodies are small and a few are large.
+         */
+        EXPONENTIAL;
+
+        /**
+         * Pick a size.
+         * 
+         * @param random
+         *            The {@link Random} from which the size is picked.
+         * @param min
+         *            The minimum size.
+         * @param max
+         *            The maximum size.
+         * @param mean
+         *            The mean size, used by the exponential distribution.
+         * @return The picked size.
+         */
+        int pick(Random random, int min, int max, int mean) {
+            switch (this) {
+            case FIXED:
+                return max;
+            case UNIFORM:
+                return min + random.nextInt(max - min + 1);
+            case EXPONENTIAL:
+                return (int) Math.min(max, Math.max(min, Math.round(-mean * Math.log(1 - random.nextDouble()))));
+            default:
+                throw new IllegalStateException("Unhandled distribution: " + this);
+            }
+        }
+    }
+
+    /**
+     * The measurements of one kind of call.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class OperationStats {
+        private final Histogram latencies = new Histogram();
+        private final AtomicLong eventCount = new AtomicLong();
+        private final AtomicLong byteCount = new AtomicLong();
+        private final AtomicLong rejectedCount = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+
+        /**
+         * Record a completed call.
+         * 
+         * @param latencyNanos
+         *            The number of nanoseconds taken by the call.
+         * @param events
+         *            The number of events sent or received by the call.
+         * @param bytes
+         *            The number of body bytes sent or received by the call.
+         */
+        void record(long latencyNanos, int events, long bytes) {
+            latencies.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+            eventCount.addAndGet(events);
+            byteCount.addAndGet(bytes);
+        }
+
+        /**
+         * Summarize the measurements.
+         * 
+         * @param elapsedNanos
+         *            The number of nanoseconds over which the measurements were taken.
+         * @return A {@link Map} of the counts, rates and latency percentiles, in microseconds, of the calls, keyed by name.
+         */
+        Map<String, Object> toMap(long elapsedNanos) {
+            final double elapsedSeconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+            final Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("calls", Long.valueOf(latencies.getCount()));
+            map.put("rejected", Long.valueOf(rejectedCount.get()));
+            map.put("errors", Long.valueOf(errorCount.get()));
+            map.put("events", Long.valueOf(eventCount.get()));
+            map.put("bodyBytes", Long.valueOf(byteCount.get()));
+            map.put("callsPerSecond", Double.valueOf(latencies.getCount() / elapsedSeconds));
+            map.put("eventsPerSecond", Double.valueOf(eventCount.get() / elapsedSeconds));
+            map.put("bodyBytesPerSecond", Double.valueOf(byteCount.get() / elapsedSeconds));
+            map.put("latencyMicros", latencies.getSummary());
+            return map;
+        }
+    }
+
+    /**
+     * A thread making one kind of call until the deadline of the load.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private abstract static class Worker implements Runnable {
+        private final OperationStats stats;
+        private final long deadline;
+        private final long intervalMillis;
+
+        /**
+         * Create a worker.
+         * 
+         * @param stats
+         *            The {@link OperationStats} in which the calls are to be measured.
+         * @param deadline
+         *            The {@link System#nanoTime()} after which no more calls are to be made.
+         * @param intervalMillis
+         *            The number of milliseconds for which to pause between calls.
+         */
+        Worker(OperationStats stats, long deadline, long intervalMillis) {
+            this.stats = stats;
+            this.deadline = deadline;
+            this.intervalMillis = intervalMillis;
+        }
+
+        @Override
+        public void run() {
+            while (System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+                final long start = System.nanoTime();
+                try {
+                    call(stats, start);
+                } catch (RuntimeException e) {
+                    stats.errorCount.incrementAndGet();
+                }
+
+                if (intervalMillis > 0) {
+                    try {
+                        Thread.sleep(intervalMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Make a call.
+         * 
+         * @param stats
+         *            The {@link OperationStats} in which the call is to be recorded.
+         * @param start
+         *            The {@link System#nanoTime()} at which the call started.
+         */
+        abstract void call(OperationStats stats, long start);
+    }
+
+    /**
+     * A {@link Worker} posting batches of generated events.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private class Producer extends Worker {
+        private final WebTarget eventsTarget;
+        private final Random random;
+
+        /**
+         * Create a producer.
+         * 
+         * @param eventsTarget
+         *            The {@link WebTarget} to which events are to be posted.
+         * @param random
+         *            The {@link Random} from which the events are generated.
+         * @param deadline
+         *            The {@link System#nanoTime()} after which no more events are to be posted.
+         * @param intervalMillis
+         *            The number of milliseconds for which to pause between posts.
+         */
+        Producer(WebTarget eventsTarget, Random random, long deadline, long intervalMillis) {
+            super(produceStats, deadline, intervalMillis);
+            this.eventsTarget = eventsTarget;
+            this.random = random;
+        }
+
+        @Override
+        void call(OperationStats stats, long start) {
+            final Event[] events = new Event[batchSize];
+            long bytes = 0;
+            for (int i = 0; i < batchSize; i++) {
+                final Map<String, String> headers = new HashMap<String, String>();
+                for (int h = 0; h < headerCount; h++) {
+                    headers.put("header" + h, "value" + random.nextInt(headerCardinality));
+                }
+                final byte[] body = new byte[bodyDistribution.pick(random, minBodyBytes, maxBodyBytes, meanBodyBytes)];
+                random.nextBytes(body);
+                events[i] = new SimpleEvent();
+                events[i].setHeaders(headers);
+                events[i].setBody(body);
+                bytes += body.length;
+            }
+
+            final long postStart = System.nanoTime();
+            final Response response = eventsTarget.request().post(Entity.entity(events, MediaType.APPLICATION_JSON_TYPE));
+            try {
+                if (response.getStatus() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()) {
+                    stats.rejectedCount.incrementAndGet();
+                } else if (response.getStatus() != Response.Status.CREATED.getStatusCode()) {
+                    throw new IllegalStateException("Unexpected status from posting events: " + response.getStatus());
+                }
+            } finally {
+                response.close();
+            }
+            stats.record(System.nanoTime() - postStart, events.length, bytes);
+        }
+    }
+
+    /**
+     * A {@link Worker} reading events through a {@link ServerSinkClient}.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private class Reader extends Worker {
+        private final ServerSinkClient client;
+
+        /**
+         * Create a reader.
+         * 
+         * @param client
+         *            The {@link ServerSinkClient} through which events are to be read.
+         * @param deadline
+         *            The {@link System#nanoTime()} after which no more events are to be read.
+         * @param intervalMillis
+         *            The number of milliseconds for which to pause between reads.
+         */
+        Reader(ServerSinkClient client, long deadline, long intervalMillis) {
+            super(readStats, deadline, intervalMillis);
+            this.client = client;
+        }
+
+        @Override
+        void call(OperationStats stats, long start) {
+            final List<Event> events = readerWaitMillis > 0 ? client.awaitEvents(readerWaitMillis) : client.getNewEvents(readerLimit);
+            final long latencyNanos = System.nanoTime() - start;
+            long bytes = 0;
+            for (Event event : events) {
+                bytes += event.getBody().length;
+            }
+            stats.record(latencyNanos, events.size(), bytes);
+        }
+    }
+
+    /**
+     * A {@link Worker} deleting all stored events.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private class Deleter extends Worker {
+        private final WebTarget eventsTarget;
+
+        /**
+         * Create a deleter.
+         * 
+         * @param eventsTarget
+         *            The {@link WebTarget} of the events to be deleted.
+         * @param deadline
+         *            The {@link System#nanoTime()} after which no more events are to be deleted.
+         * @param intervalMillis
+         *            The number of milliseconds for which to pause between deletions.
+         */
+        Deleter(WebTarget eventsTarget, long deadline, long intervalMillis) {
+            super(deleteStats, deadline, intervalMillis);
+            this.eventsTarget = eventsTarget;
+        }
+
+        @Override
+        void call(OperationStats stats, long start) {
+            final Response response = eventsTarget.request().delete();
+            try {
+                if (response.getStatus() >= Response.Status.BAD_REQUEST.getStatusCode()) {
+                    throw new IllegalStateException("Unexpected status from deleting events: " + response.getStatus());
+                }
+            } finally {
+                response.close();
+            }
+            stats.record(System.nanoTime() - start, 0, 0);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.flume.Context;
+import org.junit.Test;
+
+import com.github.jrh3k5.flume.sink.http.server.LoadGenerator.SizeDistribution;
+
+/**
+ * Integration tests for {@link LoadGenerator}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class LoadGeneratorITest {
+    /**
+     * Test a short run of a mixed load.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRun() throws Exception {
+        final Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("duration.ms", "1000");
+        parameters.put("server.port", "7896");
+        parameters.put("producers", "1");
+        parameters.put("readers", "1");
+        parameters.put("deleters", "1");
+        parameters.put("delete.interval.ms", "100");
+        parameters.put("producer.batch.size", "10");
+        parameters.put("event.body.distribution", "exponential");
+        parameters.put("http.server.index.headers", "header0");
+        parameters.put("store.retention.max.count", "500");
+
+        final Map<String, Object> report = new LoadGenerator(new Context(parameters)).run();
+        final Map<String, Object> produce = (Map<String, Object>) report.get("produce");
+        assertThat((Long) produce.get("calls")).isGreaterThan(0);
+        assertThat(produce.get("errors")).isEqualTo(Long.valueOf(0));
+        assertThat((Long) produce.get("events")).isEqualTo((Long) produce.get("calls") * 10);
+        assertThat(((Map<String, Object>) produce.get("latencyMicros")).keySet()).contains("p99");
+        final Map<String, Object> read = (Map<String, Object>) report.get("read");
+        assertThat((Long) read.get("calls")).isGreaterThan(0);
+        assertThat(read.get("errors")).isEqualTo(Long.valueOf(0));
+        assertThat((Long) ((Map<String, Object>) report.get("delete")).get("calls")).isGreaterThan(0);
+        assertThat(((Map<String, Object>) report.get("gc")).keySet()).contains("timeMillis");
+        assertThat((Long) ((Map<String, Object>) report.get("heap")).get("peakUsedBytes")).isGreaterThan(0);
+        assertThat(((Map<String, Object>) report.get("store")).keySet()).contains("droppedEvents");
+        assertThat(((Map<String, Object>) ((Map<String, Object>) report.get("store")).get("retention")).keySet()).contains("countEvictedEvents");
+    }
+
+    /**
+     * Test that picked body sizes fall within their bounds.
+     */
+    @Test
+    public void testSizeDistributionBounds() {
+        final Random random = new Random(0);
+        for (SizeDistribution distribution : SizeDistribution.values()) {
+            for (int i = 0; i < 1000; i++) {
+                final int size = distribution.pick(random, 10, 100, 30);
+                assertThat(size).isGreaterThanOrEqualTo(10).isLessThanOrEqualTo(100);
+            }
+        }
+        assertThat(SizeDistribution.FIXED.pick(random, 10, 100, 30)).isEqualTo(100);
+    }
+}
@@ -18,10 +18,21 @@
 package com.github.jrh3k5.flume.sink.http.server;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
+import java.net.ServerSocket;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.MediaType;
 
 import org.apache.flume.Context;
 import org.apache.flume.Event;
@@ -32,6 +43,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.jrh3k5.flume.sink.http.server.ServerSink;
 import com.github.jrh3k5.flume.sink.http.server.ServerSinkClient;
 
@@ -57,6 +69,7 @@ public class ServerSinkITest {
     @Before
     public void startSink() throws Exception {
         context.put("server.http.port", Integer.toString(serverPort));
+        context.put("http.server.index.headers", "testHeaderFilterIndexed");
 
         channel.configure(context);
         channel.start();
@@ -118,4 +131,323 @@ public class ServerSinkITest {
 
         assertThat(sinkClient.getEvents()).isEmpty();
     }
+
+    /**
+     * Test the incremental retrieval of events from the sink.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetNewEvents() throws Exception {
+        final Event first = putEvent("testGetNewEvents");
+        serverSink.process();
+
+        final List<Event> firstEvents = sinkClient.getNewEvents();
+        assertThat(firstEvents).hasSize(1);
+        assertThat(firstEvents.get(0).getBody()).isEqualTo(first.getBody());
+
+        final Event second = putEvent("testGetNewEvents");
+        serverSink.process();
+
+        // Only the event stored since the last read should be returned
+        final List<Event> secondEvents = sinkClient.getNewEvents();
+        assertThat(secondEvents).hasSize(1);
+        assertThat(secondEvents.get(0).getBody()).isEqualTo(second.getBody());
+
+        assertThat(sinkClient.getNewEvents()).isEmpty();
+    }
+
+    /**
+     * Test that a failed incremental retrieval is reported with its status and leaves the cursor where it was.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetNewEventsFailed() throws Exception {
+        final long cursor = sinkClient.getCursor();
+        try {
+            // The server rejects a limit that is not positive
+            sinkClient.getNewEvents(0);
+            fail("The retrieval should have failed.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("status: 400");
+        }
+        assertThat(sinkClient.getCursor()).isEqualTo(cursor);
+    }
+
+    /**
+     * Test the retrieval of events from the sink in the binary form.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsBinary() throws Exception {
+        final Event toPut = putEvent("testGetEventsBinary");
+        serverSink.process();
+
+        final ServerSinkClient binaryClient = new ServerSinkClient("localhost", serverPort, BinaryEventsProvider.MEDIA_TYPE_TYPE);
+        try {
+            final List<Event> storedEvents = binaryClient.getNewEvents();
+            assertThat(storedEvents).hasSize(1);
+            assertThat(storedEvents.get(0).getHeaders()).isEqualTo(toPut.getHeaders());
+            assertThat(storedEvents.get(0).getBody()).isEqualTo(toPut.getBody());
+        } finally {
+            binaryClient.close();
+        }
+    }
+
+    /**
+     * Test that events are deleted once a registered consumer has committed past them.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testConsumer() throws Exception {
+        putEvent("testConsumer");
+        final Event second = putEvent("testConsumer");
+        serverSink.process();
+
+        sinkClient.registerConsumer("testConsumer");
+        assertThat(sinkClient.getNewEvents(1)).hasSize(1);
+        sinkClient.commit();
+
+        final List<Event> retained = sinkClient.getEvents();
+        assertThat(retained).hasSize(1);
+        assertThat(retained.get(0).getBody()).isEqualTo(second.getBody());
+
+        // A client registering as the same consumer resumes after the committed offset
+        final ServerSinkClient resumingClient = new ServerSinkClient(serverPort);
+        try {
+            resumingClient.registerConsumer("testConsumer");
+            assertThat(resumingClient.getCursor()).isEqualTo(sinkClient.getCursor());
+            resumingClient.unregisterConsumer();
+        } finally {
+            resumingClient.close();
+        }
+    }
+
+    /**
+     * Test the asynchronous retrieval of events through a client with configured connections.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsAsync() throws Exception {
+        final Event first = putEvent("testGetEventsAsync");
+        final Event second = putEvent("testGetEventsAsync");
+        serverSink.process();
+
+        final ClientConnectionConfig connectionConfig = new ClientConnectionConfig();
+        connectionConfig.setConnectTimeoutMillis(Integer.valueOf(5000));
+        connectionConfig.setReadTimeoutMillis(Integer.valueOf(5000));
+        connectionConfig.setMaxAsyncRequests(Integer.valueOf(2));
+        final ServerSinkClient asyncClient = new ServerSinkClient("localhost", serverPort, MediaType.APPLICATION_JSON_TYPE, connectionConfig);
+        try {
+            final List<Future<EventPage>> pages = new ArrayList<Future<EventPage>>();
+            for (int i = 0; i < 8; i++) {
+                pages.add(asyncClient.getEventsAsync(0, 1, null));
+            }
+            for (Future<EventPage> page : pages) {
+                final EventPage firstPage = page.get(5, TimeUnit.SECONDS);
+                assertThat(firstPage.getEvents()).hasSize(1);
+                assertThat(firstPage.getEvents().get(0).getBody()).isEqualTo(first.getBody());
+            }
+
+            final EventPage firstPage = pages.get(0).get();
+            final EventPage secondPage = asyncClient.getEventsAsync(firstPage.getCursor(), 10, null).get(5, TimeUnit.SECONDS);
+            assertThat(secondPage.getEvents()).hasSize(1);
+            assertThat(secondPage.getEvents().get(0).getBody()).isEqualTo(second.getBody());
+            assertThat(secondPage.getCursor()).isGreaterThan(firstPage.getCursor());
+        } finally {
+            asyncClient.close();
+        }
+    }
+
+    /**
+     * Test that cancelling an asynchronous retrieval releases the threads waiting on it.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsAsyncCancel() throws Exception {
+        // A socket that accepts connections but never responds, so that the retrieval is still in progress when cancelled
+        final ServerSocket silentSocket = new ServerSocket(0);
+        final ClientConnectionConfig connectionConfig = new ClientConnectionConfig();
+        connectionConfig.setReadTimeoutMillis(Integer.valueOf(30000));
+        final ServerSinkClient silentClient = new ServerSinkClient("localhost", silentSocket.getLocalPort(), MediaType.APPLICATION_JSON_TYPE, connectionConfig);
+        try {
+            final Future<EventPage> page = silentClient.getEventsAsync(0, 1, null);
+            assertThat(page.cancel(true)).isTrue();
+            assertThat(page.isCancelled()).isTrue();
+            assertThat(page.isDone()).isTrue();
+            try {
+                page.get(5, TimeUnit.SECONDS);
+                fail("Retrieving a cancelled page should have failed.");
+            } catch (CancellationException e) {
+                // Expected
+            }
+            assertThat(page.cancel(true)).isFalse();
+        } finally {
+            silentClient.close();
+            silentSocket.close();
+        }
+    }
+
+    /**
+     * Test that sinks configured with the same port share a server.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testSharedServer() throws Exception {
+        final ServerSink secondSink = new ServerSink();
+        secondSink.configure(context);
+        secondSink.setChannel(channel);
+        secondSink.start();
+        try {
+            final Event first = putEvent("testSharedServer");
+            serverSink.process();
+            final Event second = putEvent("testSharedServer");
+            secondSink.process();
+
+            final List<Event> storedEvents = sinkClient.getNewEvents();
+            assertThat(storedEvents).hasSize(2);
+            assertThat(storedEvents.get(0).getBody()).isEqualTo(first.getBody());
+            assertThat(storedEvents.get(1).getBody()).isEqualTo(second.getBody());
+        } finally {
+            secondSink.stop();
+        }
+
+        // The server should still be up for the first sink
+        putEvent("testSharedServer");
+        serverSink.process();
+        assertThat(sinkClient.getNewEvents()).hasSize(1);
+    }
+
+    /**
+     * Test that the batches moved by the sink are served from the metrics endpoint.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testMetrics() throws Exception {
+        putEvent("testMetrics");
+        putEvent("testMetrics");
+        serverSink.process();
+        serverSink.process();
+        assertThat(sinkClient.getNewEvents()).hasSize(2);
+
+        final Client client = ClientBuilder.newClient();
+        try {
+            final String json = client.target(String.format("http://localhost:%d/metrics", serverPort)).request(MediaType.APPLICATION_JSON_TYPE).get(String.class);
+            final Map<?, ?> metrics = new ObjectMapper().readValue(json, Map.class);
+            final Map<?, ?> publish = (Map<?, ?>) metrics.get("publish");
+            assertThat(((Number) publish.get("publishedEvents")).longValue()).isEqualTo(2);
+            assertThat(((Number) publish.get("publishedBatches")).longValue()).isEqualTo(1);
+            assertThat(((Number) publish.get("emptyTakes")).longValue()).isEqualTo(1);
+            assertThat(((Number) publish.get("storedEvents")).longValue()).isEqualTo(2);
+            assertThat(((Number) ((Map<?, ?>) publish.get("batchSize")).get("max")).longValue()).isEqualTo(2);
+
+            final Map<?, ?> requests = (Map<?, ?>) ((Map<?, ?>) metrics.get("requests")).get("/");
+            // The deletion is the one made when the sink was started
+            assertThat(((Number) ((Map<?, ?>) requests.get("deleteEvents")).get("requests")).longValue()).isEqualTo(1);
+            final Map<?, ?> getEvents = (Map<?, ?>) requests.get("getEvents");
+            assertThat(((Number) getEvents.get("requests")).longValue()).isEqualTo(1);
+            assertThat(((Number) getEvents.get("responseBytes")).longValue()).isGreaterThan(0);
+            assertThat(((Number) ((Map<?, ?>) getEvents.get("eventsReturned")).get("max")).longValue()).isEqualTo(2);
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Test the retrieval of events filtered by indexed and unindexed header values.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testHeaderFilter() throws Exception {
+        final Event indexed = putEvent("testHeaderFilterIndexed");
+        putEvent("testHeaderFilterIndexed");
+        final Event unindexed = putEvent("testHeaderFilterUnindexed");
+        serverSink.process();
+
+        sinkClient.addHeaderFilter("testHeaderFilterIndexed", indexed.getHeaders().get("testHeaderFilterIndexed"));
+        final List<Event> indexedEvents = sinkClient.getNewEvents();
+        assertThat(indexedEvents).hasSize(1);
+        assertThat(indexedEvents.get(0).getBody()).isEqualTo(indexed.getBody());
+        assertThat(sinkClient.getCursor()).isEqualTo(3);
+
+        sinkClient.clearHeaderFilters();
+        sinkClient.addHeaderFilter("testHeaderFilterUnindexed", unindexed.getHeaders().get("testHeaderFilterUnindexed"));
+        final List<Event> unindexedEvents = sinkClient.getEvents();
+        assertThat(unindexedEvents).hasSize(1);
+        assertThat(unindexedEvents.get(0).getBody()).isEqualTo(unindexed.getBody());
+    }
+
+    /**
+     * Test that a client waiting for events receives them once the sink stores them.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testAwaitEvents() throws Exception {
+        assertThat(sinkClient.awaitEvents(100)).isEmpty();
+
+        final Event toPut = putEvent("testAwaitEvents");
+        final Thread processThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(250);
+                    serverSink.process();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        processThread.start();
+        try {
+            final List<Event> awaited = sinkClient.awaitEvents(30000);
+            assertThat(awaited).hasSize(1);
+            assertThat(awaited.get(0).getBody()).isEqualTo(toPut.getBody());
+        } finally {
+            processThread.join();
+        }
+    }
+
+    /**
+     * Put an event into the channel.
+     * 
+     * @param headerName
+     *            The name of the header to be given a random value in the event.
+     * @return The {@link Event} put into the channel.
+     * @throws Exception
+     *             If any errors occur while putting the event.
+     */
+    private Event putEvent(String headerName) throws Exception {
+        final Event toPut = new SimpleEvent();
+        toPut.setHeaders(Collections.singletonMap(headerName, UUID.randomUUID().toString()));
+        toPut.setBody(UUID.randomUUID().toString().getBytes("utf-8"));
+
+        final Transaction putTransaction = channel.getTransaction();
+        try {
+            putTransaction.begin();
+            channel.put(toPut);
+            putTransaction.commit();
+        } finally {
+            putTransaction.close();
+        }
+        return toPut;
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.flume.event.SimpleEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Benchmarks of the JSON encoding and decoding of {@link SimpleEvent} arrays: the decoding done by the server of stored events and by the client of retrieved events, and the encoding done by the
+ * client of events to be stored and by the {@link EventBatchJsonWriter} of retrieved events.
+ * 
+ * @author Joshua Hyde
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventJsonBenchmark {
+    @Param({ "1", "100", "1000" })
+    private int eventCount;
+    @Param({ "64", "1024" })
+    private int bodySize;
+    @Param({ "4" })
+    private int headerCount;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final EventBatchJsonWriter batchWriter = new EventBatchJsonWriter();
+    private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    private SimpleEvent[] events;
+    private EventBatch batch;
+    private byte[] json;
+
+    /**
+     * Create the events to be encoded and their encoding to be decoded.
+     * 
+     * @throws Exception
+     *             If any errors occur during the encoding.
+     */
+    @Setup(Level.Trial)
+    public void createEvents() throws Exception {
+        events = new SimpleEvent[eventCount];
+        final List<StoredEvent> storedEvents = new ArrayList<StoredEvent>(eventCount);
+        for (int i = 0; i < eventCount; i++) {
+            final Map<String, String> headers = new HashMap<String, String>();
+            for (int h = 0; h < headerCount; h++) {
+                headers.put("header-" + h, "value-" + i);
+            }
+            final byte[] body = new byte[bodySize];
+            for (int b = 0; b < bodySize; b++) {
+                body[b] = (byte) (i + b);
+            }
+            events[i] = new SimpleEvent();
+            events[i].setHeaders(headers);
+            events[i].setBody(body);
+            storedEvents.add(new StoredEvent(i + 1, events[i]));
+        }
+        batch = new EventBatch(storedEvents, eventCount);
+        json = objectMapper.writeValueAsBytes(events);
+    }
+
+    /**
+     * Decode an array of events.
+     * 
+     * @return The decoded events.
+     * @throws Exception
+     *             If any errors occur during the decoding.
+     */
+    @Benchmark
+    public SimpleEvent[] decode() throws Exception {
+        return objectMapper.readValue(json, SimpleEvent[].class);
+    }
+
+    /**
+     * Encode an array of events through Jackson data binding.
+     * 
+     * @return The encoded events.
+     * @throws Exception
+     *             If any errors occur during the encoding.
+     */
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return objectMapper.writeValueAsBytes(events);
+    }
+
+    /**
+     * Encode a batch of stored events through the {@link EventBatchJsonWriter}.
+     * 
+     * @return The number of bytes written.
+     * @throws Exception
+     *             If any errors occur during the encoding.
+     */
+    @Benchmark
+    public int encodeBatch() throws Exception {
+        outputStream.reset();
+        batchWriter.writeTo(batch, EventBatch.class, EventBatch.class, null, MediaType.APPLICATION_JSON_TYPE, null, outputStream);
+        return outputStream.size();
+    }
+}
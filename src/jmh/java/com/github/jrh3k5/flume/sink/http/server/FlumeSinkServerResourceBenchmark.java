@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.flume.event.SimpleEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks of the storage and retrieval of events through a {@link FlumeSinkServerResource} by concurrent writers and readers, without the HTTP layer in front of it. Each reader pages through the
+ * store from its own cursor, starting over from the oldest retained event whenever it catches up with the writers. Some readers retrieve only the events having a particular {@code type} header,
+ * which are read through the header index when the {@code indexed} parameter is set and by scanning the store otherwise.
+ * 
+ * @author Joshua Hyde
+ */
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FlumeSinkServerResourceBenchmark {
+    @Param({ "100" })
+    private int batchSize;
+    @Param({ "256" })
+    private int bodySize;
+    @Param({ "false", "true" })
+    private boolean indexed;
+    private final RingBufferEventStore eventStore = new RingBufferEventStore();
+    private HeaderIndex headerIndex;
+    private PendingEventReads pendingReads;
+    private EventStreamBroadcaster broadcaster;
+    private FlumeSinkServerResource resource;
+    private final RequestInvocationHandler requestHandler = new RequestInvocationHandler(new MultivaluedHashMap<String, String>());
+    private final UriInfo uriInfo = newProxy(UriInfo.class, requestHandler);
+    private final UriInfo filteredUriInfo = newProxy(UriInfo.class, new RequestInvocationHandler(typeFilter("3")));
+    private final Request request = newProxy(Request.class, requestHandler);
+    private SimpleEvent[] batch;
+
+    /**
+     * Create the resource and the batch of events to be stored by the writers.
+     */
+    @Setup(Level.Trial)
+    public void createResource() {
+        headerIndex = new HeaderIndex(eventStore, indexed ? Collections.singleton("type") : Collections.<String> emptySet());
+        pendingReads = new PendingEventReads(headerIndex);
+        broadcaster = new EventStreamBroadcaster(eventStore);
+        resource = new FlumeSinkServerResource(eventStore, headerIndex, pendingReads, broadcaster, new ConsumerOffsets(eventStore));
+
+        batch = new SimpleEvent[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            batch[i] = new SimpleEvent();
+            batch[i].setHeaders(Collections.singletonMap("type", Integer.toString(i % 10)));
+            batch[i].setBody(new byte[bodySize]);
+        }
+    }
+
+    /**
+     * Close the objects serving the resource.
+     * 
+     * @throws Exception
+     *             If any errors occur during the closure.
+     */
+    @TearDown(Level.Trial)
+    public void closeResource() throws Exception {
+        broadcaster.close();
+        pendingReads.close();
+        headerIndex.close();
+    }
+
+    /**
+     * Store a batch of events.
+     * 
+     * @return The response to the storage.
+     * @throws Exception
+     *             If any errors occur during the storage.
+     */
+    @Benchmark
+    @Group("storeAndGet")
+    @GroupThreads(2)
+    public Response storeEvents() throws Exception {
+        return resource.storeEvents(batch, uriInfo);
+    }
+
+    /**
+     * Retrieve the next page of events for a reader.
+     * 
+     * @param reader
+     *            The {@link Reader} retrieving the events.
+     * @return The response to the retrieval.
+     * @throws Exception
+     *             If any errors occur during the retrieval.
+     */
+    @Benchmark
+    @Group("storeAndGet")
+    @GroupThreads(4)
+    public Response getEvents(Reader reader) throws Exception {
+        return getPage(reader, uriInfo);
+    }
+
+    /**
+     * Retrieve the next page of the events having a particular {@code type} header for a reader.
+     * 
+     * @param reader
+     *            The {@link Reader} retrieving the events.
+     * @return The response to the retrieval.
+     * @throws Exception
+     *             If any errors occur during the retrieval.
+     */
+    @Benchmark
+    @Group("storeAndGet")
+    @GroupThreads(2)
+    public Response getFilteredEvents(Reader reader) throws Exception {
+        return getPage(reader, filteredUriInfo);
+    }
+
+    /**
+     * Retrieve the next page of events for a reader, moving its cursor past them.
+     * 
+     * @param reader
+     *            The {@link Reader} retrieving the events.
+     * @param pageUriInfo
+     *            The {@link UriInfo} of the retrieval, giving the header values that the retrieved events must have.
+     * @return The response to the retrieval.
+     * @throws Exception
+     *             If any errors occur during the retrieval.
+     */
+    private Response getPage(Reader reader, UriInfo pageUriInfo) throws Exception {
+        resource.getEvents(reader.cursor, Integer.valueOf(batchSize), 0, pageUriInfo, request, reader.asyncResponse);
+        final Response response = reader.response;
+        final EventBatch page = (EventBatch) response.getEntity();
+        reader.cursor = page.isEmpty() ? 0 : page.getCursor();
+        return response;
+    }
+
+    /**
+     * Create a proxy of an interface.
+     * 
+     * @param type
+     *            The interface to be proxied.
+     * @param handler
+     *            The {@link InvocationHandler} of calls to the proxy.
+     * @return The proxy.
+     */
+    private static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    /**
+     * Create the query parameters of a retrieval of the events having a {@code type} header.
+     * 
+     * @param type
+     *            The value of the {@code type} header of the events to be retrieved.
+     * @return A {@link MultivaluedHashMap} of the query parameters.
+     */
+    private static MultivaluedHashMap<String, String> typeFilter(String type) {
+        final MultivaluedHashMap<String, String> queryParameters = new MultivaluedHashMap<String, String>();
+        queryParameters.putSingle(FlumeSinkServerResource.HEADER_PARAMETER_PREFIX + "type", type);
+        return queryParameters;
+    }
+
+    /**
+     * The state of a thread reading events from the resource.
+     * 
+     * @author Joshua Hyde
+     */
+
+    @State(Scope.Thread)
+    public static class Reader implements InvocationHandler {
+        private final AsyncResponse asyncResponse = newProxy(AsyncResponse.class, this);
+        private long cursor;
+        private Response response;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("resume".equals(method.getName())) {
+                response = (Response) args[0];
+                return Boolean.TRUE;
+            }
+            return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+        }
+    }
+
+    /**
+     * An {@link InvocationHandler} standing in for the {@link UriInfo} and {@link Request} of a request without an {@code Accept} header.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class RequestInvocationHandler implements InvocationHandler {
+        private final URI baseUri = URI.create("http://localhost:8080/");
+        private final MultivaluedHashMap<String, String> queryParameters;
+
+        /**
+         * Create a handler.
+         * 
+         * @param queryParameters
+         *            A {@link MultivaluedHashMap} of the query parameters of the request.
+         */
+        public RequestInvocationHandler(MultivaluedHashMap<String, String> queryParameters) {
+            this.queryParameters = queryParameters;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getBaseUri".equals(method.getName())) {
+                return baseUri;
+            }
+            if ("getQueryParameters".equals(method.getName())) {
+                return queryParameters;
+            }
+            if ("selectVariant".equals(method.getName())) {
+                return ((List<?>) args[0]).get(0);
+            }
+            if ("evaluatePreconditions".equals(method.getName())) {
+                return null;
+            }
+            throw new UnsupportedOperationException("Unsupported request method: " + method.getName());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.Sink.Status;
+import org.apache.flume.Transaction;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.flume.event.EventBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks of {@link ServerSink#process()} moving batches of events from a {@link MemoryChannel} into the store of its server. The channel is refilled with one batch before each invocation, so each
+ * invocation measures the take, store and commit of a single full batch.
+ * 
+ * @author Joshua Hyde
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServerSinkBenchmark {
+    private static final int SERVER_PORT = 7990;
+
+    @Param({ "1", "100", "1000" })
+    private int batchSize;
+    @Param({ "256" })
+    private int bodySize;
+    private final MemoryChannel channel = new MemoryChannel();
+    private final ServerSink serverSink = new ServerSink();
+    private Event event;
+
+    /**
+     * Start the channel and the sink.
+     */
+    @Setup(Level.Trial)
+    public void startSink() {
+        final Context context = new Context();
+        context.put("capacity", Integer.toString(batchSize));
+        context.put("transactionCapacity", Integer.toString(batchSize));
+        context.put("server.http.port", Integer.toString(SERVER_PORT));
+        context.put("http.server.address.bind", "127.0.0.1");
+        context.put("batchSize", Integer.toString(batchSize));
+
+        channel.configure(context);
+        channel.start();
+
+        serverSink.configure(context);
+        serverSink.setChannel(channel);
+        serverSink.start();
+
+        event = EventBuilder.withBody(new byte[bodySize], Collections.singletonMap("type", "benchmark"));
+    }
+
+    /**
+     * Put a full batch of events in the channel for the next invocation.
+     */
+    @Setup(Level.Invocation)
+    public void fillChannel() {
+        final Transaction transaction = channel.getTransaction();
+        try {
+            transaction.begin();
+            for (int i = 0; i < batchSize; i++) {
+                channel.put(event);
+            }
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+    }
+
+    /**
+     * Stop the sink and the channel.
+     */
+    @TearDown(Level.Trial)
+    public void stopSink() {
+        serverSink.stop();
+        channel.stop();
+    }
+
+    /**
+     * Process a batch of events.
+     * 
+     * @return The status of the processing.
+     * @throws Exception
+     *             If any errors occur during the processing.
+     */
+    @Benchmark
+    public Status process() throws Exception {
+        return serverSink.process();
+    }
+}
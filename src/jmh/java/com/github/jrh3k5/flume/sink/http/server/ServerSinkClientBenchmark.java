@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmarks of the latency of the retrieval of events by a {@link ServerSinkClient} from a {@link FlumeSinkServer} listening on the loopback interface, sampled so that the results carry the
+ * distribution of the latencies as well as their mean.
+ * 
+ * @author Joshua Hyde
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServerSinkClientBenchmark {
+    private static final int SERVER_PORT = 7991;
+
+    @Param({ "10", "1000" })
+    private int storedEvents;
+    @Param({ "256" })
+    private int bodySize;
+    @Param({ MediaType.APPLICATION_JSON, BinaryEventsProvider.MEDIA_TYPE })
+    private String mediaType;
+    private FlumeSinkServer server;
+    private ServerSinkClient client;
+
+    /**
+     * Start the server, fill its store and create the client.
+     * 
+     * @throws Exception
+     *             If any errors occur during the startup.
+     */
+    @Setup(Level.Trial)
+    public void startServer() throws Exception {
+        final FlumeSinkServerConfig config = new FlumeSinkServerConfig();
+        config.setEventStore(new RingBufferEventStore(storedEvents, OverflowPolicy.DROP_OLDEST));
+        server = new FlumeSinkServer("127.0.0.1", SERVER_PORT, config);
+        server.start();
+
+        final List<Event> events = new ArrayList<Event>(storedEvents);
+        for (int i = 0; i < storedEvents; i++) {
+            events.add(EventBuilder.withBody(new byte[bodySize], Collections.singletonMap("type", Integer.toString(i % 10))));
+        }
+        server.getEventStore().storeEvents(events);
+
+        client = new ServerSinkClient("127.0.0.1", SERVER_PORT, MediaType.valueOf(mediaType));
+    }
+
+    /**
+     * Close the client and stop the server.
+     * 
+     * @throws Exception
+     *             If any errors occur during the shutdown.
+     */
+    @TearDown(Level.Trial)
+    public void stopServer() throws Exception {
+        client.close();
+        server.stop();
+    }
+
+    /**
+     * Retrieve all of the events stored in the server.
+     * 
+     * @return The retrieved events.
+     */
+    @Benchmark
+    public List<Event> getEvents() {
+        return client.getEvents();
+    }
+}
@@ -0,0 +1,472 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+
+/**
+ * A provider that reads and writes events in a compact, length-prefixed binary form, which carries bodies as raw bytes rather than Base64-encoding them as the JSON form does.
+ * <p />
+ * All integers are 4-byte, big-endian values and all strings are UTF-8. A message is laid out as:
+ * 
+ * <pre>
+ * int    event count
+ * for each event:
+ *   int    header count (-1 if the event has no headers)
+ *   for each header:
+ *     int    name length
+ *     byte[] name
+ *     int    value length (-1 if the value is null)
+ *     byte[] value
+ *   int    body length (-1 if the event has no body)
+ *   byte[] body
+ * </pre>
+ * 
+ * It writes {@link EventBatch} objects and arrays of {@link Event} objects, and reads arrays of {@link SimpleEvent} objects. Bodies of at least {@value #DIRECT_WRITE_MIN_BYTES} bytes are handed to
+ * the entity stream by reference rather than copied through the buffer of this provider; under Grizzly, they reach its output buffer, which writes a body larger than its free space straight from
+ * the given array.
+ * <p />
+ * A provider can be set to cache the encoded headers and body length of each written {@link StoredEvent} on it, so that the headers of events read repeatedly are encoded only once; bodies are
+ * always written from the events themselves.
+ * 
+ * @author Joshua Hyde
+ */
+
+@Provider
+@Consumes(BinaryEventsProvider.MEDIA_TYPE)
+@Produces(BinaryEventsProvider.MEDIA_TYPE)
+public class BinaryEventsProvider implements MessageBodyReader<SimpleEvent[]>, MessageBodyWriter<Object> {
+    /**
+     * The media type of the binary form of events.
+     */
+    public static final String MEDIA_TYPE = "application/x-flume-events";
+    /**
+     * A {@link MediaType} representation of {@link #MEDIA_TYPE}.
+     */
+    public static final MediaType MEDIA_TYPE_TYPE = MediaType.valueOf(MEDIA_TYPE);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * The most events for which room is made before any of them are read.
+     */
+    private static final int INITIAL_EVENT_CAPACITY = 1024;
+    /**
+     * The size from which bodies held in arrays are written straight to the entity stream; copying smaller bodies into the buffer is cheaper than the extra write through the stream.
+     */
+    private static final int DIRECT_WRITE_MIN_BYTES = 1024;
+
+    private final boolean cacheFragments;
+
+    /**
+     * Create a provider that does not cache the encoded forms of events.
+     */
+    public BinaryEventsProvider() {
+        this(false);
+    }
+
+    /**
+     * Create a provider.
+     * 
+     * @param cacheFragments
+     *            Whether the encoded headers and body length of each written {@link StoredEvent} are to be cached on it.
+     */
+    public BinaryEventsProvider(boolean cacheFragments) {
+        this.cacheFragments = cacheFragments;
+    }
+
+    @Override
+    public long getSize(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return SimpleEvent[].class.equals(type);
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return EventBatch.class.isAssignableFrom(type) || Event[].class.isAssignableFrom(type);
+    }
+
+    @Override
+    public SimpleEvent[] readFrom(Class<SimpleEvent[]> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, String> httpHeaders, InputStream entityStream)
+            throws IOException, WebApplicationException {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(entityStream, BUFFER_SIZE));
+        final int eventCount = readLength(input, false);
+        // The count is only the client's word, so the list grows as events actually arrive rather than being sized by it
+        final List<SimpleEvent> events = new ArrayList<SimpleEvent>(Math.min(eventCount, INITIAL_EVENT_CAPACITY));
+        for (int i = 0; i < eventCount; i++) {
+            events.add(readEvent(input));
+        }
+        return events.toArray(new SimpleEvent[events.size()]);
+    }
+
+    @Override
+    public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException, WebApplicationException {
+        final BodyOutputStream bodyOutput = new BodyOutputStream(entityStream);
+        final DataOutputStream output = new DataOutputStream(bodyOutput);
+        if (entity instanceof EventBatch) {
+            final List<StoredEvent> storedEvents = ((EventBatch) entity).getStoredEvents();
+            output.writeInt(storedEvents.size());
+            for (StoredEvent storedEvent : storedEvents) {
+                if (cacheFragments) {
+                    output.write(getFragment(storedEvent));
+                    writeBody(storedEvent.getEvent(), bodyOutput);
+                } else {
+                    writeEvent(storedEvent.getEvent(), output, bodyOutput);
+                }
+            }
+        } else {
+            final List<Event> events = Arrays.asList((Event[]) entity);
+            output.writeInt(events.size());
+            for (Event event : events) {
+                writeEvent(event, output, bodyOutput);
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * Get the encoded headers and body length of a stored event, encoding and caching them if they have yet to be cached.
+     * 
+     * @param storedEvent
+     *            The {@link StoredEvent} whose headers and body length are to be encoded.
+     * @return The encoded headers and body length.
+     * @throws IOException
+     *             If any errors occur during the encoding.
+     */
+    private static byte[] getFragment(StoredEvent storedEvent) throws IOException {
+        byte[] fragment = storedEvent.getBinaryFragment();
+        if (fragment == null) {
+            final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            final DataOutputStream output = new DataOutputStream(encoded);
+            writeHeaders(storedEvent.getEvent(), output);
+            output.writeInt(getBodyLength(storedEvent.getEvent()));
+            fragment = encoded.toByteArray();
+            // Views decoded from a record are created anew on every read, so caching on them would only hold on to the bytes
+            if (!(storedEvent.getEvent() instanceof ByteBufferEvent)) {
+                storedEvent.setBinaryFragment(fragment);
+            }
+        }
+        return fragment;
+    }
+
+    /**
+     * Get the length of the body of an event.
+     * 
+     * @param event
+     *            The {@link Event} whose body length is to be determined.
+     * @return The number of bytes in the body of the event; -1 if it has no body.
+     */
+    private static int getBodyLength(Event event) {
+        if (event instanceof ByteBufferEvent) {
+            return ((ByteBufferEvent) event).getBodyLength();
+        }
+        final byte[] body = event.getBody();
+        return body == null ? -1 : body.length;
+    }
+
+    /**
+     * Read a single event.
+     * 
+     * @param input
+     *            The {@link DataInputStream} from which the event is to be read.
+     * @return A {@link SimpleEvent} representing the read event.
+     * @throws IOException
+     *             If any errors occur during the read or the event is malformed.
+     */
+    private static SimpleEvent readEvent(DataInputStream input) throws IOException {
+        final SimpleEvent event = new SimpleEvent();
+        final int headerCount = readLength(input, true);
+        if (headerCount < 0) {
+            event.setHeaders(null);
+        } else {
+            final Map<String, String> headers = new HashMap<String, String>();
+            for (int i = 0; i < headerCount; i++) {
+                headers.put(readString(input), readString(input));
+            }
+            event.setHeaders(headers);
+        }
+        event.setBody(readBytes(input));
+        return event;
+    }
+
+    /**
+     * Read a length-prefixed array of bytes.
+     * 
+     * @param input
+     *            The {@link DataInputStream} from which the bytes are to be read.
+     * @return The read bytes; {@code null} if a null array was written.
+     * @throws IOException
+     *             If any errors occur during the read.
+     */
+    private static byte[] readBytes(DataInputStream input) throws IOException {
+        final int length = readLength(input, true);
+        if (length < 0) {
+            return null;
+        }
+
+        if (length <= BUFFER_SIZE) {
+            final byte[] bytes = new byte[length];
+            input.readFully(bytes);
+            return bytes;
+        }
+
+        // Larger lengths are read a chunk at a time, so that only bytes that actually arrive are held, however long the client claims the array to be
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE);
+        final byte[] chunk = new byte[BUFFER_SIZE];
+        int remaining = length;
+        while (remaining > 0) {
+            final int read = input.read(chunk, 0, Math.min(remaining, chunk.length));
+            if (read < 0) {
+                throw new EOFException(String.format("Malformed binary events; expected %d bytes but the message ended after %d.", length, length - remaining));
+            }
+            bytes.write(chunk, 0, read);
+            remaining -= read;
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read a length or count.
+     * 
+     * @param input
+     *            The {@link DataInputStream} from which the length is to be read.
+     * @param nullable
+     *            Whether -1, indicating an absent value, is permitted.
+     * @return The read length.
+     * @throws IOException
+     *             If any errors occur during the read or the length is invalid.
+     */
+    private static int readLength(DataInputStream input, boolean nullable) throws IOException {
+        final int length = input.readInt();
+        if (length < (nullable ? -1 : 0)) {
+            throw new IOException("Malformed binary events; invalid length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Read a length-prefixed UTF-8 string.
+     * 
+     * @param input
+     *            The {@link DataInputStream} from which the string is to be read.
+     * @return The read string; {@code null} if a null string was written.
+     * @throws IOException
+     *             If any errors occur during the read.
+     */
+    private static String readString(DataInputStream input) throws IOException {
+        final byte[] bytes = readBytes(input);
+        return bytes == null ? null : new String(bytes, UTF_8);
+    }
+
+    /**
+     * Write a length-prefixed array of bytes.
+     * 
+     * @param bytes
+     *            The bytes to be written; can be {@code null}.
+     * @param output
+     *            The {@link DataOutputStream} to which the bytes are to be written.
+     * @throws IOException
+     *             If any errors occur during the write.
+     */
+    private static void writeBytes(byte[] bytes, DataOutputStream output) throws IOException {
+        if (bytes == null) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Write a single event.
+     * 
+     * @param event
+     *            The {@link Event} to be written.
+     * @param output
+     *            The {@link DataOutputStream} to which the event is to be written.
+     * @param bodyOutput
+     *            The {@link BodyOutputStream} underlying the given output stream, to which the body is to be written.
+     * @throws IOException
+     *             If any errors occur during the write.
+     */
+    private static void writeEvent(Event event, DataOutputStream output, BodyOutputStream bodyOutput) throws IOException {
+        writeHeaders(event, output);
+        output.writeInt(getBodyLength(event));
+        writeBody(event, bodyOutput);
+    }
+
+    /**
+     * Write the body of an event, without its length.
+     * 
+     * @param event
+     *            The {@link Event} whose body is to be written.
+     * @param bodyOutput
+     *            The {@link BodyOutputStream} to which the body is to be written.
+     * @throws IOException
+     *             If any errors occur during the write.
+     */
+    private static void writeBody(Event event, BodyOutputStream bodyOutput) throws IOException {
+        if (event instanceof ByteBufferEvent) {
+            final ByteBuffer body = ((ByteBufferEvent) event).getBodyBuffer();
+            if (body == null) {
+                return;
+            }
+
+            if (body.hasArray()) {
+                bodyOutput.writeBody(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            } else {
+                bodyOutput.writeBody(body);
+            }
+        } else {
+            final byte[] body = event.getBody();
+            if (body != null) {
+                bodyOutput.writeBody(body, 0, body.length);
+            }
+        }
+    }
+
+    /**
+     * Write the headers of an event.
+     * 
+     * @param event
+     *            The {@link Event} whose headers are to be written.
+     * @param output
+     *            The {@link DataOutputStream} to which the headers are to be written.
+     * @throws IOException
+     *             If any errors occur during the write.
+     */
+    private static void writeHeaders(Event event, DataOutputStream output) throws IOException {
+        final Map<String, String> headers = event.getHeaders();
+        if (headers == null) {
+            output.writeInt(-1);
+        } else {
+            output.writeInt(headers.size());
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                writeBytes(header.getKey().getBytes(UTF_8), output);
+                writeBytes(header.getValue() == null ? null : header.getValue().getBytes(UTF_8), output);
+            }
+        }
+    }
+
+    /**
+     * A {@link BufferedOutputStream} that can write bodies past its buffer, so that they are not copied on their way to the underlying stream.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class BodyOutputStream extends BufferedOutputStream {
+        /**
+         * Create a stream.
+         * 
+         * @param out
+         *            The {@link OutputStream} to which the bytes are to be written.
+         */
+        public BodyOutputStream(OutputStream out) {
+            super(out, BUFFER_SIZE);
+        }
+
+        /**
+         * Write a body held in an array. Bodies of at least {@value BinaryEventsProvider#DIRECT_WRITE_MIN_BYTES} bytes are passed to the underlying stream as they are, after any buffered bytes;
+         * this does not flush the underlying stream.
+         * 
+         * @param bytes
+         *            The array holding the body.
+         * @param offset
+         *            The offset in the array of the body.
+         * @param length
+         *            The length of the body.
+         * @throws IOException
+         *             If any errors occur during the write.
+         */
+        public synchronized void writeBody(byte[] bytes, int offset, int length) throws IOException {
+            if (length < DIRECT_WRITE_MIN_BYTES) {
+                write(bytes, offset, length);
+                return;
+            }
+
+            drainBuffer();
+            out.write(bytes, offset, length);
+        }
+
+        /**
+         * Write the remaining bytes of a body held in a buffer that is not backed by an array. The bytes are moved straight into the buffer of this stream rather than through an intermediate array.
+         * 
+         * @param body
+         *            The {@link ByteBuffer} holding the body; its position is moved to its limit.
+         * @throws IOException
+         *             If any errors occur during the write.
+         */
+        public synchronized void writeBody(ByteBuffer body) throws IOException {
+            while (body.hasRemaining()) {
+                if (count == buf.length) {
+                    drainBuffer();
+                }
+                final int length = Math.min(buf.length - count, body.remaining());
+                body.get(buf, count, length);
+                count += length;
+            }
+        }
+
+        /**
+         * Write any buffered bytes to the underlying stream without flushing it.
+         * 
+         * @throws IOException
+         *             If any errors occur during the write.
+         */
+        private void drainBuffer() throws IOException {
+            if (count > 0) {
+                out.write(buf, 0, count);
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.apache.flume.Event;
+
+/**
+ * A read-only view of an event whose record, as written by {@link EventRecordCodec}, is held in a {@link ByteBuffer}.
+ * <p />
+ * The headers are decoded the first time they are requested. The body can be read through {@link #getBodyBuffer()} without copying it onto the heap; {@link #getBody()} copies it.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class ByteBufferEvent implements Event {
+    private final ByteBuffer body;
+    private final ByteBuffer headerRecord;
+    private volatile Map<String, String> headers;
+    private volatile boolean headersDecoded;
+
+    /**
+     * Create an event view.
+     * 
+     * @param body
+     *            A {@link ByteBuffer} whose remaining bytes are the body of the event; {@code null} if the event has no body.
+     * @param headerRecord
+     *            A {@link ByteBuffer} whose remaining bytes are the headers portion of the event's record.
+     */
+    public ByteBufferEvent(ByteBuffer body, ByteBuffer headerRecord) {
+        this.body = body == null ? null : body.asReadOnlyBuffer();
+        this.headerRecord = headerRecord.asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte[] getBody() {
+        if (body == null) {
+            return null;
+        }
+
+        final byte[] copy = new byte[body.remaining()];
+        body.duplicate().get(copy);
+        return copy;
+    }
+
+    /**
+     * Get the body of this event without copying it.
+     * 
+     * @return A read-only {@link ByteBuffer} whose remaining bytes are the body of this event; {@code null} if this event has no body. Each call returns a new buffer, so callers are free to move its
+     *         position.
+     */
+    public ByteBuffer getBodyBuffer() {
+        return body == null ? null : body.duplicate();
+    }
+
+    /**
+     * Get the size of the body of this event.
+     * 
+     * @return The number of bytes in the body of this event; -1 if it has no body.
+     */
+    public int getBodyLength() {
+        return body == null ? -1 : body.remaining();
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        if (!headersDecoded) {
+            headers = EventRecordCodec.decodeHeaders(headerRecord);
+            headersDecoded = true;
+        }
+        return headers;
+    }
+
+    /**
+     * Not supported; stored events cannot be modified.
+     * 
+     * @throws UnsupportedOperationException
+     *             Always.
+     */
+    @Override
+    public void setBody(byte[] body) {
+        throw new UnsupportedOperationException("Stored events cannot be modified.");
+    }
+
+    /**
+     * Not supported; stored events cannot be modified.
+     * 
+     * @throws UnsupportedOperationException
+     *             Always.
+     */
+    @Override
+    public void setHeaders(Map<String, String> headers) {
+        throw new UnsupportedOperationException("Stored events cannot be modified.");
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+/**
+ * The settings of the connections made by a {@link ServerSinkClient}. Every setting left unset - {@code null} - keeps the default of the underlying Jersey client.
+ * <p />
+ * Connections are kept alive and reused between requests to the same server: every response is read to its end and closed by the client, which returns its connection to the JVM's connection cache
+ * rather than leaving it to be closed. The number of idle connections cached for each server is governed by the JVM-wide {@code http.maxConnections} system property (default 5).
+ * 
+ * @author Joshua Hyde
+ */
+
+public class ClientConnectionConfig {
+    private Integer connectTimeoutMillis;
+    private Integer readTimeoutMillis;
+    private Integer maxAsyncRequests;
+
+    /**
+     * Get the number of milliseconds to wait for a connection to be established.
+     * 
+     * @return The connection timeout; {@code null} if the default is used.
+     */
+    public Integer getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * Get the maximum number of asynchronous requests that can be in progress at once.
+     * 
+     * @return The maximum number of asynchronous requests; {@code null} if the default is used.
+     */
+    public Integer getMaxAsyncRequests() {
+        return maxAsyncRequests;
+    }
+
+    /**
+     * Get the number of milliseconds to wait for data from the server.
+     * 
+     * @return The read timeout; {@code null} if the default is used.
+     */
+    public Integer getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Set the number of milliseconds to wait for a connection to be established.
+     * 
+     * @param connectTimeoutMillis
+     *            The connection timeout; 0 to wait indefinitely, or {@code null} to use the default.
+     */
+    public void setConnectTimeoutMillis(Integer connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * Set the maximum number of asynchronous requests that can be in progress at once; further requests wait for one of them to complete.
+     * 
+     * @param maxAsyncRequests
+     *            The maximum number of asynchronous requests; {@code null} to use the default.
+     */
+    public void setMaxAsyncRequests(Integer maxAsyncRequests) {
+        this.maxAsyncRequests = maxAsyncRequests;
+    }
+
+    /**
+     * Set the number of milliseconds to wait for data from the server. This must be longer than the wait of any {@link ServerSinkClient#awaitEvents(long)} made by the client.
+     * 
+     * @param readTimeoutMillis
+     *            The read timeout; 0 to wait indefinitely, or {@code null} to use the default.
+     */
+    public void setReadTimeoutMillis(Integer readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+}
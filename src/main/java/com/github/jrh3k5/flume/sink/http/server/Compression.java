@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
+import org.glassfish.jersey.spi.ContentEncoder;
+
+/**
+ * Enumerations of the content encodings that the {@link FlumeSinkServer} can apply to the request and response bodies it handles.
+ * 
+ * @author Joshua Hyde
+ */
+
+public enum Compression {
+    /**
+     * Bodies are neither compressed nor decompressed.
+     */
+    NONE(null),
+    /**
+     * Bodies are compressed using gzip.
+     */
+    GZIP(GZipEncoder.class),
+    /**
+     * Bodies are compressed using deflate.
+     */
+    DEFLATE(DeflateEncoder.class);
+
+    private final Class<? extends ContentEncoder> encoderClass;
+
+    /**
+     * Create a compression.
+     * 
+     * @param encoderClass
+     *            The {@link ContentEncoder} implementing the compression; can be {@code null} if no compression is to be applied.
+     */
+    private Compression(Class<? extends ContentEncoder> encoderClass) {
+        this.encoderClass = encoderClass;
+    }
+
+    /**
+     * Get the encoder that implements this compression.
+     * 
+     * @return The {@link ContentEncoder} class implementing this compression; {@code null} if this compression does not compress.
+     */
+    public Class<? extends ContentEncoder> getEncoderClass() {
+        return encoderClass;
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This tracks the offsets committed by consumers of an {@link EventStore} and deletes the events that every consumer has acknowledged.
+ * <p />
+ * A consumer is registered under an ID of its choosing and commits the sequence number of the last event it has processed. Offsets only ever move forward, so that a commit that arrives late cannot
+ * re-expose events. Whenever a commit moves the lowest offset of all registered consumers forward, the events through that offset are {@link EventStore#deleteEventsThrough(long) deleted} from the
+ * store. While no consumers are registered, no events are deleted by this object.
+ * <p />
+ * Paired with a store using {@link OverflowPolicy#BLOCK}, this bounds the memory used by the store without losing events that a registered consumer has yet to acknowledge.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class ConsumerOffsets {
+    private final EventStore eventStore;
+    private final ConcurrentMap<String, AtomicLong> offsets = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Create a set of consumer offsets.
+     * 
+     * @param eventStore
+     *            The {@link EventStore} whose events are to be deleted once acknowledged.
+     */
+    public ConsumerOffsets(EventStore eventStore) {
+        this.eventStore = eventStore;
+    }
+
+    /**
+     * Commit the offset of a consumer and delete any events acknowledged by all consumers as a result.
+     * 
+     * @param consumerId
+     *            The ID of the consumer.
+     * @param sequence
+     *            The sequence number of the last event processed by the consumer; if this is before the consumer's current offset, the offset is not moved.
+     * @return {@code true} if the consumer is registered; {@code false} if it is not, in which case nothing is committed.
+     */
+    public boolean commit(String consumerId, long sequence) {
+        final AtomicLong offset = offsets.get(consumerId);
+        if (offset == null) {
+            return false;
+        }
+
+        while (true) {
+            final long current = offset.get();
+            if (current >= sequence) {
+                return true;
+            }
+
+            if (offset.compareAndSet(current, sequence)) {
+                break;
+            }
+        }
+        reclaim();
+        return true;
+    }
+
+    /**
+     * Get the store whose events are deleted once acknowledged.
+     * 
+     * @return The {@link EventStore}.
+     */
+    public EventStore getEventStore() {
+        return eventStore;
+    }
+
+    /**
+     * Get the offset of a consumer.
+     * 
+     * @param consumerId
+     *            The ID of the consumer.
+     * @return The sequence number of the last event acknowledged by the consumer; {@code null} if the consumer is not registered.
+     */
+    public Long getOffset(String consumerId) {
+        final AtomicLong offset = offsets.get(consumerId);
+        return offset == null ? null : Long.valueOf(offset.get());
+    }
+
+    /**
+     * Get the offsets of all registered consumers.
+     * 
+     * @return A {@link Map} of the IDs of the registered consumers to their offsets.
+     */
+    public Map<String, Long> getOffsets() {
+        final Map<String, Long> snapshot = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> offset : offsets.entrySet()) {
+            snapshot.put(offset.getKey(), Long.valueOf(offset.getValue().get()));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Register a consumer. Events stored from now on are not deleted until the consumer has acknowledged them.
+     * 
+     * @param consumerId
+     *            The ID of the consumer.
+     * @param sequence
+     *            The offset from which the consumer is to start; this is ignored if the consumer is already registered.
+     * @return {@code true} if the consumer was registered; {@code false} if it was already registered.
+     */
+    public boolean register(String consumerId, long sequence) {
+        // Synchronized with reclaiming, so that a newly-registered consumer is not overlooked by a deletion already in progress
+        synchronized (this) {
+            return offsets.putIfAbsent(consumerId, new AtomicLong(sequence)) == null;
+        }
+    }
+
+    /**
+     * Unregister a consumer and delete any events acknowledged by all remaining consumers as a result.
+     * 
+     * @param consumerId
+     *            The ID of the consumer.
+     * @return {@code true} if the consumer was registered; {@code false} if it was not.
+     */
+    public boolean unregister(String consumerId) {
+        if (offsets.remove(consumerId) == null) {
+            return false;
+        }
+        reclaim();
+        return true;
+    }
+
+    /**
+     * Delete the events acknowledged by all registered consumers.
+     */
+    private synchronized void reclaim() {
+        if (offsets.isEmpty()) {
+            return;
+        }
+
+        long acknowledgedThrough = Long.MAX_VALUE;
+        for (AtomicLong offset : offsets.values()) {
+            acknowledgedThrough = Math.min(acknowledgedThrough, offset.get());
+        }
+        eventStore.deleteEventsThrough(acknowledgedThrough);
+    }
+}
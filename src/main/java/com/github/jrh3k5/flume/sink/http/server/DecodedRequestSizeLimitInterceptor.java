@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+
+/**
+ * An interceptor that limits the size of request bodies once they have been decompressed, so that a small compressed body cannot inflate past the maximum enforced on the body as sent by
+ * {@link RequestSizeLimitFilter}. Reading a decompressed body past the maximum fails with a {@code 413 Request Entity Too Large} response.
+ * <p />
+ * It runs just inside the interceptors that decode the {@code Content-Encoding} of a request, so it reads from the stream they decode; requests without a {@code Content-Encoding} are left to the
+ * filter.
+ * 
+ * @author Joshua Hyde
+ */
+
+@Priority(Priorities.ENTITY_CODER + 1)
+public class DecodedRequestSizeLimitInterceptor implements ReaderInterceptor {
+    private final long maxRequestBytes;
+
+    /**
+     * Create an interceptor.
+     * 
+     * @param maxRequestBytes
+     *            The maximum number of bytes in a decompressed request body.
+     */
+    public DecodedRequestSizeLimitInterceptor(long maxRequestBytes) {
+        this.maxRequestBytes = maxRequestBytes;
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException, WebApplicationException {
+        if (context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING) == null) {
+            return context.proceed();
+        }
+
+        final LimitedInputStream limitedStream = new LimitedInputStream(context.getInputStream(), maxRequestBytes);
+        context.setInputStream(limitedStream);
+        try {
+            return context.proceed();
+        } catch (IOException e) {
+            // Readers such as Jackson's wrap the failure of the stream they read from; make sure that the request is still refused as too large
+            if (limitedStream.isExceeded()) {
+                throw new WebApplicationException(e, LimitedInputStream.tooLarge(maxRequestBytes));
+            }
+            throw e;
+        }
+    }
+}
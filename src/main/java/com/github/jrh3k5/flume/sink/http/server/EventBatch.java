@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.flume.Event;
+
+/**
+ * A batch of events read from an {@link EventStore}, along with the cursor from which the next read should continue.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class EventBatch {
+    private final List<StoredEvent> storedEvents;
+    private final long cursor;
+
+    /**
+     * Create a batch.
+     * 
+     * @param storedEvents
+     *            A {@link List} of the {@link StoredEvent} objects in the batch, in the order in which they were stored.
+     * @param cursor
+     *            The sequence number of the last event read into the batch; if no events were read, this is the cursor from which the read was made.
+     */
+    public EventBatch(List<StoredEvent> storedEvents, long cursor) {
+        this.storedEvents = storedEvents;
+        this.cursor = cursor;
+    }
+
+    /**
+     * Get the cursor from which the next read should continue.
+     * 
+     * @return The sequence number after which the next read should begin.
+     */
+    public long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Get the events in this batch.
+     * 
+     * @return A {@link List} of the {@link Event} objects in this batch, in the order in which they were stored.
+     */
+    public List<Event> getEvents() {
+        final List<Event> events = new ArrayList<Event>(storedEvents.size());
+        for (StoredEvent storedEvent : storedEvents) {
+            events.add(storedEvent.getEvent());
+        }
+        return events;
+    }
+
+    /**
+     * Get the events in this batch along with their sequence numbers.
+     * 
+     * @return A {@link List} of the {@link StoredEvent} objects in this batch, in the order in which they were stored.
+     */
+    public List<StoredEvent> getStoredEvents() {
+        return storedEvents;
+    }
+
+    /**
+     * Determine whether this batch contains any events.
+     * 
+     * @return {@code true} if this batch contains no events.
+     */
+    public boolean isEmpty() {
+        return storedEvents.isEmpty();
+    }
+}
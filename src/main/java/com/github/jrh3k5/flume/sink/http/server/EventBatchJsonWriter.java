@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import org.apache.flume.Event;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * A {@link MessageBodyWriter} that writes an {@link EventBatch} as the JSON array of events described by {@link FlumeSinkServerResource}.
+ * <p />
+ * Events are written one at a time through a {@link JsonGenerator} directly to the response stream, rather than being bound into a tree of objects first, so the memory needed to write a batch
+ * does not grow with the size of the batch. Bodies are Base64-encoded by the generator straight into its output buffer.
+ * <p />
+ * A writer can instead be set to cache the JSON form of each event on its {@link StoredEvent}, so that events read repeatedly are encoded only once and writing a batch mostly concatenates cached
+ * bytes. Events decoded from their records on each read, such as those of an {@link OffHeapEventStore}, are encoded afresh every time.
+ * 
+ * @author Joshua Hyde
+ */
+
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class EventBatchJsonWriter implements MessageBodyWriter<EventBatch> {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int BUFFER_SIZE = 8192;
+
+    private final boolean cacheFragments;
+
+    /**
+     * Create a writer that does not cache the JSON forms of events.
+     */
+    public EventBatchJsonWriter() {
+        this(false);
+    }
+
+    /**
+     * Create a writer.
+     * 
+     * @param cacheFragments
+     *            Whether the JSON form of each written event is to be cached on its {@link StoredEvent}.
+     */
+    public EventBatchJsonWriter(boolean cacheFragments) {
+        this.cacheFragments = cacheFragments;
+    }
+
+    /**
+     * Write events as a JSON array.
+     * 
+     * @param storedEvents
+     *            A {@link List} of {@link StoredEvent} objects representing the events to be written.
+     * @param outputStream
+     *            The {@link OutputStream} to which the events are to be written; this is not closed by this method.
+     * @throws IOException
+     *             If any errors occur during the writing of the events.
+     */
+    public static void writeEvents(List<StoredEvent> storedEvents, OutputStream outputStream) throws IOException {
+        final JsonGenerator generator = JSON_FACTORY.createGenerator(outputStream, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        try {
+            generator.writeStartArray();
+            for (StoredEvent storedEvent : storedEvents) {
+                writeEvent(storedEvent.getEvent(), generator);
+            }
+            generator.writeEndArray();
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * Write events as a JSON array of their cached JSON forms, encoding and caching the forms of any events that do not yet have them.
+     * 
+     * @param storedEvents
+     *            A {@link List} of {@link StoredEvent} objects representing the events to be written.
+     * @param outputStream
+     *            The {@link OutputStream} to which the events are to be written; this is not closed by this method.
+     * @throws IOException
+     *             If any errors occur during the writing of the events.
+     */
+    private static void writeCachedEvents(List<StoredEvent> storedEvents, OutputStream outputStream) throws IOException {
+        final OutputStream output = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        output.write('[');
+        boolean first = true;
+        for (StoredEvent storedEvent : storedEvents) {
+            if (!first) {
+                output.write(',');
+            }
+            first = false;
+
+            byte[] fragment = storedEvent.getJsonFragment();
+            if (fragment == null) {
+                final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                final JsonGenerator generator = JSON_FACTORY.createGenerator(encoded, JsonEncoding.UTF8);
+                try {
+                    writeEvent(storedEvent.getEvent(), generator);
+                } finally {
+                    generator.close();
+                }
+                fragment = encoded.toByteArray();
+                // Views decoded from a record are created anew on every read, so caching on them would only hold on to the bytes
+                if (!(storedEvent.getEvent() instanceof ByteBufferEvent)) {
+                    storedEvent.setJsonFragment(fragment);
+                }
+            }
+            output.write(fragment);
+        }
+        output.write(']');
+        output.flush();
+    }
+
+    /**
+     * Write a single event as a JSON object.
+     * 
+     * @param event
+     *            The {@link Event} to be written.
+     * @param generator
+     *            The {@link JsonGenerator} to which the event is to be written.
+     * @throws IOException
+     *             If any errors occur during the writing of the event.
+     */
+    private static void writeEvent(Event event, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        final Map<String, String> headers = event.getHeaders();
+        if (headers == null) {
+            generator.writeNullField("headers");
+        } else {
+            generator.writeObjectFieldStart("headers");
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                generator.writeStringField(header.getKey(), header.getValue());
+            }
+            generator.writeEndObject();
+        }
+
+        if (event instanceof ByteBufferEvent) {
+            // Encode the body straight out of its buffer rather than copying it onto the heap first
+            final ByteBufferEvent bufferEvent = (ByteBufferEvent) event;
+            if (bufferEvent.getBodyLength() < 0) {
+                generator.writeNullField("body");
+            } else {
+                generator.writeFieldName("body");
+                generator.writeBinary(new ByteBufferInputStream(bufferEvent.getBodyBuffer()), bufferEvent.getBodyLength());
+            }
+        } else {
+            final byte[] body = event.getBody();
+            if (body == null) {
+                generator.writeNullField("body");
+            } else {
+                generator.writeBinaryField("body", body);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    @Override
+    public long getSize(EventBatch batch, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        // The size is not known until the events have been encoded
+        return -1;
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return EventBatch.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public void writeTo(EventBatch batch, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream)
+            throws IOException, WebApplicationException {
+        if (cacheFragments) {
+            writeCachedEvents(batch.getStoredEvents(), entityStream);
+        } else {
+            writeEvents(batch.getStoredEvents(), entityStream);
+        }
+    }
+}
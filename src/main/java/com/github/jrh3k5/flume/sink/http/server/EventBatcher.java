@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.flume.Channel;
+import org.apache.flume.Event;
+
+/**
+ * This takes batches of events from a channel for the {@link ServerSink} and decides how large they should be.
+ * <p />
+ * A batch is complete once it holds the current batch size or, if the channel runs dry first, once the linger time has passed since its first event was taken; a batch whose linger has passed is
+ * returned with the events taken so far, and a batch for which the channel has no events is returned empty immediately.
+ * <p />
+ * In adaptive mode, the batch size is adjusted after each publication of a batch:
+ * <ul>
+ * <li>If the publication took longer than the target latency, the size is halved, so that slow publications do not hold events in the channel longer than needed.</li>
+ * <li>Otherwise, if the batch was filled - a sign that the channel has a backlog - the size is doubled, up to the maximum.</li>
+ * <li>Otherwise, the channel ran dry, and the size is moved halfway toward the number of events taken, so that quiet periods are served by small batches.</li>
+ * </ul>
+ * The size is never reduced below the minimum.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class EventBatcher {
+    /**
+     * The number of milliseconds between attempts to take more events from an empty channel while a batch lingers.
+     */
+    private static final long LINGER_POLL_MILLIS = 5;
+
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final long targetLatencyNanos;
+    private final boolean adaptive;
+    private final AtomicInteger batchSize;
+
+    /**
+     * Create a batcher whose batches are of a fixed size.
+     * 
+     * @param batchSize
+     *            The maximum number of events in each batch.
+     * @param lingerMillis
+     *            The maximum number of milliseconds to wait for a partial batch to be filled; 0 to not wait.
+     * @throws IllegalArgumentException
+     *             If the batch size is not positive or the linger time is negative.
+     */
+    public EventBatcher(int batchSize, long lingerMillis) {
+        this(batchSize, batchSize, lingerMillis, 0, false);
+    }
+
+    /**
+     * Create a batcher whose batch size adapts to the channel's backlog and the latency of publishing batches.
+     * 
+     * @param minBatchSize
+     *            The minimum batch size.
+     * @param maxBatchSize
+     *            The maximum batch size; batches start at this size.
+     * @param lingerMillis
+     *            The maximum number of milliseconds to wait for a partial batch to be filled; 0 to not wait.
+     * @param targetLatencyMillis
+     *            The number of milliseconds within which the publication of a batch should complete.
+     * @throws IllegalArgumentException
+     *             If either batch size is not positive, the minimum is greater than the maximum, or either time is negative.
+     */
+    public EventBatcher(int minBatchSize, int maxBatchSize, long lingerMillis, long targetLatencyMillis) {
+        this(minBatchSize, maxBatchSize, lingerMillis, targetLatencyMillis, true);
+    }
+
+    /**
+     * Create a batcher.
+     * 
+     * @param minBatchSize
+     *            The minimum batch size.
+     * @param maxBatchSize
+     *            The maximum batch size.
+     * @param lingerMillis
+     *            The maximum number of milliseconds to wait for a partial batch to be filled.
+     * @param targetLatencyMillis
+     *            The number of milliseconds within which the publication of a batch should complete.
+     * @param adaptive
+     *            {@code true} if the batch size is to be adjusted after each publication.
+     */
+    private EventBatcher(int minBatchSize, int maxBatchSize, long lingerMillis, long targetLatencyMillis, boolean adaptive) {
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize) {
+            throw new IllegalArgumentException(String.format("Invalid batch sizes; minimum: %d, maximum: %d", minBatchSize, maxBatchSize));
+        }
+
+        if (lingerMillis < 0 || targetLatencyMillis < 0) {
+            throw new IllegalArgumentException(String.format("Invalid times; linger: %d, target latency: %d", lingerMillis, targetLatencyMillis));
+        }
+
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        this.adaptive = adaptive;
+        this.batchSize = new AtomicInteger(maxBatchSize);
+    }
+
+    /**
+     * Get the current batch size.
+     * 
+     * @return The maximum number of events in the next batch.
+     */
+    public int getBatchSize() {
+        return batchSize.get();
+    }
+
+    /**
+     * Record the publication of a batch, adjusting the batch size in adaptive mode.
+     * 
+     * @param batch
+     *            The {@link List} of events that were published.
+     * @param latencyNanos
+     *            The number of nanoseconds that the publication took.
+     */
+    public void published(List<Event> batch, long latencyNanos) {
+        if (!adaptive) {
+            return;
+        }
+
+        while (true) {
+            final int current = batchSize.get();
+            final int next;
+            if (latencyNanos > targetLatencyNanos) {
+                next = current / 2;
+            } else if (batch.size() >= current) {
+                next = current * 2;
+            } else {
+                next = (current + batch.size()) / 2;
+            }
+
+            if (batchSize.compareAndSet(current, Math.max(minBatchSize, Math.min(maxBatchSize, next)))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Take a batch of events from a channel; this must be called within a transaction of the channel.
+     * 
+     * @param channel
+     *            The {@link Channel} from which events are to be taken.
+     * @return A {@link List} of the events taken; empty if the channel had no events.
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting for the batch to be filled.
+     */
+    public List<Event> take(Channel channel) throws InterruptedException {
+        final int size = batchSize.get();
+        final List<Event> batch = new ArrayList<Event>(size);
+        long lingerDeadline = 0;
+        while (batch.size() < size) {
+            final Event event = channel.take();
+            if (event != null) {
+                if (batch.isEmpty()) {
+                    lingerDeadline = System.nanoTime() + lingerNanos;
+                }
+                batch.add(event);
+                continue;
+            }
+
+            if (batch.isEmpty() || System.nanoTime() - lingerDeadline >= 0) {
+                break;
+            }
+            Thread.sleep(Math.min(LINGER_POLL_MILLIS, TimeUnit.NANOSECONDS.toMillis(lingerDeadline - System.nanoTime()) + 1));
+        }
+        return batch;
+    }
+}
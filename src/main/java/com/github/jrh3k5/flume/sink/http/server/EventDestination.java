@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.Collection;
+
+import org.apache.flume.Event;
+
+/**
+ * Definition of an object into which the {@link ServerSink} publishes the events that it takes: either a single {@link EventStore} or a {@link PartitionedEventStore} spreading them among several.
+ * <p />
+ * Implementations must be safe for use by multiple threads.
+ * 
+ * @author Joshua Hyde
+ */
+
+public interface EventDestination {
+    /**
+     * Get the number of events that have been discarded to make room for others or to keep within retention limits. This does not include events removed by deletion.
+     * 
+     * @return The number of events discarded.
+     */
+    long getDroppedCount();
+
+    /**
+     * Get the number of events currently retained.
+     * 
+     * @return The number of events retained.
+     */
+    long getEventCount();
+
+    /**
+     * Store events.
+     * 
+     * @param events
+     *            A {@link Collection} of {@link Event} objects to be stored.
+     * @throws EventStoreFullException
+     *             If there is not room for the given events, in which case none of them are stored.
+     */
+    void storeEvents(Collection<? extends Event> events) throws EventStoreFullException;
+}
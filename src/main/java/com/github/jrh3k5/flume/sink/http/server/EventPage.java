@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.List;
+
+import org.apache.flume.Event;
+
+/**
+ * A page of events retrieved by a {@link ServerSinkClient}, along with the cursor from which the next page continues.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class EventPage {
+    private final List<Event> events;
+    private final long cursor;
+
+    /**
+     * Create a page.
+     * 
+     * @param events
+     *            A {@link List} of the {@link Event} objects retrieved.
+     * @param cursor
+     *            The cursor from which the next retrieval should continue.
+     */
+    public EventPage(List<Event> events, long cursor) {
+        this.events = events;
+        this.cursor = cursor;
+    }
+
+    /**
+     * Get the cursor from which the next retrieval should continue.
+     * 
+     * @return The cursor returned by the server.
+     */
+    public long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Get the events retrieved.
+     * 
+     * @return A {@link List} of the {@link Event} objects retrieved.
+     */
+    public List<Event> getEvents() {
+        return events;
+    }
+}
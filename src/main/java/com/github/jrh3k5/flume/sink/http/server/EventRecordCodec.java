@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.flume.Event;
+
+/**
+ * Encodes events into, and decodes them out of, the records held by stores that keep their events in {@link ByteBuffer} objects rather than as objects on the heap.
+ * <p />
+ * All integers are big-endian and all strings are UTF-8. The body comes first so that it can be sliced out of a record without decoding the headers. A record is laid out as:
+ * 
+ * <pre>
+ * int    body length (-1 if the event has no body)
+ * byte[] body
+ * int    header count (-1 if the event has no headers)
+ * for each header:
+ *   int    name length
+ *   byte[] name
+ *   int    value length (-1 if the value is null)
+ *   byte[] value
+ * </pre>
+ * 
+ * @author Joshua Hyde
+ */
+
+public final class EventRecordCodec {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private EventRecordCodec() {
+    }
+
+    /**
+     * Decode a record.
+     * 
+     * @param record
+     *            A {@link ByteBuffer} whose remaining bytes are exactly the record to be decoded. Its position is not changed.
+     * @return A {@link ByteBufferEvent} that reads its body and headers from the given buffer.
+     */
+    public static ByteBufferEvent decode(ByteBuffer record) {
+        final ByteBuffer source = record.duplicate();
+        final int bodyLength = source.getInt();
+        ByteBuffer body = null;
+        if (bodyLength >= 0) {
+            body = source.slice();
+            body.limit(bodyLength);
+            source.position(source.position() + bodyLength);
+        }
+        return new ByteBufferEvent(body, source.slice());
+    }
+
+    /**
+     * Decode the headers portion of a record.
+     * 
+     * @param headers
+     *            A {@link ByteBuffer} whose remaining bytes begin with the header count of a record. Its position is not changed.
+     * @return A {@link Map} of the decoded headers; {@code null} if the record's event had no headers.
+     */
+    public static Map<String, String> decodeHeaders(ByteBuffer headers) {
+        final ByteBuffer source = headers.duplicate();
+        final int headerCount = source.getInt();
+        if (headerCount < 0) {
+            return null;
+        }
+
+        final Map<String, String> decoded = new HashMap<String, String>();
+        for (int i = 0; i < headerCount; i++) {
+            decoded.put(readString(source), readString(source));
+        }
+        return decoded;
+    }
+
+    /**
+     * Encode an event into a record.
+     * 
+     * @param event
+     *            The {@link Event} to be encoded.
+     * @param target
+     *            The {@link ByteBuffer} into which the record is to be written, starting at its current position. It must have at least {@link #encodedLength(Event)} bytes remaining; its position is
+     *            advanced past the written record.
+     */
+    public static void encode(Event event, ByteBuffer target) {
+        if (event instanceof ByteBufferEvent) {
+            final ByteBuffer body = ((ByteBufferEvent) event).getBodyBuffer();
+            if (body == null) {
+                target.putInt(-1);
+            } else {
+                target.putInt(body.remaining());
+                target.put(body);
+            }
+        } else {
+            writeBytes(event.getBody(), target);
+        }
+
+        final Map<String, String> headers = event.getHeaders();
+        if (headers == null) {
+            target.putInt(-1);
+        } else {
+            target.putInt(headers.size());
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                writeBytes(header.getKey().getBytes(UTF_8), target);
+                writeBytes(header.getValue() == null ? null : header.getValue().getBytes(UTF_8), target);
+            }
+        }
+    }
+
+    /**
+     * Determine the size of the record for an event.
+     * 
+     * @param event
+     *            The {@link Event} whose record size is to be determined.
+     * @return The number of bytes needed to {@link #encode(Event, ByteBuffer) encode} the given event.
+     */
+    public static int encodedLength(Event event) {
+        int length = 8;
+        if (event instanceof ByteBufferEvent) {
+            final ByteBuffer body = ((ByteBufferEvent) event).getBodyBuffer();
+            length += body == null ? 0 : body.remaining();
+        } else {
+            length += event.getBody() == null ? 0 : event.getBody().length;
+        }
+
+        final Map<String, String> headers = event.getHeaders();
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                length += 8 + utf8Length(header.getKey()) + (header.getValue() == null ? 0 : utf8Length(header.getValue()));
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Read a length-prefixed UTF-8 string.
+     * 
+     * @param source
+     *            The {@link ByteBuffer} from which the string is to be read.
+     * @return The read string; {@code null} if a null string was written.
+     */
+    private static String readString(ByteBuffer source) {
+        final int length = source.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length];
+        source.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Determine the number of bytes in the UTF-8 encoding of a string without encoding it.
+     * 
+     * @param value
+     *            The string whose encoded length is to be determined.
+     * @return The number of bytes in the UTF-8 encoding of the given string.
+     */
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                // String.getBytes() replaces an unpaired surrogate with the single byte '?'
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Write a length-prefixed array of bytes.
+     * 
+     * @param bytes
+     *            The bytes to be written; can be {@code null}.
+     * @param target
+     *            The {@link ByteBuffer} to which the bytes are to be written.
+     */
+    private static void writeBytes(byte[] bytes, ByteBuffer target) {
+        if (bytes == null) {
+            target.putInt(-1);
+        } else {
+            target.putInt(bytes.length);
+            target.put(bytes);
+        }
+    }
+}
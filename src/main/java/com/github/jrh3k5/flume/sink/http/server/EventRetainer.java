@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.flume.Event;
+
+/**
+ * This evicts the oldest events of an {@link EventStore} to keep it within the age, size and count limits of a {@link RetentionConfig}.
+ * <p />
+ * Eviction is done in passes run periodically, between {@link #start()} and {@link #stop()}, on a thread owned by this object, so that neither the storing nor the retrieval of events waits on it.
+ * If a maximum age or size is set, each pass reads every event stored up to its start that the last pass did not, and accounts for them in chunks of consecutive events read in the same pass, each
+ * recording the number of bytes and the newest timestamp of its events; events are then evicted a chunk at a time from the front of the store, while the oldest chunk is older than the maximum age
+ * or the store holds more than the maximum number of bytes. A single deletion trims the store to the maximum number of events, which needs no events to be read. As events are only ever deleted
+ * from the front of the store, an event whose timestamp is newer than those of the events stored after it holds them in the store until it expires itself.
+ * <p />
+ * All instances of this class should be {@link #close() closed} when done with them.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class EventRetainer implements Closeable {
+    private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
+    private static final int READ_BATCH_SIZE = 1000;
+    /**
+     * The maximum number of events accounted for by each chunk.
+     */
+    private static final int CHUNK_EVENTS = 256;
+    /**
+     * The number of chunks into which the maximum number of bytes is at least divided, so that size eviction does not discard much more than is needed.
+     */
+    private static final int CHUNKS_PER_MAX_BYTES = 16;
+
+    private final EventStore eventStore;
+    private final RetentionConfig config;
+    private final String threadName;
+    /**
+     * Guards the starting and stopping of this retainer, which need not wait for a pass to finish.
+     */
+    private final Object lifecycleLock = new Object();
+    /**
+     * The executor running the passes while this retainer is started, or {@code null} while it is stopped; only used while synchronized on {@link #lifecycleLock}.
+     */
+    private ScheduledExecutorService executor;
+    /**
+     * The chunks accounting for the events read from the store, oldest first; only used while synchronized on this object.
+     */
+    private final Deque<Chunk> chunks = new ArrayDeque<Chunk>();
+    private final AtomicLong ageEvictedCount = new AtomicLong();
+    private final AtomicLong sizeEvictedCount = new AtomicLong();
+    private final AtomicLong countEvictedCount = new AtomicLong();
+    /**
+     * The sequence number through which stored events have been read; only used while synchronized on this object.
+     */
+    private long scannedThrough;
+    /**
+     * The number of bytes of the events accounted for by the chunks; only changed while synchronized on this object.
+     */
+    private volatile long retainedBytes;
+
+    /**
+     * Create a retainer. No passes are made over the store until the retainer is {@link #start() started}.
+     * 
+     * @param eventStore
+     *            The {@link EventStore} whose events are to be evicted.
+     * @param config
+     *            The {@link RetentionConfig} setting the limits within which the store is to be kept.
+     */
+    public EventRetainer(EventStore eventStore, RetentionConfig config) {
+        this.eventStore = eventStore;
+        this.config = config;
+        this.threadName = "event-retainer-" + INSTANCE_COUNT.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc} This {@link #stop() stops} the retainer.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Get the number of events evicted for being older than the maximum age.
+     * 
+     * @return The number of events evicted by age.
+     */
+    public long getAgeEvictedCount() {
+        return ageEvictedCount.get();
+    }
+
+    /**
+     * Get the number of events evicted to keep the store within the maximum number of events.
+     * 
+     * @return The number of events evicted by count.
+     */
+    public long getCountEvictedCount() {
+        return countEvictedCount.get();
+    }
+
+    /**
+     * Get the limits within which the store is kept.
+     * 
+     * @return The {@link RetentionConfig} of this retainer.
+     */
+    public RetentionConfig getRetentionConfig() {
+        return config;
+    }
+
+    /**
+     * Get the number of bytes of the retained events that have been read by this retainer. Events that have been stored since the last pass are not included.
+     * 
+     * @return The number of bytes, as encoded by {@link EventRecordCodec}, of the retained events.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * Get the number of events evicted to keep the store within the maximum number of bytes.
+     * 
+     * @return The number of events evicted by size.
+     */
+    public long getSizeEvictedCount() {
+        return sizeEvictedCount.get();
+    }
+
+    /**
+     * Make a pass over the store, evicting any events in excess of its limits. This is done periodically by this retainer, but can be called at any time.
+     */
+    public void retain() {
+        retain(System.currentTimeMillis());
+    }
+
+    /**
+     * Start making passes over the store at the interval of the configuration, if it sets any limits. A retainer that is already started is left as it is.
+     */
+    public void start() {
+        synchronized (lifecycleLock) {
+            if (executor != null || !config.isEnabled()) {
+                return;
+            }
+
+            executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(threadName));
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    retain();
+                }
+            }, config.getIntervalMillis(), config.getIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop making passes over the store. The retainer can be {@link #start() started} again afterwards, and passes can still be made by calling {@link #retain()}.
+     */
+    public void stop() {
+        synchronized (lifecycleLock) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * Get the measurements of this retainer.
+     * 
+     * @return A {@link Map} of the measurements, keyed by name.
+     */
+    public Map<String, Object> toMap() {
+        final Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("ageEvictedEvents", Long.valueOf(getAgeEvictedCount()));
+        metrics.put("sizeEvictedEvents", Long.valueOf(getSizeEvictedCount()));
+        metrics.put("countEvictedEvents", Long.valueOf(getCountEvictedCount()));
+        metrics.put("retainedBytes", Long.valueOf(getRetainedBytes()));
+        return metrics;
+    }
+
+    /**
+     * Make a pass over the store.
+     * 
+     * @param nowMillis
+     *            The current time, in milliseconds since the epoch, against which the ages of events are measured.
+     */
+    synchronized void retain(long nowMillis) {
+        if (config.getMaxAgeMillis() != null || config.getMaxBytes() != null) {
+            scan();
+        }
+        reconcile();
+
+        if (config.getMaxAgeMillis() != null) {
+            final long oldestRetained = nowMillis - config.getMaxAgeMillis().longValue();
+            while (!chunks.isEmpty() && chunks.peekFirst().newestTimestamp < oldestRetained) {
+                ageEvictedCount.addAndGet(evictFirst());
+            }
+        }
+
+        if (config.getMaxBytes() != null) {
+            while (!chunks.isEmpty() && retainedBytes > config.getMaxBytes().longValue()) {
+                sizeEvictedCount.addAndGet(evictFirst());
+            }
+        }
+
+        if (config.getMaxCount() != null) {
+            final long excess = eventStore.getEventCount() - config.getMaxCount().longValue();
+            final List<StoredEvent> oldest = eventStore.getEvents(0, 1).getStoredEvents();
+            if (excess > 0 && !oldest.isEmpty()) {
+                // The retained events of a store are numbered consecutively, so the excess can be deleted without reading it
+                eventStore.deleteEventsThrough(oldest.get(0).getSequence() + excess - 1);
+                countEvictedCount.addAndGet(excess);
+                reconcile();
+            }
+        }
+    }
+
+    /**
+     * Delete the events of the oldest chunk from the store; this must be called while synchronized on this object.
+     * 
+     * @return The number of events deleted.
+     */
+    private long evictFirst() {
+        final Chunk chunk = chunks.removeFirst();
+        eventStore.deleteEventsThrough(chunk.lastSequence);
+        retainedBytes -= chunk.bytes;
+        return chunk.eventCount;
+    }
+
+    /**
+     * Discard the accounting for events that are no longer retained by the store, such as those deleted by its clients or discarded by the store to make room; this must be called while
+     * synchronized on this object.
+     */
+    private void reconcile() {
+        final List<StoredEvent> oldest = eventStore.getEvents(0, 1).getStoredEvents();
+        // Events are read in order, so if none can be read then every event that has been accounted for is gone
+        final long oldestRetained = oldest.isEmpty() ? scannedThrough + 1 : oldest.get(0).getSequence();
+        while (!chunks.isEmpty() && chunks.peekFirst().lastSequence < oldestRetained) {
+            retainedBytes -= chunks.removeFirst().bytes;
+        }
+
+        final Chunk first = chunks.peekFirst();
+        if (first != null && first.firstSequence < oldestRetained) {
+            // Only part of the chunk remains; assume that its bytes were spread evenly over its events
+            final long remainingEvents = Math.min(first.eventCount, first.lastSequence - oldestRetained + 1);
+            final long remainingBytes = first.bytes * remainingEvents / first.eventCount;
+            retainedBytes -= first.bytes - remainingBytes;
+            first.bytes = remainingBytes;
+            first.eventCount = remainingEvents;
+            first.firstSequence = oldestRetained;
+        }
+    }
+
+    /**
+     * Account for the events stored since the last pass in new chunks; this must be called while synchronized on this object.
+     */
+    private void scan() {
+        final long maxChunkBytes = config.getMaxBytes() == null ? Long.MAX_VALUE : Math.max(1, config.getMaxBytes().longValue() / CHUNKS_PER_MAX_BYTES);
+        // Reading up to where the store stood at the start of the pass keeps the pass from chasing a store that is being written to faster than it can be read
+        final long scanThrough = eventStore.getLastSequence();
+        // Each pass starts a new chunk, so that the events of a chunk were stored within a single interval
+        Chunk chunk = null;
+        while (scannedThrough < scanThrough) {
+            final EventBatch batch = eventStore.getEvents(scannedThrough, READ_BATCH_SIZE);
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            for (StoredEvent storedEvent : batch.getStoredEvents()) {
+                if (chunk == null || chunk.eventCount >= CHUNK_EVENTS || chunk.bytes >= maxChunkBytes) {
+                    chunk = new Chunk(storedEvent.getSequence());
+                    chunks.addLast(chunk);
+                }
+
+                final int bytes = EventRecordCodec.encodedLength(storedEvent.getEvent());
+                chunk.lastSequence = storedEvent.getSequence();
+                chunk.eventCount++;
+                chunk.bytes += bytes;
+                chunk.newestTimestamp = Math.max(chunk.newestTimestamp, getTimestamp(storedEvent));
+                retainedBytes += bytes;
+            }
+            scannedThrough = batch.getCursor();
+        }
+    }
+
+    /**
+     * Get the time at which an event occurred.
+     * 
+     * @param storedEvent
+     *            The {@link StoredEvent} whose timestamp is to be determined.
+     * @return The value of the event's timestamp header; the time at which the event was stored if no header is configured or the event has no parseable value for it.
+     */
+    private long getTimestamp(StoredEvent storedEvent) {
+        final Event event = storedEvent.getEvent();
+        if (config.getTimestampHeader() == null || event.getHeaders() == null) {
+            return storedEvent.getStoredMillis();
+        }
+
+        final String timestamp = event.getHeaders().get(config.getTimestampHeader());
+        if (timestamp == null) {
+            return storedEvent.getStoredMillis();
+        }
+
+        try {
+            return Long.parseLong(timestamp.trim());
+        } catch (NumberFormatException e) {
+            return storedEvent.getStoredMillis();
+        }
+    }
+
+    /**
+     * The accounting for a run of consecutive events read from the store.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class Chunk {
+        private long firstSequence;
+        private long lastSequence;
+        private long eventCount;
+        private long bytes;
+        private long newestTimestamp = Long.MIN_VALUE;
+
+        /**
+         * Create a chunk.
+         * 
+         * @param firstSequence
+         *            The sequence number of the first event of the chunk.
+         */
+        public Chunk(long firstSequence) {
+            this.firstSequence = firstSequence;
+            this.lastSequence = firstSequence;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.Collection;
+
+import org.apache.flume.Event;
+
+/**
+ * Definition of an object that holds the events taken by the {@link ServerSink} and exposed through the {@link FlumeSinkServerResource}.
+ * <p />
+ * A single store is shared by the sink and the server's resource so that events taken from the channel are handed off in-process rather than by way of an HTTP request. Implementations must be safe
+ * for use by multiple threads.
+ * <p />
+ * Each stored event is assigned a sequence number, starting at 1, that is greater than that of every event stored before it. Readers can use the sequence numbers as a cursor to retrieve only the
+ * events that have been stored since their last read.
+ * 
+ * @author Joshua Hyde
+ */
+
+public interface EventStore extends EventDestination {
+    /**
+     * Add a listener to be notified when events are stored.
+     * 
+     * @param listener
+     *            The {@link EventStoreListener} to be added.
+     */
+    void addListener(EventStoreListener listener);
+
+    /**
+     * Delete all stored events.
+     */
+    void deleteEvents();
+
+    /**
+     * Delete the stored events up to and including a sequence number. Implementations may hold on to the memory of some of the deleted events until the events stored around them are also deleted,
+     * but deleted events are not retrieved.
+     * 
+     * @param sequence
+     *            The sequence number through which events are to be deleted.
+     */
+    void deleteEventsThrough(long sequence);
+
+    /**
+     * Get stored events. A store may return fewer events than the limit allows even when more are stored, such as to bound the memory used by a single read; the cursor of the returned batch is
+     * where the next read should continue from.
+     * 
+     * @param afterSequence
+     *            The sequence number after which events are to be retrieved; 0 retrieves all stored events.
+     * @param limit
+     *            The maximum number of events to be retrieved.
+     * @return An {@link EventBatch} containing the retrieved events, in the order in which they were stored.
+     */
+    EventBatch getEvents(long afterSequence, int limit);
+
+    /**
+     * Get the sequence number of the most recently stored event.
+     * 
+     * @return The sequence number of the most recently stored event; 0 if no events have been stored.
+     */
+    long getLastSequence();
+
+    /**
+     * Get the overflow policy of this store.
+     * 
+     * @return The {@link OverflowPolicy} that determines how events in excess of this store's capacity are handled. Only a store whose policy is {@link OverflowPolicy#BLOCK} ever refuses events.
+     */
+    OverflowPolicy getOverflowPolicy();
+
+    /**
+     * Determine whether this store has room for events, which is to say whether it would store them rather than refuse them with an {@link EventStoreFullException}. Stores that make room by
+     * discarding events always have room.
+     * 
+     * @param events
+     *            A {@link Collection} of the {@link Event} objects to be stored.
+     * @return {@code true} if the given events would currently be stored; {@code false} if they would be refused.
+     */
+    boolean hasRoomFor(Collection<? extends Event> events);
+
+    /**
+     * Remove a listener previously {@link #addListener(EventStoreListener) added}.
+     * 
+     * @param listener
+     *            The {@link EventStoreListener} to be removed.
+     */
+    void removeListener(EventStoreListener listener);
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+/**
+ * An exception thrown when an {@link EventStore} cannot accept events because it has reached its capacity.
+ * 
+ * @author Joshua Hyde
+ * @see OverflowPolicy#BLOCK
+ */
+
+public class EventStoreFullException extends Exception {
+    private static final long serialVersionUID = -2291457316870826470L;
+
+    /**
+     * Create an exception.
+     * 
+     * @param message
+     *            A message describing the cause of the exception.
+     */
+    public EventStoreFullException(String message) {
+        super(message);
+    }
+}
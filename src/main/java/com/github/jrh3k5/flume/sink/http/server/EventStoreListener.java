@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+/**
+ * Definition of an object that is notified when events are stored in an {@link EventStore}.
+ * <p />
+ * Listeners are notified on the thread that stored the events - frequently the {@link ServerSink}'s - so implementations should hand off any work that may take a meaningful amount of time.
+ * 
+ * @author Joshua Hyde
+ */
+
+public interface EventStoreListener {
+    /**
+     * Notify this listener that events have been stored.
+     * 
+     * @param lastSequence
+     *            The sequence number of the last event stored.
+     */
+    void eventsStored(long lastSequence);
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+/**
+ * Enumerations of the kinds of {@link EventStore} that the {@link ServerSink} can hold its events in.
+ * 
+ * @author Joshua Hyde
+ */
+
+public enum EventStoreType {
+    /**
+     * Events are held on the heap by a {@link RingBufferEventStore}.
+     */
+    MEMORY,
+    /**
+     * Events are held in direct buffers outside of the heap by an {@link OffHeapEventStore}.
+     */
+    OFFHEAP,
+    /**
+     * Events are held in memory-mapped files by a {@link MappedSegmentEventStore}.
+     */
+    MMAP;
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.glassfish.jersey.server.ChunkedOutput;
+
+/**
+ * This pushes events stored in an {@link EventStore} to subscribers as <a href="http://www.w3.org/TR/eventsource/">server-sent events</a>.
+ * <p />
+ * Each batch of newly-stored events is read from the store and encoded once, then offered to every subscriber. Each subscriber has its own bounded queue of encoded batches that is drained to its
+ * connection by a task of its own, so a slow subscriber delays neither the thread storing events nor the other subscribers. A subscriber whose queue overflows is disconnected; it can reconnect with
+ * the {@code Last-Event-ID} of the last batch it received to pick up where it left off. All instances of this class should be {@link #close() closed} when done with them.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class EventStreamBroadcaster implements EventStoreListener, Closeable {
+    /**
+     * The default number of batches that can be queued for a subscriber before it is disconnected.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final int READ_BATCH_SIZE = 1000;
+    private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
+
+    private final EventStore eventStore;
+    private final int queueCapacity;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean();
+    private final ExecutorService dispatchExecutor;
+    private final ExecutorService writeExecutor;
+    /**
+     * The sequence number of the last event offered to subscribers; this is only accessed by the dispatch thread.
+     */
+    private long dispatchCursor;
+    private final Runnable dispatchTask = new Runnable() {
+        @Override
+        public void run() {
+            dispatchScheduled.set(false);
+            dispatch();
+        }
+    };
+
+    /**
+     * Create a broadcaster with the {@link #DEFAULT_QUEUE_CAPACITY default queue capacity}. This registers the created object as a listener of the given store.
+     * 
+     * @param eventStore
+     *            The {@link EventStore} whose events are to be broadcast.
+     */
+    public EventStreamBroadcaster(EventStore eventStore) {
+        this(eventStore, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Create a broadcaster. This registers the created object as a listener of the given store.
+     * 
+     * @param eventStore
+     *            The {@link EventStore} whose events are to be broadcast.
+     * @param queueCapacity
+     *            The number of batches that can be queued for a subscriber before it is disconnected.
+     */
+    public EventStreamBroadcaster(EventStore eventStore, int queueCapacity) {
+        this.eventStore = eventStore;
+        this.queueCapacity = queueCapacity;
+        this.dispatchCursor = eventStore.getLastSequence();
+
+        final String threadPrefix = "event-stream-" + INSTANCE_COUNT.incrementAndGet();
+        this.dispatchExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory(threadPrefix + "-dispatch"));
+        this.writeExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory(threadPrefix + "-write"));
+        eventStore.addListener(this);
+    }
+
+    /**
+     * Close this broadcaster, disconnecting all subscribers.
+     */
+    @Override
+    public void close() throws IOException {
+        eventStore.removeListener(this);
+        dispatchExecutor.shutdownNow();
+        writeExecutor.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+    }
+
+    @Override
+    public void eventsStored(long lastSequence) {
+        if (!subscribers.isEmpty() && dispatchScheduled.compareAndSet(false, true)) {
+            dispatchExecutor.execute(dispatchTask);
+        }
+    }
+
+    /**
+     * Get the number of connected subscribers.
+     * 
+     * @return The number of connected subscribers.
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Subscribe to events.
+     * 
+     * @param output
+     *            The {@link ChunkedOutput} to which the events are to be written.
+     * @param afterSequence
+     *            The sequence number after which the subscriber is to receive events; if {@code null}, the subscriber receives only events stored after this method is invoked.
+     */
+    public void subscribe(ChunkedOutput<String> output, Long afterSequence) {
+        final Subscriber subscriber = new Subscriber(output);
+        // Capture the starting point now, as the subscription is not completed until the dispatch thread gets to it
+        final long startSequence = afterSequence == null ? eventStore.getLastSequence() : afterSequence.longValue();
+        dispatchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Bring existing subscribers up to date first so that the new subscriber can be caught up to the same point
+                dispatch();
+                subscriber.cursor = dispatchCursor;
+                long cursor = startSequence;
+                while (cursor < dispatchCursor) {
+                    final List<StoredEvent> toSend = new ArrayList<StoredEvent>();
+                    final EventBatch batch = eventStore.getEvents(cursor, READ_BATCH_SIZE);
+                    for (StoredEvent storedEvent : batch.getStoredEvents()) {
+                        if (storedEvent.getSequence() <= dispatchCursor) {
+                            toSend.add(storedEvent);
+                        }
+                    }
+                    if (batch.isEmpty() || (!toSend.isEmpty() && !subscriber.offer(encode(toSend)))) {
+                        break;
+                    }
+                    cursor = batch.getCursor();
+                }
+
+                if (!subscriber.closed) {
+                    subscribers.add(subscriber);
+                }
+            }
+        });
+    }
+
+    /**
+     * Offer all events stored since the last dispatch to the subscribers.
+     */
+    private void dispatch() {
+        EventBatch batch;
+        while (!(batch = eventStore.getEvents(dispatchCursor, READ_BATCH_SIZE)).isEmpty()) {
+            String chunk = null;
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.cursor < batch.getCursor()) {
+                    if (chunk == null) {
+                        chunk = encode(batch.getStoredEvents());
+                    }
+                    subscriber.offer(chunk);
+                    subscriber.cursor = batch.getCursor();
+                }
+            }
+            dispatchCursor = batch.getCursor();
+        }
+    }
+
+    /**
+     * Encode events as a server-sent event.
+     * 
+     * @param storedEvents
+     *            A {@link List} of {@link StoredEvent} objects representing the events to be encoded.
+     * @return A server-sent event whose ID is the sequence number of the last of the given events and whose data is the JSON form of the given events.
+     */
+    private String encode(List<StoredEvent> storedEvents) {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try {
+            EventBatchJsonWriter.writeEvents(storedEvents, data);
+            return String.format("id: %d\ndata: %s\n\n", storedEvents.get(storedEvents.size() - 1).getSequence(), data.toString("UTF-8"));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode events.", e);
+        }
+    }
+
+    /**
+     * A connected subscriber.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private class Subscriber implements Runnable {
+        private final ChunkedOutput<String> output;
+        private final BlockingQueue<String> chunks = new ArrayBlockingQueue<String>(queueCapacity);
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+        /**
+         * The sequence number of the last event offered to this subscriber; this is only accessed by the dispatch thread.
+         */
+        private long cursor;
+        private volatile boolean closed;
+
+        /**
+         * Create a subscriber.
+         * 
+         * @param output
+         *            The {@link ChunkedOutput} to which the subscriber's events are to be written.
+         */
+        public Subscriber(ChunkedOutput<String> output) {
+            this.output = output;
+        }
+
+        /**
+         * Disconnect this subscriber.
+         */
+        public void close() {
+            closed = true;
+            subscribers.remove(this);
+            try {
+                output.close();
+            } catch (IOException e) {
+                // The connection is being discarded, so there is nothing more to be done with it
+            }
+        }
+
+        /**
+         * Offer a chunk to be written to this subscriber. If this subscriber's queue is full, it is disconnected.
+         * 
+         * @param chunk
+         *            The chunk to be written.
+         * @return {@code true} if the chunk was queued; {@code false} if this subscriber was disconnected.
+         */
+        public boolean offer(String chunk) {
+            if (closed) {
+                return false;
+            }
+
+            if (!chunks.offer(chunk)) {
+                close();
+                return false;
+            }
+
+            if (writeScheduled.compareAndSet(false, true)) {
+                writeExecutor.execute(this);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final String chunk = chunks.poll();
+                if (chunk == null) {
+                    writeScheduled.set(false);
+                    // Pick back up anything offered after the poll but before the flag was cleared
+                    if (chunks.isEmpty() || !writeScheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+
+                try {
+                    output.write(chunk);
+                } catch (IOException e) {
+                    close();
+                    return;
+                }
+            }
+        }
+    }
+}
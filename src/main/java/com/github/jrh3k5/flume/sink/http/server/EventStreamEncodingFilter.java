@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * A filter that keeps compression off of {@code text/event-stream} responses. The compressing streams only emit data once a full block has been deflated, which would hold back the events pushed to
+ * stream subscribers indefinitely.
+ * <p />
+ * Response filters run in descending order of priority, so this runs after the content encoding has been negotiated.
+ * 
+ * @author Joshua Hyde
+ */
+
+@Provider
+@Priority(Priorities.HEADER_DECORATOR - 1)
+public class EventStreamEncodingFilter implements ContainerResponseFilter {
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+        if (responseContext.getMediaType() != null && "text".equals(responseContext.getMediaType().getType()) && "event-stream".equals(responseContext.getMediaType().getSubtype())) {
+            responseContext.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+        }
+    }
+}
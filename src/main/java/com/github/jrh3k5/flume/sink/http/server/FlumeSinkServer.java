@@ -17,24 +17,80 @@
  */
 package com.github.jrh3k5.flume.sink.http.server;
 
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.ws.rs.Priorities;
 
 import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.filter.EncodingFilter;
 
 /**
  * This class manages the embedded server hosting the HTTP interface into events taken by the {@link ServerSink}.
+ * <p />
+ * If the server is given a {@link PartitionedEventStore}, each of its partitions is served as a {@link FlumeSinkServerResource} of its own under {@code /partitions/{n}} (see
+ * {@link PartitionedServerResource}).
+ * <p />
+ * The {@link PublishMetrics} recorded by the sinks sharing the server, and the {@link RequestMetrics} of the requests that store, retrieve and delete events, are served from {@code /metrics} (see
+ * {@link MetricsResource}); the request metrics are also published over JMX while the server is started, under the {@value #METRICS_DOMAIN} domain.
+ * <p />
+ * Nothing leaves the store but what its clients delete and what the store itself discards to make room, unless the server is given a {@link RetentionConfig}, in which case an
+ * {@link EventRetainer} evicts events from the store in the background to keep it within the configured age, size and count; the counts of evicted events are also served from {@code /metrics}.
+ * <p />
+ * The server does not accept requests until it is {@link #start() started}; its network transport can be tuned with a {@link ServerTransportConfig}.
  * 
  * @author Joshua Hyde
  */
 
 public class FlumeSinkServer {
+    /**
+     * The JMX domain under which the {@link RequestMetrics} of the server are published.
+     */
+    public static final String METRICS_DOMAIN = "com.github.jrh3k5.flume.sink.http.server";
+
     private final HttpServer server;
     private final URI baseUri;
+    private final EventDestination eventStore;
+    private final PublishMetrics publishMetrics;
+    /**
+     * The metrics of each resource of the server, keyed by the resource, in the order in which the resources were created.
+     */
+    private final Map<Object, ResourceMetrics> resourceMetrics = new LinkedHashMap<Object, ResourceMetrics>();
+    /**
+     * The retainers keeping the stores of the resources of the server within their limits while the server is started, keyed by the path of the resource; empty if no limits are set.
+     */
+    private final Map<String, EventRetainer> retainers = new LinkedHashMap<String, EventRetainer>();
+    /**
+     * The names under which request metrics are published over JMX while the server is started.
+     */
+    private final List<ObjectName> registeredMBeans = new ArrayList<ObjectName>();
+    /**
+     * The objects serving the resources of the server, in the order in which they are to be closed.
+     */
+    private final List<Closeable> components = new ArrayList<Closeable>();
+    /**
+     * The executor of the worker threads created for the server, which is to be shut down with it; {@code null} if the server does not own its worker executor.
+     */
+    private ExecutorService ownedWorkerExecutor;
 
     /**
-     * Create a server.
+     * Create a server backed by a {@link RingBufferEventStore} with the default capacity.
      * 
      * @param bindAddress
      *            The address or host to which the server is to bind.
@@ -42,9 +98,73 @@ public class FlumeSinkServer {
      *            The port on which the HTTP server will listen for requests.
      */
     public FlumeSinkServer(String bindAddress, int serverPort) {
+        this(bindAddress, serverPort, new FlumeSinkServerConfig());
+    }
+
+    /**
+     * Create a server.
+     * 
+     * @param bindAddress
+     *            The address or host to which the server is to bind.
+     * @param serverPort
+     *            The port on which the HTTP server will listen for requests.
+     * @param config
+     *            The {@link FlumeSinkServerConfig} giving the store of the server and how it is served.
+     * @throws IllegalArgumentException
+     *             If the configured destination is neither an {@link EventStore} nor a {@link PartitionedEventStore}.
+     * @throws IllegalStateException
+     *             If virtual worker threads are configured but not supported by the running JVM.
+     */
+    public FlumeSinkServer(String bindAddress, int serverPort, FlumeSinkServerConfig config) {
+        final EventDestination eventStore = config.getEventStore() == null ? new RingBufferEventStore() : config.getEventStore();
+        final Compression compression = config.getCompression();
+        final Collection<String> indexedHeaders = config.getIndexedHeaders();
+        final ServerTransportConfig transportConfig = config.getTransportConfig();
+        final RetentionConfig retentionConfig = config.getRetentionConfig();
         this.baseUri = URI.create(String.format("http://%s:%d", bindAddress, serverPort));
-        final ResourceConfig resourceConfig = new ResourceConfig().packages(FlumeSinkServerResource.class.getPackage().getName());
-        server = GrizzlyHttpServerFactory.createHttpServer(baseUri, resourceConfig);
+        this.eventStore = eventStore;
+        this.publishMetrics = new PublishMetrics(eventStore);
+        final ResourceConfig resourceConfig = new ResourceConfig();
+        if (eventStore instanceof PartitionedEventStore) {
+            final PartitionedEventStore partitionedStore = (PartitionedEventStore) eventStore;
+            final List<EventStore> partitions = partitionedStore.getPartitions();
+            final List<FlumeSinkServerResource> partitionResources = new ArrayList<FlumeSinkServerResource>(partitions.size());
+            for (int i = 0; i < partitions.size(); i++) {
+                partitionResources.add(createResource(partitions.get(i), indexedHeaders, retentionConfig, "/partitions/" + i));
+            }
+            final PartitionedServerResource partitionedResource = new PartitionedServerResource(partitionedStore, partitionResources);
+            resourceMetrics.put(partitionedResource, new ResourceMetrics("/"));
+            resourceConfig.register(partitionedResource);
+        } else if (eventStore instanceof EventStore) {
+            resourceConfig.register(createResource((EventStore) eventStore, indexedHeaders, retentionConfig, "/"));
+        } else {
+            throw new IllegalArgumentException("Unsupported event destination: " + eventStore);
+        }
+        resourceConfig.register(new RequestMetricsFeature(resourceMetrics));
+        resourceConfig.register(new MetricsResource(publishMetrics, resourceMetrics.values(), retainers));
+        if (config.isCacheFragments()) {
+            resourceConfig.register(new EventBatchJsonWriter(true));
+            resourceConfig.register(new BinaryEventsProvider(true));
+        } else {
+            resourceConfig.register(EventBatchJsonWriter.class);
+            resourceConfig.register(BinaryEventsProvider.class);
+        }
+        if (compression.getEncoderClass() != null) {
+            resourceConfig.register(EncodingFilter.class);
+            // The encoders do not carry the priority of the interceptors they extend, so give it to them so that the interceptors around them run in order
+            resourceConfig.register(compression.getEncoderClass(), Priorities.ENTITY_CODER);
+            resourceConfig.register(EventStreamEncodingFilter.class);
+        }
+        if (transportConfig.getMaxRequestBytes() != null) {
+            resourceConfig.register(new RequestSizeLimitFilter(transportConfig.getMaxRequestBytes().longValue()));
+            if (compression.getEncoderClass() != null) {
+                resourceConfig.register(new DecodedRequestSizeLimitInterceptor(transportConfig.getMaxRequestBytes().longValue()));
+            }
+        }
+        server = GrizzlyHttpServerFactory.createHttpServer(baseUri, resourceConfig, false);
+        for (NetworkListener listener : server.getListeners()) {
+            configureTransport(listener, transportConfig);
+        }
     }
 
     /**
@@ -56,6 +176,33 @@ public class FlumeSinkServer {
         return baseUri;
     }
 
+    /**
+     * Get the destination holding the events exposed by this server.
+     * 
+     * @return The {@link EventDestination} backing this server: an {@link EventStore}, or a {@link PartitionedEventStore}.
+     */
+    public EventDestination getEventStore() {
+        return eventStore;
+    }
+
+    /**
+     * Get the metrics of the publication of events into the store of this server, which are served from {@code /metrics}.
+     * 
+     * @return The {@link PublishMetrics} of this server.
+     */
+    public PublishMetrics getPublishMetrics() {
+        return publishMetrics;
+    }
+
+    /**
+     * Get the retainers keeping the stores of this server within their limits, whose measurements are served from {@code /metrics}.
+     * 
+     * @return An unmodifiable {@link Map} of the {@link EventRetainer} of each resource of this server, keyed by the path of the resource; empty if no retention limits were set.
+     */
+    public Map<String, EventRetainer> getEventRetainers() {
+        return Collections.unmodifiableMap(retainers);
+    }
+
     /**
      * Start the server.
      * 
@@ -64,6 +211,23 @@ public class FlumeSinkServer {
      */
     public void start() throws Exception {
         server.start();
+        for (EventRetainer retainer : retainers.values()) {
+            retainer.start();
+        }
+
+        final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ResourceMetrics metrics : resourceMetrics.values()) {
+            for (Map.Entry<String, RequestMetrics> requestMetrics : metrics.getRequestMetrics().entrySet()) {
+                final ObjectName objectName = new ObjectName(String.format("%s:type=RequestMetrics,server=%s,resource=%s,method=%s", METRICS_DOMAIN,
+                        ObjectName.quote(baseUri.getHost() + ":" + baseUri.getPort()), ObjectName.quote(metrics.getPath()), requestMetrics.getKey()));
+                if (mbeanServer.isRegistered(objectName)) {
+                    // Left behind by a server on the same address that was never stopped
+                    mbeanServer.unregisterMBean(objectName);
+                }
+                mbeanServer.registerMBean(requestMetrics.getValue(), objectName);
+                registeredMBeans.add(objectName);
+            }
+        }
     }
 
     /**
@@ -73,6 +237,110 @@ public class FlumeSinkServer {
      *             If any errors occur during the shutdown of the server.
      */
     public void stop() throws Exception {
+        for (EventRetainer retainer : retainers.values()) {
+            retainer.stop();
+        }
+        for (Closeable component : components) {
+            component.close();
+        }
         server.shutdown();
+        final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registeredMBeans) {
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+        }
+        registeredMBeans.clear();
+        if (ownedWorkerExecutor != null) {
+            ownedWorkerExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Apply the transport settings to a listener of the server; this must be done before the server is started.
+     * 
+     * @param listener
+     *            The {@link NetworkListener} to be configured.
+     * @param transportConfig
+     *            The {@link ServerTransportConfig} to be applied.
+     * @throws IllegalStateException
+     *             If virtual worker threads are configured but not supported by the running JVM.
+     */
+    private void configureTransport(NetworkListener listener, ServerTransportConfig transportConfig) {
+        final TCPNIOTransport transport = listener.getTransport();
+        if (transportConfig.getSelectorRunners() != null) {
+            transport.setSelectorRunnersCount(transportConfig.getSelectorRunners().intValue());
+        }
+
+        if (transportConfig.getWorkerExecutor() != null) {
+            transport.setWorkerThreadPool(transportConfig.getWorkerExecutor());
+        } else if (transportConfig.getWorkerThreadType() == WorkerThreadType.VIRTUAL) {
+            if (ownedWorkerExecutor == null) {
+                ownedWorkerExecutor = newVirtualThreadExecutor();
+            }
+            transport.setWorkerThreadPool(ownedWorkerExecutor);
+        } else if (transportConfig.getWorkerPoolSize() != null || transportConfig.getWorkerQueueLimit() != null) {
+            final ThreadPoolConfig workerConfig = (transport.getWorkerThreadPoolConfig() == null ? ThreadPoolConfig.defaultConfig() : transport.getWorkerThreadPoolConfig()).copy();
+            if (transportConfig.getWorkerPoolSize() != null) {
+                workerConfig.setCorePoolSize(transportConfig.getWorkerPoolSize().intValue());
+                workerConfig.setMaxPoolSize(transportConfig.getWorkerPoolSize().intValue());
+            }
+            if (transportConfig.getWorkerQueueLimit() != null) {
+                workerConfig.setQueueLimit(transportConfig.getWorkerQueueLimit().intValue());
+            }
+            transport.setWorkerThreadPoolConfig(workerConfig);
+        }
+
+        if (transportConfig.getKeepAliveTimeoutSeconds() != null) {
+            listener.getKeepAlive().setIdleTimeoutInSeconds(transportConfig.getKeepAliveTimeoutSeconds().intValue());
+        }
+        if (transportConfig.getKeepAliveMaxRequests() != null) {
+            listener.getKeepAlive().setMaxRequestsCount(transportConfig.getKeepAliveMaxRequests().intValue());
+        }
+    }
+
+    /**
+     * Create an executor that runs each task on a virtual thread of its own. This is looked up reflectively so that the server can still be built and run on JVMs without virtual threads.
+     * 
+     * @return An {@link ExecutorService} running each task on a new virtual thread.
+     * @throws IllegalStateException
+     *             If the running JVM does not support virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual worker threads require Java 21 or later; running on " + System.getProperty("java.version"), e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create a virtual thread executor.", e);
+        }
+    }
+
+    /**
+     * Create the resource exposing the events held in a store.
+     * 
+     * @param resourceStore
+     *            The {@link EventStore} whose events are to be exposed.
+     * @param indexedHeaders
+     *            A {@link Collection} of the names of the headers whose values are to be indexed.
+     * @param retentionConfig
+     *            The {@link RetentionConfig} setting the limits within which the store is to be kept.
+     * @param path
+     *            The path under which the resource is served.
+     * @return A {@link FlumeSinkServerResource} exposing the events in the given store.
+     */
+    private FlumeSinkServerResource createResource(EventStore resourceStore, Collection<String> indexedHeaders, RetentionConfig retentionConfig, String path) {
+        if (retentionConfig.isEnabled()) {
+            retainers.put(path, new EventRetainer(resourceStore, retentionConfig));
+        }
+        final HeaderIndex headerIndex = new HeaderIndex(resourceStore, indexedHeaders);
+        final PendingEventReads pendingReads = new PendingEventReads(headerIndex);
+        final EventStreamBroadcaster broadcaster = new EventStreamBroadcaster(resourceStore);
+        components.add(pendingReads);
+        components.add(broadcaster);
+        components.add(headerIndex);
+        final FlumeSinkServerResource resource = new FlumeSinkServerResource(resourceStore, headerIndex, pendingReads, broadcaster, new ConsumerOffsets(resourceStore));
+        resourceMetrics.put(resource, new ResourceMetrics(path));
+        return resource;
     }
 }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * The settings of a {@link FlumeSinkServer}. A server created with the default settings is backed by a {@link RingBufferEventStore} with the default capacity, applies no compression, indexes no
+ * headers, keeps the default network transport, does not cache encoded events and leaves its store to make room for itself.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class FlumeSinkServerConfig {
+    private EventDestination eventStore;
+    private Compression compression = Compression.NONE;
+    private Collection<String> indexedHeaders = Collections.emptySet();
+    private ServerTransportConfig transportConfig = new ServerTransportConfig();
+    private boolean cacheFragments;
+    private RetentionConfig retentionConfig = new RetentionConfig();
+
+    /**
+     * Get the compression applied by the server.
+     * 
+     * @return The {@link Compression} to be applied to request bodies sent with, and response bodies sent to clients that accept, its content encoding.
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Get the destination holding the events exposed by the server.
+     * 
+     * @return The {@link EventDestination} that holds the events exposed by the server; {@code null} if the server is to create a {@link RingBufferEventStore} with the default capacity.
+     */
+    public EventDestination getEventStore() {
+        return eventStore;
+    }
+
+    /**
+     * Get the names of the headers whose values are indexed.
+     * 
+     * @return A {@link Collection} of the names of the headers whose values are to be indexed so that retrievals filtering on them need not scan the store.
+     */
+    public Collection<String> getIndexedHeaders() {
+        return indexedHeaders;
+    }
+
+    /**
+     * Get the limits within which the store is kept.
+     * 
+     * @return The {@link RetentionConfig} setting the limits within which the store is kept by an {@link EventRetainer}.
+     */
+    public RetentionConfig getRetentionConfig() {
+        return retentionConfig;
+    }
+
+    /**
+     * Get the settings of the network transport of the server.
+     * 
+     * @return The {@link ServerTransportConfig} applied to the network transport of the server.
+     */
+    public ServerTransportConfig getTransportConfig() {
+        return transportConfig;
+    }
+
+    /**
+     * Determine whether the encoded form of each retrieved event is cached.
+     * 
+     * @return {@code true} if the encoded form of each retrieved event is to be cached alongside it in the store.
+     */
+    public boolean isCacheFragments() {
+        return cacheFragments;
+    }
+
+    /**
+     * Set whether the encoded form of each retrieved event is cached alongside it in the store, trading memory for the encoding of events that are retrieved repeatedly.
+     * 
+     * @param cacheFragments
+     *            {@code true} if the encoded form of each retrieved event is to be cached.
+     */
+    public void setCacheFragments(boolean cacheFragments) {
+        this.cacheFragments = cacheFragments;
+    }
+
+    /**
+     * Set the compression applied by the server.
+     * 
+     * @param compression
+     *            The {@link Compression} to be applied to request bodies sent with, and response bodies sent to clients that accept, its content encoding.
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Set the destination holding the events exposed by the server.
+     * 
+     * @param eventStore
+     *            The {@link EventDestination} that holds the events exposed by the server: an {@link EventStore}, or a {@link PartitionedEventStore} whose partitions are exposed separately;
+     *            {@code null} for the server to create a {@link RingBufferEventStore} with the default capacity.
+     */
+    public void setEventStore(EventDestination eventStore) {
+        this.eventStore = eventStore;
+    }
+
+    /**
+     * Set the names of the headers whose values are indexed.
+     * 
+     * @param indexedHeaders
+     *            A {@link Collection} of the names of the headers whose values are to be indexed so that retrievals filtering on them need not scan the store; each partition of a partitioned
+     *            store is indexed separately.
+     */
+    public void setIndexedHeaders(Collection<String> indexedHeaders) {
+        this.indexedHeaders = indexedHeaders;
+    }
+
+    /**
+     * Set the limits within which the store is kept.
+     * 
+     * @param retentionConfig
+     *            The {@link RetentionConfig} setting the limits within which the store is kept by an {@link EventRetainer}; each partition of a partitioned store is kept within them separately.
+     */
+    public void setRetentionConfig(RetentionConfig retentionConfig) {
+        this.retentionConfig = retentionConfig;
+    }
+
+    /**
+     * Set the settings of the network transport of the server.
+     * 
+     * @param transportConfig
+     *            The {@link ServerTransportConfig} applied to the network transport of the server.
+     */
+    public void setTransportConfig(ServerTransportConfig transportConfig) {
+        this.transportConfig = transportConfig;
+    }
+}
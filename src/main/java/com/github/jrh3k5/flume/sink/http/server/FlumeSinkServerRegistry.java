@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This shares a {@link FlumeSinkServer} among the {@link ServerSink} instances configured with the same bind address and port, so that several sinks can drain a channel in parallel into a single
+ * store exposed by a single HTTP server.
+ * <p />
+ * The first sink to {@link #acquire(String, int, ServerFactory) acquire} a server creates and starts it; later sinks share it, and their own server and store configuration is not used. Each
+ * acquisition is counted, and the server is stopped - and its store closed, if it is {@link Closeable} - once every acquisition has been {@link #release(FlumeSinkServer) released}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public final class FlumeSinkServerRegistry {
+    private static final Map<String, SharedServer> SERVERS = new HashMap<String, SharedServer>();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private FlumeSinkServerRegistry() {
+    }
+
+    /**
+     * Acquire the server for a bind address and port, creating and starting it if it is not already running.
+     * 
+     * @param bindAddress
+     *            The address or host to which the server binds.
+     * @param serverPort
+     *            The port on which the server listens for requests.
+     * @param serverFactory
+     *            The {@link ServerFactory} used to create the server if it is not already running.
+     * @return The {@link FlumeSinkServer} for the given bind address and port.
+     * @throws Exception
+     *             If any errors occur while creating or starting the server.
+     */
+    public static synchronized FlumeSinkServer acquire(String bindAddress, int serverPort, ServerFactory serverFactory) throws Exception {
+        final String key = toKey(bindAddress, serverPort);
+        SharedServer sharedServer = SERVERS.get(key);
+        if (sharedServer == null) {
+            final FlumeSinkServer server = serverFactory.createServer();
+            server.start();
+            sharedServer = new SharedServer(key, server);
+            SERVERS.put(key, sharedServer);
+        }
+        sharedServer.referenceCount++;
+        return sharedServer.server;
+    }
+
+    /**
+     * Get the number of acquisitions of the server for a bind address and port that have yet to be released.
+     * 
+     * @param bindAddress
+     *            The address or host to which the server binds.
+     * @param serverPort
+     *            The port on which the server listens for requests.
+     * @return The number of unreleased acquisitions; 0 if the server is not running.
+     */
+    public static synchronized int getReferenceCount(String bindAddress, int serverPort) {
+        final SharedServer sharedServer = SERVERS.get(toKey(bindAddress, serverPort));
+        return sharedServer == null ? 0 : sharedServer.referenceCount;
+    }
+
+    /**
+     * Release an acquisition of a server, stopping it and closing its store if it is no longer acquired.
+     * 
+     * @param server
+     *            The {@link FlumeSinkServer} to be released.
+     * @return {@code true} if the server was stopped; {@code false} if it is still acquired.
+     * @throws IllegalArgumentException
+     *             If the given server was not acquired from this registry.
+     * @throws Exception
+     *             If any errors occur while stopping the server or closing its store.
+     */
+    public static synchronized boolean release(FlumeSinkServer server) throws Exception {
+        SharedServer released = null;
+        for (SharedServer sharedServer : SERVERS.values()) {
+            if (sharedServer.server == server) {
+                released = sharedServer;
+                break;
+            }
+        }
+
+        if (released == null) {
+            throw new IllegalArgumentException("The given server was not acquired from this registry: " + server.getBaseUri());
+        }
+
+        if (--released.referenceCount > 0) {
+            return false;
+        }
+
+        SERVERS.remove(released.key);
+        server.stop();
+        if (server.getEventStore() instanceof Closeable) {
+            ((Closeable) server.getEventStore()).close();
+        }
+        return true;
+    }
+
+    /**
+     * Build the key under which a server is registered.
+     * 
+     * @param bindAddress
+     *            The address or host to which the server binds.
+     * @param serverPort
+     *            The port on which the server listens for requests.
+     * @return The key of the server.
+     */
+    private static String toKey(String bindAddress, int serverPort) {
+        return bindAddress + ":" + serverPort;
+    }
+
+    /**
+     * Definition of an object that creates a server when one is first acquired.
+     * 
+     * @author Joshua Hyde
+     */
+
+    public static interface ServerFactory {
+        /**
+         * Create a server; it is started by the registry.
+         * 
+         * @return The created {@link FlumeSinkServer}.
+         */
+        FlumeSinkServer createServer();
+    }
+
+    /**
+     * A server shared by one or more sinks.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class SharedServer {
+        private final String key;
+        private final FlumeSinkServer server;
+        private int referenceCount;
+
+        /**
+         * Create a shared server.
+         * 
+         * @param key
+         *            The key under which the server is registered.
+         * @param server
+         *            The {@link FlumeSinkServer} being shared.
+         */
+        public SharedServer(String key, FlumeSinkServer server) {
+            this.key = key;
+            this.server = server;
+        }
+    }
+}
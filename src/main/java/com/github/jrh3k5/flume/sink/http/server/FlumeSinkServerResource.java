@@ -17,24 +17,35 @@
  */
 package com.github.jrh3k5.flume.sink.http.server;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
 
-import org.apache.flume.Event;
 import org.apache.flume.event.SimpleEvent;
+import org.glassfish.jersey.server.ChunkedOutput;
 
 /**
  * A JAX-RS resource that accepts and exposes Flume events via JSON.
@@ -54,14 +65,138 @@ import org.apache.flume.event.SimpleEvent;
  * ]
  * </pre>
  * 
+ * Every stored event is given a sequence number greater than that of the events stored before it. A retrieval of events responds with a {@value #CURSOR_HEADER} header containing the sequence
+ * number of the last event returned; supplying that value as the {@code after} query parameter of the next retrieval returns only the events stored since. The number of events returned can be
+ * bounded with the {@code limit} query parameter:
+ * 
+ * <pre>
+ * GET /events?after=1234&amp;limit=500
+ * </pre>
+ * 
+ * Only the events having particular header values can be retrieved by supplying each header name, prefixed with {@code header.}, as a query parameter whose value is the header value; an event
+ * must have all of the given header values to be retrieved. Headers that the server has been configured to index (see {@link HeaderIndex}) are looked up in the index rather than by scanning the
+ * stored events. The cursor of a filtered retrieval can be past the last event returned, so that the next retrieval does not examine the filtered-out events again:
+ * 
+ * <pre>
+ * GET /events?after=1234&amp;header.type=audit&amp;header.host=web-12
+ * </pre>
+ * 
+ * If there are no events after the cursor, a retrieval can wait for them to be stored by supplying the maximum number of milliseconds to wait as the {@code waitMs} query parameter. The request is
+ * held open, without occupying a server thread, until events are stored or the wait elapses, at which point an empty array is returned.
+ * <p />
+ * A retrieval that does not wait and that reads through the last event stored responds with a weak {@code ETag} that changes whenever events are stored in or removed from the store. A poller
+ * that repeats a retrieval with that tag as its {@code If-None-Match} header receives a {@code 304 Not Modified} response, without the events being read or encoded, for as long as the store is
+ * unchanged. Retrievals cut short by their limit, or by events whose sequence numbers have been claimed but that have yet to be published, are not tagged, as they would not be repeated by a
+ * retrieval made once the store has caught up.
+ * 
+ * Events can also be received as they are stored through a <a href="http://www.w3.org/TR/eventsource/">server-sent event</a> stream at {@code /events/stream}. Each server-sent event carries a
+ * JSON array of events in the form above as its data, and the sequence number of the last of them as its ID. A stream begins with the events stored after the sequence number given as the
+ * {@code after} query parameter or {@code Last-Event-ID} header, if either is given, and otherwise with the events stored after the connection was made.
+ * <p />
+ * Events can also be stored and retrieved in the compact binary form described by {@link BinaryEventsProvider} by using its {@value BinaryEventsProvider#MEDIA_TYPE} media type as the
+ * {@code Content-Type} or {@code Accept} header of the request; JSON is used otherwise.
+ * <p />
+ * Rather than deleting all stored events, consumers can delete only the events they have processed by registering under an ID of their choosing and committing the cursor of the last event they
+ * have processed; events are deleted once every registered consumer has committed past them (see {@link ConsumerOffsets}):
+ * 
+ * <pre>
+ * PUT /consumers/indexer?seq=0
+ * POST /consumers/indexer/commit?seq=1234
+ * GET /consumers/indexer
+ * DELETE /consumers/indexer
+ * </pre>
+ * <p />
+ * The events are held in an {@link EventStore} shared with the {@link ServerSink}, which hands events off to it directly.
+ * 
  * @author Joshua Hyde
  * 
  */
 
 @Path("/")
 public class FlumeSinkServerResource {
-    private static final List<Event> EVENTS = new ArrayList<Event>();
-    private final ReadWriteLock eventsLock = new ReentrantReadWriteLock();
+    /**
+     * The name of the response header containing the cursor from which the next retrieval of events should continue.
+     */
+    public static final String CURSOR_HEADER = "X-Events-Cursor";
+    /**
+     * The prefix of the query parameters that filter retrieved events by header value.
+     */
+    public static final String HEADER_PARAMETER_PREFIX = "header.";
+    /**
+     * The media types in which events can be retrieved, in order of preference.
+     */
+    private static final List<Variant> EVENT_VARIANTS = Variant.mediaTypes(MediaType.APPLICATION_JSON_TYPE, BinaryEventsProvider.MEDIA_TYPE_TYPE).build();
+    private final EventStore eventStore;
+    private final HeaderIndex headerIndex;
+    private final PendingEventReads pendingReads;
+    private final EventStreamBroadcaster broadcaster;
+    private final ConsumerOffsets consumerOffsets;
+    /**
+     * Distinguishes the entity tags of this resource from those of earlier resources over a store whose sequence numbers started over, such as one held in memory by a restarted server.
+     */
+    private final String entityTagEpoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    /**
+     * Create a resource.
+     * 
+     * @param eventStore
+     *            The {@link EventStore} in which events are to be stored and from which they are to be retrieved.
+     * @param headerIndex
+     *            The {@link HeaderIndex} used to retrieve events from the given store by header value.
+     * @param pendingReads
+     *            The {@link PendingEventReads} used to hold retrievals waiting for events to be stored in the given store.
+     * @param broadcaster
+     *            The {@link EventStreamBroadcaster} used to stream events stored in the given store.
+     * @param consumerOffsets
+     *            The {@link ConsumerOffsets} used to track the offsets committed by consumers of the given store.
+     */
+    public FlumeSinkServerResource(EventStore eventStore, HeaderIndex headerIndex, PendingEventReads pendingReads, EventStreamBroadcaster broadcaster, ConsumerOffsets consumerOffsets) {
+        this.eventStore = eventStore;
+        this.headerIndex = headerIndex;
+        this.pendingReads = pendingReads;
+        this.broadcaster = broadcaster;
+        this.consumerOffsets = consumerOffsets;
+    }
+
+    /**
+     * Commit the offset of a consumer.
+     * 
+     * @param consumerId
+     *            The ID of the consumer.
+     * @param sequence
+     *            The sequence number of the last event processed by the consumer.
+     * @return A {@link Response} with a {@value #CURSOR_HEADER} header containing the committed offset of the consumer; if the consumer is not registered, a {@link Response.Status#NOT_FOUND}
+     *         response is returned.
+     * @throws Exception
+     *             If any errors occur during the commit.
+     */
+    @POST
+    @Path("consumers/{consumerId}/commit")
+    public Response commitConsumer(@PathParam("consumerId") String consumerId, @QueryParam("seq") Long sequence) throws Exception {
+        if (sequence == null || sequence.longValue() < 0) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("A non-negative sequence number must be given: " + sequence).build();
+        }
+
+        if (!consumerOffsets.commit(consumerId, sequence.longValue())) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return Response.ok().header(CURSOR_HEADER, consumerOffsets.getOffset(consumerId)).build();
+    }
+
+    /**
+     * Unregister a consumer.
+     * 
+     * @param consumerId
+     *            The ID of the consumer.
+     * @return A {@link Response} indicating the status of the unregistration; if the consumer is not registered, a {@link Response.Status#NOT_FOUND} response is returned.
+     * @throws Exception
+     *             If any errors occur during the unregistration.
+     */
+    @DELETE
+    @Path("consumers/{consumerId}")
+    public Response deleteConsumer(@PathParam("consumerId") String consumerId) throws Exception {
+        return consumerOffsets.unregister(consumerId) ? Response.ok().build() : Response.status(Response.Status.NOT_FOUND).build();
+    }
 
     /**
      * Delete all stored events.
@@ -73,34 +208,163 @@ public class FlumeSinkServerResource {
     @DELETE
     @Path("events")
     public Response deleteEvents() throws Exception {
-        final Lock writeLock = eventsLock.writeLock();
-        writeLock.lock();
-        try {
-            EVENTS.clear();
-            return Response.ok().build();
-        } finally {
-            writeLock.unlock();
+        eventStore.deleteEvents();
+        return Response.ok().build();
+    }
+
+    /**
+     * Get the offset of a consumer.
+     * 
+     * @param consumerId
+     *            The ID of the consumer.
+     * @return A {@link Response} containing the committed offset of the consumer as plain text; if the consumer is not registered, a {@link Response.Status#NOT_FOUND} response is returned.
+     * @throws Exception
+     *             If any errors occur during the retrieval.
+     */
+    @GET
+    @Path("consumers/{consumerId}")
+    @Produces("text/plain")
+    public Response getConsumer(@PathParam("consumerId") String consumerId) throws Exception {
+        final Long offset = consumerOffsets.getOffset(consumerId);
+        if (offset == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
         }
+        return Response.ok(offset.toString()).header(CURSOR_HEADER, offset).build();
     }
 
     /**
-     * Get all stored events.
+     * Get stored events.
      * 
-     * @return A {@link Response} containing an array of the stored events.
+     * @param afterSequence
+     *            The sequence number after which events are to be retrieved; if not given, all stored events are retrieved.
+     * @param limit
+     *            The maximum number of events to be retrieved; if not given, the number of events retrieved is not limited.
+     * @param waitMillis
+     *            The maximum number of milliseconds to wait for events to be stored if there are none to be retrieved; if not given, the retrieval does not wait.
+     * @param uriInfo
+     *            A {@link UriInfo} object representing the URI information of the current request, whose query parameters prefixed with {@value #HEADER_PARAMETER_PREFIX} give the header values
+     *            that retrieved events must have.
+     * @param request
+     *            The {@link Request} being served, whose preconditions are evaluated against the entity tag of the store.
+     * @param asyncResponse
+     *            An {@link AsyncResponse} to be resumed with a {@link Response} containing an {@link EventBatch} of the stored events, to be written by the {@link EventBatchJsonWriter} or {@link BinaryEventsProvider}, and a
+     *            {@value #CURSOR_HEADER} header for the next retrieval.
      * @throws Exception
      *             If any errors occur during the retrieval.
      */
     @GET
     @Path("events")
-    @Produces("application/json")
-    public Response getEvents() throws Exception {
-        final Lock readLock = eventsLock.readLock();
-        readLock.lock();
-        try {
-            return Response.ok(EVENTS.toArray()).build();
-        } finally {
-            readLock.unlock();
+    @Produces({ "application/json", BinaryEventsProvider.MEDIA_TYPE })
+    public void getEvents(@QueryParam("after") @DefaultValue("0") long afterSequence, @QueryParam("limit") Integer limit, @QueryParam("waitMs") @DefaultValue("0") long waitMillis,
+            @Context UriInfo uriInfo, @Context Request request, @Suspended final AsyncResponse asyncResponse) throws Exception {
+        if (limit != null && limit.intValue() < 1) {
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST).entity("The limit must be positive: " + limit).build());
+            return;
+        }
+
+        if (waitMillis < 0) {
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST).entity("The wait must not be negative: " + waitMillis).build());
+            return;
         }
+
+        final Map<String, String> headers = new HashMap<String, String>();
+        for (Map.Entry<String, List<String>> parameter : uriInfo.getQueryParameters().entrySet()) {
+            if (parameter.getKey().startsWith(HEADER_PARAMETER_PREFIX) && !parameter.getValue().isEmpty()) {
+                headers.put(parameter.getKey().substring(HEADER_PARAMETER_PREFIX.length()), parameter.getValue().get(0));
+            }
+        }
+
+        // A waiting retrieval is after events yet to be stored, so it is not answered as unmodified
+        final Variant variant = waitMillis == 0 ? request.selectVariant(EVENT_VARIANTS) : null;
+        final EntityTag entityTag = variant == null ? null : getEntityTag(variant);
+        if (entityTag != null) {
+            final Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+            if (notModified != null) {
+                asyncResponse.resume(notModified.header(CURSOR_HEADER, afterSequence).build());
+                return;
+            }
+        }
+
+        final int maxEvents = limit == null ? Integer.MAX_VALUE : limit.intValue();
+        final EventBatch batch = headerIndex.getEvents(afterSequence, maxEvents, headers);
+        if (!batch.isEmpty() || waitMillis == 0) {
+            // Only tag the events if they reach the last sequence number claimed in the store and the store did not change while they were read, lest they be tagged as a state of the store that
+            // they do not represent; a read that stops short of unpublished events would otherwise be answered as unmodified once those events are published
+            final boolean complete = entityTag != null && batch.getCursor() >= eventStore.getLastSequence() && entityTag.equals(getEntityTag(variant));
+            asyncResponse.resume(toResponse(batch, complete ? entityTag : null));
+            return;
+        }
+
+        // Leave a margin past the wait so that the pending read, rather than the container, completes the request
+        asyncResponse.setTimeout(waitMillis + TimeUnit.SECONDS.toMillis(30), TimeUnit.MILLISECONDS);
+        pendingReads.await(batch.getCursor(), maxEvents, headers, waitMillis, new PendingEventReads.Callback() {
+            @Override
+            public void eventsRead(EventBatch waitedBatch) {
+                asyncResponse.resume(toResponse(waitedBatch, null));
+            }
+        });
+    }
+
+    /**
+     * Get the entity tag of the current state of the store.
+     * 
+     * @param variant
+     *            The {@link Variant} in which events are being retrieved.
+     * @return A weak {@link EntityTag} of the store in the given variant. Events are only ever removed from the front of the store and sequence numbers are never reused, so the last sequence
+     *         number claimed in the store and the number of stored events together identify the stored events, provided that every event through that sequence number has been published; it is
+     *         only given to retrievals that read through that sequence number.
+     */
+    private EntityTag getEntityTag(Variant variant) {
+        final long eventCount = eventStore.getEventCount();
+        final long lastSequence = eventStore.getLastSequence();
+        final String format = BinaryEventsProvider.MEDIA_TYPE_TYPE.isCompatible(variant.getMediaType()) ? "binary" : "json";
+        return new EntityTag(String.format("%s-%d-%d-%s", entityTagEpoch, lastSequence, eventCount, format), true);
+    }
+
+    /**
+     * Register a consumer.
+     * 
+     * @param consumerId
+     *            The ID of the consumer.
+     * @param sequence
+     *            The offset from which a newly-registered consumer is to start; if not given, the consumer starts from the beginning of the store. This is ignored if the consumer is already
+     *            registered.
+     * @param uriInfo
+     *            A {@link UriInfo} object representing the URI information of the current request.
+     * @return A {@link Response} with a {@value #CURSOR_HEADER} header containing the committed offset of the consumer; a {@link Response.Status#CREATED} response if the consumer was
+     *         registered, or a {@link Response.Status#OK} response if it was already registered.
+     * @throws Exception
+     *             If any errors occur during the registration.
+     */
+    @PUT
+    @Path("consumers/{consumerId}")
+    public Response registerConsumer(@PathParam("consumerId") String consumerId, @QueryParam("seq") @DefaultValue("0") long sequence, @Context UriInfo uriInfo) throws Exception {
+        if (sequence < 0) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("The sequence number must not be negative: " + sequence).build();
+        }
+
+        final Response.ResponseBuilder builder = consumerOffsets.register(consumerId, sequence) ? Response.created(uriInfo.getAbsolutePath()) : Response.ok();
+        return builder.header(CURSOR_HEADER, consumerOffsets.getOffset(consumerId)).build();
+    }
+
+    /**
+     * Stream events as they are stored.
+     * 
+     * @param afterSequence
+     *            The sequence number after which events are to be streamed; if not given, the given last event ID is used.
+     * @param lastEventId
+     *            The ID of the last server-sent event received by the client on a previous connection; if neither this nor the sequence number is given, only events stored from now on are streamed.
+     * @return A {@link ChunkedOutput} to which the server-sent events are written.
+     * @throws Exception
+     *             If any errors occur during the subscription.
+     */
+    @GET
+    @Path("events/stream")
+    @Produces("text/event-stream")
+    public ChunkedOutput<String> streamEvents(@QueryParam("after") Long afterSequence, @HeaderParam("Last-Event-ID") Long lastEventId) throws Exception {
+        final ChunkedOutput<String> output = new ChunkedOutput<String>(String.class);
+        broadcaster.subscribe(output, afterSequence == null ? lastEventId : afterSequence);
+        return output;
     }
 
     /**
@@ -110,23 +374,32 @@ public class FlumeSinkServerResource {
      *            An array of {@link SimpleEvent} objects representing the events to store.
      * @param uriInfo
      *            A {@link UriInfo} object representing the URI information of the current request.
-     * @return A {@link Response} indicating the state of the storage.
+     * @return A {@link Response} indicating the state of the storage; if the store does not have room for the events, a {@link Response.Status#SERVICE_UNAVAILABLE} response is returned.
      * @throws Exception
      *             If any errors occur during the storage of data.
      */
     @POST
     @Path("events")
-    @Consumes("application/json")
+    @Consumes({ "application/json", BinaryEventsProvider.MEDIA_TYPE })
     public Response storeEvents(SimpleEvent[] incomingEvents, @Context UriInfo uriInfo) throws Exception {
-        final Lock writeLock = eventsLock.writeLock();
-        writeLock.lock();
         try {
-            for (SimpleEvent incomingEvent : incomingEvents) {
-                EVENTS.add(incomingEvent);
-            }
-            return Response.created(uriInfo.getBaseUri().resolve("events")).build();
-        } finally {
-            writeLock.unlock();
+            eventStore.storeEvents(Arrays.asList(incomingEvents));
+        } catch (EventStoreFullException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(e.getMessage()).build();
         }
+        return Response.created(uriInfo.getBaseUri().resolve("events")).build();
+    }
+
+    /**
+     * Build a response for a retrieval of events.
+     * 
+     * @param batch
+     *            The {@link EventBatch} that was retrieved.
+     * @param entityTag
+     *            The {@link EntityTag} of the state of the store from which the events were retrieved; {@code null} if the response is not to be tagged.
+     * @return A {@link Response} containing the retrieved events.
+     */
+    private Response toResponse(EventBatch batch, EntityTag entityTag) {
+        return Response.ok(batch).header(CURSOR_HEADER, batch.getCursor()).tag(entityTag).build();
     }
 }
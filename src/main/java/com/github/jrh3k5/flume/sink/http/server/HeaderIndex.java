@@ -0,0 +1,396 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.flume.Event;
+
+/**
+ * This retrieves the events in an {@link EventStore} that have particular header values.
+ * <p />
+ * For each of a configured set of header names, the index keeps, for each value of that header, the sequence numbers of the stored events having it. The index is brought up to date as the store
+ * notifies it of stored events, and entries for events no longer retained by the store are pruned as it goes. A retrieval filtering on at least one indexed header only examines the events listed
+ * for the least common of its indexed values; a retrieval filtering only on headers that are not indexed scans the store.
+ * <p />
+ * All instances of this class should be {@link #close() closed} when done with them.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class HeaderIndex implements EventStoreListener, Closeable {
+    private static final int READ_BATCH_SIZE = 1000;
+    /**
+     * The number of events indexed between each pruning of entries for events no longer retained by the store.
+     */
+    private static final int PRUNE_INTERVAL = 4096;
+
+    private final EventStore eventStore;
+    private final Set<String> indexedHeaders;
+    private final ConcurrentMap<String, ConcurrentMap<String, Postings>> index = new ConcurrentHashMap<String, ConcurrentMap<String, Postings>>();
+    /**
+     * The sequence number through which stored events have been indexed; only changed while synchronized on this object.
+     */
+    private volatile long indexedThrough;
+    private int indexedSincePrune;
+
+    /**
+     * Create an index. If any headers are to be indexed, this indexes the events already in the given store and registers the created object as a listener of it.
+     * 
+     * @param eventStore
+     *            The {@link EventStore} whose events are to be indexed.
+     * @param indexedHeaders
+     *            A {@link Collection} of the names of the headers whose values are to be indexed; can be empty, in which case all filtered retrievals scan the store.
+     */
+    public HeaderIndex(EventStore eventStore, Collection<String> indexedHeaders) {
+        this.eventStore = eventStore;
+        this.indexedHeaders = Collections.unmodifiableSet(new HashSet<String>(indexedHeaders));
+        if (!this.indexedHeaders.isEmpty()) {
+            eventStore.addListener(this);
+            eventsStored(eventStore.getLastSequence());
+        }
+    }
+
+    /**
+     * Stop indexing the store's events.
+     */
+    @Override
+    public void close() {
+        eventStore.removeListener(this);
+    }
+
+    @Override
+    public synchronized void eventsStored(long lastSequence) {
+        while (indexedThrough < lastSequence) {
+            final EventBatch batch = eventStore.getEvents(indexedThrough, READ_BATCH_SIZE);
+            if (batch.isEmpty()) {
+                // The remaining events have yet to be published; they will be indexed on a later notification
+                break;
+            }
+
+            for (StoredEvent storedEvent : batch.getStoredEvents()) {
+                index(storedEvent);
+            }
+            indexedSincePrune += batch.getStoredEvents().size();
+            indexedThrough = batch.getCursor();
+        }
+
+        if (indexedSincePrune >= PRUNE_INTERVAL) {
+            indexedSincePrune = 0;
+            prune();
+        }
+    }
+
+    /**
+     * Get the store whose events are indexed.
+     * 
+     * @return The indexed {@link EventStore}.
+     */
+    public EventStore getEventStore() {
+        return eventStore;
+    }
+
+    /**
+     * Get stored events that have particular header values.
+     * 
+     * @param afterSequence
+     *            The sequence number after which events are to be retrieved; 0 retrieves all stored events.
+     * @param limit
+     *            The maximum number of events to be retrieved.
+     * @param headers
+     *            A {@link Map} of the header names and values that the retrieved events must all have; if empty, every event is retrieved.
+     * @return An {@link EventBatch} containing the retrieved events, in the order in which they were stored. Its cursor is the sequence number of the last event examined, which can be past that of
+     *         the last event retrieved, so that the next retrieval does not examine the same events again.
+     */
+    public EventBatch getEvents(long afterSequence, int limit, Map<String, String> headers) {
+        if (headers.isEmpty()) {
+            return eventStore.getEvents(afterSequence, limit);
+        }
+
+        // Snapshot how far the index reaches before reading it, so that the cursor does not pass events that have yet to be indexed
+        final long through = indexedThrough;
+        Postings smallest = null;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (!indexedHeaders.contains(header.getKey())) {
+                continue;
+            }
+
+            final Map<String, Postings> values = index.get(header.getKey());
+            final Postings postings = values == null ? null : values.get(header.getValue());
+            if (postings == null) {
+                return new EventBatch(Collections.<StoredEvent> emptyList(), Math.max(afterSequence, through));
+            }
+
+            if (smallest == null || postings.size() < smallest.size()) {
+                smallest = postings;
+            }
+        }
+
+        return smallest == null ? scan(afterSequence, limit, headers) : read(smallest, through, afterSequence, limit, headers);
+    }
+
+    /**
+     * Get the names of the indexed headers.
+     * 
+     * @return An unmodifiable {@link Set} of the names of the headers whose values are indexed.
+     */
+    public Set<String> getIndexedHeaders() {
+        return indexedHeaders;
+    }
+
+    /**
+     * Get a single stored event.
+     * 
+     * @param sequence
+     *            The sequence number of the event to be retrieved.
+     * @return The {@link StoredEvent} with the given sequence number; {@code null} if it is no longer retained by the store.
+     */
+    private StoredEvent fetch(long sequence) {
+        final List<StoredEvent> storedEvents = eventStore.getEvents(sequence - 1, 1).getStoredEvents();
+        if (storedEvents.isEmpty() || storedEvents.get(0).getSequence() != sequence) {
+            return null;
+        }
+        return storedEvents.get(0);
+    }
+
+    /**
+     * Add a stored event to the index; this must be called while synchronized on this object.
+     * 
+     * @param storedEvent
+     *            The {@link StoredEvent} to be indexed.
+     */
+    private void index(StoredEvent storedEvent) {
+        final Map<String, String> headers = storedEvent.getEvent().getHeaders();
+        if (headers == null) {
+            return;
+        }
+
+        for (String indexedHeader : indexedHeaders) {
+            final String value = headers.get(indexedHeader);
+            if (value == null) {
+                continue;
+            }
+
+            ConcurrentMap<String, Postings> values = index.get(indexedHeader);
+            if (values == null) {
+                values = new ConcurrentHashMap<String, Postings>();
+                index.put(indexedHeader, values);
+            }
+
+            Postings postings = values.get(value);
+            if (postings == null) {
+                postings = new Postings();
+                values.put(value, postings);
+            }
+            postings.add(storedEvent.getSequence());
+        }
+    }
+
+    /**
+     * Determine whether an event has particular header values.
+     * 
+     * @param event
+     *            The {@link Event} to be examined.
+     * @param headers
+     *            A {@link Map} of the header names and values that the event must all have.
+     * @return {@code true} if the event has all of the given header values.
+     */
+    private static boolean matches(Event event, Map<String, String> headers) {
+        final Map<String, String> eventHeaders = event.getHeaders();
+        if (eventHeaders == null) {
+            return false;
+        }
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (!header.getValue().equals(eventHeaders.get(header.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove the entries for events that are no longer retained by the store; this must be called while synchronized on this object.
+     */
+    private void prune() {
+        final List<StoredEvent> oldest = eventStore.getEvents(0, 1).getStoredEvents();
+        final long oldestRetained = oldest.isEmpty() ? indexedThrough + 1 : oldest.get(0).getSequence();
+        for (ConcurrentMap<String, Postings> values : index.values()) {
+            for (Map.Entry<String, Postings> value : values.entrySet()) {
+                if (value.getValue().removeBefore(oldestRetained)) {
+                    values.remove(value.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieve events listed by the index.
+     * 
+     * @param postings
+     *            The {@link Postings} listing the sequence numbers of the events to be examined.
+     * @param through
+     *            The sequence number through which the index had been brought up to date.
+     * @param afterSequence
+     *            The sequence number after which events are to be retrieved.
+     * @param limit
+     *            The maximum number of events to be retrieved.
+     * @param headers
+     *            A {@link Map} of the header names and values that the retrieved events must all have.
+     * @return An {@link EventBatch} containing the retrieved events.
+     */
+    private EventBatch read(Postings postings, long through, long afterSequence, int limit, Map<String, String> headers) {
+        final List<StoredEvent> matched = new ArrayList<StoredEvent>();
+        final long[] sequences = new long[256];
+        long from = afterSequence;
+        while (true) {
+            final int count = postings.copyAfter(from, through, sequences);
+            for (int i = 0; i < count; i++) {
+                final StoredEvent storedEvent = fetch(sequences[i]);
+                if (storedEvent != null && matches(storedEvent.getEvent(), headers)) {
+                    matched.add(storedEvent);
+                    if (matched.size() == limit) {
+                        return new EventBatch(matched, sequences[i]);
+                    }
+                }
+            }
+
+            if (count < sequences.length) {
+                return new EventBatch(matched, Math.max(afterSequence, through));
+            }
+            from = sequences[count - 1];
+        }
+    }
+
+    /**
+     * Retrieve events by scanning the store.
+     * 
+     * @param afterSequence
+     *            The sequence number after which events are to be retrieved.
+     * @param limit
+     *            The maximum number of events to be retrieved.
+     * @param headers
+     *            A {@link Map} of the header names and values that the retrieved events must all have.
+     * @return An {@link EventBatch} containing the retrieved events.
+     */
+    private EventBatch scan(long afterSequence, int limit, Map<String, String> headers) {
+        final List<StoredEvent> matched = new ArrayList<StoredEvent>();
+        long cursor = afterSequence;
+        while (true) {
+            final EventBatch batch = eventStore.getEvents(cursor, READ_BATCH_SIZE);
+            if (batch.isEmpty()) {
+                return new EventBatch(matched, cursor);
+            }
+
+            for (StoredEvent storedEvent : batch.getStoredEvents()) {
+                cursor = storedEvent.getSequence();
+                if (matches(storedEvent.getEvent(), headers)) {
+                    matched.add(storedEvent);
+                    if (matched.size() == limit) {
+                        return new EventBatch(matched, cursor);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The ascending sequence numbers of the events having a single header value.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class Postings {
+        private long[] sequences = new long[16];
+        private int start;
+        private int end;
+
+        /**
+         * Add a sequence number, which must be greater than all of those already added.
+         * 
+         * @param sequence
+         *            The sequence number to be added.
+         */
+        public synchronized void add(long sequence) {
+            if (end == sequences.length) {
+                if (start > sequences.length / 2) {
+                    // More than half of the array has been pruned; reclaim that space rather than growing
+                    System.arraycopy(sequences, start, sequences, 0, end - start);
+                } else {
+                    sequences = Arrays.copyOfRange(sequences, start, Math.max(16, (end - start) * 2));
+                }
+                end -= start;
+                start = 0;
+            }
+            sequences[end++] = sequence;
+        }
+
+        /**
+         * Copy sequence numbers out.
+         * 
+         * @param afterSequence
+         *            The sequence number after which sequence numbers are to be copied.
+         * @param through
+         *            The sequence number through which sequence numbers are to be copied.
+         * @param target
+         *            The array into which the sequence numbers are to be copied, in ascending order; at most its length are copied.
+         * @return The number of sequence numbers copied.
+         */
+        public synchronized int copyAfter(long afterSequence, long through, long[] target) {
+            int index = Arrays.binarySearch(sequences, start, end, afterSequence);
+            index = index < 0 ? -(index + 1) : index + 1;
+            int count = 0;
+            while (index < end && count < target.length && sequences[index] <= through) {
+                target[count++] = sequences[index++];
+            }
+            return count;
+        }
+
+        /**
+         * Remove the sequence numbers less than a given sequence number.
+         * 
+         * @param sequence
+         *            The sequence number before which sequence numbers are to be removed.
+         * @return {@code true} if no sequence numbers remain.
+         */
+        public synchronized boolean removeBefore(long sequence) {
+            final int index = Arrays.binarySearch(sequences, start, end, sequence);
+            start = index < 0 ? -(index + 1) : index;
+            return start == end;
+        }
+
+        /**
+         * Get the number of sequence numbers.
+         * 
+         * @return The number of sequence numbers held.
+         */
+        public synchronized int size() {
+            return end - start;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values, such as latencies or batch sizes, that can be recorded concurrently without locking.
+ * <p />
+ * Values are counted in buckets whose widths grow with the values they hold: each power of two is split into {@value #SUB_BUCKET_COUNT} buckets of equal width, so that percentiles are reported
+ * to within an eighth of their value, whatever its magnitude, from a fixed number of counters. As with an HdrHistogram recorder, recording a value neither allocates nor locks: the count and sum are
+ * {@link StripedCounter striped}, and the buckets, being many, are rarely contended.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    /**
+     * The number of buckets into which each power of two is split.
+     */
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final StripedCounter count = new StripedCounter();
+    private final StripedCounter sum = new StripedCounter();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Get the number of values recorded.
+     * 
+     * @return The number of values recorded.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the largest value recorded.
+     * 
+     * @return The largest value recorded; 0 if none have been recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of the values recorded.
+     * 
+     * @return The mean of the values recorded; 0 if none have been recorded.
+     */
+    public double getMean() {
+        final long currentCount = count.sum();
+        return currentCount == 0 ? 0 : (double) sum.sum() / currentCount;
+    }
+
+    /**
+     * Get the value at or below which a given percentage of the recorded values fall.
+     * 
+     * @param percentile
+     *            The percentage, between 0 and 100, of values.
+     * @return The upper bound of the bucket holding the value at the given percentile, or the largest value recorded if that is smaller; 0 if no values have been recorded.
+     */
+    public long getPercentile(double percentile) {
+        final long currentCount = count.sum();
+        if (currentCount == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(currentCount * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += bucketCounts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Get a summary of the recorded values.
+     * 
+     * @return A {@link Map} of the count, mean, maximum, and 50th, 90th, 99th and 99.9th percentiles of the recorded values, keyed by name.
+     */
+    public Map<String, Object> getSummary() {
+        final Map<String, Object> summary = new LinkedHashMap<String, Object>();
+        summary.put("count", Long.valueOf(getCount()));
+        summary.put("mean", Double.valueOf(getMean()));
+        summary.put("p50", Long.valueOf(getPercentile(50)));
+        summary.put("p90", Long.valueOf(getPercentile(90)));
+        summary.put("p99", Long.valueOf(getPercentile(99)));
+        summary.put("p999", Long.valueOf(getPercentile(99.9)));
+        summary.put("max", Long.valueOf(getMax()));
+        return summary;
+    }
+
+    /**
+     * Record a value.
+     * 
+     * @param value
+     *            The value to be recorded; negative values are recorded as 0.
+     */
+    public void record(long value) {
+        final long recorded = Math.max(0, value);
+        bucketCounts.incrementAndGet(indexOf(recorded));
+        count.increment();
+        sum.add(recorded);
+        while (true) {
+            final long currentMax = max.get();
+            if (currentMax >= recorded || max.compareAndSet(currentMax, recorded)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Determine the bucket in which a value is counted.
+     * 
+     * @param value
+     *            The non-negative value.
+     * @return The index of the bucket counting the given value.
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        // Keep the most significant bits of the value; the bits shifted away are the imprecision of its bucket
+        final int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    }
+
+    /**
+     * Determine the largest value counted in a bucket.
+     * 
+     * @param index
+     *            The index of the bucket.
+     * @return The largest value counted in the bucket.
+     */
+    private static long upperBoundOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        // The upper bound of the last bucket wraps around to the largest long
+        return ((SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT + 1L) << shift) - 1;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+/**
+ * An input stream that fails with a {@code 413 Request Entity Too Large} response once more than a maximum number of bytes have been read from it.
+ * 
+ * @author Joshua Hyde
+ */
+
+class LimitedInputStream extends FilterInputStream {
+    private final long maxBytes;
+    private long readBytes;
+    private boolean exceeded;
+
+    /**
+     * Create a stream.
+     * 
+     * @param inputStream
+     *            The {@link InputStream} to be limited.
+     * @param maxBytes
+     *            The maximum number of bytes that can be read from the stream.
+     */
+    public LimitedInputStream(InputStream inputStream, long maxBytes) {
+        super(inputStream);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Build the response to a request whose body is too large.
+     * 
+     * @param maxBytes
+     *            The maximum number of bytes in a request body.
+     * @return A {@link Response} refusing the request.
+     */
+    static Response tooLarge(long maxBytes) {
+        return Response.status(413).entity("The request body exceeds the maximum of " + maxBytes + " bytes.").build();
+    }
+
+    /**
+     * Determine whether more than the maximum number of bytes have been read from this stream.
+     * 
+     * @return {@code true} if reading from this stream has failed because the maximum was exceeded; {@code false} if not.
+     */
+    public boolean isExceeded() {
+        return exceeded;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int read = super.read();
+        if (read != -1) {
+            count(1);
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        final int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        final long skipped = super.skip(count);
+        count(skipped);
+        return skipped;
+    }
+
+    /**
+     * Count bytes read from the stream.
+     * 
+     * @param count
+     *            The number of bytes read.
+     * @throws WebApplicationException
+     *             If the maximum has been exceeded.
+     */
+    private void count(long count) {
+        readBytes += count;
+        if (readBytes > maxBytes) {
+            exceeded = true;
+            throw new WebApplicationException(tooLarge(maxBytes));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * This acquires the locks of the event stores while keeping, for each thread, the total time for which it has waited for them, so that the {@link RequestMetricsFilter} can attribute the waiting to
+ * the request the thread is serving.
+ * <p />
+ * A lock is first tried without waiting; only if it is held elsewhere is the clock read around the wait, so that acquiring an uncontended lock costs no more than it otherwise would.
+ * 
+ * @author Joshua Hyde
+ */
+
+public final class LockWaits {
+    private static final ThreadLocal<long[]> WAIT_NANOS = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private LockWaits() {
+    }
+
+    /**
+     * Get the total time for which the current thread has waited for locks acquired through {@link #lock(Lock)}.
+     * 
+     * @return The number of nanoseconds for which the current thread has waited.
+     */
+    public static long getWaitNanos() {
+        return WAIT_NANOS.get()[0];
+    }
+
+    /**
+     * Acquire a lock, adding the time spent waiting for it to the total of the current thread.
+     * 
+     * @param lock
+     *            The {@link Lock} to be acquired.
+     */
+    public static void lock(Lock lock) {
+        if (lock.tryLock()) {
+            return;
+        }
+
+        final long waitStart = System.nanoTime();
+        lock.lock();
+        WAIT_NANOS.get()[0] += System.nanoTime() - waitStart;
+    }
+}
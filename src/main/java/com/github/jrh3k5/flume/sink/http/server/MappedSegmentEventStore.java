@@ -0,0 +1,515 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import org.apache.flume.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link EventStore} that appends its events to a log of memory-mapped segment files, so that the events it retains are not limited by the size of the heap and survive a restart.
+ * <p />
+ * Each segment is a file, named for the sequence number of its first event, that holds a run of records as laid out by {@link RecordBuffer}. When an event does not fit in the remainder of the current segment, a new segment is started. Only the offsets of the records are held on the
+ * heap; the events read from the store are {@link ByteBufferEvent} views of the mapped files, so their bodies are not copied onto the heap unless a reader asks for them as a {@code byte[]}.
+ * <p />
+ * Whole segments, oldest first, are deleted once the store holds more than its maximum number of bytes or once their newest event is older than the maximum age. The segment currently being written
+ * to is never deleted by retention, so the store can briefly hold more than its maximum. The store never refuses events. A deleted segment's file is unlinked at once, but Java offers no way to unmap
+ * a file, so the space it takes on disk is only freed once its mapping is garbage-collected; where a mapped file cannot be deleted at all, it is deleted when the JVM exits. The maximum number of
+ * bytes therefore bounds the segments held by the store, not the disk space used until the collector runs.
+ * <p />
+ * Events are written to the page cache and are flushed to disk by the operating system or when the store is {@link #close() closed}; events stored shortly before a crash of the host may be lost.
+ * When a store is created over a directory that already holds segments, it resumes from the last intact record, and the sequence numbers of its events carry on from there. Each record is
+ * checksummed, so that one torn by a crash ends the recovery of its segment rather than being read as an event; a warning is logged when a segment is cut short this way. The age of a recovered
+ * segment is that of the write time held in its newest record.
+ * <p />
+ * Writes are serialized with a lock; reads do not lock.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class MappedSegmentEventStore implements EventStore, Closeable {
+    /**
+     * The default size, in bytes, of each segment.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    /**
+     * The default maximum number of bytes held by a store.
+     */
+    public static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedSegmentEventStore.class);
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("\\d{20}" + Pattern.quote(SEGMENT_SUFFIX));
+
+    private final File directory;
+    private final int segmentSize;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<Long, Segment>();
+    private final Lock writeLock = new ReentrantLock();
+    /**
+     * The sequence number of the most recently published event.
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The sequence number of the most recently discarded event; events at or below this number are no longer retained.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong deletedSegmentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    /**
+     * The total size, in bytes, of the segments in {@link #segments}; only changed while holding {@link #writeLock} or while recovering.
+     */
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final List<EventStoreListener> listeners = new CopyOnWriteArrayList<EventStoreListener>();
+    /**
+     * The segment to which events are written; guarded by {@link #writeLock}.
+     */
+    private Segment activeSegment;
+
+    /**
+     * Create a store with the {@link #DEFAULT_SEGMENT_SIZE default segment size} and {@link #DEFAULT_MAX_BYTES default maximum size} that does not discard events by age.
+     * 
+     * @param directory
+     *            The directory in which the segments are to be kept; it is created if it does not exist.
+     * @throws IOException
+     *             If the directory cannot be created or the segments already in it cannot be read.
+     */
+    public MappedSegmentEventStore(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_BYTES, 0);
+    }
+
+    /**
+     * Create a store.
+     * 
+     * @param directory
+     *            The directory in which the segments are to be kept; it is created if it does not exist.
+     * @param segmentSize
+     *            The size, in bytes, of each segment. A segment holding a single event larger than this is sized to fit the event.
+     * @param maxBytes
+     *            The number of bytes of segments that the store can hold before it deletes its oldest segments.
+     * @param maxAgeMillis
+     *            The age, in milliseconds, after which a segment whose newest event was written before then is deleted; 0 to not delete segments by age.
+     * @throws IllegalArgumentException
+     *             If the given segment size or maximum size is not positive, or the maximum age is negative.
+     * @throws IOException
+     *             If the directory cannot be created or the segments already in it cannot be read.
+     */
+    public MappedSegmentEventStore(File directory, int segmentSize, long maxBytes, long maxAgeMillis) throws IOException {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("Segment size must be positive: " + segmentSize);
+        }
+
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + maxBytes);
+        }
+
+        if (maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Maximum age must not be negative: " + maxAgeMillis);
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory: " + directory);
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        recover();
+    }
+
+    @Override
+    public void addListener(EventStoreListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Flush the events written to the current segment to disk and stop writing to it. The store can still be used afterward, in which case a new segment is started for the next stored events.
+     * <p />
+     * The segment files remain mapped until the buffers mapping them are garbage-collected.
+     */
+    @Override
+    public void close() {
+        LockWaits.lock(writeLock);
+        try {
+            if (activeSegment != null) {
+                activeSegment.buffer.force();
+                activeSegment = null;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws IllegalStateException
+     *             If a new segment cannot be created.
+     */
+    @Override
+    public void deleteEvents() {
+        LockWaits.lock(writeLock);
+        try {
+            advanceTail(head.get());
+            activeSegment = null;
+            for (Segment segment : segments.values()) {
+                deleteSegment(segment);
+            }
+            // Start an empty segment right away so that the sequence numbers carry on from here should the store be recovered before any more events are stored
+            activeSegment = createSegment(head.get() + 1, segmentSize);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p />
+     * Only whole segments are deleted; a segment holding both deleted and retained events is kept until the rest of its events are deleted. The segment being written to is kept.
+     */
+    @Override
+    public void deleteEventsThrough(long sequence) {
+        LockWaits.lock(writeLock);
+        try {
+            advanceTail(Math.min(sequence, head.get()));
+            final long deleteThrough = tail.get();
+            for (Segment segment : segments.values()) {
+                if (segment == activeSegment || segment.records.getLastSequence() > deleteThrough) {
+                    break;
+                }
+                deleteSegment(segment);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of segments that have been deleted due to the size or age of the store. This does not include segments removed by {@link #deleteEvents()} or {@link #deleteEventsThrough(long)}.
+     * 
+     * @return The number of segments deleted by this store's retention.
+     */
+    public long getDeletedSegmentCount() {
+        return deletedSegmentCount.get();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public long getEventCount() {
+        return Math.max(0, head.get() - tail.get());
+    }
+
+    /**
+     * Get the directory holding the segments of this store.
+     * 
+     * @return A {@link File} representing the directory holding the segments of this store.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public EventBatch getEvents(long afterSequence, int limit) {
+        final List<StoredEvent> events = new ArrayList<StoredEvent>();
+        final long lastSequence = head.get();
+        long cursor = afterSequence;
+        long sequence = Math.max(afterSequence, tail.get()) + 1;
+        while (sequence <= lastSequence && events.size() < limit) {
+            final Map.Entry<Long, Segment> entry = segments.floorEntry(sequence);
+            final RecordBuffer records = entry == null ? null : entry.getValue().records;
+            final ByteBuffer record = records == null ? null : records.read(sequence);
+            if (record == null) {
+                // The segment holding this event was deleted while reading; skip ahead to the oldest event still retained
+                sequence = Math.max(sequence + 1, tail.get() + 1);
+                continue;
+            }
+
+            events.add(new StoredEvent(sequence, EventRecordCodec.decode(record), records.readWriteMillis(sequence)));
+            cursor = sequence++;
+        }
+        return new EventBatch(events, cursor);
+    }
+
+    @Override
+    public long getLastSequence() {
+        return head.get();
+    }
+
+    /**
+     * {@inheritDoc} This store makes room by deleting its oldest segments, so its policy is {@link OverflowPolicy#DROP_OLDEST}.
+     */
+    @Override
+    public OverflowPolicy getOverflowPolicy() {
+        return OverflowPolicy.DROP_OLDEST;
+    }
+
+    /**
+     * Get the number of bytes of segments currently held by this store.
+     * 
+     * @return The total size, in bytes, of the segments held by this store.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Get the number of segments currently held by this store.
+     * 
+     * @return The number of segments held by this store.
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * {@inheritDoc} This store makes room by deleting its oldest segments, so it always has room.
+     */
+    @Override
+    public boolean hasRoomFor(Collection<? extends Event> events) {
+        return true;
+    }
+
+    @Override
+    public void removeListener(EventStoreListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @throws IllegalStateException
+     *             If a new segment cannot be created.
+     */
+    @Override
+    public void storeEvents(Collection<? extends Event> events) throws EventStoreFullException {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        final long lastSequence;
+        LockWaits.lock(writeLock);
+        try {
+            long sequence = head.get();
+            for (Event event : events) {
+                final int recordSize = RecordBuffer.recordSize(event);
+                if (activeSegment == null || !activeSegment.records.fits(recordSize)) {
+                    activeSegment = createSegment(sequence + 1, Math.max(segmentSize, recordSize));
+                }
+                activeSegment.records.append(++sequence, event, recordSize);
+            }
+            lastSequence = sequence;
+            head.set(lastSequence);
+            enforceRetention();
+        } finally {
+            writeLock.unlock();
+        }
+
+        for (EventStoreListener listener : listeners) {
+            listener.eventsStored(lastSequence);
+        }
+    }
+
+    /**
+     * Move the tail of the store forward.
+     * 
+     * @param sequence
+     *            The sequence number through which events are no longer to be retained. If the tail is already at or past this, then it is not moved.
+     */
+    private void advanceTail(long sequence) {
+        while (true) {
+            final long currentTail = tail.get();
+            if (currentTail >= sequence || tail.compareAndSet(currentTail, sequence)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Create a new segment; this must be called while holding {@link #writeLock}.
+     * 
+     * @param baseSequence
+     *            The sequence number of the first event to be written to the segment.
+     * @param size
+     *            The size, in bytes, of the segment.
+     * @return The created {@link Segment}.
+     * @throws IllegalStateException
+     *             If the segment file cannot be created.
+     */
+    private Segment createSegment(long baseSequence, int size) {
+        if (activeSegment != null) {
+            activeSegment.records.seal();
+        }
+
+        final File file = new File(directory, String.format("%020d%s", baseSequence, SEGMENT_SUFFIX));
+        final Segment segment;
+        try {
+            segment = new Segment(file, baseSequence, map(file, size));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create segment: " + file, e);
+        }
+        segments.put(baseSequence, segment);
+        retainedBytes.addAndGet(segment.records.getCapacity());
+        return segment;
+    }
+
+    /**
+     * Delete a segment and discard the events in it.
+     * 
+     * @param segment
+     *            The {@link Segment} to be deleted.
+     */
+    private void deleteSegment(Segment segment) {
+        advanceTail(segment.records.getLastSequence());
+        if (segments.remove(segment.records.getBaseSequence()) != null) {
+            retainedBytes.addAndGet(-segment.records.getCapacity());
+        }
+        if (!segment.file.delete()) {
+            segment.file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Delete the oldest segments until the store is within its maximum size and age; this must be called while holding {@link #writeLock}.
+     */
+    private void enforceRetention() {
+        final long oldestRetained = maxAgeMillis == 0 ? Long.MIN_VALUE : System.currentTimeMillis() - maxAgeMillis;
+        for (Segment segment : segments.values()) {
+            if (segment == activeSegment || (retainedBytes.get() <= maxBytes && segment.records.getLastWriteMillis() >= oldestRetained)) {
+                return;
+            }
+
+            // Only the events of the segment that were not already deleted are dropped by its deletion
+            droppedCount.addAndGet(Math.max(0, segment.records.getLastSequence() - Math.max(tail.get(), segment.records.getBaseSequence() - 1)));
+            deleteSegment(segment);
+            deletedSegmentCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Map a segment file into memory.
+     * 
+     * @param file
+     *            The segment file to be mapped; it is created if it does not exist.
+     * @param size
+     *            The size, in bytes, of the segment.
+     * @return A {@link MappedByteBuffer} mapping the file.
+     * @throws IOException
+     *             If the file cannot be mapped.
+     */
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(size);
+            // The mapping remains valid after the file is closed
+            return randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Load the segments already held in the directory of this store.
+     * 
+     * @throws IOException
+     *             If the segments cannot be read.
+     */
+    private void recover() throws IOException {
+        final File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && SEGMENT_NAME.matcher(file.getName()).matches();
+            }
+        });
+        if (files == null) {
+            throw new IOException("Unable to list the contents of directory: " + directory);
+        }
+
+        // The zero-padded names sort in the order of their sequence numbers
+        Arrays.sort(files);
+        for (File file : files) {
+            final long baseSequence = Long.parseLong(file.getName().substring(0, file.getName().length() - SEGMENT_SUFFIX.length()));
+            final Segment segment = new Segment(file, baseSequence, map(file, (int) file.length()));
+            if (!segment.records.recover()) {
+                LOGGER.warn("Recovery of segment {} stopped at a torn or corrupt record after sequence number {}; the rest of the segment is discarded.", file, Long.valueOf(segment.records
+                        .getLastSequence()));
+            }
+            if (segments.isEmpty()) {
+                tail.set(baseSequence - 1);
+            }
+            segments.put(baseSequence, segment);
+            retainedBytes.addAndGet(segment.records.getCapacity());
+            head.set(segment.records.getLastSequence());
+            activeSegment = segment;
+        }
+    }
+
+    /**
+     * A single memory-mapped segment file.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final RecordBuffer records;
+
+        /**
+         * Create a segment.
+         * 
+         * @param file
+         *            The file holding the segment.
+         * @param baseSequence
+         *            The sequence number of the first event in the segment.
+         * @param buffer
+         *            The {@link MappedByteBuffer} mapping the file.
+         */
+        public Segment(File file, long baseSequence, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+            this.records = new RecordBuffer(buffer, baseSequence, true);
+        }
+    }
+}
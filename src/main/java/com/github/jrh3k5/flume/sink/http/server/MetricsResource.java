@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A JAX-RS resource that serves the metrics of a {@link FlumeSinkServer} as a JSON object from {@code /metrics}, in which the {@link PublishMetrics} of the server are held under
+ * {@code publish}, the {@link ResourceMetrics} of each of its resources are held under {@code requests} and the measurements of the {@link EventRetainer} of each of its resources, if any, are held
+ * under {@code retention}, both keyed by the path of the resource:
+ * 
+ * <pre>
+ * GET /metrics
+ * </pre>
+ * 
+ * @author Joshua Hyde
+ */
+
+@Path("metrics")
+public class MetricsResource {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PublishMetrics publishMetrics;
+    private final List<ResourceMetrics> resourceMetrics;
+    private final Map<String, EventRetainer> retainers;
+
+    /**
+     * Create a resource.
+     * 
+     * @param publishMetrics
+     *            The {@link PublishMetrics} to be served.
+     * @param resourceMetrics
+     *            A {@link Collection} of the {@link ResourceMetrics} to be served.
+     * @param retainers
+     *            A {@link Map} of the {@link EventRetainer} objects whose measurements are to be served, keyed by the path of the resource whose store each keeps.
+     */
+    public MetricsResource(PublishMetrics publishMetrics, Collection<ResourceMetrics> resourceMetrics, Map<String, EventRetainer> retainers) {
+        this.publishMetrics = publishMetrics;
+        this.resourceMetrics = new ArrayList<ResourceMetrics>(resourceMetrics);
+        this.retainers = new LinkedHashMap<String, EventRetainer>(retainers);
+    }
+
+    /**
+     * Get the metrics of the server.
+     * 
+     * @return A JSON object of the metrics of the server.
+     * @throws Exception
+     *             If any errors occur while rendering the metrics.
+     */
+    @GET
+    @Produces("application/json")
+    public String getMetrics() throws Exception {
+        final Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("publish", publishMetrics.toMap());
+        final Map<String, Object> requests = new LinkedHashMap<String, Object>();
+        for (ResourceMetrics metricsOfResource : resourceMetrics) {
+            requests.put(metricsOfResource.getPath(), metricsOfResource.toMap());
+        }
+        metrics.put("requests", requests);
+        final Map<String, Object> retention = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, EventRetainer> retainer : retainers.entrySet()) {
+            retention.put(retainer.getKey(), retainer.getValue().toMap());
+        }
+        metrics.put("retention", retention);
+        return objectMapper.writeValueAsString(metrics);
+    }
+}
@@ -0,0 +1,541 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.flume.Event;
+
+/**
+ * An {@link EventStore} that packs its events into direct {@link ByteBuffer} slabs outside of the heap, so that holding a large number of events does not burden the garbage collector.
+ * <p />
+ * Events are appended, as laid out by {@link RecordBuffer}, to the current slab until it is full, at which point the next slab is taken from a pool. Slabs are allocated as they are needed, up to the
+ * maximum number of bytes given to the store, and are returned to the pool rather than freed when the events in them are discarded. The only per-event state held on the heap is the offset of each
+ * event within its slab.
+ * <p />
+ * Events are only copied onto the heap when they are {@link #getEvents(long, int) read}; the returned events are {@link ByteBufferEvent} views of those copies, so the copies are short-lived and
+ * unaffected by the reuse of the slab they were read from. Each slab is guarded by a read-write lock that readers hold while copying out of it and that the writer holds while reusing it. So that a
+ * read asking for every event does not copy the whole store onto the heap, a read stops once it has copied the store's maximum number of read bytes, returning a batch whose cursor continues from
+ * there; at least one event is always copied if any are available.
+ * <p />
+ * What happens when the store has no room for more events is determined by the {@link OverflowPolicy} given to the store; under {@link OverflowPolicy#DROP_OLDEST}, the oldest slab is emptied and
+ * reused. An event larger than a slab is held in a slab of its own, sized to fit, which is freed rather than pooled once the event is discarded and is not counted against the store's maximum size.
+ * <p />
+ * Writes are serialized with a lock.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class OffHeapEventStore implements EventStore {
+    /**
+     * The default size, in bytes, of each slab.
+     */
+    public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+    /**
+     * The default maximum number of bytes of slabs held by a store.
+     */
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    /**
+     * The default maximum number of bytes of events copied onto the heap by a single read.
+     */
+    public static final int DEFAULT_MAX_READ_BYTES = 4 * 1024 * 1024;
+
+    private final int slabSize;
+    private final int maxSlabs;
+    private final int maxReadBytes;
+    private final OverflowPolicy overflowPolicy;
+    private final ConcurrentNavigableMap<Long, Slab> slabs = new ConcurrentSkipListMap<Long, Slab>();
+    private final Lock writeLock = new ReentrantLock();
+    /**
+     * The sequence number of the most recently published event.
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The sequence number of the most recently discarded event; events at or below this number are no longer retained.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final List<EventStoreListener> listeners = new CopyOnWriteArrayList<EventStoreListener>();
+    /**
+     * Emptied slabs awaiting reuse; guarded by {@link #writeLock}.
+     */
+    private final Deque<Slab> pool = new ArrayDeque<Slab>();
+    /**
+     * The number of pooled slabs that have been allocated; guarded by {@link #writeLock}.
+     */
+    private int allocatedSlabs;
+    /**
+     * The slab to which events are written; guarded by {@link #writeLock}.
+     */
+    private Slab activeSlab;
+
+    /**
+     * Create a store with the {@link #DEFAULT_MAX_BYTES default maximum size} and {@link #DEFAULT_SLAB_SIZE default slab size} that discards its oldest events when full.
+     */
+    public OffHeapEventStore() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_SLAB_SIZE, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Create a store.
+     * 
+     * @param maxBytes
+     *            The maximum number of bytes of slabs to be allocated by the store; at least one slab is always allocated.
+     * @param slabSize
+     *            The size, in bytes, of each slab.
+     * @param overflowPolicy
+     *            An {@link OverflowPolicy} describing how events that do not fit within the store are handled.
+     * @throws IllegalArgumentException
+     *             If the given maximum size or slab size is not positive.
+     */
+    public OffHeapEventStore(long maxBytes, int slabSize, OverflowPolicy overflowPolicy) {
+        this(maxBytes, slabSize, overflowPolicy, DEFAULT_MAX_READ_BYTES);
+    }
+
+    /**
+     * Create a store.
+     * 
+     * @param maxBytes
+     *            The maximum number of bytes of slabs to be allocated by the store; at least one slab is always allocated.
+     * @param slabSize
+     *            The size, in bytes, of each slab.
+     * @param overflowPolicy
+     *            An {@link OverflowPolicy} describing how events that do not fit within the store are handled.
+     * @param maxReadBytes
+     *            The number of bytes of events after which a read stops copying them onto the heap.
+     * @throws IllegalArgumentException
+     *             If the given maximum size, slab size, or maximum read size is not positive.
+     */
+    public OffHeapEventStore(long maxBytes, int slabSize, OverflowPolicy overflowPolicy, int maxReadBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Maximum size must be positive: " + maxBytes);
+        }
+
+        if (slabSize < 1) {
+            throw new IllegalArgumentException("Slab size must be positive: " + slabSize);
+        }
+
+        if (maxReadBytes < 1) {
+            throw new IllegalArgumentException("Maximum read size must be positive: " + maxReadBytes);
+        }
+
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBytes / slabSize));
+        this.overflowPolicy = overflowPolicy;
+        this.maxReadBytes = maxReadBytes;
+    }
+
+    @Override
+    public void addListener(EventStoreListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void deleteEvents() {
+        LockWaits.lock(writeLock);
+        try {
+            advanceTail(head.get());
+            activeSlab = null;
+            for (Slab slab : slabs.values()) {
+                release(slab);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p />
+     * Only whole slabs are returned to the pool; a slab holding both deleted and retained events is kept until the rest of its events are deleted. The slab being written to is kept.
+     */
+    @Override
+    public void deleteEventsThrough(long sequence) {
+        LockWaits.lock(writeLock);
+        try {
+            advanceTail(Math.min(sequence, head.get()));
+            final long deleteThrough = tail.get();
+            for (Slab slab : slabs.values()) {
+                if (slab == activeSlab || slab.records.getLastSequence() > deleteThrough) {
+                    break;
+                }
+                release(slab);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of slabs currently allocated by this store, including those awaiting reuse.
+     * 
+     * @return The number of slabs allocated by this store.
+     */
+    public int getAllocatedSlabCount() {
+        LockWaits.lock(writeLock);
+        try {
+            return allocatedSlabs;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public long getEventCount() {
+        return Math.max(0, head.get() - tail.get());
+    }
+
+    @Override
+    public EventBatch getEvents(long afterSequence, int limit) {
+        final List<StoredEvent> events = new ArrayList<StoredEvent>();
+        final long lastSequence = head.get();
+        long cursor = afterSequence;
+        long sequence = Math.max(afterSequence, tail.get()) + 1;
+        long remainingBytes = maxReadBytes;
+        while (sequence <= lastSequence && events.size() < limit && remainingBytes > 0) {
+            final Map.Entry<Long, Slab> entry = slabs.floorEntry(sequence);
+            final int previousSize = events.size();
+            if (entry != null) {
+                remainingBytes -= entry.getValue().copy(entry.getKey(), sequence, Math.min(lastSequence - sequence + 1, limit - events.size()), remainingBytes, events);
+            }
+            final int read = events.size() - previousSize;
+            if (read == 0) {
+                // The slab holding this event was emptied while reading; skip ahead to the oldest event still retained
+                sequence = Math.max(sequence + 1, tail.get() + 1);
+                continue;
+            }
+
+            sequence += read;
+            cursor = sequence - 1;
+        }
+        return new EventBatch(events, cursor);
+    }
+
+    @Override
+    public long getLastSequence() {
+        return head.get();
+    }
+
+    /**
+     * Get the maximum number of bytes of events copied onto the heap by a single read.
+     * 
+     * @return The number of bytes of events after which a read stops copying them.
+     */
+    public int getMaxReadBytes() {
+        return maxReadBytes;
+    }
+
+    @Override
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Get the size of the slabs of this store.
+     * 
+     * @return The size, in bytes, of each slab.
+     */
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    @Override
+    public boolean hasRoomFor(Collection<? extends Event> events) {
+        if (overflowPolicy != OverflowPolicy.BLOCK) {
+            return true;
+        }
+
+        final int[] recordSizes = getRecordSizes(events);
+        LockWaits.lock(writeLock);
+        try {
+            return countNeededSlabs(recordSizes) <= getAvailableSlabCount();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeListener(EventStoreListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void storeEvents(Collection<? extends Event> events) throws EventStoreFullException {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        final long lastSequence;
+        LockWaits.lock(writeLock);
+        try {
+            final int[] recordSizes = getRecordSizes(events);
+            if (overflowPolicy == OverflowPolicy.BLOCK) {
+                final int neededSlabs = countNeededSlabs(recordSizes);
+                final int availableSlabs = getAvailableSlabCount();
+                if (neededSlabs > availableSlabs) {
+                    throw new EventStoreFullException(String.format("Unable to store %d events; %d more slabs are needed, but only %d of %d are available.", recordSizes.length, neededSlabs,
+                            availableSlabs, maxSlabs));
+                }
+            }
+
+            long sequence = head.get();
+            final Iterator<? extends Event> iterator = events.iterator();
+            for (int i = 0; i < recordSizes.length; i++) {
+                final Event event = iterator.next();
+                if (activeSlab == null || !activeSlab.records.fits(recordSizes[i])) {
+                    final Slab next = nextSlab(sequence + 1, recordSizes[i]);
+                    if (next == null) {
+                        droppedCount.addAndGet(recordSizes.length - i);
+                        break;
+                    }
+                    activeSlab = next;
+                }
+                activeSlab.records.append(++sequence, event, recordSizes[i]);
+            }
+
+            if (sequence == head.get()) {
+                return;
+            }
+            lastSequence = sequence;
+            head.set(lastSequence);
+        } finally {
+            writeLock.unlock();
+        }
+
+        for (EventStoreListener listener : listeners) {
+            listener.eventsStored(lastSequence);
+        }
+    }
+
+    /**
+     * Move the tail of the store forward.
+     * 
+     * @param sequence
+     *            The sequence number through which events are no longer to be retained. If the tail is already at or past this, then it is not moved.
+     */
+    private void advanceTail(long sequence) {
+        while (true) {
+            final long currentTail = tail.get();
+            if (currentTail >= sequence || tail.compareAndSet(currentTail, sequence)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Determine how many slabs beyond the current one are needed to hold records; this must be called while holding {@link #writeLock}.
+     * 
+     * @param recordSizes
+     *            The sizes of the records to be held.
+     * @return The number of pooled slabs needed to hold the given records.
+     */
+    private int countNeededSlabs(int[] recordSizes) {
+        int neededSlabs = 0;
+        int slabRemaining = activeSlab == null ? 0 : activeSlab.records.getRemaining();
+        for (int recordSize : recordSizes) {
+            if (recordSize > slabSize) {
+                // Held in a slab of its own, which is not drawn from the pool
+                slabRemaining = 0;
+                continue;
+            }
+
+            if (slabRemaining < recordSize) {
+                neededSlabs++;
+                slabRemaining = slabSize;
+            }
+            slabRemaining -= recordSize;
+        }
+        return neededSlabs;
+    }
+
+    /**
+     * Get the number of pooled slabs that can still be drawn upon; this must be called while holding {@link #writeLock}.
+     * 
+     * @return The number of emptied slabs awaiting reuse plus the number of slabs that can yet be allocated.
+     */
+    private int getAvailableSlabCount() {
+        return pool.size() + maxSlabs - allocatedSlabs;
+    }
+
+    /**
+     * Get the sizes of the records that would hold events.
+     * 
+     * @param events
+     *            A {@link Collection} of the {@link Event} objects to be held.
+     * @return The size, in bytes, of the record of each of the given events, in order.
+     */
+    private static int[] getRecordSizes(Collection<? extends Event> events) {
+        final int[] recordSizes = new int[events.size()];
+        int index = 0;
+        for (Event event : events) {
+            recordSizes[index++] = RecordBuffer.recordSize(event);
+        }
+        return recordSizes;
+    }
+
+    /**
+     * Get the slab to which events are to be written next; this must be called while holding {@link #writeLock}.
+     * 
+     * @param baseSequence
+     *            The sequence number of the first event to be written to the slab.
+     * @param recordSize
+     *            The size of the record that is to be written first to the slab.
+     * @return The {@link Slab} to be written to; {@code null} if there is no room for another slab.
+     */
+    private Slab nextSlab(long baseSequence, int recordSize) {
+        final Slab slab;
+        if (recordSize > slabSize) {
+            slab = new Slab(ByteBuffer.allocateDirect(recordSize), false);
+        } else if (!pool.isEmpty()) {
+            slab = pool.pop();
+        } else if (allocatedSlabs < maxSlabs) {
+            slab = new Slab(ByteBuffer.allocateDirect(slabSize), true);
+            allocatedSlabs++;
+        } else if (overflowPolicy == OverflowPolicy.DROP_OLDEST && !slabs.isEmpty() && slabs.firstEntry().getValue() != activeSlab) {
+            final Slab oldest = slabs.firstEntry().getValue();
+            droppedCount.addAndGet(oldest.records.getEventCount());
+            release(oldest);
+            return nextSlab(baseSequence, recordSize);
+        } else {
+            return null;
+        }
+
+        if (activeSlab != null) {
+            activeSlab.records.seal();
+        }
+        slab.reset(baseSequence);
+        slabs.put(baseSequence, slab);
+        return slab;
+    }
+
+    /**
+     * Discard the events in a slab and return it to the pool; this must be called while holding {@link #writeLock}.
+     * 
+     * @param slab
+     *            The {@link Slab} to be released.
+     */
+    private void release(Slab slab) {
+        advanceTail(slab.records.getLastSequence());
+        slabs.remove(slab.records.getBaseSequence());
+        if (slab.pooled) {
+            pool.push(slab);
+        }
+    }
+
+    /**
+     * A single slab of events.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class Slab {
+        private final RecordBuffer records;
+        private final boolean pooled;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /**
+         * Create a slab.
+         * 
+         * @param buffer
+         *            The {@link ByteBuffer} in which the slab's events are to be held.
+         * @param pooled
+         *            Whether the slab is to be returned to the pool when its events are discarded.
+         */
+        public Slab(ByteBuffer buffer, boolean pooled) {
+            this.records = new RecordBuffer(buffer, 0);
+            this.pooled = pooled;
+        }
+
+        /**
+         * Copy consecutive events out of this slab.
+         * 
+         * @param baseSequence
+         *            The sequence number of the first event that the slab is expected to hold; if it has since been reused, nothing is copied.
+         * @param fromSequence
+         *            The sequence number of the first event to be copied.
+         * @param maxCount
+         *            The maximum number of events to be copied.
+         * @param maxBytes
+         *            The number of bytes of events after which no more are to be copied; the event that crosses it is still copied.
+         * @param events
+         *            The {@link List} to which the copied events are to be added.
+         * @return The number of bytes of events copied.
+         */
+        public long copy(long baseSequence, long fromSequence, long maxCount, long maxBytes, List<StoredEvent> events) {
+            int copied = 0;
+            long copiedBytes = 0;
+            LockWaits.lock(lock.readLock());
+            try {
+                if (records.getBaseSequence() != baseSequence) {
+                    return 0;
+                }
+
+                while (copied < maxCount && copiedBytes < maxBytes) {
+                    final ByteBuffer record = records.read(fromSequence + copied);
+                    if (record == null) {
+                        break;
+                    }
+
+                    final byte[] copy = new byte[record.remaining()];
+                    record.get(copy);
+                    copiedBytes += copy.length;
+                    events.add(new StoredEvent(fromSequence + copied, EventRecordCodec.decode(ByteBuffer.wrap(copy)), records.readWriteMillis(fromSequence + copied)));
+                    copied++;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            return copiedBytes;
+        }
+
+        /**
+         * Empty this slab for reuse, waiting for any readers copying out of it to finish.
+         * 
+         * @param baseSequence
+         *            The sequence number of the first event to be held in the slab from now on.
+         */
+        public void reset(long baseSequence) {
+            LockWaits.lock(lock.writeLock());
+            try {
+                records.reset(baseSequence);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+/**
+ * Enumerations of the ways in which a bounded {@link EventStore} can handle events stored in excess of its capacity.
+ * 
+ * @author Joshua Hyde
+ */
+
+public enum OverflowPolicy {
+    /**
+     * The oldest stored events are discarded to make room for the incoming events.
+     */
+    DROP_OLDEST,
+    /**
+     * The incoming events that do not fit within the store are discarded.
+     */
+    DROP_NEWEST,
+    /**
+     * Incoming events are refused with an {@link EventStoreFullException} if they do not all fit within the store. When used by the {@link ServerSink}, this causes the sink's transaction to be rolled
+     * back, leaving the events in the channel until room is made in the store.
+     */
+    BLOCK;
+}
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.flume.Event;
+
+/**
+ * An {@link EventDestination} that splits its events among a number of partitions, each of which is an {@link EventStore} of its own with its own sequence numbers.
+ * <p />
+ * An event is stored in the partition chosen by hashing the value of its partition key header, so that all events with the same value are held, in order, by the same partition. Events without the
+ * header are spread among the partitions in turn.
+ * <p />
+ * There is no sequence spanning the partitions, so this is not itself a store: its events are read, deleted through a sequence number, and listened for by way of its {@link #getPartitions()
+ * partitions}. A batch is stored only if every partition {@link EventStore#hasRoomFor(Collection) has room} for its share of it; otherwise the whole batch is refused and none of it is stored. This
+ * holds as long as events are stored in the partitions only through this object.
+ * <p />
+ * Only partitions whose {@link OverflowPolicy} is {@link OverflowPolicy#BLOCK} can refuse events, so only they are locked while a batch is checked against and stored in them, in the order of
+ * their numbers; batches are stored in the other partitions without locking.
+ * <p />
+ * If any of its partitions are {@link Closeable}, this store should be {@link #close() closed} when done with it.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class PartitionedEventStore implements EventDestination, Closeable {
+    private final List<EventStore> partitions;
+    private final String partitionKey;
+    private final AtomicInteger unkeyedCount = new AtomicInteger();
+    /**
+     * The lock of each partition that can refuse events, held while a batch is checked against and stored in it so that the room found for the batch is not taken by another; {@code null} for each
+     * partition that always has room.
+     */
+    private final List<Lock> partitionLocks;
+
+    /**
+     * Create a partitioned store.
+     * 
+     * @param partitions
+     *            A {@link List} of the {@link EventStore} objects serving as the partitions.
+     * @param partitionKey
+     *            The name of the header whose value chooses the partition of an event.
+     * @throws IllegalArgumentException
+     *             If no partitions are given.
+     */
+    public PartitionedEventStore(List<? extends EventStore> partitions, String partitionKey) {
+        if (partitions.isEmpty()) {
+            throw new IllegalArgumentException("At least one partition must be given.");
+        }
+
+        this.partitions = Collections.unmodifiableList(new ArrayList<EventStore>(partitions));
+        this.partitionKey = partitionKey;
+        this.partitionLocks = new ArrayList<Lock>(partitions.size());
+        for (EventStore partition : partitions) {
+            partitionLocks.add(partition.getOverflowPolicy() == OverflowPolicy.BLOCK ? new ReentrantLock() : null);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (EventStore partition : partitions) {
+            if (partition instanceof Closeable) {
+                ((Closeable) partition).close();
+            }
+        }
+    }
+
+    /**
+     * Delete the events of all partitions.
+     */
+    public void deleteEvents() {
+        for (EventStore partition : partitions) {
+            partition.deleteEvents();
+        }
+    }
+
+    @Override
+    public long getDroppedCount() {
+        long droppedCount = 0;
+        for (EventStore partition : partitions) {
+            droppedCount += partition.getDroppedCount();
+        }
+        return droppedCount;
+    }
+
+    @Override
+    public long getEventCount() {
+        long eventCount = 0;
+        for (EventStore partition : partitions) {
+            eventCount += partition.getEventCount();
+        }
+        return eventCount;
+    }
+
+    /**
+     * Get a partition.
+     * 
+     * @param partition
+     *            The number of the partition, starting at 0.
+     * @return The {@link EventStore} serving as the given partition.
+     * @throws IndexOutOfBoundsException
+     *             If there is no such partition.
+     */
+    public EventStore getPartition(int partition) {
+        return partitions.get(partition);
+    }
+
+    /**
+     * Get the number of partitions.
+     * 
+     * @return The number of partitions in this store.
+     */
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    /**
+     * Get the partitions.
+     * 
+     * @return An unmodifiable {@link List} of the {@link EventStore} objects serving as the partitions, in order.
+     */
+    public List<EventStore> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Get the name of the header that chooses the partition of an event.
+     * 
+     * @return The partition key.
+     */
+    public String getPartitionKey() {
+        return partitionKey;
+    }
+
+    /**
+     * Determine the partition in which an event is to be stored.
+     * 
+     * @param event
+     *            The {@link Event} whose partition is to be determined.
+     * @return The number of the partition, starting at 0.
+     */
+    public int partitionOf(Event event) {
+        final String key = event.getHeaders() == null ? null : event.getHeaders().get(partitionKey);
+        final int hash = key == null ? unkeyedCount.getAndIncrement() : key.hashCode();
+        return (hash & Integer.MAX_VALUE) % partitions.size();
+    }
+
+    @Override
+    public void storeEvents(Collection<? extends Event> events) throws EventStoreFullException {
+        final List<List<Event>> partitioned = new ArrayList<List<Event>>(partitions.size());
+        for (int i = 0; i < partitions.size(); i++) {
+            partitioned.add(new ArrayList<Event>());
+        }
+        for (Event event : events) {
+            partitioned.get(partitionOf(event)).add(event);
+        }
+
+        // Lock the partitions that could refuse their share in order of their numbers, so that batches locking the same partitions cannot deadlock
+        final List<Lock> heldLocks = new ArrayList<Lock>();
+        try {
+            for (int i = 0; i < partitions.size(); i++) {
+                final Lock partitionLock = partitionLocks.get(i);
+                if (partitionLock != null && !partitioned.get(i).isEmpty()) {
+                    LockWaits.lock(partitionLock);
+                    heldLocks.add(partitionLock);
+                }
+            }
+
+            for (int i = 0; i < partitions.size(); i++) {
+                final List<Event> partitionEvents = partitioned.get(i);
+                if (partitionLocks.get(i) != null && !partitionEvents.isEmpty() && !partitions.get(i).hasRoomFor(partitionEvents)) {
+                    throw new EventStoreFullException(String.format("Unable to store %d events; partition %d does not have room for %d of them.", events.size(), i, partitionEvents.size()));
+                }
+            }
+
+            for (int i = 0; i < partitions.size(); i++) {
+                final List<Event> partitionEvents = partitioned.get(i);
+                if (!partitionEvents.isEmpty()) {
+                    partitions.get(i).storeEvents(partitionEvents);
+                }
+            }
+        } finally {
+            for (Lock heldLock : heldLocks) {
+                heldLock.unlock();
+            }
+        }
+    }
+}
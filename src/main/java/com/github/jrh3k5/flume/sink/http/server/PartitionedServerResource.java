@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.apache.flume.event.SimpleEvent;
+
+/**
+ * A JAX-RS resource that exposes the partitions of a {@link PartitionedEventStore}.
+ * <p />
+ * Each partition is served under {@code /partitions/{n}}, numbered from 0, by a {@link FlumeSinkServerResource} of its own, so that every retrieval described there - including waiting for
+ * events, streaming them, and committing consumer offsets - is made of a single partition with its own sequence numbers:
+ * 
+ * <pre>
+ * GET /partitions/3/events?after=1234
+ * </pre>
+ * 
+ * The number of partitions is retrieved as plain text from {@code /partitions}. Events posted to {@code /events} are stored in the partitions chosen by their partition key, and deleting
+ * {@code /events} deletes the events of all partitions.
+ * 
+ * @author Joshua Hyde
+ */
+
+@Path("/")
+public class PartitionedServerResource {
+    private final PartitionedEventStore eventStore;
+    private final List<FlumeSinkServerResource> partitionResources;
+
+    /**
+     * Create a resource.
+     * 
+     * @param eventStore
+     *            The {@link PartitionedEventStore} whose partitions are to be exposed.
+     * @param partitionResources
+     *            A {@link List} of the {@link FlumeSinkServerResource} objects exposing the partitions of the given store, in order.
+     */
+    public PartitionedServerResource(PartitionedEventStore eventStore, List<FlumeSinkServerResource> partitionResources) {
+        this.eventStore = eventStore;
+        this.partitionResources = new ArrayList<FlumeSinkServerResource>(partitionResources);
+    }
+
+    /**
+     * Delete the events of all partitions.
+     * 
+     * @return A {@link Response} indicating the status of the deletion attempt.
+     * @throws Exception
+     *             If any errors occur during the deletion.
+     */
+    @DELETE
+    @Path("events")
+    public Response deleteEvents() throws Exception {
+        eventStore.deleteEvents();
+        return Response.ok().build();
+    }
+
+    /**
+     * Get the resource exposing a partition.
+     * 
+     * @param partition
+     *            The number of the partition, starting at 0.
+     * @return The {@link FlumeSinkServerResource} exposing the given partition.
+     * @throws NotFoundException
+     *             If there is no such partition.
+     */
+    @Path("partitions/{partition}")
+    public FlumeSinkServerResource getPartition(@PathParam("partition") int partition) {
+        if (partition < 0 || partition >= partitionResources.size()) {
+            throw new NotFoundException("No such partition: " + partition);
+        }
+        return partitionResources.get(partition);
+    }
+
+    /**
+     * Get the number of partitions.
+     * 
+     * @return The number of partitions, as plain text.
+     */
+    @GET
+    @Path("partitions")
+    @Produces("text/plain")
+    public String getPartitionCount() {
+        return Integer.toString(partitionResources.size());
+    }
+
+    /**
+     * Store events in their partitions.
+     * 
+     * @param incomingEvents
+     *            An array of {@link SimpleEvent} objects representing the events to store.
+     * @param uriInfo
+     *            A {@link UriInfo} object representing the URI information of the current request.
+     * @return A {@link Response} indicating the state of the storage; if a partition does not have room for its events, a {@link Response.Status#SERVICE_UNAVAILABLE} response is returned.
+     * @throws Exception
+     *             If any errors occur during the storage of data.
+     */
+    @POST
+    @Path("events")
+    @Consumes({ "application/json", BinaryEventsProvider.MEDIA_TYPE })
+    public Response storeEvents(SimpleEvent[] incomingEvents, @Context UriInfo uriInfo) throws Exception {
+        try {
+            eventStore.storeEvents(Arrays.asList(incomingEvents));
+        } catch (EventStoreFullException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(e.getMessage()).build();
+        }
+        return Response.created(uriInfo.getBaseUri().resolve("partitions")).build();
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This manages reads of an {@link EventStore} that are waiting for events to be stored.
+ * <p />
+ * A pending read is completed as soon as events after its cursor, and with the header values it filters on, are stored or, if none are stored within its timeout, with an empty batch once the timeout has elapsed. Reads are completed on a
+ * thread owned by this object rather than the thread that stored the events, so that waiting readers do not hold up the {@link ServerSink}. All instances of this class should be {@link #close()
+ * closed} when done with them.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class PendingEventReads implements EventStoreListener, Closeable {
+    private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
+
+    private final EventStore eventStore;
+    private final HeaderIndex headerIndex;
+    private final Queue<PendingRead> pendingReads = new ConcurrentLinkedQueue<PendingRead>();
+    private final AtomicBoolean completionScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService executor;
+    private final Runnable completionTask = new Runnable() {
+        @Override
+        public void run() {
+            completionScheduled.set(false);
+            final Iterator<PendingRead> iterator = pendingReads.iterator();
+            while (iterator.hasNext()) {
+                final PendingRead pendingRead = iterator.next();
+                if (pendingRead.isDone() || tryComplete(pendingRead)) {
+                    iterator.remove();
+                }
+            }
+        }
+    };
+
+    /**
+     * Create a set of pending reads. This registers the created object as a listener of the given store.
+     * 
+     * @param eventStore
+     *            The {@link EventStore} from which the events are to be read.
+     */
+    public PendingEventReads(EventStore eventStore) {
+        this(new HeaderIndex(eventStore, Collections.<String> emptySet()));
+    }
+
+    /**
+     * Create a set of pending reads that can filter on header values. This registers the created object as a listener of the store of the given index.
+     * 
+     * @param headerIndex
+     *            The {@link HeaderIndex} through which the events are to be read.
+     */
+    public PendingEventReads(HeaderIndex headerIndex) {
+        this.eventStore = headerIndex.getEventStore();
+        this.headerIndex = headerIndex;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("pending-event-reads-" + INSTANCE_COUNT.incrementAndGet()));
+        eventStore.addListener(this);
+    }
+
+    /**
+     * Wait for events to be stored.
+     * 
+     * @param afterSequence
+     *            The sequence number after which events are to be read.
+     * @param limit
+     *            The maximum number of events to be read.
+     * @param timeoutMillis
+     *            The number of milliseconds to wait for events to be stored.
+     * @param callback
+     *            A {@link Callback} to be invoked, exactly once, with the events read; if no events were stored within the timeout, it is given an empty batch.
+     */
+    public void await(long afterSequence, int limit, long timeoutMillis, Callback callback) {
+        await(afterSequence, limit, Collections.<String, String> emptyMap(), timeoutMillis, callback);
+    }
+
+    /**
+     * Wait for events with particular header values to be stored.
+     * 
+     * @param afterSequence
+     *            The sequence number after which events are to be read.
+     * @param limit
+     *            The maximum number of events to be read.
+     * @param headers
+     *            A {@link Map} of the header names and values that the events read must all have; if empty, any event completes the read.
+     * @param timeoutMillis
+     *            The number of milliseconds to wait for events to be stored.
+     * @param callback
+     *            A {@link Callback} to be invoked, exactly once, with the events read; if no events were stored within the timeout, it is given an empty batch whose cursor is past any events
+     *            examined while waiting.
+     */
+    public void await(long afterSequence, int limit, Map<String, String> headers, long timeoutMillis, Callback callback) {
+        final PendingRead pendingRead = new PendingRead(afterSequence, limit, headers, callback);
+        pendingRead.timeout = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                expire(pendingRead);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        pendingReads.add(pendingRead);
+
+        // Events may have been stored before the read was registered, in which case there will be no notification for them
+        if (tryComplete(pendingRead)) {
+            pendingReads.remove(pendingRead);
+        }
+    }
+
+    /**
+     * Close this object. Any reads still pending are completed with empty batches.
+     */
+    @Override
+    public void close() throws IOException {
+        eventStore.removeListener(this);
+        executor.shutdownNow();
+
+        PendingRead pendingRead;
+        while ((pendingRead = pendingReads.poll()) != null) {
+            expire(pendingRead);
+        }
+    }
+
+    @Override
+    public void eventsStored(long lastSequence) {
+        if (!pendingReads.isEmpty() && completionScheduled.compareAndSet(false, true)) {
+            executor.execute(completionTask);
+        }
+    }
+
+    /**
+     * Get the number of reads waiting for events.
+     * 
+     * @return The number of reads waiting for events.
+     */
+    public int getPendingCount() {
+        return pendingReads.size();
+    }
+
+    /**
+     * Complete a read with an empty batch.
+     * 
+     * @param pendingRead
+     *            The {@link PendingRead} to be completed.
+     */
+    private void expire(PendingRead pendingRead) {
+        if (pendingRead.markDone()) {
+            pendingReads.remove(pendingRead);
+            final long cursor;
+            synchronized (pendingRead) {
+                cursor = pendingRead.afterSequence;
+            }
+            pendingRead.callback.eventsRead(new EventBatch(Collections.<StoredEvent> emptyList(), cursor));
+        }
+    }
+
+    /**
+     * Complete a read if there are events available for it.
+     * 
+     * @param pendingRead
+     *            The {@link PendingRead} to be completed.
+     * @return {@code true} if the read was completed; {@code false} if there are not yet any events for it.
+     */
+    private boolean tryComplete(PendingRead pendingRead) {
+        final EventBatch batch;
+        synchronized (pendingRead) {
+            batch = headerIndex.getEvents(pendingRead.afterSequence, pendingRead.limit, pendingRead.headers);
+            if (batch.isEmpty()) {
+                // Don't examine the events that were filtered out again
+                pendingRead.afterSequence = batch.getCursor();
+                return false;
+            }
+        }
+
+        if (!pendingRead.markDone()) {
+            return false;
+        }
+
+        pendingRead.timeout.cancel(false);
+        pendingRead.callback.eventsRead(batch);
+        return true;
+    }
+
+    /**
+     * Definition of an object to be invoked when a pending read is completed.
+     * 
+     * @author Joshua Hyde
+     */
+
+    public static interface Callback {
+        /**
+         * Receive the events read.
+         * 
+         * @param batch
+         *            An {@link EventBatch} containing the events read.
+         */
+        void eventsRead(EventBatch batch);
+    }
+
+    /**
+     * A read waiting for events.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class PendingRead {
+        private final int limit;
+        private final Map<String, String> headers;
+        private final Callback callback;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private ScheduledFuture<?> timeout;
+        /**
+         * The sequence number after which events are to be read; guarded by this object's monitor.
+         */
+        private long afterSequence;
+
+        /**
+         * Create a pending read.
+         * 
+         * @param afterSequence
+         *            The sequence number after which events are to be read.
+         * @param limit
+         *            The maximum number of events to be read.
+         * @param headers
+         *            A {@link Map} of the header names and values that the events read must all have.
+         * @param callback
+         *            The {@link Callback} to be invoked when the read is completed.
+         */
+        public PendingRead(long afterSequence, int limit, Map<String, String> headers, Callback callback) {
+            this.afterSequence = afterSequence;
+            this.limit = limit;
+            this.headers = headers;
+            this.callback = callback;
+        }
+
+        /**
+         * Determine whether this read is done.
+         * 
+         * @return {@code true} if this read has been completed or has expired.
+         */
+        public boolean isDone() {
+            return done.get();
+        }
+
+        /**
+         * Mark this read as done.
+         * 
+         * @return {@code true} if this invocation marked the read as done; {@code false} if it had already been marked as done.
+         */
+        public boolean markDone() {
+            return done.compareAndSet(false, true);
+        }
+    }
+}
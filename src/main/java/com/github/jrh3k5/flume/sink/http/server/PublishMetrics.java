@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.flume.Event;
+
+/**
+ * The measurements of how events are moved from the channels of the sinks sharing a {@link FlumeSinkServer} into its {@link EventStore}. They are recorded by each sink's
+ * {@link SinkInstrumentation} and served by the {@link MetricsResource}.
+ * <p />
+ * Latencies are recorded in microseconds.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class PublishMetrics {
+    private final EventDestination eventStore;
+    private final Histogram batchSizes = new Histogram();
+    private final Histogram takeLatencies = new Histogram();
+    private final Histogram publishLatencies = new Histogram();
+    private final AtomicLong emptyTakeCount = new AtomicLong();
+    private final AtomicLong publishedBatchCount = new AtomicLong();
+    private final AtomicLong publishedEventCount = new AtomicLong();
+    private final AtomicLong publishedByteCount = new AtomicLong();
+    private final AtomicLong rejectedBatchCount = new AtomicLong();
+    private final AtomicLong rolledBackBatchCount = new AtomicLong();
+
+    /**
+     * Create the metrics of a store.
+     * 
+     * @param eventStore
+     *            The {@link EventDestination} into which the measured events are published.
+     */
+    public PublishMetrics(EventDestination eventStore) {
+        this.eventStore = eventStore;
+    }
+
+    /**
+     * Get the sizes of the non-empty batches taken from the channels.
+     * 
+     * @return A {@link Histogram} of the number of events in each non-empty batch taken.
+     */
+    public Histogram getBatchSizes() {
+        return batchSizes;
+    }
+
+    /**
+     * Get the number of takes from the channels that found no events.
+     * 
+     * @return The number of empty takes.
+     */
+    public long getEmptyTakeCount() {
+        return emptyTakeCount.get();
+    }
+
+    /**
+     * Get the number of batches stored.
+     * 
+     * @return The number of batches accepted by the store.
+     */
+    public long getPublishedBatchCount() {
+        return publishedBatchCount.get();
+    }
+
+    /**
+     * Get the number of bytes of event bodies stored.
+     * 
+     * @return The total size, in bytes, of the bodies of the events accepted by the store.
+     */
+    public long getPublishedByteCount() {
+        return publishedByteCount.get();
+    }
+
+    /**
+     * Get the number of events stored.
+     * 
+     * @return The number of events accepted by the store.
+     */
+    public long getPublishedEventCount() {
+        return publishedEventCount.get();
+    }
+
+    /**
+     * Get the time taken to store each batch.
+     * 
+     * @return A {@link Histogram} of the number of microseconds taken by the store to accept each batch.
+     */
+    public Histogram getPublishLatencies() {
+        return publishLatencies;
+    }
+
+    /**
+     * Get the number of batches refused by the store because it was full.
+     * 
+     * @return The number of rejected batches.
+     */
+    public long getRejectedBatchCount() {
+        return rejectedBatchCount.get();
+    }
+
+    /**
+     * Get the number of transactions rolled back, including those whose batches were rejected.
+     * 
+     * @return The number of rolled-back batches.
+     */
+    public long getRolledBackBatchCount() {
+        return rolledBackBatchCount.get();
+    }
+
+    /**
+     * Get the time taken to take each batch from the channels.
+     * 
+     * @return A {@link Histogram} of the number of microseconds taken to take each batch, whether or not it was empty.
+     */
+    public Histogram getTakeLatencies() {
+        return takeLatencies;
+    }
+
+    /**
+     * Record the storing of a batch.
+     * 
+     * @param events
+     *            A {@link Collection} of the {@link Event} objects accepted by the store.
+     * @param publishNanos
+     *            The number of nanoseconds taken by the store to accept the batch.
+     */
+    public void recordPublish(Collection<? extends Event> events, long publishNanos) {
+        long byteCount = 0;
+        for (Event event : events) {
+            byteCount += event.getBody() == null ? 0 : event.getBody().length;
+        }
+        publishedBatchCount.incrementAndGet();
+        publishedEventCount.addAndGet(events.size());
+        publishedByteCount.addAndGet(byteCount);
+        publishLatencies.record(TimeUnit.NANOSECONDS.toMicros(publishNanos));
+    }
+
+    /**
+     * Record the refusal of a batch by the store and the rollback of its transaction.
+     */
+    public void recordRejection() {
+        rejectedBatchCount.incrementAndGet();
+        rolledBackBatchCount.incrementAndGet();
+    }
+
+    /**
+     * Record the rollback of a transaction for any reason other than the refusal of its batch by the store.
+     */
+    public void recordRollback() {
+        rolledBackBatchCount.incrementAndGet();
+    }
+
+    /**
+     * Record the taking of a batch from a channel.
+     * 
+     * @param eventCount
+     *            The number of events taken.
+     * @param takeNanos
+     *            The number of nanoseconds taken to take the batch.
+     */
+    public void recordTake(int eventCount, long takeNanos) {
+        if (eventCount == 0) {
+            emptyTakeCount.incrementAndGet();
+        } else {
+            batchSizes.record(eventCount);
+        }
+        takeLatencies.record(TimeUnit.NANOSECONDS.toMicros(takeNanos));
+    }
+
+    /**
+     * Get all of the measurements, along with the occupancy of the store; the last sequence number is only given for an {@link EventStore}, as the partitions of a {@link PartitionedEventStore}
+     * each have their own.
+     * 
+     * @return A {@link Map} of the measurements, keyed by name, in which each histogram is given as a {@link Histogram#getSummary() summary}.
+     */
+    public Map<String, Object> toMap() {
+        final Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("batchSize", batchSizes.getSummary());
+        metrics.put("takeLatencyMicros", takeLatencies.getSummary());
+        metrics.put("publishLatencyMicros", publishLatencies.getSummary());
+        metrics.put("emptyTakes", Long.valueOf(getEmptyTakeCount()));
+        metrics.put("publishedBatches", Long.valueOf(getPublishedBatchCount()));
+        metrics.put("publishedEvents", Long.valueOf(getPublishedEventCount()));
+        metrics.put("publishedBytes", Long.valueOf(getPublishedByteCount()));
+        metrics.put("rejectedBatches", Long.valueOf(getRejectedBatchCount()));
+        metrics.put("rolledBackBatches", Long.valueOf(getRolledBackBatchCount()));
+        metrics.put("storedEvents", Long.valueOf(eventStore.getEventCount()));
+        metrics.put("droppedEvents", Long.valueOf(eventStore.getDroppedCount()));
+        if (eventStore instanceof EventStore) {
+            metrics.put("lastSequence", Long.valueOf(((EventStore) eventStore).getLastSequence()));
+        }
+        return metrics;
+    }
+}
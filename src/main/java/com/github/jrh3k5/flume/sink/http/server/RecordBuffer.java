@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import org.apache.flume.Event;
+
+/**
+ * A {@link ByteBuffer} holding a run of events with consecutive sequence numbers, along with an on-heap index of where each event's record starts. Each record is laid out as:
+ * 
+ * <pre>
+ * int    record length (the length of the remainder of the record)
+ * int    CRC-32 of the remainder of the record after this field (0 if the buffer is not checksummed)
+ * long   sequence number
+ * long   time at which the record was written, in milliseconds since the epoch
+ * byte[] event, as encoded by {@link EventRecordCodec}
+ * </pre>
+ * 
+ * A record length of 0 marks the end of the records. Buffers that are to be {@link #recover() recovered} after a restart should be checksummed, so that a record torn by a crash is detected rather
+ * than read as an event.
+ * <p />
+ * Only one thread may append to or {@link #reset(long) reset} a buffer at a time. Any number of threads may read from it concurrently with an appending thread, so long as they only read events
+ * whose sequence numbers were published to them after the events were appended.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class RecordBuffer {
+    /**
+     * The size of the record length and sequence number preceding each encoded event.
+     */
+    public static final int RECORD_HEADER_SIZE = 24;
+    /**
+     * The offset, within a record, of the bytes covered by its checksum.
+     */
+    private static final int CHECKSUMMED_OFFSET = 8;
+
+    /**
+     * The buffer holding the records; its position and limit are never changed, so readers can safely duplicate it.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The buffer used to append records.
+     */
+    private final ByteBuffer writeBuffer;
+    /**
+     * The offsets of the records, indexed by sequence number relative to {@link #baseSequence}. Entries are written before their events are published, and a grown array is published before any
+     * entry beyond the end of the array it replaces.
+     */
+    private volatile int[] offsets = new int[1024];
+    private volatile long baseSequence;
+    private volatile long lastSequence;
+    private volatile long lastWriteMillis;
+    private final boolean checksummed;
+    /**
+     * The checksum and scratch space used to checksum records; only used by the appending or recovering thread.
+     */
+    private final CRC32 checksum = new CRC32();
+    private byte[] checksumScratch;
+
+    /**
+     * Create a buffer whose records are not checksummed.
+     * 
+     * @param buffer
+     *            The {@link ByteBuffer} in which the records are to be held.
+     * @param baseSequence
+     *            The sequence number of the first event to be held in the buffer.
+     */
+    public RecordBuffer(ByteBuffer buffer, long baseSequence) {
+        this(buffer, baseSequence, false);
+    }
+
+    /**
+     * Create a buffer.
+     * 
+     * @param buffer
+     *            The {@link ByteBuffer} in which the records are to be held.
+     * @param baseSequence
+     *            The sequence number of the first event to be held in the buffer.
+     * @param checksummed
+     *            Whether each record is to be checksummed as it is appended and verified as it is recovered.
+     */
+    public RecordBuffer(ByteBuffer buffer, long baseSequence, boolean checksummed) {
+        this.checksummed = checksummed;
+        this.buffer = buffer.duplicate();
+        this.buffer.clear();
+        this.writeBuffer = this.buffer.duplicate();
+        this.baseSequence = baseSequence;
+        this.lastSequence = baseSequence - 1;
+        this.lastWriteMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Determine the size of the record for an event.
+     * 
+     * @param event
+     *            The {@link Event} whose record size is to be determined.
+     * @return The number of bytes taken by the record for the given event.
+     */
+    public static int recordSize(Event event) {
+        return RECORD_HEADER_SIZE + EventRecordCodec.encodedLength(event);
+    }
+
+    /**
+     * Append an event to this buffer.
+     * 
+     * @param sequence
+     *            The sequence number of the event, which must follow that of the last event appended.
+     * @param event
+     *            The {@link Event} to be appended.
+     * @param recordSize
+     *            The {@link #recordSize(Event) size of the record} for the event, which must fit within the remainder of this buffer.
+     */
+    public void append(long sequence, Event event, int recordSize) {
+        final int offset = writeBuffer.position();
+        final long writeMillis = System.currentTimeMillis();
+        writeBuffer.putInt(recordSize - 4);
+        writeBuffer.putInt(0);
+        writeBuffer.putLong(sequence);
+        writeBuffer.putLong(writeMillis);
+        EventRecordCodec.encode(event, writeBuffer);
+        if (checksummed) {
+            writeBuffer.putInt(offset + 4, checksum(offset, recordSize));
+            // Mark the end of the records, lest whatever follows this record in a reused or recovered buffer be taken for a torn record
+            seal();
+        }
+        index(sequence, offset);
+        lastWriteMillis = writeMillis;
+    }
+
+    /**
+     * Determine whether a record fits within the remainder of this buffer.
+     * 
+     * @param recordSize
+     *            The size of the record.
+     * @return {@code true} if a record of the given size can be appended to this buffer.
+     */
+    public boolean fits(int recordSize) {
+        return writeBuffer.remaining() >= recordSize;
+    }
+
+    /**
+     * Get the sequence number of the first event held in this buffer.
+     * 
+     * @return The sequence number of the first event held in this buffer.
+     */
+    public long getBaseSequence() {
+        return baseSequence;
+    }
+
+    /**
+     * Get the size of this buffer.
+     * 
+     * @return The number of bytes that this buffer can hold.
+     */
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Get the number of events held in this buffer.
+     * 
+     * @return The number of events held in this buffer.
+     */
+    public int getEventCount() {
+        return (int) (lastSequence - baseSequence + 1);
+    }
+
+    /**
+     * Get the sequence number of the last event appended to this buffer.
+     * 
+     * @return The sequence number of the last event appended to this buffer; one less than the {@link #getBaseSequence() base sequence number} if none have been appended.
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Get the time at which an event was last appended to this buffer.
+     * 
+     * @return The time, in milliseconds since the epoch, at which an event was last appended to this buffer, or at which it was created or {@link #reset(long) reset} if none have been appended
+     *         since. For a {@link #recover() recovered} buffer, this is the time at which its last intact record was written.
+     */
+    public long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    /**
+     * Get the number of bytes remaining in this buffer.
+     * 
+     * @return The number of bytes of records that can still be appended to this buffer.
+     */
+    public int getRemaining() {
+        return writeBuffer.remaining();
+    }
+
+    /**
+     * Read the record for an event.
+     * 
+     * @param sequence
+     *            The sequence number of the event to be read.
+     * @return A {@link ByteBuffer} whose remaining bytes are the event, as encoded by {@link EventRecordCodec}; {@code null} if the event is not in this buffer.
+     */
+    public ByteBuffer read(long sequence) {
+        final int offset = offsetOf(sequence);
+        if (offset < 0) {
+            return null;
+        }
+
+        final ByteBuffer record = buffer.duplicate();
+        final int recordLength = record.getInt(offset);
+        record.position(offset + RECORD_HEADER_SIZE);
+        record.limit(offset + 4 + recordLength);
+        return record.slice();
+    }
+
+    /**
+     * Read the time at which the record for an event was written.
+     * 
+     * @param sequence
+     *            The sequence number of the event.
+     * @return The time, in milliseconds since the epoch, at which the event's record was appended; {@code -1} if the event is not in this buffer.
+     */
+    public long readWriteMillis(long sequence) {
+        final int offset = offsetOf(sequence);
+        return offset < 0 ? -1 : buffer.getLong(offset + CHECKSUMMED_OFFSET + 8);
+    }
+
+    /**
+     * Rebuild the index of this buffer from the records already written to it, and position it to append after the last intact record. Recovery stops at the first record whose length or sequence
+     * number is out of place or, if this buffer is checksummed, whose checksum does not match; that record and everything after it are overwritten by the next append.
+     * 
+     * @return {@code true} if the records ran to the end of the buffer or to the mark of their end; {@code false} if recovery stopped early at a torn or corrupt record.
+     */
+    public boolean recover() {
+        long sequence = baseSequence;
+        int offset = 0;
+        boolean intact = true;
+        while (offset + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            final int recordLength = buffer.getInt(offset);
+            if (recordLength == 0) {
+                break;
+            }
+
+            if (recordLength < RECORD_HEADER_SIZE - 4 || offset + 4L + recordLength > buffer.capacity() || buffer.getLong(offset + CHECKSUMMED_OFFSET) != sequence
+                    || (checksummed && buffer.getInt(offset + 4) != checksum(offset, recordLength + 4))) {
+                intact = false;
+                break;
+            }
+
+            index(sequence++, offset);
+            lastWriteMillis = buffer.getLong(offset + CHECKSUMMED_OFFSET + 8);
+            offset += 4 + recordLength;
+        }
+        writeBuffer.position(offset);
+        return intact;
+    }
+
+    /**
+     * Discard the events held in this buffer so that it can be reused.
+     * 
+     * @param baseSequence
+     *            The sequence number of the first event to be held in the buffer from now on.
+     */
+    public void reset(long baseSequence) {
+        writeBuffer.clear();
+        this.offsets = new int[offsets.length];
+        this.lastSequence = baseSequence - 1;
+        this.baseSequence = baseSequence;
+        this.lastWriteMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Mark the end of the records in this buffer, so that they can be {@link #recover(long) recovered} without reading past them.
+     */
+    public void seal() {
+        if (writeBuffer.remaining() >= 4) {
+            writeBuffer.putInt(writeBuffer.position(), 0);
+        }
+    }
+
+    /**
+     * Compute the checksum of a record; this must only be called by the appending or recovering thread.
+     * 
+     * @param offset
+     *            The offset of the record within this buffer.
+     * @param recordSize
+     *            The size of the whole record, including its length.
+     * @return The CRC-32 of the bytes of the record that follow its checksum.
+     */
+    private int checksum(int offset, int recordSize) {
+        if (checksumScratch == null) {
+            checksumScratch = new byte[4096];
+        }
+
+        final ByteBuffer source = buffer.duplicate();
+        source.position(offset + CHECKSUMMED_OFFSET);
+        source.limit(offset + recordSize);
+        checksum.reset();
+        while (source.hasRemaining()) {
+            final int length = Math.min(source.remaining(), checksumScratch.length);
+            source.get(checksumScratch, 0, length);
+            checksum.update(checksumScratch, 0, length);
+        }
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Find the record for an event.
+     * 
+     * @param sequence
+     *            The sequence number of the event.
+     * @return The offset of the event's record within this buffer; {@code -1} if the event is not in this buffer.
+     */
+    private int offsetOf(long sequence) {
+        final long base = baseSequence;
+        if (sequence < base || sequence > lastSequence) {
+            return -1;
+        }
+
+        final int[] currentOffsets = offsets;
+        final int index = (int) (sequence - base);
+        if (index >= currentOffsets.length) {
+            return -1;
+        }
+
+        final int offset = currentOffsets[index];
+        return buffer.getLong(offset + CHECKSUMMED_OFFSET) == sequence ? offset : -1;
+    }
+
+    /**
+     * Record the offset of an event.
+     * 
+     * @param sequence
+     *            The sequence number of the event.
+     * @param offset
+     *            The offset of the event's record within this buffer.
+     */
+    private void index(long sequence, int offset) {
+        final int index = (int) (sequence - baseSequence);
+        int[] current = offsets;
+        if (index >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            offsets = current;
+        }
+        current[index] = offset;
+        lastSequence = sequence;
+    }
+}
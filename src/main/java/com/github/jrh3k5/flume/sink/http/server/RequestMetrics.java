@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The measurements of the requests made of a single method of a resource, recorded by the {@link RequestMetricsFilter}. Every measurement is recorded without allocating or locking, so that
+ * measuring does not slow the requests measured.
+ * <p />
+ * The latency of a request runs from the point at which it is matched to the method until its response body, if any, has been written; the time taken to write the body is also recorded on its
+ * own, so that the time spent serializing and sending events can be told apart from the time spent retrieving them. Requests waiting for events to be stored are included in the latency for as
+ * long as they wait.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class RequestMetrics implements RequestMetricsMBean {
+    private final StripedCounter requestCount = new StripedCounter();
+    private final StripedCounter errorCount = new StripedCounter();
+    private final StripedCounter requestBytes = new StripedCounter();
+    private final StripedCounter responseBytes = new StripedCounter();
+    private final Histogram latencies = new Histogram();
+    private final Histogram writeLatencies = new Histogram();
+    private final Histogram lockWaits = new Histogram();
+    private final Histogram eventsReturned = new Histogram();
+
+    @Override
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    /**
+     * Get the numbers of events returned.
+     * 
+     * @return A {@link Histogram} of the number of events returned by each request that returned events.
+     */
+    public Histogram getEventsReturned() {
+        return eventsReturned;
+    }
+
+    @Override
+    public double getEventsReturnedMean() {
+        return eventsReturned.getMean();
+    }
+
+    /**
+     * Get the latencies of the requests.
+     * 
+     * @return A {@link Histogram} of the number of microseconds taken to answer each request.
+     */
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public double getLatencyMeanMicros() {
+        return latencies.getMean();
+    }
+
+    @Override
+    public long getLatencyMaxMicros() {
+        return latencies.getMax();
+    }
+
+    @Override
+    public long getLatencyP50Micros() {
+        return latencies.getPercentile(50);
+    }
+
+    @Override
+    public long getLatencyP999Micros() {
+        return latencies.getPercentile(99.9);
+    }
+
+    @Override
+    public long getLatencyP99Micros() {
+        return latencies.getPercentile(99);
+    }
+
+    @Override
+    public long getLockWaitP99Millis() {
+        return lockWaits.getPercentile(99);
+    }
+
+    /**
+     * Get the time spent waiting for locks.
+     * 
+     * @return A {@link Histogram} of the number of milliseconds for which each request waited to acquire the locks of the event store.
+     */
+    public Histogram getLockWaits() {
+        return lockWaits;
+    }
+
+    @Override
+    public long getRequestBytes() {
+        return requestBytes.sum();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    @Override
+    public long getResponseBytes() {
+        return responseBytes.sum();
+    }
+
+    /**
+     * Get the time taken to write the response bodies.
+     * 
+     * @return A {@link Histogram} of the number of microseconds taken to serialize and send each response body.
+     */
+    public Histogram getWriteLatencies() {
+        return writeLatencies;
+    }
+
+    @Override
+    public long getWriteLatencyP99Micros() {
+        return writeLatencies.getPercentile(99);
+    }
+
+    /**
+     * Record the number of events returned by a request.
+     * 
+     * @param eventCount
+     *            The number of events returned.
+     */
+    public void recordEventsReturned(int eventCount) {
+        eventsReturned.record(eventCount);
+    }
+
+    /**
+     * Record the time for which a request waited for locks.
+     * 
+     * @param lockWaitMillis
+     *            The number of milliseconds for which the request waited to acquire the locks of the event store.
+     */
+    public void recordLockWait(long lockWaitMillis) {
+        lockWaits.record(lockWaitMillis);
+    }
+
+    /**
+     * Record the answering of a request.
+     * 
+     * @param status
+     *            The status code of the response.
+     * @param latencyNanos
+     *            The number of nanoseconds taken to answer the request.
+     */
+    public void recordRequest(int status, long latencyNanos) {
+        requestCount.increment();
+        if (status >= 400) {
+            errorCount.increment();
+        }
+        latencies.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    }
+
+    /**
+     * Record the receipt of a request body.
+     * 
+     * @param byteCount
+     *            The number of bytes of the body, as sent over the network.
+     */
+    public void recordRequestBytes(long byteCount) {
+        requestBytes.add(byteCount);
+    }
+
+    /**
+     * Record the writing of a response body.
+     * 
+     * @param byteCount
+     *            The number of bytes of the body, as sent over the network.
+     * @param writeNanos
+     *            The number of nanoseconds taken to write the body.
+     */
+    public void recordResponseWrite(long byteCount, long writeNanos) {
+        responseBytes.add(byteCount);
+        writeLatencies.record(TimeUnit.NANOSECONDS.toMicros(writeNanos));
+    }
+
+    /**
+     * Get all of the measurements.
+     * 
+     * @return A {@link Map} of the measurements, keyed by name, in which each histogram is given as a {@link Histogram#getSummary() summary}.
+     */
+    public Map<String, Object> toMap() {
+        final Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("requests", Long.valueOf(getRequestCount()));
+        metrics.put("errors", Long.valueOf(getErrorCount()));
+        metrics.put("requestBytes", Long.valueOf(getRequestBytes()));
+        metrics.put("responseBytes", Long.valueOf(getResponseBytes()));
+        metrics.put("latencyMicros", latencies.getSummary());
+        metrics.put("writeLatencyMicros", writeLatencies.getSummary());
+        metrics.put("lockWaitMillis", lockWaits.getSummary());
+        metrics.put("eventsReturned", eventsReturned.getSummary());
+        return metrics;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+
+/**
+ * A feature that binds a {@link RequestMetricsFilter} to each of the {@link ResourceMetrics#MEASURED_METHODS measured methods} of the resources of a server, so that requests of other methods
+ * are not measured at all.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class RequestMetricsFeature implements DynamicFeature {
+    private final Map<Object, ResourceMetrics> resourceMetrics;
+
+    /**
+     * Create a feature.
+     * 
+     * @param resourceMetrics
+     *            A {@link Map} of the {@link ResourceMetrics} of each resource, keyed by the resource object itself.
+     */
+    public RequestMetricsFeature(Map<Object, ResourceMetrics> resourceMetrics) {
+        this.resourceMetrics = new IdentityHashMap<Object, ResourceMetrics>(resourceMetrics);
+    }
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        final String methodName = resourceInfo.getResourceMethod().getName();
+        if (!ResourceMetrics.MEASURED_METHODS.contains(methodName)) {
+            return;
+        }
+
+        for (Object resource : resourceMetrics.keySet()) {
+            if (resource.getClass().equals(resourceInfo.getResourceClass())) {
+                context.register(new RequestMetricsFilter(methodName, resourceMetrics));
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * A filter that records the {@link RequestMetrics} of the requests of a single resource method. It is bound to the method by the {@link RequestMetricsFeature}.
+ * <p />
+ * Its priority places it outside of any compression, so that the bytes of request and response bodies are counted as they are sent over the network, and so that its timing of each request begins
+ * before, and ends after, that of the other filters.
+ * <p />
+ * The time for which a request waits for locks is the time for which its thread waits to acquire the locks of the event stores, as kept by {@link LockWaits}; it is measured only for requests
+ * answered on the thread that received them.
+ * 
+ * @author Joshua Hyde
+ */
+
+@Priority(Priorities.ENTITY_CODER - 1)
+public class RequestMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter, ReaderInterceptor, WriterInterceptor {
+    private static final String METRICS_PROPERTY = RequestMetricsFilter.class.getName() + ".metrics";
+    private static final String START_PROPERTY = RequestMetricsFilter.class.getName() + ".start";
+    private static final String STATUS_PROPERTY = RequestMetricsFilter.class.getName() + ".status";
+    private static final String THREAD_PROPERTY = RequestMetricsFilter.class.getName() + ".thread";
+    private static final String LOCK_WAIT_PROPERTY = RequestMetricsFilter.class.getName() + ".lockWait";
+
+    private final String methodName;
+    private final Map<Object, ResourceMetrics> resourceMetrics;
+
+    /**
+     * Create a filter.
+     * 
+     * @param methodName
+     *            The name of the resource method whose requests are to be measured.
+     * @param resourceMetrics
+     *            A {@link Map} of the {@link ResourceMetrics} of each resource, keyed by the resource object itself.
+     */
+    public RequestMetricsFilter(String methodName, Map<Object, ResourceMetrics> resourceMetrics) {
+        this.methodName = methodName;
+        this.resourceMetrics = resourceMetrics;
+    }
+
+    @Override
+    public Object aroundReadFrom(ReaderInterceptorContext context) throws IOException {
+        final RequestMetrics metrics = (RequestMetrics) context.getProperty(METRICS_PROPERTY);
+        if (metrics == null) {
+            return context.proceed();
+        }
+
+        final CountingInputStream countingStream = new CountingInputStream(context.getInputStream());
+        context.setInputStream(countingStream);
+        try {
+            return context.proceed();
+        } finally {
+            metrics.recordRequestBytes(countingStream.count);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        final RequestMetrics metrics = (RequestMetrics) context.getProperty(METRICS_PROPERTY);
+        if (metrics == null) {
+            context.proceed();
+            return;
+        }
+
+        final CountingOutputStream countingStream = new CountingOutputStream(context.getOutputStream());
+        context.setOutputStream(countingStream);
+        final long writeStart = System.nanoTime();
+        try {
+            context.proceed();
+        } finally {
+            final long writeEnd = System.nanoTime();
+            metrics.recordResponseWrite(countingStream.count, writeEnd - writeStart);
+            final Integer status = (Integer) context.getProperty(STATUS_PROPERTY);
+            metrics.recordRequest(status == null ? 200 : status.intValue(), writeEnd - ((Long) context.getProperty(START_PROPERTY)).longValue());
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        final List<Object> matchedResources = requestContext.getUriInfo().getMatchedResources();
+        final ResourceMetrics matchedMetrics = matchedResources.isEmpty() ? null : resourceMetrics.get(matchedResources.get(0));
+        if (matchedMetrics == null) {
+            return;
+        }
+
+        requestContext.setProperty(METRICS_PROPERTY, matchedMetrics.getRequestMetrics(methodName));
+        requestContext.setProperty(THREAD_PROPERTY, Long.valueOf(Thread.currentThread().getId()));
+        requestContext.setProperty(LOCK_WAIT_PROPERTY, Long.valueOf(LockWaits.getWaitNanos()));
+        requestContext.setProperty(START_PROPERTY, Long.valueOf(System.nanoTime()));
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        final RequestMetrics metrics = (RequestMetrics) requestContext.getProperty(METRICS_PROPERTY);
+        if (metrics == null) {
+            return;
+        }
+
+        final Long threadId = (Long) requestContext.getProperty(THREAD_PROPERTY);
+        if (threadId != null && threadId.longValue() == Thread.currentThread().getId()) {
+            metrics.recordLockWait(TimeUnit.NANOSECONDS.toMillis(LockWaits.getWaitNanos() - ((Long) requestContext.getProperty(LOCK_WAIT_PROPERTY)).longValue()));
+        }
+
+        if (responseContext.getEntity() instanceof EventBatch) {
+            metrics.recordEventsReturned(((EventBatch) responseContext.getEntity()).getEvents().size());
+        }
+
+        if (responseContext.hasEntity()) {
+            // The request is complete once the body has been written
+            requestContext.setProperty(STATUS_PROPERTY, Integer.valueOf(responseContext.getStatus()));
+        } else {
+            metrics.recordRequest(responseContext.getStatus(), System.nanoTime() - ((Long) requestContext.getProperty(START_PROPERTY)).longValue());
+        }
+    }
+
+    /**
+     * An {@link InputStream} that counts the bytes read through it.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        /**
+         * Create a stream.
+         * 
+         * @param in
+         *            The {@link InputStream} to be read from.
+         */
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read >= 0) {
+                count++;
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * An {@link OutputStream} that counts the bytes written through it.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        /**
+         * Create a stream.
+         * 
+         * @param out
+         *            The {@link OutputStream} to be written to.
+         */
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
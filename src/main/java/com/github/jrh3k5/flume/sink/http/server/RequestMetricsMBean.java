@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+/**
+ * The management interface through which the {@link RequestMetrics} of a request method are published over JMX.
+ * 
+ * @author Joshua Hyde
+ */
+
+public interface RequestMetricsMBean {
+    /**
+     * Get the number of requests that failed.
+     * 
+     * @return The number of requests answered with a client or server error status.
+     */
+    long getErrorCount();
+
+    /**
+     * Get the mean number of events returned by each request.
+     * 
+     * @return The mean number of events returned; 0 if the method does not return events.
+     */
+    double getEventsReturnedMean();
+
+    /**
+     * Get the mean latency of the requests.
+     * 
+     * @return The mean number of microseconds taken to answer each request.
+     */
+    double getLatencyMeanMicros();
+
+    /**
+     * Get the median latency of the requests.
+     * 
+     * @return The 50th percentile of the number of microseconds taken to answer each request.
+     */
+    long getLatencyP50Micros();
+
+    /**
+     * Get the 99th percentile of the latency of the requests.
+     * 
+     * @return The 99th percentile of the number of microseconds taken to answer each request.
+     */
+    long getLatencyP99Micros();
+
+    /**
+     * Get the 99.9th percentile of the latency of the requests.
+     * 
+     * @return The 99.9th percentile of the number of microseconds taken to answer each request.
+     */
+    long getLatencyP999Micros();
+
+    /**
+     * Get the largest latency of the requests.
+     * 
+     * @return The largest number of microseconds taken to answer a request.
+     */
+    long getLatencyMaxMicros();
+
+    /**
+     * Get the 99th percentile of the time spent waiting for locks.
+     * 
+     * @return The 99th percentile of the number of milliseconds for which each request waited to acquire the locks of the event store.
+     */
+    long getLockWaitP99Millis();
+
+    /**
+     * Get the number of bytes of request bodies received.
+     * 
+     * @return The number of bytes of request bodies, as sent over the network.
+     */
+    long getRequestBytes();
+
+    /**
+     * Get the number of requests answered.
+     * 
+     * @return The number of requests answered.
+     */
+    long getRequestCount();
+
+    /**
+     * Get the number of bytes of response bodies sent.
+     * 
+     * @return The number of bytes of response bodies, as sent over the network.
+     */
+    long getResponseBytes();
+
+    /**
+     * Get the 99th percentile of the time taken to write the response bodies.
+     * 
+     * @return The 99th percentile of the number of microseconds taken to serialize and send each response body.
+     */
+    long getWriteLatencyP99Micros();
+}
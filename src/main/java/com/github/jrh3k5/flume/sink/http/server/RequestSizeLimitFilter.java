@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.IOException;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+
+/**
+ * A filter that refuses requests whose bodies exceed a maximum size with a {@code 413 Request Entity Too Large} response.
+ * <p />
+ * Requests declaring a larger {@code Content-Length} are refused before their bodies are read; the bodies of other requests are counted as they are read, so that chunked requests are also limited.
+ * The limit applies to the body as sent, before any decompression; {@link DecodedRequestSizeLimitInterceptor} applies it to compressed bodies once decompressed.
+ * 
+ * @author Joshua Hyde
+ */
+
+@PreMatching
+@Priority(Priorities.AUTHENTICATION - 1)
+public class RequestSizeLimitFilter implements ContainerRequestFilter {
+    private final long maxRequestBytes;
+
+    /**
+     * Create a filter.
+     * 
+     * @param maxRequestBytes
+     *            The maximum number of bytes in a request body.
+     */
+    public RequestSizeLimitFilter(long maxRequestBytes) {
+        this.maxRequestBytes = maxRequestBytes;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (requestContext.getLength() > maxRequestBytes) {
+            requestContext.abortWith(LimitedInputStream.tooLarge(maxRequestBytes));
+            return;
+        }
+
+        if (requestContext.hasEntity()) {
+            requestContext.setEntityStream(new LimitedInputStream(requestContext.getEntityStream(), maxRequestBytes));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link RequestMetrics} of the methods of a single resource - a {@link FlumeSinkServerResource}, or the {@link PartitionedServerResource} of a partitioned server - that store, retrieve and
+ * delete events.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class ResourceMetrics {
+    /**
+     * The names of the resource methods whose requests are measured.
+     */
+    public static final List<String> MEASURED_METHODS = Collections.unmodifiableList(Arrays.asList("deleteEvents", "getEvents", "storeEvents"));
+
+    private final String path;
+    private final Map<String, RequestMetrics> requestMetrics = new LinkedHashMap<String, RequestMetrics>();
+
+    /**
+     * Create the metrics of a resource.
+     * 
+     * @param path
+     *            The path under which the resource is served.
+     */
+    public ResourceMetrics(String path) {
+        this.path = path;
+        for (String methodName : MEASURED_METHODS) {
+            requestMetrics.put(methodName, new RequestMetrics());
+        }
+    }
+
+    /**
+     * Get the path of the resource.
+     * 
+     * @return The path under which the resource is served.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Get the metrics of all of the measured methods.
+     * 
+     * @return A {@link Map} of the {@link RequestMetrics} of each of the {@link #MEASURED_METHODS}, keyed by method name.
+     */
+    public Map<String, RequestMetrics> getRequestMetrics() {
+        return Collections.unmodifiableMap(requestMetrics);
+    }
+
+    /**
+     * Get the metrics of a method.
+     * 
+     * @param methodName
+     *            The name of the resource method.
+     * @return The {@link RequestMetrics} of the given method; {@code null} if its requests are not measured.
+     */
+    public RequestMetrics getRequestMetrics(String methodName) {
+        return requestMetrics.get(methodName);
+    }
+
+    /**
+     * Get all of the measurements.
+     * 
+     * @return A {@link Map} of the {@link RequestMetrics#toMap() measurements} of each measured method, keyed by method name.
+     */
+    public Map<String, Object> toMap() {
+        final Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, RequestMetrics> entry : requestMetrics.entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().toMap());
+        }
+        return metrics;
+    }
+}
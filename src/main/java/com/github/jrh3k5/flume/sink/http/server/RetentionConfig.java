@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+/**
+ * The limits within which an {@link EventRetainer} keeps an {@link EventStore}. Every limit left unset - {@code null} - is not applied; if none are set, events are only removed by the store itself
+ * and by deletions.
+ * <p />
+ * The age of an event is taken from the value of its {@link #getTimestampHeader() timestamp header}, in milliseconds since the epoch, such as is set by Flume's timestamp interceptor; events
+ * without a parseable value for the header, or all events if no header is set, are aged from when the retainer first saw them in the store.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class RetentionConfig {
+    /**
+     * The default number of milliseconds between passes of the retainer over the store.
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+    private Long maxAgeMillis;
+    private Long maxBytes;
+    private Long maxCount;
+    private String timestampHeader;
+    private long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+
+    /**
+     * Get the number of milliseconds between passes of the retainer over the store.
+     * 
+     * @return The retention interval.
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Get the age after which events are evicted.
+     * 
+     * @return The maximum age, in milliseconds, of retained events; {@code null} if events are not evicted by age.
+     */
+    public Long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * Get the number of bytes of events beyond which the oldest events are evicted.
+     * 
+     * @return The maximum number of bytes, as encoded by {@link EventRecordCodec}, of retained events; {@code null} if events are not evicted by size.
+     */
+    public Long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the number of events beyond which the oldest events are evicted.
+     * 
+     * @return The maximum number of retained events; {@code null} if events are not evicted by count.
+     */
+    public Long getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Get the name of the header holding the time at which each event occurred.
+     * 
+     * @return The name of the timestamp header; {@code null} if events are aged from when they were stored.
+     */
+    public String getTimestampHeader() {
+        return timestampHeader;
+    }
+
+    /**
+     * Determine whether any limits are set.
+     * 
+     * @return {@code true} if events are evicted by age, size or count.
+     */
+    public boolean isEnabled() {
+        return maxAgeMillis != null || maxBytes != null || maxCount != null;
+    }
+
+    /**
+     * Set the number of milliseconds between passes of the retainer over the store.
+     * 
+     * @param intervalMillis
+     *            The retention interval.
+     * @throws IllegalArgumentException
+     *             If the given interval is not positive.
+     */
+    public void setIntervalMillis(long intervalMillis) {
+        if (intervalMillis < 1) {
+            throw new IllegalArgumentException("Retention interval must be positive: " + intervalMillis);
+        }
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Set the age after which events are evicted.
+     * 
+     * @param maxAgeMillis
+     *            The maximum age, in milliseconds, of retained events; {@code null} to not evict events by age.
+     */
+    public void setMaxAgeMillis(Long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Set the number of bytes of events beyond which the oldest events are evicted.
+     * 
+     * @param maxBytes
+     *            The maximum number of bytes of retained events; {@code null} to not evict events by size.
+     */
+    public void setMaxBytes(Long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Set the number of events beyond which the oldest events are evicted.
+     * 
+     * @param maxCount
+     *            The maximum number of retained events; {@code null} to not evict events by count.
+     */
+    public void setMaxCount(Long maxCount) {
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * Set the name of the header holding the time at which each event occurred.
+     * 
+     * @param timestampHeader
+     *            The name of the timestamp header; {@code null} to age events from when they were stored.
+     */
+    public void setTimestampHeader(String timestampHeader) {
+        this.timestampHeader = timestampHeader;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.flume.Event;
+
+/**
+ * An {@link EventStore} that holds a fixed number of events in memory.
+ * <p />
+ * Events are held in a ring buffer that can be written to and read from by any number of threads without locking. Each stored event is assigned a sequence number; writers claim a range of sequence
+ * numbers with a single atomic operation and then publish their events into the slots for those sequence numbers. Readers walk the slots from the oldest retained sequence number and stop at the
+ * first slot that has not yet been published.
+ * <p />
+ * What happens when events are stored in excess of the capacity of the buffer is determined by the {@link OverflowPolicy} given to the store.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class RingBufferEventStore implements EventStore {
+    /**
+     * The default number of events that a store can hold.
+     */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicReferenceArray<StoredEvent> slots;
+    /**
+     * The sequence number most recently claimed by a writer.
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The sequence number through which every claimed event has been published or is no longer retained; this is advanced by each writer once it has published its events.
+     */
+    private final AtomicLong published = new AtomicLong();
+    /**
+     * The sequence number of the most recently discarded event; events at or below this number are no longer retained.
+     */
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final List<EventStoreListener> listeners = new CopyOnWriteArrayList<EventStoreListener>();
+
+    /**
+     * Create a store with the {@link #DEFAULT_CAPACITY default capacity} that discards its oldest events when full.
+     */
+    public RingBufferEventStore() {
+        this(DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Create a store.
+     * 
+     * @param capacity
+     *            The maximum number of events to be held by the store.
+     * @param overflowPolicy
+     *            An {@link OverflowPolicy} describing how events in excess of the given capacity are handled.
+     * @throws IllegalArgumentException
+     *             If the given capacity is not positive.
+     */
+    public RingBufferEventStore(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.slots = new AtomicReferenceArray<StoredEvent>(capacity);
+    }
+
+    @Override
+    public void addListener(EventStoreListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void deleteEvents() {
+        final long deleteThrough = head.get();
+        advanceTail(deleteThrough);
+        // Release the references held by the buffer so that the deleted events can be collected
+        for (int i = 0; i < capacity; i++) {
+            final StoredEvent slot = slots.get(i);
+            if (slot != null && slot.getSequence() <= deleteThrough) {
+                slots.compareAndSet(i, slot, null);
+            }
+        }
+    }
+
+    @Override
+    public void deleteEventsThrough(long sequence) {
+        final long deleteThrough = Math.min(sequence, head.get());
+        final long previousTail = tail.get();
+        advanceTail(deleteThrough);
+        // Only the slots between the old and new tail need to be released; there are never more of them than there are slots
+        for (long deleted = Math.max(previousTail + 1, deleteThrough - capacity + 1); deleted <= deleteThrough; deleted++) {
+            final int index = index(deleted);
+            final StoredEvent slot = slots.get(index);
+            if (slot != null && slot.getSequence() <= deleteThrough) {
+                slots.compareAndSet(index, slot, null);
+            }
+        }
+    }
+
+    /**
+     * Get the capacity of this store.
+     * 
+     * @return The maximum number of events held by this store.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public long getEventCount() {
+        return Math.max(0, published.get() - tail.get());
+    }
+
+    @Override
+    public EventBatch getEvents(long afterSequence, int limit) {
+        final List<StoredEvent> events = new ArrayList<StoredEvent>();
+        final long lastSequence = head.get();
+        long cursor = afterSequence;
+        long sequence = Math.max(afterSequence, tail.get()) + 1;
+        while (sequence <= lastSequence && events.size() < limit) {
+            final StoredEvent slot = slots.get(index(sequence));
+            if (slot == null || slot.getSequence() < sequence) {
+                // Not yet published (or deleted while reading) - nothing past this point can be read in order
+                break;
+            }
+
+            if (slot.getSequence() > sequence) {
+                // Overwritten by a newer event; skip ahead to the oldest event still retained
+                sequence = Math.max(sequence + 1, tail.get() + 1);
+                continue;
+            }
+
+            events.add(slot);
+            cursor = sequence++;
+        }
+        return new EventBatch(events, cursor);
+    }
+
+    @Override
+    public long getLastSequence() {
+        return head.get();
+    }
+
+    @Override
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    @Override
+    public boolean hasRoomFor(Collection<? extends Event> events) {
+        return overflowPolicy != OverflowPolicy.BLOCK || capacity - (head.get() - tail.get()) >= events.size();
+    }
+
+    @Override
+    public void removeListener(EventStoreListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void storeEvents(Collection<? extends Event> events) throws EventStoreFullException {
+        final int count = events.size();
+        if (count == 0) {
+            return;
+        }
+
+        final long firstSequence;
+        final int accepted;
+        switch (overflowPolicy) {
+        case DROP_OLDEST:
+            firstSequence = head.getAndAdd(count) + 1;
+            accepted = count;
+            // Whatever this pushes out of the buffer was still retained, whether or not its writer has published it yet
+            droppedCount.addAndGet(advanceTail(firstSequence + count - 1 - capacity));
+            break;
+        case DROP_NEWEST:
+        case BLOCK:
+            while (true) {
+                final long currentHead = head.get();
+                final int available = (int) Math.min(count, capacity - (currentHead - tail.get()));
+                if (overflowPolicy == OverflowPolicy.BLOCK && available < count) {
+                    throw new EventStoreFullException(String.format("Unable to store %d events; only %d of %d slots are available.", count, Math.max(available, 0), capacity));
+                }
+
+                if (available <= 0) {
+                    droppedCount.addAndGet(count);
+                    return;
+                }
+
+                if (head.compareAndSet(currentHead, currentHead + available)) {
+                    firstSequence = currentHead + 1;
+                    accepted = available;
+                    break;
+                }
+            }
+            break;
+        default:
+            throw new IllegalStateException("Unhandled overflow policy: " + overflowPolicy);
+        }
+
+        droppedCount.addAndGet(count - accepted);
+
+        // If a single batch is larger than the buffer, the leading events would be immediately overwritten by the trailing ones; they were counted as dropped when the tail passed them
+        final int skipped = Math.max(accepted - capacity, 0);
+
+        final long storedMillis = System.currentTimeMillis();
+        final Iterator<? extends Event> iterator = events.iterator();
+        for (int i = 0; i < accepted; i++) {
+            final Event event = iterator.next();
+            if (i >= skipped) {
+                publish(firstSequence + i, event, storedMillis);
+            }
+        }
+        advancePublished();
+
+        final long lastSequence = firstSequence + accepted - 1;
+        for (EventStoreListener listener : listeners) {
+            listener.eventsStored(lastSequence);
+        }
+    }
+
+    /**
+     * Move the published head forward over every event that has since been published or is no longer retained. Each writer does this after publishing its events, so a writer that stops at an
+     * event not yet published leaves it to the writer of that event.
+     */
+    private void advancePublished() {
+        while (true) {
+            final long currentPublished = published.get();
+            final long currentTail = tail.get();
+            if (currentPublished < currentTail) {
+                published.compareAndSet(currentPublished, currentTail);
+                continue;
+            }
+
+            final long next = currentPublished + 1;
+            if (next > head.get()) {
+                return;
+            }
+
+            final StoredEvent slot = slots.get(index(next));
+            // A slot holding an older event, or emptied by a deletion that the tail has since been moved past, has yet to be published
+            if (slot == null || slot.getSequence() < next) {
+                return;
+            }
+            published.compareAndSet(currentPublished, next);
+        }
+    }
+
+    /**
+     * Move the tail of the buffer forward.
+     * 
+     * @param sequence
+     *            The sequence number through which events are no longer to be retained. If the tail is already at or past this, then it is not moved.
+     * @return The number of sequence numbers by which the tail was moved.
+     */
+    private long advanceTail(long sequence) {
+        while (true) {
+            final long currentTail = tail.get();
+            if (currentTail >= sequence) {
+                return 0;
+            }
+
+            if (tail.compareAndSet(currentTail, sequence)) {
+                return sequence - currentTail;
+            }
+        }
+    }
+
+    /**
+     * Get the index of the slot for a sequence number.
+     * 
+     * @param sequence
+     *            The sequence number whose slot is to be determined.
+     * @return The index within {@link #slots} of the slot for the given sequence number.
+     */
+    private int index(long sequence) {
+        return (int) (sequence % capacity);
+    }
+
+    /**
+     * Publish an event into the slot for its sequence number.
+     * 
+     * @param sequence
+     *            The sequence number claimed for the event.
+     * @param event
+     *            The {@link Event} to be published.
+     * @param storedMillis
+     *            The time at which the event was stored.
+     */
+    private void publish(long sequence, Event event, long storedMillis) {
+        final int index = index(sequence);
+        final StoredEvent slot = new StoredEvent(sequence, event, storedMillis);
+        while (true) {
+            final StoredEvent current = slots.get(index);
+            if (current != null && current.getSequence() > sequence) {
+                // A writer that claimed a later lap of the buffer has already published into this slot, so the tail has already passed this event
+                return;
+            }
+
+            // Whatever this replaces is at or below the tail - pushed out or deleted - and was accounted for when the tail passed it
+            if (slots.compareAndSet(index, current, slot)) {
+                return;
+            }
+        }
+    }
+}
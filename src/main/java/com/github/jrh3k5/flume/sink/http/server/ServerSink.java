@@ -17,15 +17,11 @@
  */
 package com.github.jrh3k5.flume.sink.http.server;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.client.Entity;
-import javax.ws.rs.client.WebTarget;
-import javax.ws.rs.core.Configuration;
-import javax.ws.rs.core.MediaType;
+import java.util.Locale;
 
 import org.apache.flume.Channel;
 import org.apache.flume.Context;
@@ -35,9 +31,6 @@ import org.apache.flume.Transaction;
 import org.apache.flume.conf.Configurable;
 import org.apache.flume.instrumentation.SinkCounter;
 import org.apache.flume.sink.AbstractSink;
-import org.glassfish.jersey.client.ClientConfig;
-
-import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
 
 /**
  * This is a sink that exposes the events it receives via an HTTP server.
@@ -46,27 +39,155 @@ import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
  * <ul>
  * <li><b>http.server.port</b>: The port on which the HTTP server that exposes its received events listens for requests (default 1337)</li>
  * <li><b>http.server.address.bind</b>: The host to which the HTTP server binds itself (default 0.0.0.0)</li>
- * <li><b>batchSize</b>: The size of the batches that the sink should pull events out of the channel and make available via the HTTP server (default 1000)</li>
- * 
+ * <li><b>batchSize</b>: The size of the batches that the sink should pull events out of the channel and make available via the HTTP server; the maximum size if {@code batch.adaptive} is set
+ * (default 1000)</li>
+ * <li><b>batch.adaptive</b>: Whether the batch size is adjusted between {@code batch.min.size} and {@code batchSize} according to the backlog in the channel and the time taken to store each batch
+ * (default false, see {@link EventBatcher})</li>
+ * <li><b>batch.min.size</b>: The smallest size to which an adaptive batch can shrink (default 10, or {@code batchSize} if smaller)</li>
+ * <li><b>batch.target.latency.ms</b>: The number of milliseconds within which storing an adaptive batch should complete; batches taking longer are made smaller (default 100)</li>
+ * <li><b>batch.linger.ms</b>: The maximum number of milliseconds to wait for more events to fill a batch once the channel has run dry; 0 to store partial batches immediately (default 0)</li>
+ * <li><b>pipeline.depth</b>: The number of batches that can be taken from the channel while earlier batches are being stored, each in a transaction of its own that is committed once its batch is
+ * stored; 0 to take and store each batch in turn on the sink's own thread (default 0, see {@link SinkPipeline})</li>
+ * <li><b>http.server.index.headers</b>: A comma-separated list of the names of headers whose values are indexed, so that retrievals of events filtered on those headers need not scan every
+ * stored event (default none)</li>
+ * <li><b>http.server.fragment.cache</b>: Whether the JSON and binary encodings of each retrieved event are cached alongside it, so that events read repeatedly are not re-encoded; only events
+ * held by the {@code memory} store type are cached (default false)</li>
+ * <li><b>store.type</b>: Where the HTTP server holds its events for retrieval; one of {@code memory} (the default), {@code offheap}, which holds them in direct buffers outside of the heap, or
+ * {@code mmap}, which holds them in memory-mapped files that survive a restart (see {@link EventStoreType})</li>
+ * <li><b>store.capacity</b>: The maximum number of events held by the HTTP server for retrieval in memory (default {@value RingBufferEventStore#DEFAULT_CAPACITY})</li>
+ * <li><b>store.overflow.policy</b>: What to do with events once the HTTP server is holding its maximum number of events; one of {@code drop_oldest} (the default), {@code drop_newest}, or
+ * {@code block}, which leaves the events in the channel until room is made (see {@link OverflowPolicy}); applies to the {@code memory} and {@code offheap} stores</li>
+ * <li><b>store.offheap.max.bytes</b>: The number of bytes of direct buffers that can be allocated to hold events (default {@value OffHeapEventStore#DEFAULT_MAX_BYTES})</li>
+ * <li><b>store.offheap.slab.size</b>: The size, in bytes, of each direct buffer (default {@value OffHeapEventStore#DEFAULT_SLAB_SIZE})</li>
+ * <li><b>store.offheap.max.read.bytes</b>: The number of bytes of events after which a single retrieval stops copying them onto the heap; the rest are left for the next retrieval (default
+ * {@value OffHeapEventStore#DEFAULT_MAX_READ_BYTES})</li>
+ * <li><b>store.mmap.directory</b>: The directory in which events are held in memory-mapped files; required if {@code store.type} is {@code mmap}</li>
+ * <li><b>store.mmap.segment.size</b>: The size, in bytes, of each memory-mapped file (default {@value MappedSegmentEventStore#DEFAULT_SEGMENT_SIZE})</li>
+ * <li><b>store.mmap.max.bytes</b>: The number of bytes of memory-mapped files that can be held before the oldest are deleted (default {@value MappedSegmentEventStore#DEFAULT_MAX_BYTES})</li>
+ * <li><b>store.mmap.max.age.ms</b>: The age, in milliseconds, after which a memory-mapped file whose newest event was written before then is deleted; 0 to not delete files by age (default 0)</li>
+ * <li><b>store.retention.max.age.ms</b>: The age, in milliseconds, after which events are evicted from the store in the background, whatever its type (default: not evicted by age)</li>
+ * <li><b>store.retention.max.bytes</b>: The number of bytes of events beyond which the oldest are evicted from the store in the background (default: not evicted by size)</li>
+ * <li><b>store.retention.max.count</b>: The number of events beyond which the oldest are evicted from the store in the background (default: not evicted by count)</li>
+ * <li><b>store.retention.timestamp.header</b>: The name of the header holding the time, in milliseconds since the epoch, from which the age of each event is measured; events without it are aged
+ * from when they were stored (default: none, so that all events are aged from when they were stored)</li>
+ * <li><b>store.retention.interval.ms</b>: The number of milliseconds between each pass of the background eviction over the store (default {@value RetentionConfig#DEFAULT_INTERVAL_MILLIS}; see
+ * {@link EventRetainer})</li>
+ * <li><b>store.partitions</b>: The number of partitions into which the store is split, each with the configured type and size and each served separately under {@code /partitions/{n}} (default 1,
+ * for an unpartitioned store; see {@link PartitionedEventStore})</li>
+ * <li><b>partition.key</b>: The name of the header whose value chooses the partition of an event; required if {@code store.partitions} is greater than 1</li>
+ * <li><b>http.server.selector.runners</b>: The number of threads reading requests from the network (default: Grizzly's default, based on the number of processors)</li>
+ * <li><b>http.server.worker.threads</b>: The kind of threads on which requests are handled; one of {@code pooled} (the default) or {@code virtual}, which handles each request on a virtual thread
+ * of its own and requires Java 21 or later (see {@link WorkerThreadType})</li>
+ * <li><b>http.server.worker.pool.size</b>: The number of pooled threads handling requests (default: Grizzly's default)</li>
+ * <li><b>http.server.worker.queue.limit</b>: The maximum number of requests that can wait for a pooled thread; -1 for no limit (default: no limit)</li>
+ * <li><b>http.server.keepalive.timeout.seconds</b>: The number of seconds that an idle kept-alive connection is held open; -1 to hold them open indefinitely (default: Grizzly's default of 30)</li>
+ * <li><b>http.server.keepalive.max.requests</b>: The maximum number of requests served over a kept-alive connection; -1 for no maximum (default: Grizzly's default of 256)</li>
+ * <li><b>http.server.max.request.bytes</b>: The maximum size, in bytes, of a request body, both as sent and, if compressed, once decompressed; larger requests are refused (default: no maximum)</li>
+ * <li><b>http.server.compression</b>: The compression applied to request bodies and, for clients that accept it, response bodies; one of {@code none} (the default), {@code gzip}, or {@code deflate}
+ * (see {@link Compression})</li>
  * </ul>
+ * The sink records the batches it takes and the events it drains in its Flume {@link SinkCounter}; those measurements, along with the size of the batches, the time taken to take and store them, and
+ * the occupancy of the store, are also served by the HTTP server from {@code /metrics} (see {@link PublishMetrics}).
+ * <p />
+ * Several sinks configured with the same {@code http.server.address.bind} and {@code server.http.port} share one HTTP server and store (see {@link FlumeSinkServerRegistry}), so that they can drain
+ * a channel in parallel; the server and store are configured by the first of them to start.
  * 
  * @author Joshua Hyde
  */
 
 public class ServerSink extends AbstractSink implements Configurable {
+    /**
+     * The number of milliseconds for which {@link #process()} waits for the pipeline, if one is configured, to publish a batch.
+     */
+    private static final long PIPELINE_PROGRESS_WAIT_MILLIS = 1000;
+
     private int serverPort;
     private String bindAddress;
-    private Client client;
-    private int batchSize;
+    private EventBatcher batcher;
+    private int pipelineDepth;
+    private EventStoreType storeType;
+    private int storeCapacity;
+    private OverflowPolicy overflowPolicy;
+    private Compression compression;
+    private ServerTransportConfig transportConfig;
+    private List<String> indexedHeaders;
+    private boolean cacheFragments;
+    private RetentionConfig retentionConfig;
+    private long offHeapMaxBytes;
+    private int offHeapSlabSize;
+    private int offHeapMaxReadBytes;
+    private File mmapDirectory;
+    private int partitionCount;
+    private String partitionKey;
+    private int mmapSegmentSize;
+    private long mmapMaxBytes;
+    private long mmapMaxAgeMillis;
     private FlumeSinkServer server;
-    private WebTarget eventsTarget;
+    private EventDestination eventStore;
+    private SinkPipeline pipeline;
     private SinkCounter sinkCounter;
+    private SinkInstrumentation instrumentation;
 
     @Override
     public void configure(Context context) {
         serverPort = context.getInteger("server.http.port", 1337);
-        batchSize = context.getInteger("batchSize", 1000);
+        final int batchSize = context.getInteger("batchSize", 1000);
+        final long lingerMillis = context.getLong("batch.linger.ms", 0L);
+        if (context.getBoolean("batch.adaptive", false)) {
+            final int minBatchSize = Math.min(batchSize, context.getInteger("batch.min.size", 10));
+            batcher = new EventBatcher(minBatchSize, batchSize, lingerMillis, context.getLong("batch.target.latency.ms", 100L));
+        } else {
+            batcher = new EventBatcher(batchSize, lingerMillis);
+        }
+        pipelineDepth = context.getInteger("pipeline.depth", 0);
+        if (pipelineDepth < 0) {
+            throw new IllegalArgumentException("pipeline.depth must not be negative: " + pipelineDepth);
+        }
         bindAddress = context.getString("http.server.address.bind", "0.0.0.0");
+        storeType = EventStoreType.valueOf(context.getString("store.type", EventStoreType.MEMORY.name()).toUpperCase(Locale.ENGLISH));
+        storeCapacity = context.getInteger("store.capacity", RingBufferEventStore.DEFAULT_CAPACITY);
+        overflowPolicy = OverflowPolicy.valueOf(context.getString("store.overflow.policy", OverflowPolicy.DROP_OLDEST.name()).toUpperCase(Locale.ENGLISH));
+        offHeapMaxBytes = context.getLong("store.offheap.max.bytes", OffHeapEventStore.DEFAULT_MAX_BYTES);
+        offHeapSlabSize = context.getInteger("store.offheap.slab.size", OffHeapEventStore.DEFAULT_SLAB_SIZE);
+        offHeapMaxReadBytes = context.getInteger("store.offheap.max.read.bytes", OffHeapEventStore.DEFAULT_MAX_READ_BYTES);
+        final String mmapDirectoryName = context.getString("store.mmap.directory");
+        if (storeType == EventStoreType.MMAP && mmapDirectoryName == null) {
+            throw new IllegalArgumentException("store.mmap.directory must be set when store.type is mmap.");
+        }
+        mmapDirectory = mmapDirectoryName == null ? null : new File(mmapDirectoryName);
+        mmapSegmentSize = context.getInteger("store.mmap.segment.size", MappedSegmentEventStore.DEFAULT_SEGMENT_SIZE);
+        mmapMaxBytes = context.getLong("store.mmap.max.bytes", MappedSegmentEventStore.DEFAULT_MAX_BYTES);
+        mmapMaxAgeMillis = context.getLong("store.mmap.max.age.ms", 0L);
+        partitionCount = context.getInteger("store.partitions", 1);
+        partitionKey = context.getString("partition.key");
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("store.partitions must be positive: " + partitionCount);
+        }
+        if (partitionCount > 1 && partitionKey == null) {
+            throw new IllegalArgumentException("partition.key must be set when store.partitions is greater than 1.");
+        }
+        indexedHeaders = new ArrayList<String>();
+        for (String indexedHeader : context.getString("http.server.index.headers", "").split(",")) {
+            if (indexedHeader.trim().length() > 0) {
+                indexedHeaders.add(indexedHeader.trim());
+            }
+        }
+        transportConfig = new ServerTransportConfig();
+        transportConfig.setSelectorRunners(context.getInteger("http.server.selector.runners"));
+        transportConfig.setWorkerThreadType(WorkerThreadType.valueOf(context.getString("http.server.worker.threads", WorkerThreadType.POOLED.name()).toUpperCase(Locale.ENGLISH)));
+        transportConfig.setWorkerPoolSize(context.getInteger("http.server.worker.pool.size"));
+        transportConfig.setWorkerQueueLimit(context.getInteger("http.server.worker.queue.limit"));
+        transportConfig.setKeepAliveTimeoutSeconds(context.getInteger("http.server.keepalive.timeout.seconds"));
+        transportConfig.setKeepAliveMaxRequests(context.getInteger("http.server.keepalive.max.requests"));
+        transportConfig.setMaxRequestBytes(context.getLong("http.server.max.request.bytes"));
+        cacheFragments = context.getBoolean("http.server.fragment.cache", false).booleanValue();
+        retentionConfig = new RetentionConfig();
+        retentionConfig.setMaxAgeMillis(context.getLong("store.retention.max.age.ms"));
+        retentionConfig.setMaxBytes(context.getLong("store.retention.max.bytes"));
+        retentionConfig.setMaxCount(context.getLong("store.retention.max.count"));
+        retentionConfig.setTimestampHeader(context.getString("store.retention.timestamp.header"));
+        retentionConfig.setIntervalMillis(context.getLong("store.retention.interval.ms", Long.valueOf(RetentionConfig.DEFAULT_INTERVAL_MILLIS)).longValue());
+        compression = Compression.valueOf(context.getString("http.server.compression", Compression.NONE.name()).toUpperCase(Locale.ENGLISH));
         if (sinkCounter == null) {
             sinkCounter = new SinkCounter(getName());
         }
@@ -74,24 +195,49 @@ public class ServerSink extends AbstractSink implements Configurable {
 
     @Override
     public Status process() throws EventDeliveryException {
+        if (pipeline != null) {
+            // The pipeline moves the events on threads of its own; report whether it is keeping busy so that the runner backs off while it is not
+            try {
+                return pipeline.awaitPublication(PIPELINE_PROGRESS_WAIT_MILLIS) ? Status.READY : Status.BACKOFF;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Status.BACKOFF;
+            }
+        }
+
         Status status = Status.READY;
         final Channel channel = getChannel();
         final Transaction transaction = channel.getTransaction();
         transaction.begin();
         try {
-            final List<Event> toSend = new ArrayList<Event>();
-            for (int i = 0; i < batchSize; i++) {
-                final Event event = channel.take();
-                if (event == null) {
-                    status = Status.BACKOFF;
-                    break;
-                }
-                toSend.add(event);
+            final int batchSize = batcher.getBatchSize();
+            final long takeStart = System.nanoTime();
+            final List<Event> toSend = batcher.take(channel);
+            instrumentation.batchTaken(toSend.size(), batchSize, System.nanoTime() - takeStart);
+            if (toSend.isEmpty()) {
+                // Nothing to store; back off until the channel has events again
+                status = Status.BACKOFF;
+            } else {
+                final long publishStart = System.nanoTime();
+                eventStore.storeEvents(toSend);
+                final long publishNanos = System.nanoTime() - publishStart;
+                batcher.published(toSend, publishNanos);
+                instrumentation.batchPublished(toSend, publishNanos);
             }
-            eventsTarget.request(MediaType.WILDCARD_TYPE).post(Entity.entity(toSend, MediaType.APPLICATION_JSON));
             transaction.commit();
+            instrumentation.batchCommitted(toSend.size());
+        } catch (EventStoreFullException e) {
+            transaction.rollback();
+            instrumentation.batchRejected();
+            status = Status.BACKOFF;
+        } catch (InterruptedException e) {
+            transaction.rollback();
+            instrumentation.batchRolledBack();
+            Thread.currentThread().interrupt();
+            status = Status.BACKOFF;
         } catch (Exception e) {
             transaction.rollback();
+            instrumentation.batchRolledBack();
         } finally {
             transaction.close();
         }
@@ -102,26 +248,93 @@ public class ServerSink extends AbstractSink implements Configurable {
     public synchronized void start() {
         super.start();
 
-        server = new FlumeSinkServer(bindAddress, serverPort);
         try {
-            server.start();
+            server = FlumeSinkServerRegistry.acquire(bindAddress, serverPort, new FlumeSinkServerRegistry.ServerFactory() {
+                @Override
+                public FlumeSinkServer createServer() {
+                    final FlumeSinkServerConfig config = new FlumeSinkServerConfig();
+                    config.setEventStore(createEventStore());
+                    config.setCompression(compression);
+                    config.setIndexedHeaders(indexedHeaders);
+                    config.setTransportConfig(transportConfig);
+                    config.setCacheFragments(cacheFragments);
+                    config.setRetentionConfig(retentionConfig);
+                    return new FlumeSinkServer(bindAddress, serverPort, config);
+                }
+            });
         } catch (Exception e) {
             throw new IllegalStateException("Failed to start the Flume sink server.", e);
         }
 
-        final Configuration clientConfig = new ClientConfig(JacksonJsonProvider.class);
-        client = ClientBuilder.newClient(clientConfig);
-        eventsTarget = client.target(server.getBaseUri()).path("events");
+        eventStore = server.getEventStore();
+        instrumentation = new SinkInstrumentation(sinkCounter, server.getPublishMetrics());
+        sinkCounter.start();
+        if (pipelineDepth > 0) {
+            pipeline = new SinkPipeline(getChannel(), eventStore, batcher, instrumentation, pipelineDepth);
+            pipeline.start();
+        }
     }
 
     @Override
     public synchronized void stop() {
+        if (pipeline != null) {
+            pipeline.close();
+            pipeline = null;
+        }
+
         try {
-            server.stop();
+            FlumeSinkServerRegistry.release(server);
         } catch (Exception e) {
             throw new IllegalStateException("Failed to stop the Flume sink server.", e);
         }
+        server = null;
+        sinkCounter.stop();
 
         super.stop();
     }
-}
\ No newline at end of file
+
+    /**
+     * Create the store in which the server holds the events taken by this sink.
+     * 
+     * @return An {@link EventStore} of the configured type or, if more than one partition is configured, a {@link PartitionedEventStore} of such stores.
+     * @throws IllegalStateException
+     *             If the store cannot be created.
+     */
+    private EventDestination createEventStore() {
+        if (partitionCount == 1) {
+            return createEventStore(mmapDirectory);
+        }
+
+        final List<EventStore> partitions = new ArrayList<EventStore>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            partitions.add(createEventStore(mmapDirectory == null ? null : new File(mmapDirectory, "partition-" + i)));
+        }
+        return new PartitionedEventStore(partitions, partitionKey);
+    }
+
+    /**
+     * Create a single, unpartitioned store.
+     * 
+     * @param storeDirectory
+     *            The directory in which a {@code mmap} store holds its files.
+     * @return An {@link EventStore} of the configured type.
+     * @throws IllegalStateException
+     *             If the store cannot be created.
+     */
+    private EventStore createEventStore(File storeDirectory) {
+        switch (storeType) {
+        case MEMORY:
+            return new RingBufferEventStore(storeCapacity, overflowPolicy);
+        case OFFHEAP:
+            return new OffHeapEventStore(offHeapMaxBytes, offHeapSlabSize, overflowPolicy, offHeapMaxReadBytes);
+        case MMAP:
+            try {
+                return new MappedSegmentEventStore(storeDirectory, mmapSegmentSize, mmapMaxBytes, mmapMaxAgeMillis);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to open the event store in " + storeDirectory, e);
+            }
+        default:
+            throw new IllegalStateException("Unhandled store type: " + storeType);
+        }
+    }
+}
@@ -19,18 +19,33 @@ package com.github.jrh3k5.flume.sink.http.server;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
-import javax.ws.rs.core.Configuration;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 import org.apache.flume.Event;
 import org.apache.flume.event.SimpleEvent;
 import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.filter.EncodingFilter;
+import org.glassfish.jersey.message.DeflateEncoder;
+import org.glassfish.jersey.message.GZipEncoder;
 
 import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
 
@@ -38,6 +53,24 @@ import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
  * This is a client object used to interact with the HTTP server exposed by the {@link ServerSink}.
  * <p />
  * All instances of this class should {@link #close() closed} when done with them.
+ * <p />
+ * A client keeps track of the last event it has read through {@link #getNewEvents()} and {@link #awaitEvents(long)}, so that successive calls to them return only the events stored in the server
+ * since the previous call.
+ * <p />
+ * A client can be limited to the events having particular header values with {@link #addHeaderFilter(String, String)}; the filtering is done by the server, so that events without those values are
+ * not transferred.
+ * <p />
+ * A client can {@link #registerConsumer(String) register} as a consumer so that events are deleted from the server once it, and every other registered consumer, has {@link #commit() committed}
+ * past them; this makes the server's store hold only the events that have yet to be processed.
+ * <p />
+ * A client of a server whose store is partitioned (see {@link PartitionedServerResource}) can either be {@link #ServerSinkClient(String, int, MediaType, int) dedicated} to one partition, so that
+ * every method of the client works against that partition, or read the new events of all partitions at once with {@link #getNewEventsByPartition()}, which retrieves from the partitions in parallel
+ * and keeps a cursor for each.
+ * <p />
+ * A client can retrieve events {@link #getEventsAsync(long, int, InvocationCallback) asynchronously}, so that one client can have many reads in progress at once. Connections to the server are
+ * kept alive and reused between requests; the timeouts of the connections and the number of asynchronous requests that can be in progress at once are set with a {@link ClientConnectionConfig}.
+ * <p />
+ * A client advertises that it accepts gzip- and deflate-compressed responses, so that it receives compressed events from servers configured with a {@link Compression}.
  * 
  * @author Joshua Hyde
  * @see ServerSink
@@ -45,7 +78,14 @@ import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
 
 public class ServerSinkClient implements Closeable {
     private final Client client;
+    private final WebTarget serverTarget;
     private final WebTarget eventsTarget;
+    private final WebTarget consumersTarget;
+    private final MediaType mediaType;
+    private final Map<String, String> headerFilters = new LinkedHashMap<String, String>();
+    private long cursor;
+    private String consumerId;
+    private long[] partitionCursors = new long[0];
 
     /**
      * Create a client that communicates with an instance hosted on the local machine.
@@ -66,17 +106,161 @@ public class ServerSinkClient implements Closeable {
      *            The port on which the HTTP server is listening for requests.
      */
     public ServerSinkClient(String host, int serverPort) {
-        final Configuration clientConfig = new ClientConfig(JacksonJsonProvider.class);
+        this(host, serverPort, MediaType.APPLICATION_JSON_TYPE);
+    }
+
+    /**
+     * Create a client that communicates with an instance hosted on a specified machine using a specified form of events.
+     * 
+     * @param host
+     *            The host on which the HTTP server is hosted.
+     * @param serverPort
+     *            The port on which the HTTP server is listening for requests.
+     * @param mediaType
+     *            The {@link MediaType} in which events are to be retrieved; either {@link MediaType#APPLICATION_JSON_TYPE} or {@link BinaryEventsProvider#MEDIA_TYPE_TYPE}.
+     * @throws IllegalArgumentException
+     *             If the given media type is not supported.
+     */
+    public ServerSinkClient(String host, int serverPort, MediaType mediaType) {
+        this(host, serverPort, mediaType, null, new ClientConnectionConfig());
+    }
+
+    /**
+     * Create a client that communicates with an instance hosted on a specified machine using a specified form of events and specified connection settings.
+     * 
+     * @param host
+     *            The host on which the HTTP server is hosted.
+     * @param serverPort
+     *            The port on which the HTTP server is listening for requests.
+     * @param mediaType
+     *            The {@link MediaType} in which events are to be retrieved; either {@link MediaType#APPLICATION_JSON_TYPE} or {@link BinaryEventsProvider#MEDIA_TYPE_TYPE}.
+     * @param connectionConfig
+     *            A {@link ClientConnectionConfig} describing the connections to be made to the server.
+     * @throws IllegalArgumentException
+     *             If the given media type is not supported.
+     */
+    public ServerSinkClient(String host, int serverPort, MediaType mediaType, ClientConnectionConfig connectionConfig) {
+        this(host, serverPort, mediaType, null, connectionConfig);
+    }
+
+    /**
+     * Create a client that communicates with a single partition of an instance whose store is partitioned.
+     * 
+     * @param host
+     *            The host on which the HTTP server is hosted.
+     * @param serverPort
+     *            The port on which the HTTP server is listening for requests.
+     * @param mediaType
+     *            The {@link MediaType} in which events are to be retrieved; either {@link MediaType#APPLICATION_JSON_TYPE} or {@link BinaryEventsProvider#MEDIA_TYPE_TYPE}.
+     * @param partition
+     *            The number of the partition, starting at 0, from which events are to be retrieved.
+     * @throws IllegalArgumentException
+     *             If the given media type is not supported or the partition is negative.
+     */
+    public ServerSinkClient(String host, int serverPort, MediaType mediaType, int partition) {
+        this(host, serverPort, mediaType, partition, new ClientConnectionConfig());
+    }
+
+    /**
+     * Create a client that communicates with a single partition of an instance whose store is partitioned using specified connection settings.
+     * 
+     * @param host
+     *            The host on which the HTTP server is hosted.
+     * @param serverPort
+     *            The port on which the HTTP server is listening for requests.
+     * @param mediaType
+     *            The {@link MediaType} in which events are to be retrieved; either {@link MediaType#APPLICATION_JSON_TYPE} or {@link BinaryEventsProvider#MEDIA_TYPE_TYPE}.
+     * @param partition
+     *            The number of the partition, starting at 0, from which events are to be retrieved.
+     * @param connectionConfig
+     *            A {@link ClientConnectionConfig} describing the connections to be made to the server.
+     * @throws IllegalArgumentException
+     *             If the given media type is not supported or the partition is negative.
+     */
+    public ServerSinkClient(String host, int serverPort, MediaType mediaType, int partition, ClientConnectionConfig connectionConfig) {
+        this(host, serverPort, mediaType, Integer.valueOf(partition), connectionConfig);
+    }
+
+    /**
+     * Create a client.
+     * 
+     * @param host
+     *            The host on which the HTTP server is hosted.
+     * @param serverPort
+     *            The port on which the HTTP server is listening for requests.
+     * @param mediaType
+     *            The {@link MediaType} in which events are to be retrieved.
+     * @param partition
+     *            The number of the partition to which the client is dedicated; {@code null} if the client is not dedicated to a partition.
+     * @param connectionConfig
+     *            A {@link ClientConnectionConfig} describing the connections to be made to the server.
+     * @throws IllegalArgumentException
+     *             If the given media type is not supported or the partition is negative.
+     */
+    private ServerSinkClient(String host, int serverPort, MediaType mediaType, Integer partition, ClientConnectionConfig connectionConfig) {
+        if (partition != null && partition.intValue() < 0) {
+            throw new IllegalArgumentException("The partition must not be negative: " + partition);
+        }
+
+        if (!MediaType.APPLICATION_JSON_TYPE.equals(mediaType) && !BinaryEventsProvider.MEDIA_TYPE_TYPE.equals(mediaType)) {
+            throw new IllegalArgumentException("Unsupported media type: " + mediaType);
+        }
+
+        final ClientConfig clientConfig = new ClientConfig(JacksonJsonProvider.class, BinaryEventsProvider.class, EncodingFilter.class, GZipEncoder.class, DeflateEncoder.class);
+        if (connectionConfig.getConnectTimeoutMillis() != null) {
+            clientConfig.property(ClientProperties.CONNECT_TIMEOUT, connectionConfig.getConnectTimeoutMillis());
+        }
+        if (connectionConfig.getReadTimeoutMillis() != null) {
+            clientConfig.property(ClientProperties.READ_TIMEOUT, connectionConfig.getReadTimeoutMillis());
+        }
+        if (connectionConfig.getMaxAsyncRequests() != null) {
+            clientConfig.property(ClientProperties.ASYNC_THREADPOOL_SIZE, connectionConfig.getMaxAsyncRequests());
+        }
         client = ClientBuilder.newClient(clientConfig);
 
-        this.eventsTarget = client.target(String.format("http://%s:%d", host, serverPort)).path("events");
+        this.serverTarget = client.target(String.format("http://%s:%d", host, serverPort));
+        final WebTarget baseTarget = partition == null ? serverTarget : partitionTarget(partition.intValue());
+        this.eventsTarget = baseTarget.path("events");
+        this.consumersTarget = baseTarget.path("consumers");
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Retrieve the events stored in the HTTP server since the last invocation of this method or {@link #getNewEvents()}, waiting for events to be stored if there are none.
+     * 
+     * @param timeoutMillis
+     *            The maximum number of milliseconds to wait for events to be stored.
+     * @return A {@link List} of the events stored in the server since the last read; this is empty if no events were stored within the given timeout.
+     */
+    public synchronized List<Event> awaitEvents(long timeoutMillis) {
+        return readNewEvents(filter(eventsTarget).queryParam("waitMs", timeoutMillis), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Limit the events retrieved by this client to those with a particular header value. Events must have all of the header values added to be retrieved. This does not reset the cursor tracked by this
+     * client.
+     * 
+     * @param name
+     *            The name of the header.
+     * @param value
+     *            The value that the header must have; this replaces any value previously added for the same header.
+     */
+    public synchronized void addHeaderFilter(String name, String value) {
+        headerFilters.put(name, value);
+    }
+
+    /**
+     * Remove all header values {@link #addHeaderFilter(String, String) added} to limit the events retrieved by this client. This does not reset the cursor tracked by this client.
+     */
+    public synchronized void clearHeaderFilters() {
+        headerFilters.clear();
     }
 
     /**
      * Clear events stored in the HTTP server.
      */
     public void clearEvents() {
-        eventsTarget.request().delete();
+        eventsTarget.request().delete().close();
     }
 
     @Override
@@ -85,12 +269,429 @@ public class ServerSinkClient implements Closeable {
     }
 
     /**
-     * Retrieve all events currently stored in the HTTP server.
+     * Commit the cursor tracked by this client as the offset of the consumer as which this client is registered, so that the events read so far can be deleted once every other registered consumer
+     * has also committed past them.
+     * 
+     * @throws IllegalStateException
+     *             If this client is not {@link #registerConsumer(String) registered} as a consumer or the commit fails.
+     */
+    public synchronized void commit() {
+        if (consumerId == null) {
+            throw new IllegalStateException("This client is not registered as a consumer.");
+        }
+
+        final Response response = consumersTarget.path(consumerId).path("commit").queryParam("seq", cursor).request().post(null);
+        try {
+            if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+                throw new IllegalStateException("Failed to commit offset " + cursor + " for consumer " + consumerId + "; status: " + response.getStatus());
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Get the cursor tracked by this client.
+     * 
+     * @return The sequence number of the last event read by {@link #getNewEvents()} or {@link #awaitEvents(long)}.
+     */
+    public synchronized long getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Retrieve all events currently stored in the HTTP server that have the header values added by {@link #addHeaderFilter(String, String)}.
      * 
      * @return A {@link List} of the events stored in the server.
      */
     public List<Event> getEvents() {
-        final Event[] events = eventsTarget.request(MediaType.APPLICATION_JSON_TYPE).get(SimpleEvent[].class);
+        final WebTarget target;
+        synchronized (this) {
+            target = filter(eventsTarget);
+        }
+        final Event[] events = target.request(mediaType).get(SimpleEvent[].class);
         return Arrays.asList(events);
     }
+
+    /**
+     * Asynchronously retrieve the events stored in the HTTP server after a given sequence number that have the header values added by {@link #addHeaderFilter(String, String)}. This neither uses
+     * nor moves the cursor tracked by this client; the cursor of the returned page is the one from which the next retrieval should continue.
+     * 
+     * @param afterSequence
+     *            The sequence number after which events are to be retrieved.
+     * @param limit
+     *            The maximum number of events to be retrieved.
+     * @param callback
+     *            An {@link InvocationCallback} to be notified of the page once it is retrieved, or of the failure to retrieve it; this can be {@code null}.
+     * @return A {@link Future} of the retrieved {@link EventPage}.
+     */
+    public Future<EventPage> getEventsAsync(long afterSequence, int limit, InvocationCallback<EventPage> callback) {
+        final WebTarget target;
+        synchronized (this) {
+            target = filter(eventsTarget);
+        }
+        final PendingPage pendingPage = new PendingPage(callback);
+        pendingPage.setResponse(target.queryParam("after", afterSequence).queryParam("limit", limit).request(mediaType).async().get(pendingPage));
+        return pendingPage;
+    }
+
+    /**
+     * Retrieve the events stored in each partition of the HTTP server since the last invocation of this method, retrieving from all of the partitions in parallel. The cursor kept for each
+     * partition is separate from the cursor used by {@link #getNewEvents()}.
+     * 
+     * @return A {@link List} containing, for each partition in order, a {@link List} of the events stored in the partition since the last invocation of this method.
+     * @throws IllegalStateException
+     *             If the retrieval from any partition fails, in which case the cursor of no partition is moved.
+     */
+    public synchronized List<List<Event>> getNewEventsByPartition() {
+        final int partitionCount = getPartitionCount();
+        if (partitionCursors.length != partitionCount) {
+            partitionCursors = Arrays.copyOf(partitionCursors, partitionCount);
+        }
+
+        final List<Future<Response>> pendingResponses = new ArrayList<Future<Response>>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            pendingResponses.add(filter(partitionTarget(i).path("events")).queryParam("after", partitionCursors[i]).request(mediaType).async().get());
+        }
+
+        // The cursors are only moved once every partition has been read, so that a failure leaves them all where they were
+        final List<Response> responses = new ArrayList<Response>(partitionCount);
+        final long[] cursors = new long[partitionCount];
+        final List<List<Event>> partitionEvents = new ArrayList<List<Event>>(partitionCount);
+        try {
+            for (int i = 0; i < partitionCount; i++) {
+                final Response response;
+                try {
+                    response = pendingResponses.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while retrieving events from partition " + i, e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Failed to retrieve events from partition " + i, e.getCause());
+                }
+                responses.add(response);
+
+                if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                    throw new IllegalStateException(String.format("Failed to retrieve events from partition %d: %d %s", i, response.getStatus(), response.getStatusInfo().getReasonPhrase()));
+                }
+                partitionEvents.add(Arrays.<Event> asList(response.readEntity(SimpleEvent[].class)));
+                cursors[i] = readCursor(response, "retrieve events from partition " + i);
+            }
+        } finally {
+            for (Response response : responses) {
+                response.close();
+            }
+            for (int i = responses.size(); i < partitionCount; i++) {
+                discard(pendingResponses.get(i));
+            }
+        }
+
+        System.arraycopy(cursors, 0, partitionCursors, 0, partitionCount);
+        return partitionEvents;
+    }
+
+    /**
+     * Get the number of partitions of the store of the HTTP server.
+     * 
+     * @return The number of partitions.
+     */
+    public int getPartitionCount() {
+        return Integer.parseInt(serverTarget.path("partitions").request(MediaType.TEXT_PLAIN_TYPE).get(String.class));
+    }
+
+    /**
+     * Retrieve the events stored in the HTTP server since the last invocation of this method or {@link #awaitEvents(long)}.
+     * 
+     * @return A {@link List} of the events stored in the server since the last invocation of this method.
+     */
+    public List<Event> getNewEvents() {
+        return getNewEvents(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieve the events stored in the HTTP server since the last invocation of this method or {@link #awaitEvents(long)}.
+     * 
+     * @param limit
+     *            The maximum number of events to be retrieved; any further events will be retrieved by the next invocation.
+     * @return A {@link List} of the events stored in the server since the last invocation of this method.
+     * @throws IllegalStateException
+     *             If the server does not respond with the events.
+     */
+    public synchronized List<Event> getNewEvents(int limit) {
+        return readNewEvents(filter(eventsTarget), limit);
+    }
+
+    /**
+     * Register this client as a consumer, so that events are not deleted from the server until this client has {@link #commit() committed} past them. If the consumer is already registered - by
+     * this or an earlier client - the cursor tracked by this client is moved to the offset last committed for it, so that reading resumes after the events already acknowledged.
+     * 
+     * @param consumerId
+     *            The ID of the consumer.
+     * @throws IllegalStateException
+     *             If the registration fails.
+     */
+    public synchronized void registerConsumer(String consumerId) {
+        final Response response = consumersTarget.path(consumerId).queryParam("seq", cursor).request().put(Entity.text(""));
+        try {
+            final int status = response.getStatus();
+            if (status != Response.Status.CREATED.getStatusCode() && status != Response.Status.OK.getStatusCode()) {
+                throw new IllegalStateException("Failed to register consumer " + consumerId + "; status: " + status);
+            }
+            cursor = readCursor(response, "register consumer " + consumerId);
+            this.consumerId = consumerId;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Reset the cursor tracked by this client so that the next invocation of {@link #getNewEvents()} retrieves all events stored in the server.
+     */
+    public synchronized void resetCursor() {
+        cursor = 0;
+    }
+
+    /**
+     * Unregister the consumer as which this client is {@link #registerConsumer(String) registered}, so that events are no longer held in the server on its account. This does nothing if this client
+     * is not registered.
+     */
+    public synchronized void unregisterConsumer() {
+        if (consumerId == null) {
+            return;
+        }
+
+        consumersTarget.path(consumerId).request().delete().close();
+        consumerId = null;
+    }
+
+    /**
+     * Verify that a request for events succeeded.
+     * 
+     * @param response
+     *            The {@link Response} to the request.
+     * @throws IllegalStateException
+     *             If the server did not respond with the events.
+     */
+    private static void checkEventsRetrieved(Response response) {
+        if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+            throw new IllegalStateException("Failed to retrieve events; status: " + response.getStatus());
+        }
+    }
+
+    /**
+     * Discard a response that will not be read, cancelling its request if it is still in progress and otherwise closing it.
+     * 
+     * @param pendingResponse
+     *            The {@link Future} of the {@link Response} to be discarded.
+     */
+    private static void discard(Future<Response> pendingResponse) {
+        if (pendingResponse.cancel(true)) {
+            return;
+        }
+
+        try {
+            pendingResponse.get().close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // The request failed, so there is no response to close
+        }
+    }
+
+    /**
+     * Add the header values to be filtered on to a target; this must be called while synchronized on this object.
+     * 
+     * @param target
+     *            The {@link WebTarget} to which the header values are to be added.
+     * @return A {@link WebTarget} filtering on the header values added by {@link #addHeaderFilter(String, String)}.
+     */
+    private WebTarget filter(WebTarget target) {
+        WebTarget filtered = target;
+        for (Map.Entry<String, String> headerFilter : headerFilters.entrySet()) {
+            filtered = filtered.queryParam(FlumeSinkServerResource.HEADER_PARAMETER_PREFIX + headerFilter.getKey(), headerFilter.getValue());
+        }
+        return filtered;
+    }
+
+    /**
+     * Get the target of a partition.
+     * 
+     * @param partition
+     *            The number of the partition.
+     * @return A {@link WebTarget} under which the given partition is served.
+     */
+    private WebTarget partitionTarget(int partition) {
+        return serverTarget.path("partitions").path(Integer.toString(partition));
+    }
+
+    /**
+     * Read the cursor given by the server in a response.
+     * 
+     * @param response
+     *            The {@link Response} carrying the cursor.
+     * @param action
+     *            A description of the request, used in the message of any failure.
+     * @return The sequence number through which the server has answered the request.
+     * @throws IllegalStateException
+     *             If the response does not carry a valid cursor.
+     */
+    private static long readCursor(Response response, String action) {
+        final String cursorHeader = response.getHeaderString(FlumeSinkServerResource.CURSOR_HEADER);
+        try {
+            return Long.parseLong(cursorHeader);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Failed to " + action + "; invalid " + FlumeSinkServerResource.CURSOR_HEADER + " header: " + cursorHeader, e);
+        }
+    }
+
+    /**
+     * Read the events after the cursor tracked by this client and move the cursor past them.
+     * 
+     * @param target
+     *            The {@link WebTarget} from which the events are to be read.
+     * @param limit
+     *            The maximum number of events to be read.
+     * @return A {@link List} of the events read.
+     * @throws IllegalStateException
+     *             If the server does not respond with the events.
+     */
+    private List<Event> readNewEvents(WebTarget target, int limit) {
+        final Response response = target.queryParam("after", cursor).queryParam("limit", limit).request(mediaType).get();
+        try {
+            checkEventsRetrieved(response);
+            final Event[] events = response.readEntity(SimpleEvent[].class);
+            cursor = readCursor(response, "retrieve events");
+            return Arrays.asList(events);
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * A {@link Future} of an {@link EventPage} that is completed by the {@link InvocationCallback} of the request retrieving it.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private static class PendingPage implements Future<EventPage>, InvocationCallback<Response> {
+        private final CountDownLatch completion = new CountDownLatch(1);
+        private final InvocationCallback<EventPage> callback;
+        private volatile Future<Response> response;
+        private volatile EventPage page;
+        private volatile Throwable failure;
+        private volatile boolean cancelled;
+
+        /**
+         * Create a pending page.
+         * 
+         * @param callback
+         *            The {@link InvocationCallback} to be notified of the page; this can be {@code null}.
+         */
+        public PendingPage(InvocationCallback<EventPage> callback) {
+            this.callback = callback;
+        }
+
+        /**
+         * {@inheritDoc} The callback of a cancelled request is not invoked, so this completes the page itself: any thread waiting on it is released with a {@link CancellationException}.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (completion.getCount() == 0 || !response.cancel(mayInterruptIfRunning)) {
+                return false;
+            }
+            cancelled = true;
+            completion.countDown();
+            return true;
+        }
+
+        @Override
+        public void completed(Response completedResponse) {
+            if (cancelled) {
+                completedResponse.close();
+                return;
+            }
+
+            try {
+                checkEventsRetrieved(completedResponse);
+                final Event[] events = completedResponse.readEntity(SimpleEvent[].class);
+                page = new EventPage(Arrays.asList(events), readCursor(completedResponse, "retrieve events"));
+            } catch (RuntimeException e) {
+                failed(e);
+                return;
+            } finally {
+                completedResponse.close();
+            }
+
+            completion.countDown();
+            if (callback != null) {
+                callback.completed(page);
+            }
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            if (cancelled) {
+                return;
+            }
+
+            failure = throwable;
+            completion.countDown();
+            if (callback != null) {
+                callback.failed(throwable);
+            }
+        }
+
+        @Override
+        public EventPage get() throws InterruptedException, ExecutionException {
+            completion.await();
+            return getPage();
+        }
+
+        @Override
+        public EventPage get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!completion.await(timeout, unit)) {
+                throw new TimeoutException("The page was not retrieved within " + timeout + " " + unit);
+            }
+            return getPage();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return completion.getCount() == 0;
+        }
+
+        /**
+         * Set the future of the response of the request retrieving the page.
+         * 
+         * @param response
+         *            The {@link Future} of the {@link Response} retrieving the page.
+         */
+        public void setResponse(Future<Response> response) {
+            this.response = response;
+        }
+
+        /**
+         * Get the retrieved page once the request has completed.
+         * 
+         * @return The retrieved {@link EventPage}.
+         * @throws CancellationException
+         *             If the retrieval was cancelled.
+         * @throws ExecutionException
+         *             If the retrieval failed.
+         */
+        private EventPage getPage() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException("The retrieval of the page was cancelled.");
+            }
+            if (failure != null) {
+                throw new ExecutionException("Failed to retrieve events.", failure);
+            }
+            return page;
+        }
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The settings of the network transport of a {@link FlumeSinkServer}. Every setting left unset - {@code null} - keeps the default of the underlying Grizzly server.
+ * <p />
+ * Requests are read by the selector threads and handled - including the running of the resource methods - by the worker threads. Slow clients hold worker threads for as long as their requests and
+ * responses take to transfer, so a server serving many of them should have a larger worker pool, or use {@link WorkerThreadType#VIRTUAL virtual threads} or an executor of its own.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class ServerTransportConfig {
+    private Integer selectorRunners;
+    private Integer workerPoolSize;
+    private Integer workerQueueLimit;
+    private WorkerThreadType workerThreadType = WorkerThreadType.POOLED;
+    private ExecutorService workerExecutor;
+    private Integer keepAliveTimeoutSeconds;
+    private Integer keepAliveMaxRequests;
+    private Long maxRequestBytes;
+
+    /**
+     * Get the number of seconds that an idle kept-alive connection is held open.
+     * 
+     * @return The keep-alive timeout; {@code null} if the default is used.
+     */
+    public Integer getKeepAliveTimeoutSeconds() {
+        return keepAliveTimeoutSeconds;
+    }
+
+    /**
+     * Get the maximum number of requests served over a kept-alive connection.
+     * 
+     * @return The maximum number of requests; {@code null} if the default is used.
+     */
+    public Integer getKeepAliveMaxRequests() {
+        return keepAliveMaxRequests;
+    }
+
+    /**
+     * Get the maximum size of a request body.
+     * 
+     * @return The maximum number of bytes in a request body; {@code null} if request bodies are not limited.
+     */
+    public Long getMaxRequestBytes() {
+        return maxRequestBytes;
+    }
+
+    /**
+     * Get the number of selector threads.
+     * 
+     * @return The number of selector threads; {@code null} if the default is used.
+     */
+    public Integer getSelectorRunners() {
+        return selectorRunners;
+    }
+
+    /**
+     * Get the executor on which requests are handled.
+     * 
+     * @return The {@link ExecutorService} on which requests are handled; {@code null} if the server creates its own worker threads.
+     */
+    public ExecutorService getWorkerExecutor() {
+        return workerExecutor;
+    }
+
+    /**
+     * Get the number of pooled worker threads.
+     * 
+     * @return The number of worker threads; {@code null} if the default is used.
+     */
+    public Integer getWorkerPoolSize() {
+        return workerPoolSize;
+    }
+
+    /**
+     * Get the maximum number of requests that can wait for a pooled worker thread.
+     * 
+     * @return The maximum number of waiting requests; {@code null} if the default is used.
+     */
+    public Integer getWorkerQueueLimit() {
+        return workerQueueLimit;
+    }
+
+    /**
+     * Get the kind of worker threads created by the server.
+     * 
+     * @return A {@link WorkerThreadType}.
+     */
+    public WorkerThreadType getWorkerThreadType() {
+        return workerThreadType;
+    }
+
+    /**
+     * Set the number of seconds that an idle kept-alive connection is held open.
+     * 
+     * @param keepAliveTimeoutSeconds
+     *            The keep-alive timeout; -1 to hold idle connections open indefinitely, or {@code null} to use the default.
+     */
+    public void setKeepAliveTimeoutSeconds(Integer keepAliveTimeoutSeconds) {
+        this.keepAliveTimeoutSeconds = keepAliveTimeoutSeconds;
+    }
+
+    /**
+     * Set the maximum number of requests served over a kept-alive connection.
+     * 
+     * @param keepAliveMaxRequests
+     *            The maximum number of requests; -1 for no maximum, or {@code null} to use the default.
+     */
+    public void setKeepAliveMaxRequests(Integer keepAliveMaxRequests) {
+        this.keepAliveMaxRequests = keepAliveMaxRequests;
+    }
+
+    /**
+     * Set the maximum size of a request body. Requests with larger bodies are refused with a {@code 413 Request Entity Too Large} response.
+     * 
+     * @param maxRequestBytes
+     *            The maximum number of bytes in a request body, both as sent and, if compressed, once decompressed; {@code null} to not limit request bodies.
+     */
+    public void setMaxRequestBytes(Long maxRequestBytes) {
+        this.maxRequestBytes = maxRequestBytes;
+    }
+
+    /**
+     * Set the number of selector threads.
+     * 
+     * @param selectorRunners
+     *            The number of selector threads; {@code null} to use the default.
+     */
+    public void setSelectorRunners(Integer selectorRunners) {
+        this.selectorRunners = selectorRunners;
+    }
+
+    /**
+     * Set an executor of the caller's on which requests are to be handled; this takes precedence over the worker thread type and pool settings. The executor is not shut down by the server.
+     * 
+     * @param workerExecutor
+     *            The {@link ExecutorService} on which requests are to be handled; {@code null} for the server to create its own worker threads.
+     */
+    public void setWorkerExecutor(ExecutorService workerExecutor) {
+        this.workerExecutor = workerExecutor;
+    }
+
+    /**
+     * Set the number of pooled worker threads.
+     * 
+     * @param workerPoolSize
+     *            The number of worker threads; {@code null} to use the default.
+     */
+    public void setWorkerPoolSize(Integer workerPoolSize) {
+        this.workerPoolSize = workerPoolSize;
+    }
+
+    /**
+     * Set the maximum number of requests that can wait for a pooled worker thread.
+     * 
+     * @param workerQueueLimit
+     *            The maximum number of waiting requests; -1 for no limit, or {@code null} to use the default.
+     */
+    public void setWorkerQueueLimit(Integer workerQueueLimit) {
+        this.workerQueueLimit = workerQueueLimit;
+    }
+
+    /**
+     * Set the kind of worker threads created by the server.
+     * 
+     * @param workerThreadType
+     *            A {@link WorkerThreadType}.
+     */
+    public void setWorkerThreadType(WorkerThreadType workerThreadType) {
+        this.workerThreadType = workerThreadType;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.Collection;
+
+import org.apache.flume.Event;
+import org.apache.flume.instrumentation.SinkCounter;
+
+/**
+ * This records the progress of a single {@link ServerSink} both in its Flume {@link SinkCounter}, which is published over JMX, and in the {@link PublishMetrics} of the server it shares with
+ * other sinks.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class SinkInstrumentation {
+    private final SinkCounter sinkCounter;
+    private final PublishMetrics publishMetrics;
+
+    /**
+     * Create the instrumentation of a sink.
+     * 
+     * @param sinkCounter
+     *            The {@link SinkCounter} of the sink.
+     * @param publishMetrics
+     *            The {@link PublishMetrics} of the server into whose store the sink publishes events.
+     */
+    public SinkInstrumentation(SinkCounter sinkCounter, PublishMetrics publishMetrics) {
+        this.sinkCounter = sinkCounter;
+        this.publishMetrics = publishMetrics;
+    }
+
+    /**
+     * Record the commit of a transaction.
+     * 
+     * @param eventCount
+     *            The number of events taken in the transaction.
+     */
+    public void batchCommitted(int eventCount) {
+        sinkCounter.addToEventDrainSuccessCount(eventCount);
+    }
+
+    /**
+     * Record the storing of a batch.
+     * 
+     * @param events
+     *            A {@link Collection} of the {@link Event} objects accepted by the store.
+     * @param publishNanos
+     *            The number of nanoseconds taken by the store to accept the batch.
+     */
+    public void batchPublished(Collection<? extends Event> events, long publishNanos) {
+        publishMetrics.recordPublish(events, publishNanos);
+    }
+
+    /**
+     * Record the refusal of a batch by the store and the rollback of its transaction.
+     */
+    public void batchRejected() {
+        publishMetrics.recordRejection();
+    }
+
+    /**
+     * Record the rollback of a transaction for any reason other than the refusal of its batch by the store.
+     */
+    public void batchRolledBack() {
+        publishMetrics.recordRollback();
+    }
+
+    /**
+     * Record the taking of a batch from the channel.
+     * 
+     * @param eventCount
+     *            The number of events taken.
+     * @param batchSize
+     *            The number of events that were to be taken.
+     * @param takeNanos
+     *            The number of nanoseconds taken to take the batch.
+     */
+    public void batchTaken(int eventCount, int batchSize, long takeNanos) {
+        if (eventCount == 0) {
+            sinkCounter.incrementBatchEmptyCount();
+        } else if (eventCount < batchSize) {
+            sinkCounter.incrementBatchUnderflowCount();
+        } else {
+            sinkCounter.incrementBatchCompleteCount();
+        }
+        sinkCounter.addToEventDrainAttemptCount(eventCount);
+        publishMetrics.recordTake(eventCount, takeNanos);
+    }
+
+    /**
+     * Get the Flume counter of the sink.
+     * 
+     * @return The {@link SinkCounter} of the sink.
+     */
+    public SinkCounter getSinkCounter() {
+        return sinkCounter;
+    }
+
+    /**
+     * Get the metrics of the server.
+     * 
+     * @return The {@link PublishMetrics} of the server into whose store the sink publishes events.
+     */
+    public PublishMetrics getPublishMetrics() {
+        return publishMetrics;
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.flume.Channel;
+import org.apache.flume.Event;
+import org.apache.flume.Transaction;
+
+/**
+ * This moves events from a channel into an {@link EventDestination} in two overlapping stages, so that taking events from the channel is not held up by the publication of the previous batch.
+ * <p />
+ * The take stage consists of a number of threads - the depth of the pipeline - each of which takes a batch of events from the channel within a transaction of its own and hands it off to the publish
+ * stage. The publish stage is a single thread that stores the handed-off batches in the order in which they were handed off. A take thread commits its transaction only once its batch has been
+ * accepted by the store, and rolls it back if the store refuses it, so that no events are lost; as Flume transactions are bound to the thread that began them, the depth is also the maximum number
+ * of batches that can be awaiting publication at once.
+ * <p />
+ * When the pipeline is closed, a batch is either published and committed or, if its publication has yet to start, withdrawn and rolled back; a batch is never both stored and returned to the
+ * channel.
+ * <p />
+ * All instances of this class should be {@link #close() closed} when done with them.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class SinkPipeline implements Closeable {
+    /**
+     * The number of milliseconds that a take thread waits after finding the channel empty or the store full.
+     */
+    private static final long BACKOFF_MILLIS = 500;
+    /**
+     * The maximum number of milliseconds that closing the pipeline waits for the take threads to finish before interrupting them.
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000;
+    private static final AtomicInteger INSTANCE_COUNT = new AtomicInteger();
+
+    private final Channel channel;
+    private final EventDestination eventStore;
+    private final EventBatcher batcher;
+    private final SinkInstrumentation instrumentation;
+    private final int depth;
+    private final ExecutorService takeExecutor;
+    private final ExecutorService publishExecutor;
+    private final Object progressLock = new Object();
+    /**
+     * Counted down when the pipeline is closed, waking any take threads that are backing off.
+     */
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private volatile boolean running;
+    /**
+     * The batches handed off to the publish stage whose take threads are waiting on their publication.
+     */
+    private final Set<Publication> pendingPublications = Collections.newSetFromMap(new ConcurrentHashMap<Publication, Boolean>());
+    private long publishedBatchCount;
+
+    /**
+     * Create a pipeline. The pipeline does not move events until it is {@link #start() started}.
+     * 
+     * @param channel
+     *            The {@link Channel} from which events are to be taken.
+     * @param eventStore
+     *            The {@link EventDestination} in which events are to be stored.
+     * @param batcher
+     *            The {@link EventBatcher} used to take batches of events in each transaction.
+     * @param instrumentation
+     *            The {@link SinkInstrumentation} in which the taking, publication and commit of each batch is recorded.
+     * @param depth
+     *            The maximum number of batches that can be taken from the channel and awaiting publication at once.
+     * @throws IllegalArgumentException
+     *             If the given depth is not positive.
+     */
+    public SinkPipeline(Channel channel, EventDestination eventStore, EventBatcher batcher, SinkInstrumentation instrumentation, int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("The depth of the pipeline must be positive: " + depth);
+        }
+
+        this.channel = channel;
+        this.eventStore = eventStore;
+        this.batcher = batcher;
+        this.instrumentation = instrumentation;
+        this.depth = depth;
+        final int instance = INSTANCE_COUNT.incrementAndGet();
+        this.takeExecutor = Executors.newFixedThreadPool(depth, new DaemonThreadFactory("sink-pipeline-take-" + instance));
+        this.publishExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("sink-pipeline-publish-" + instance));
+    }
+
+    /**
+     * Wait for a batch to be published.
+     * 
+     * @param timeoutMillis
+     *            The maximum number of milliseconds to wait.
+     * @return {@code true} if a batch was published within the given timeout; {@code false} if not.
+     * @throws InterruptedException
+     *             If the waiting thread is interrupted.
+     */
+    public boolean awaitPublication(long timeoutMillis) throws InterruptedException {
+        synchronized (progressLock) {
+            final long startCount = publishedBatchCount;
+            final long deadline = System.currentTimeMillis() + timeoutMillis;
+            long remaining = timeoutMillis;
+            while (publishedBatchCount == startCount && remaining > 0) {
+                progressLock.wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return publishedBatchCount != startCount;
+        }
+    }
+
+    /**
+     * Stop taking events from the channel. Batches whose publication has yet to start are withdrawn and their transactions rolled back; a batch that is being published is waited for, and its
+     * transaction committed once it is stored. This waits for the take threads to finish their transactions, interrupting them if they take longer than {@value #CLOSE_TIMEOUT_MILLIS}
+     * milliseconds.
+     */
+    @Override
+    public void close() {
+        running = false;
+        closed.countDown();
+        takeExecutor.shutdown();
+        // Once the publish stage is shut down no more batches can be handed off, so every batch that it will publish is among those pending
+        publishExecutor.shutdown();
+        for (Publication publication : pendingPublications) {
+            publication.withdraw();
+        }
+        try {
+            if (!takeExecutor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                takeExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        publishExecutor.shutdownNow();
+    }
+
+    /**
+     * Get the depth of this pipeline.
+     * 
+     * @return The maximum number of batches that can be taken from the channel and awaiting publication at once.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get the number of batches published by this pipeline.
+     * 
+     * @return The number of batches stored by the publish stage.
+     */
+    public long getPublishedBatchCount() {
+        synchronized (progressLock) {
+            return publishedBatchCount;
+        }
+    }
+
+    /**
+     * Start moving events from the channel to the store.
+     */
+    public void start() {
+        running = true;
+        for (int i = 0; i < depth; i++) {
+            takeExecutor.execute(new TakeStage());
+        }
+    }
+
+    /**
+     * Take a batch of events from the channel and wait for its publication; this must be called within a transaction.
+     * 
+     * @return The number of events taken and published; 0 if the channel had no events.
+     * @throws EventStoreFullException
+     *             If the store refused the batch.
+     * @throws ExecutionException
+     *             If the publication of the batch failed for any other reason.
+     * @throws CancellationException
+     *             If the pipeline was closed, or the thread interrupted, before the publication of the batch started, in which case the batch is not published.
+     * @throws InterruptedException
+     *             If the thread is interrupted while taking the batch, before it is handed off for publication.
+     */
+    private int takeAndPublish() throws EventStoreFullException, ExecutionException, InterruptedException {
+        final int batchSize = batcher.getBatchSize();
+        final long takeStart = System.nanoTime();
+        final List<Event> batch = batcher.take(channel);
+        instrumentation.batchTaken(batch.size(), batchSize, System.nanoTime() - takeStart);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        final Publication publication = new Publication(batch);
+        pendingPublications.add(publication);
+        boolean interrupted = false;
+        try {
+            final Future<Void> future = publishExecutor.submit(publication);
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // Only a batch whose publication has yet to start can be abandoned; otherwise, wait for it to be stored
+                    interrupted = true;
+                    publication.withdraw();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof EventStoreFullException) {
+                        throw (EventStoreFullException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            pendingPublications.remove(publication);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (publication.isWithdrawn()) {
+            throw new CancellationException("The pipeline was closed before the batch was published.");
+        }
+        return batch.size();
+    }
+
+    /**
+     * A thread of the take stage, which repeatedly takes a batch within a transaction and commits it once published.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private class TakeStage implements Runnable {
+        @Override
+        public void run() {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                boolean backOff = false;
+                final Transaction transaction = channel.getTransaction();
+                transaction.begin();
+                try {
+                    final int eventCount = takeAndPublish();
+                    backOff = eventCount == 0;
+                    transaction.commit();
+                    instrumentation.batchCommitted(eventCount);
+                } catch (InterruptedException e) {
+                    transaction.rollback();
+                    instrumentation.batchRolledBack();
+                    Thread.currentThread().interrupt();
+                } catch (EventStoreFullException e) {
+                    transaction.rollback();
+                    instrumentation.batchRejected();
+                    backOff = true;
+                } catch (Exception e) {
+                    transaction.rollback();
+                    instrumentation.batchRolledBack();
+                    backOff = true;
+                } finally {
+                    transaction.close();
+                }
+
+                if (backOff) {
+                    try {
+                        closed.await(BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The publication of a batch by the publish stage, which can be withdrawn until the publish stage starts it.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private class Publication implements Callable<Void> {
+        private static final int PENDING = 0;
+        private static final int STARTED = 1;
+        private static final int WITHDRAWN = 2;
+
+        private final List<Event> batch;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        /**
+         * Create a publication.
+         * 
+         * @param batch
+         *            A {@link List} of the {@link Event} objects to be published.
+         */
+        public Publication(List<Event> batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public Void call() throws EventStoreFullException {
+            if (!state.compareAndSet(PENDING, STARTED)) {
+                return null;
+            }
+
+            final long publishStart = System.nanoTime();
+            eventStore.storeEvents(batch);
+            final long publishNanos = System.nanoTime() - publishStart;
+            batcher.published(batch, publishNanos);
+            instrumentation.batchPublished(batch, publishNanos);
+            synchronized (progressLock) {
+                publishedBatchCount++;
+                progressLock.notifyAll();
+            }
+            return null;
+        }
+
+        /**
+         * Determine whether this publication was withdrawn.
+         * 
+         * @return {@code true} if the batch was withdrawn before the publish stage started it, and so was not published.
+         */
+        public boolean isWithdrawn() {
+            return state.get() == WITHDRAWN;
+        }
+
+        /**
+         * Withdraw the batch, unless the publish stage has already started publishing it.
+         */
+        public void withdraw() {
+            state.compareAndSet(PENDING, WITHDRAWN);
+        }
+    }
+}
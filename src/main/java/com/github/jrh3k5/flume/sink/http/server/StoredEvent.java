@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import org.apache.flume.Event;
+
+/**
+ * An event held in an {@link EventStore}, along with the sequence number assigned to it by the store and the time at which the store accepted it.
+ * <p />
+ * It can also carry the encoded forms of the event, cached by the writers of responses that are set to cache them, so that events read repeatedly are encoded only once. The cached forms are
+ * discarded along with this object when the store evicts or deletes the event.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class StoredEvent {
+    private final long sequence;
+    private final Event event;
+    private final long storedMillis;
+    private volatile byte[] jsonFragment;
+    private volatile byte[] binaryFragment;
+
+    /**
+     * Create a stored event that was stored at the time of its creation.
+     * 
+     * @param sequence
+     *            The sequence number assigned to the event.
+     * @param event
+     *            The {@link Event} that was stored.
+     */
+    public StoredEvent(long sequence, Event event) {
+        this(sequence, event, System.currentTimeMillis());
+    }
+
+    /**
+     * Create a stored event.
+     * 
+     * @param sequence
+     *            The sequence number assigned to the event.
+     * @param event
+     *            The {@link Event} that was stored.
+     * @param storedMillis
+     *            The time, in milliseconds since the epoch, at which the store accepted the event.
+     */
+    public StoredEvent(long sequence, Event event, long storedMillis) {
+        this.sequence = sequence;
+        this.event = event;
+        this.storedMillis = storedMillis;
+    }
+
+    /**
+     * Get the cached leading portion of the binary form of the event written by {@link BinaryEventsProvider}.
+     * 
+     * @return The encoded headers and body length of the event; {@code null} if they have not been cached.
+     */
+    public byte[] getBinaryFragment() {
+        return binaryFragment;
+    }
+
+    /**
+     * Get the event that was stored.
+     * 
+     * @return The stored {@link Event}.
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * Get the cached JSON form of the event written by {@link EventBatchJsonWriter}.
+     * 
+     * @return The UTF-8 JSON object representing the event; {@code null} if it has not been cached.
+     */
+    public byte[] getJsonFragment() {
+        return jsonFragment;
+    }
+
+    /**
+     * Get the sequence number assigned to the event.
+     * 
+     * @return The sequence number assigned to the event.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Get the time at which the store accepted the event.
+     * 
+     * @return The time, in milliseconds since the epoch, at which the event was stored.
+     */
+    public long getStoredMillis() {
+        return storedMillis;
+    }
+
+    /**
+     * Cache the leading portion of the binary form of the event.
+     * 
+     * @param binaryFragment
+     *            The encoded headers and body length of the event.
+     */
+    public void setBinaryFragment(byte[] binaryFragment) {
+        this.binaryFragment = binaryFragment;
+    }
+
+    /**
+     * Cache the JSON form of the event.
+     * 
+     * @param jsonFragment
+     *            The UTF-8 JSON object representing the event.
+     */
+    public void setJsonFragment(byte[] jsonFragment) {
+        this.jsonFragment = jsonFragment;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that many threads can add to at once without contending with each other.
+ * <p />
+ * The count is spread across a number of cells, each on a cache line of its own, and each thread adds to the cell chosen by its ID; the count is the sum of the cells. Adding neither allocates nor
+ * locks, so that counting on the path of every request does not slow it down.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class StripedCounter {
+    /**
+     * The number of longs between the cells, so that no two cells share a cache line.
+     */
+    private static final int CELL_SPACING = 8;
+    private static final int CELL_COUNT = cellCount(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELL_COUNT * CELL_SPACING);
+
+    /**
+     * Add to the count.
+     * 
+     * @param delta
+     *            The amount to be added.
+     */
+    public void add(long delta) {
+        cells.addAndGet(cellIndex(), delta);
+    }
+
+    /**
+     * Add one to the count.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Get the count. This is not a snapshot: additions made while the cells are summed may or may not be included.
+     * 
+     * @return The sum of everything added.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            sum += cells.get(i * CELL_SPACING);
+        }
+        return sum;
+    }
+
+    /**
+     * Determine the number of cells to spread a count across.
+     * 
+     * @param processorCount
+     *            The number of processors available.
+     * @return The smallest power of two that is at least twice the number of processors.
+     */
+    private static int cellCount(int processorCount) {
+        return Integer.highestOneBit(Math.max(1, processorCount * 2 - 1)) << 1;
+    }
+
+    /**
+     * Determine the cell to which the current thread adds.
+     * 
+     * @return The index, in {@link #cells}, of the current thread's cell.
+     */
+    private static int cellIndex() {
+        // Spread consecutive thread IDs across the cells
+        final long mixed = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return ((int) (mixed >>> 32) & (CELL_COUNT - 1)) * CELL_SPACING;
+    }
+}
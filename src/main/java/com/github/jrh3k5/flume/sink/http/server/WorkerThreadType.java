@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+/**
+ * Enumerations of the kinds of threads on which the {@link FlumeSinkServer} runs its request handling, including the resource methods.
+ * 
+ * @author Joshua Hyde
+ */
+
+public enum WorkerThreadType {
+    /**
+     * Requests are handled on a pool of platform threads, sized by {@link ServerTransportConfig#setWorkerPoolSize(Integer)}.
+     */
+    POOLED,
+    /**
+     * Each request is handled on a virtual thread of its own, so that requests blocked on slow clients do not hold up others; requires Java 21 or later.
+     */
+    VIRTUAL
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BinaryEventsProvider}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class BinaryEventsProviderTest {
+    private final BinaryEventsProvider provider = new BinaryEventsProvider();
+
+    /**
+     * Test that a written {@link EventBatch} can be read back.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testWriteBatchAndRead() throws Exception {
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put("host", "web-12");
+        headers.put("unicode", "\u00e9\u00e8");
+        final SimpleEvent first = new SimpleEvent();
+        first.setHeaders(headers);
+        first.setBody(new byte[] { 0, 1, 2, (byte) 0xff });
+        // SimpleEvent won't hold a null body, so mock an event without headers or a body
+        final Event second = mock(Event.class);
+        when(second.getHeaders()).thenReturn(null);
+
+        final EventBatch batch = new EventBatch(Arrays.asList(new StoredEvent(1, first), new StoredEvent(2, second)), 2);
+        final SimpleEvent[] read = roundTrip(batch, EventBatch.class);
+        assertThat(read).hasSize(2);
+        assertThat(read[0].getHeaders()).isEqualTo(headers);
+        assertThat(read[0].getBody()).isEqualTo(first.getBody());
+        assertThat(read[1].getHeaders()).isNull();
+        assertThat(read[1].getBody()).isEmpty();
+    }
+
+    /**
+     * Test that a written array of events can be read back.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testWriteArrayAndRead() throws Exception {
+        final SimpleEvent event = new SimpleEvent();
+        event.setHeaders(Collections.singletonMap("type", "audit"));
+        event.setBody("body".getBytes("utf-8"));
+
+        final SimpleEvent[] read = roundTrip(new Event[] { event }, Event[].class);
+        assertThat(read).hasSize(1);
+        assertThat(read[0].getHeaders()).isEqualTo(event.getHeaders());
+        assertThat(read[0].getBody()).isEqualTo(event.getBody());
+    }
+
+    /**
+     * Test that large bodies are handed to the entity stream by reference and that bodies of every size and form can be read back.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testWriteLargeBodies() throws Exception {
+        final byte[] largeBody = new byte[20000];
+        Arrays.fill(largeBody, (byte) 7);
+        final SimpleEvent large = new SimpleEvent();
+        large.setBody(largeBody);
+        final SimpleEvent small = new SimpleEvent();
+        small.setBody(new byte[] { 1, 2, 3 });
+
+        final SimpleEvent buffered = new SimpleEvent();
+        buffered.setHeaders(Collections.singletonMap("type", "buffered"));
+        buffered.setBody(new byte[10000]);
+        Arrays.fill(buffered.getBody(), (byte) 9);
+        final ByteBuffer record = ByteBuffer.allocateDirect(EventRecordCodec.encodedLength(buffered));
+        EventRecordCodec.encode(buffered, record);
+        record.flip();
+
+        final List<byte[]> writtenArrays = new ArrayList<byte[]>();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                writtenArrays.add(b);
+                super.write(b, off, len);
+            }
+        };
+        final EventBatch batch = new EventBatch(Arrays.asList(new StoredEvent(1, small), new StoredEvent(2, large), new StoredEvent(3, EventRecordCodec.decode(record))), 3);
+        provider.writeTo(batch, EventBatch.class, EventBatch.class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE, null, outputStream);
+
+        assertThat(writtenArrays).contains(largeBody);
+        final SimpleEvent[] read = provider.readFrom(SimpleEvent[].class, SimpleEvent[].class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE, null,
+                new ByteArrayInputStream(outputStream.toByteArray()));
+        assertThat(read).hasSize(3);
+        assertThat(read[0].getBody()).isEqualTo(small.getBody());
+        assertThat(read[1].getBody()).isEqualTo(largeBody);
+        assertThat(read[2].getHeaders()).isEqualTo(buffered.getHeaders());
+        assertThat(read[2].getBody()).isEqualTo(buffered.getBody());
+    }
+
+    /**
+     * Test that a provider caching fragments caches the encoding of each event and writes the same stream from the cache as it does without it.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testWriteBatchCached() throws Exception {
+        final SimpleEvent event = new SimpleEvent();
+        event.setHeaders(Collections.singletonMap("type", "audit"));
+        event.setBody("body".getBytes("utf-8"));
+        final StoredEvent storedEvent = new StoredEvent(1, event);
+        final EventBatch batch = new EventBatch(Collections.singletonList(storedEvent), 1);
+
+        final ByteArrayOutputStream uncached = new ByteArrayOutputStream();
+        provider.writeTo(batch, EventBatch.class, EventBatch.class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE, null, uncached);
+
+        final BinaryEventsProvider cachingProvider = new BinaryEventsProvider(true);
+        final ByteArrayOutputStream firstWrite = new ByteArrayOutputStream();
+        cachingProvider.writeTo(batch, EventBatch.class, EventBatch.class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE, null, firstWrite);
+        final byte[] fragment = storedEvent.getBinaryFragment();
+        assertThat(fragment).isNotNull();
+
+        final ByteArrayOutputStream secondWrite = new ByteArrayOutputStream();
+        cachingProvider.writeTo(batch, EventBatch.class, EventBatch.class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE, null, secondWrite);
+        assertThat(storedEvent.getBinaryFragment()).isSameAs(fragment);
+        assertThat(firstWrite.toByteArray()).isEqualTo(uncached.toByteArray());
+        assertThat(secondWrite.toByteArray()).isEqualTo(uncached.toByteArray());
+    }
+
+    /**
+     * Test that a negative event count is rejected.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test(expected = IOException.class)
+    public void testReadMalformed() throws Exception {
+        provider.readFrom(SimpleEvent[].class, SimpleEvent[].class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE, null, new ByteArrayInputStream(new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff,
+                (byte) 0xfe }));
+    }
+
+    /**
+     * Test that a message claiming far more events than it holds is rejected once it runs out, without making room for the claimed count up front.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test(expected = EOFException.class)
+    public void testReadOverstatedCount() throws Exception {
+        provider.readFrom(SimpleEvent[].class, SimpleEvent[].class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE, null, new ByteArrayInputStream(new byte[] { (byte) 0x7f, (byte) 0xff, (byte) 0xff,
+                (byte) 0xff }));
+    }
+
+    /**
+     * Test that a body claiming far more bytes than the message holds is rejected once the message runs out, without allocating the claimed length up front.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test(expected = EOFException.class)
+    public void testReadOverstatedBodyLength() throws Exception {
+        final ByteBuffer message = ByteBuffer.allocate(16);
+        message.putInt(1).putInt(-1).putInt(Integer.MAX_VALUE).putInt(0);
+        provider.readFrom(SimpleEvent[].class, SimpleEvent[].class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE, null, new ByteArrayInputStream(message.array()));
+    }
+
+    /**
+     * Test which types are readable and writeable.
+     */
+    @Test
+    public void testIsReadableWriteable() {
+        assertThat(provider.isReadable(SimpleEvent[].class, SimpleEvent[].class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE)).isTrue();
+        assertThat(provider.isReadable(Object.class, Object.class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE)).isFalse();
+        assertThat(provider.isWriteable(EventBatch.class, EventBatch.class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE)).isTrue();
+        assertThat(provider.isWriteable(SimpleEvent[].class, SimpleEvent[].class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE)).isTrue();
+        assertThat(provider.isWriteable(Object.class, Object.class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE)).isFalse();
+    }
+
+    /**
+     * Write an entity and read it back.
+     * 
+     * @param entity
+     *            The entity to be written.
+     * @param type
+     *            The type of the entity.
+     * @return The {@link SimpleEvent} objects read from what was written.
+     * @throws Exception
+     *             If any errors occur during the write or read.
+     */
+    private SimpleEvent[] roundTrip(Object entity, Class<?> type) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        provider.writeTo(entity, type, type, null, BinaryEventsProvider.MEDIA_TYPE_TYPE, null, outputStream);
+        return provider.readFrom(SimpleEvent[].class, SimpleEvent[].class, null, BinaryEventsProvider.MEDIA_TYPE_TYPE, null, new ByteArrayInputStream(outputStream.toByteArray()));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ConsumerOffsets}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class ConsumerOffsetsTest {
+    private final RingBufferEventStore store = new RingBufferEventStore(10, OverflowPolicy.BLOCK);
+    private final ConsumerOffsets offsets = new ConsumerOffsets(store);
+
+    /**
+     * Test that events are deleted only once every registered consumer has committed past them.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCommit() throws Exception {
+        final List<Event> events = createEvents(10);
+        store.storeEvents(events);
+        assertThat(offsets.register("first", 0)).isTrue();
+        assertThat(offsets.register("second", 0)).isTrue();
+
+        assertThat(offsets.commit("first", 6)).isTrue();
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(events);
+
+        assertThat(offsets.commit("second", 4)).isTrue();
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(events.subList(4, 10));
+
+        // Once the slowest consumer leaves, the events acknowledged by the rest are deleted
+        assertThat(offsets.unregister("second")).isTrue();
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(events.subList(6, 10));
+        assertThat(offsets.getOffsets()).isEqualTo(Collections.singletonMap("first", Long.valueOf(6)));
+    }
+
+    /**
+     * Test that offsets are not moved backwards.
+     */
+    @Test
+    public void testCommitBackwards() {
+        offsets.register("consumer", 5);
+        assertThat(offsets.commit("consumer", 3)).isTrue();
+        assertThat(offsets.getOffset("consumer")).isEqualTo(5);
+    }
+
+    /**
+     * Test that commits for unregistered consumers are refused.
+     */
+    @Test
+    public void testCommitUnregistered() {
+        assertThat(offsets.commit("consumer", 3)).isFalse();
+        assertThat(offsets.getOffset("consumer")).isNull();
+        assertThat(offsets.unregister("consumer")).isFalse();
+    }
+
+    /**
+     * Test that registering an already-registered consumer keeps its offset.
+     */
+    @Test
+    public void testRegisterExisting() {
+        assertThat(offsets.register("consumer", 5)).isTrue();
+        assertThat(offsets.register("consumer", 0)).isFalse();
+        assertThat(offsets.getOffset("consumer")).isEqualTo(5);
+    }
+
+    /**
+     * Create events.
+     * 
+     * @param count
+     *            The number of events to be created.
+     * @return A {@link List} of {@link Event} objects.
+     */
+    private static List<Event> createEvents(int count) {
+        final List<Event> events = new ArrayList<Event>(count);
+        for (int i = 0; i < count; i++) {
+            final SimpleEvent event = new SimpleEvent();
+            event.setBody(new byte[] { (byte) i });
+            events.add(event);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit tests for {@link DecodedRequestSizeLimitInterceptor}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class DecodedRequestSizeLimitInterceptorTest {
+    private final DecodedRequestSizeLimitInterceptor interceptor = new DecodedRequestSizeLimitInterceptor(8);
+    private final ReaderInterceptorContext context = mock(ReaderInterceptorContext.class);
+    private final MultivaluedMap<String, String> headers = new MultivaluedHashMap<String, String>();
+
+    /**
+     * Test that reading a decoded body past the maximum fails.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testAroundReadFrom() throws Exception {
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+        when(context.getHeaders()).thenReturn(headers);
+        when(context.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[16]));
+        interceptor.aroundReadFrom(context);
+        verify(context).proceed();
+
+        final ArgumentCaptor<InputStream> inputStream = ArgumentCaptor.forClass(InputStream.class);
+        verify(context).setInputStream(inputStream.capture());
+        assertThat(inputStream.getValue().read(new byte[8])).isEqualTo(8);
+        try {
+            inputStream.getValue().read();
+            throw new AssertionError("Reading past the maximum should have failed.");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(413);
+        }
+    }
+
+    /**
+     * Test that a reader wrapping the failure to read a decoded body past the maximum still has the request refused as too large.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testAroundReadFromWrapped() throws Exception {
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+        when(context.getHeaders()).thenReturn(headers);
+        when(context.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[16]));
+        final InputStream[] limitedStream = new InputStream[1];
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                limitedStream[0] = (InputStream) invocation.getArguments()[0];
+                return null;
+            }
+        }).when(context).setInputStream(Matchers.any(InputStream.class));
+        when(context.proceed()).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                try {
+                    limitedStream[0].read(new byte[16]);
+                } catch (WebApplicationException e) {
+                    throw new IOException("Unable to read the body.", e);
+                }
+                return null;
+            }
+        });
+
+        try {
+            interceptor.aroundReadFrom(context);
+            throw new AssertionError("Reading past the maximum should have failed.");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(413);
+        }
+    }
+
+    /**
+     * Test that a body without a content encoding is left to the filter.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testAroundReadFromUnencoded() throws Exception {
+        when(context.getHeaders()).thenReturn(headers);
+        interceptor.aroundReadFrom(context);
+        verify(context, never()).setInputStream(Matchers.any(InputStream.class));
+        verify(context).proceed();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unit tests for {@link EventBatchJsonWriter}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class EventBatchJsonWriterTest {
+    private final EventBatchJsonWriter writer = new EventBatchJsonWriter();
+
+    /**
+     * Test that written events can be read back as {@link SimpleEvent} objects.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testWriteTo() throws Exception {
+        final SimpleEvent first = new SimpleEvent();
+        first.setHeaders(Collections.singletonMap("a-header", "a-value"));
+        first.setBody(new byte[] { 0, 1, 2, (byte) 0xff });
+        final SimpleEvent second = new SimpleEvent();
+        second.setBody("second".getBytes("utf-8"));
+        final EventBatch batch = new EventBatch(Arrays.asList(new StoredEvent(1, first), new StoredEvent(2, second)), 2);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writer.writeTo(batch, EventBatch.class, EventBatch.class, null, MediaType.APPLICATION_JSON_TYPE, null, outputStream);
+
+        final SimpleEvent[] read = new ObjectMapper().readValue(outputStream.toByteArray(), SimpleEvent[].class);
+        assertThat(read).hasSize(2);
+        assertThat(read[0].getHeaders()).isEqualTo(first.getHeaders());
+        assertThat(read[0].getBody()).isEqualTo(first.getBody());
+        assertThat(read[1].getHeaders()).isEmpty();
+        assertThat(read[1].getBody()).isEqualTo(second.getBody());
+    }
+
+    /**
+     * Test the writing of events whose bodies are held in buffers.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testWriteToBufferEvent() throws Exception {
+        final SimpleEvent event = new SimpleEvent();
+        event.setHeaders(Collections.singletonMap("a-header", "a-value"));
+        event.setBody(new byte[] { 0, 1, 2, (byte) 0xff });
+        final ByteBuffer record = ByteBuffer.allocateDirect(EventRecordCodec.encodedLength(event));
+        EventRecordCodec.encode(event, record);
+        record.flip();
+        final EventBatch batch = new EventBatch(Collections.singletonList(new StoredEvent(1, EventRecordCodec.decode(record))), 1);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writer.writeTo(batch, EventBatch.class, EventBatch.class, null, MediaType.APPLICATION_JSON_TYPE, null, outputStream);
+
+        final SimpleEvent[] read = new ObjectMapper().readValue(outputStream.toByteArray(), SimpleEvent[].class);
+        assertThat(read).hasSize(1);
+        assertThat(read[0].getHeaders()).isEqualTo(event.getHeaders());
+        assertThat(read[0].getBody()).isEqualTo(event.getBody());
+    }
+
+    /**
+     * Test that a writer caching fragments caches the encoding of each event and writes the same document from the cache as it does without it.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testWriteToCached() throws Exception {
+        final SimpleEvent first = new SimpleEvent();
+        first.setHeaders(Collections.singletonMap("a-header", "a-value"));
+        first.setBody(new byte[] { 0, 1, 2, (byte) 0xff });
+        final SimpleEvent second = new SimpleEvent();
+        second.setBody("second".getBytes("utf-8"));
+        final StoredEvent storedFirst = new StoredEvent(1, first);
+        final EventBatch batch = new EventBatch(Arrays.asList(storedFirst, new StoredEvent(2, second)), 2);
+
+        final ByteArrayOutputStream uncached = new ByteArrayOutputStream();
+        writer.writeTo(batch, EventBatch.class, EventBatch.class, null, MediaType.APPLICATION_JSON_TYPE, null, uncached);
+
+        final EventBatchJsonWriter cachingWriter = new EventBatchJsonWriter(true);
+        final ByteArrayOutputStream firstWrite = new ByteArrayOutputStream();
+        cachingWriter.writeTo(batch, EventBatch.class, EventBatch.class, null, MediaType.APPLICATION_JSON_TYPE, null, firstWrite);
+        final byte[] fragment = storedFirst.getJsonFragment();
+        assertThat(fragment).isNotNull();
+
+        final ByteArrayOutputStream secondWrite = new ByteArrayOutputStream();
+        cachingWriter.writeTo(batch, EventBatch.class, EventBatch.class, null, MediaType.APPLICATION_JSON_TYPE, null, secondWrite);
+        assertThat(storedFirst.getJsonFragment()).isSameAs(fragment);
+        assertThat(firstWrite.toByteArray()).isEqualTo(uncached.toByteArray());
+        assertThat(secondWrite.toByteArray()).isEqualTo(uncached.toByteArray());
+    }
+
+    /**
+     * Test the writing of an empty batch.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testWriteToEmpty() throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writer.writeTo(new EventBatch(Collections.<StoredEvent> emptyList(), 0), EventBatch.class, EventBatch.class, null, MediaType.APPLICATION_JSON_TYPE, null, outputStream);
+        assertThat(outputStream.toString("utf-8")).isEqualTo("[]");
+    }
+
+    /**
+     * Test which types are writeable.
+     */
+    @Test
+    public void testIsWriteable() {
+        assertThat(writer.isWriteable(EventBatch.class, EventBatch.class, null, MediaType.APPLICATION_JSON_TYPE)).isTrue();
+        assertThat(writer.isWriteable(Object.class, Object.class, null, MediaType.APPLICATION_JSON_TYPE)).isFalse();
+    }
+}
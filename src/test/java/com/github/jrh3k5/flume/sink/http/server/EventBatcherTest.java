@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Channel;
+import org.apache.flume.Event;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link EventBatcher}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class EventBatcherTest {
+    private final Channel channel = mock(Channel.class);
+
+    /**
+     * Test that a batch is complete once it reaches the batch size.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testTakeFull() throws Exception {
+        final Event event = mock(Event.class);
+        when(channel.take()).thenReturn(event);
+        assertThat(new EventBatcher(5, 0).take(channel)).hasSize(5);
+    }
+
+    /**
+     * Test that an empty channel yields an empty batch without lingering.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testTakeEmpty() throws Exception {
+        final long start = System.nanoTime();
+        assertThat(new EventBatcher(5, TimeUnit.SECONDS.toMillis(10)).take(channel)).isEmpty();
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+    }
+
+    /**
+     * Test that a partial batch lingers for more events.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testTakeLinger() throws Exception {
+        final Event event = mock(Event.class);
+        when(channel.take()).thenReturn(event, null, null, event, null);
+        final long start = System.nanoTime();
+        final List<Event> batch = new EventBatcher(5, 50).take(channel);
+        assertThat(batch).hasSize(2);
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    /**
+     * Test the adjustment of the batch size in adaptive mode.
+     */
+    @Test
+    public void testPublishedAdaptive() {
+        final EventBatcher batcher = new EventBatcher(10, 80, 0, 100);
+        assertThat(batcher.getBatchSize()).isEqualTo(80);
+
+        // Slow publications shrink the batch, down to the minimum
+        batcher.published(Collections.<Event> nCopies(80, null), TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(batcher.getBatchSize()).isEqualTo(40);
+        batcher.published(Collections.<Event> nCopies(40, null), TimeUnit.MILLISECONDS.toNanos(500));
+        batcher.published(Collections.<Event> nCopies(20, null), TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(batcher.getBatchSize()).isEqualTo(10);
+
+        // Fast, full batches grow it, up to the maximum
+        batcher.published(Collections.<Event> nCopies(10, null), 0);
+        assertThat(batcher.getBatchSize()).isEqualTo(20);
+        batcher.published(Collections.<Event> nCopies(20, null), 0);
+        batcher.published(Collections.<Event> nCopies(40, null), 0);
+        batcher.published(Collections.<Event> nCopies(80, null), 0);
+        assertThat(batcher.getBatchSize()).isEqualTo(80);
+
+        // Partial batches move it toward the number of events taken
+        batcher.published(Collections.<Event> nCopies(20, null), 0);
+        assertThat(batcher.getBatchSize()).isEqualTo(50);
+    }
+
+    /**
+     * Test that a fixed batch size is not adjusted.
+     */
+    @Test
+    public void testPublishedFixed() {
+        final EventBatcher batcher = new EventBatcher(80, 0);
+        batcher.published(Collections.<Event> nCopies(80, null), TimeUnit.SECONDS.toNanos(5));
+        assertThat(batcher.getBatchSize()).isEqualTo(80);
+    }
+
+    /**
+     * Test that a batcher cannot be created with a minimum batch size over its maximum.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructInvalidSizes() {
+        new EventBatcher(100, 10, 0, 100);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link EventRecordCodec}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class EventRecordCodecTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Test that the encoded length of headers holding characters of every UTF-8 width, paired surrogates and unpaired surrogates matches the bytes actually written.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testEncodedLength() throws Exception {
+        for (String value : Arrays.asList("ascii", "\u00e9", "\u20ac", "\ud83d\ude00", "a\ud800b", "\udc00", "x\ud83d", "\ud83d\ud83d\ude00\udc00")) {
+            final Event event = createEvent(value);
+            final ByteBuffer record = ByteBuffer.allocate(EventRecordCodec.encodedLength(event));
+            EventRecordCodec.encode(event, record);
+            assertThat(record.remaining()).as(value).isZero();
+
+            record.flip();
+            final ByteBufferEvent decoded = EventRecordCodec.decode(record);
+            assertThat(decoded.getHeaders().get("key")).isEqualTo(new String(value.getBytes("utf-8"), "utf-8"));
+            assertThat(decoded.getBody()).isEqualTo(event.getBody());
+        }
+    }
+
+    /**
+     * Test that events whose headers hold unpaired surrogates, and the events stored after them, are recovered from a memory-mapped store.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRecoverSurrogates() throws Exception {
+        final List<Event> events = Arrays.asList(createEvent("a\ud800b"), createEvent("\ud83d\ude00"), createEvent("\udc00\udc00"), createEvent("after"));
+        final MappedSegmentEventStore store = new MappedSegmentEventStore(temporaryFolder.getRoot(), 4096, Long.MAX_VALUE, 0);
+        store.storeEvents(events);
+        store.close();
+
+        final MappedSegmentEventStore recovered = new MappedSegmentEventStore(temporaryFolder.getRoot(), 4096, Long.MAX_VALUE, 0);
+        try {
+            final List<Event> recoveredEvents = recovered.getEvents(0, Integer.MAX_VALUE).getEvents();
+            assertThat(recoveredEvents).hasSize(events.size());
+            for (int i = 0; i < events.size(); i++) {
+                assertThat(recoveredEvents.get(i).getBody()).isEqualTo(events.get(i).getBody());
+            }
+            assertThat(recoveredEvents.get(3).getHeaders().get("key")).isEqualTo("after");
+        } finally {
+            recovered.close();
+        }
+    }
+
+    /**
+     * Create an event.
+     * 
+     * @param headerValue
+     *            The value of the event's single header.
+     * @return An {@link Event} with the given header value and a body naming it.
+     * @throws Exception
+     *             If the body cannot be encoded.
+     */
+    private static Event createEvent(String headerValue) throws Exception {
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put("key", headerValue);
+        final SimpleEvent event = new SimpleEvent();
+        event.setHeaders(headers);
+        event.setBody(("body of " + headerValue).getBytes("utf-8"));
+        return event;
+    }
+}
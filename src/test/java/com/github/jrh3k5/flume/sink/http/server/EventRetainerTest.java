@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link EventRetainer}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class EventRetainerTest {
+    private final RingBufferEventStore store = new RingBufferEventStore(30000, OverflowPolicy.DROP_OLDEST);
+    private final RetentionConfig config = new RetentionConfig();
+    private EventRetainer retainer;
+
+    /**
+     * Stop the retainer created by the test.
+     */
+    @After
+    public void closeRetainer() {
+        if (retainer != null) {
+            retainer.close();
+        }
+    }
+
+    /**
+     * Test that the oldest events in excess of the maximum count are evicted.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRetainByCount() throws Exception {
+        config.setMaxCount(Long.valueOf(30));
+        store.storeEvents(createEvents(100, null));
+
+        createRetainer().retain();
+        assertThat(store.getEventCount()).isEqualTo(30);
+        assertThat(store.getEvents(0, 1).getStoredEvents().get(0).getSequence()).isEqualTo(71);
+        assertThat(retainer.getCountEvictedCount()).isEqualTo(70);
+        assertThat(retainer.getAgeEvictedCount()).isZero();
+        assertThat(retainer.getSizeEvictedCount()).isZero();
+        // With neither a maximum age nor size, the events are never read
+        assertThat(retainer.getRetainedBytes()).isZero();
+    }
+
+    /**
+     * Test that events are evicted once older than the maximum age according to their timestamp headers, a chunk at a time and only from the front of the store.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRetainByTimestampHeader() throws Exception {
+        config.setMaxAgeMillis(Long.valueOf(500));
+        config.setTimestampHeader("timestamp");
+        // Each event is timestamped with its sequence number
+        store.storeEvents(createEvents(600, "timestamp"));
+
+        // The first two chunks of 256 events are wholly older than 600; the third holds events up to 600
+        createRetainer().retain(1100);
+        assertThat(store.getEventCount()).isEqualTo(88);
+        assertThat(store.getEvents(0, 1).getStoredEvents().get(0).getSequence()).isEqualTo(513);
+        assertThat(retainer.getAgeEvictedCount()).isEqualTo(512);
+
+        retainer.retain(1101);
+        assertThat(store.getEventCount()).isZero();
+        assertThat(retainer.getAgeEvictedCount()).isEqualTo(600);
+        assertThat(retainer.getRetainedBytes()).isZero();
+    }
+
+    /**
+     * Test that events without a timestamp header are aged from when they were stored, however late the retainer first reads them.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRetainByIngestTime() throws Exception {
+        config.setMaxAgeMillis(Long.valueOf(500));
+        config.setTimestampHeader("timestamp");
+        // A whole chunk of events, followed by events stored strictly later
+        store.storeEvents(createEvents(256, null));
+        final long firstStoredMillis = System.currentTimeMillis();
+        while (System.currentTimeMillis() == firstStoredMillis) {
+            Thread.sleep(1);
+        }
+        store.storeEvents(createEvents(10, null));
+
+        // The first pass comes well after the events were stored, yet only the older chunk has expired
+        createRetainer().retain(firstStoredMillis + 501);
+        assertThat(store.getEventCount()).isEqualTo(10);
+        assertThat(store.getEvents(0, 1).getStoredEvents().get(0).getSequence()).isEqualTo(257);
+        assertThat(retainer.getAgeEvictedCount()).isEqualTo(256);
+
+        retainer.retain(System.currentTimeMillis() + 501);
+        assertThat(store.getEventCount()).isZero();
+        assertThat(retainer.getAgeEvictedCount()).isEqualTo(266);
+    }
+
+    /**
+     * Test that a pass reads all of the events stored before it, however many there are.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRetainCatchesUp() throws Exception {
+        final List<Event> events = createEvents(25000, null);
+        final int eventBytes = EventRecordCodec.encodedLength(events.get(0));
+        config.setMaxBytes(Long.valueOf(Long.MAX_VALUE));
+        store.storeEvents(events);
+
+        createRetainer().retain();
+        assertThat(retainer.getRetainedBytes()).isEqualTo(25000L * eventBytes);
+    }
+
+    /**
+     * Test that the oldest events are evicted to keep the store within the maximum number of bytes.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRetainBySize() throws Exception {
+        final List<Event> events = createEvents(50, null);
+        final int eventBytes = EventRecordCodec.encodedLength(events.get(0));
+        config.setMaxBytes(Long.valueOf(10 * eventBytes));
+        store.storeEvents(events);
+
+        createRetainer().retain();
+        assertThat(store.getEventCount()).isEqualTo(10);
+        assertThat(store.getEvents(0, 1).getStoredEvents().get(0).getSequence()).isEqualTo(41);
+        assertThat(retainer.getRetainedBytes()).isEqualTo(10 * eventBytes);
+        assertThat(retainer.getSizeEvictedCount()).isEqualTo(40);
+        assertThat(retainer.toMap().get("sizeEvictedEvents")).isEqualTo(Long.valueOf(40));
+    }
+
+    /**
+     * Test that events deleted by other means are no longer accounted for.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRetainAfterDeletion() throws Exception {
+        final List<Event> events = createEvents(20, null);
+        final int eventBytes = EventRecordCodec.encodedLength(events.get(0));
+        config.setMaxBytes(Long.valueOf(1000 * eventBytes));
+        store.storeEvents(events);
+
+        createRetainer().retain();
+        assertThat(retainer.getRetainedBytes()).isEqualTo(20 * eventBytes);
+
+        store.deleteEventsThrough(5);
+        retainer.retain();
+        assertThat(retainer.getRetainedBytes()).isEqualTo(15 * eventBytes);
+
+        store.deleteEvents();
+        retainer.retain();
+        assertThat(retainer.getRetainedBytes()).isZero();
+        assertThat(retainer.getSizeEvictedCount()).isZero();
+    }
+
+    /**
+     * Test that passes are only made while the retainer is started, and that it can be started again once stopped.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStartStop() throws Exception {
+        config.setMaxCount(Long.valueOf(5));
+        config.setIntervalMillis(10);
+        retainer = new EventRetainer(store, config);
+        store.storeEvents(createEvents(10, null));
+        Thread.sleep(50);
+        assertThat(store.getEventCount()).isEqualTo(10);
+
+        retainer.start();
+        waitForEventCount(5);
+
+        retainer.stop();
+        store.storeEvents(createEvents(10, null));
+        Thread.sleep(50);
+        assertThat(store.getEventCount()).isEqualTo(15);
+
+        retainer.start();
+        waitForEventCount(5);
+        assertThat(retainer.getCountEvictedCount()).isEqualTo(15);
+    }
+
+    /**
+     * Create events.
+     * 
+     * @param count
+     *            The number of events to be created.
+     * @param timestampHeader
+     *            The name of the header in which each event is given a timestamp equal to its position, starting at 1; {@code null} for events without timestamps.
+     * @return A {@link List} of the created {@link Event} objects, each with a body of the same size.
+     */
+    private static List<Event> createEvents(int count, String timestampHeader) {
+        final List<Event> events = new ArrayList<Event>(count);
+        for (int i = 1; i <= count; i++) {
+            final SimpleEvent event = new SimpleEvent();
+            if (timestampHeader != null) {
+                event.setHeaders(Collections.singletonMap(timestampHeader, Integer.toString(i)));
+            }
+            event.setBody(new byte[100]);
+            events.add(event);
+        }
+        return events;
+    }
+
+    /**
+     * Create a retainer of the store that, not being started, only retains when told to.
+     * 
+     * @return The created {@link EventRetainer}.
+     */
+    private EventRetainer createRetainer() {
+        retainer = new EventRetainer(store, config);
+        return retainer;
+    }
+
+    /**
+     * Wait for the started retainer to bring the store down to a number of events.
+     * 
+     * @param eventCount
+     *            The number of events to which the store is to be brought down.
+     * @throws Exception
+     *             If any errors occur while waiting.
+     */
+    private void waitForEventCount(long eventCount) throws Exception {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (store.getEventCount() != eventCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(store.getEventCount()).isEqualTo(eventCount);
+    }
+}
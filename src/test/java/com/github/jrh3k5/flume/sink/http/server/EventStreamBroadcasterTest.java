@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.glassfish.jersey.server.ChunkedOutput;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit tests for {@link EventStreamBroadcaster}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class EventStreamBroadcasterTest {
+    private final RingBufferEventStore eventStore = new RingBufferEventStore();
+    private EventStreamBroadcaster broadcaster = new EventStreamBroadcaster(eventStore);
+
+    /**
+     * Close the broadcaster after each test.
+     * 
+     * @throws Exception
+     *             If any errors occur during the closure.
+     */
+    @After
+    public void closeBroadcaster() throws Exception {
+        broadcaster.close();
+    }
+
+    /**
+     * Test that a subscriber receives events stored after it subscribed.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSubscribe() throws Exception {
+        eventStore.storeEvents(Collections.singletonList(createEvent("before")));
+
+        final ChunkedOutput<String> output = mock(ChunkedOutput.class);
+        broadcaster.subscribe(output, null);
+        waitForSubscribers(1);
+
+        eventStore.storeEvents(Collections.singletonList(createEvent("after")));
+
+        final ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(output, timeout(5000)).write(chunkCaptor.capture());
+        assertThat(chunkCaptor.getValue()).startsWith("id: 2\ndata: [").endsWith("]\n\n").contains("\"after\"").excludes("\"before\"");
+    }
+
+    /**
+     * Test that a subscriber given a sequence number is caught up on the events stored after it before receiving new events.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSubscribeAfterSequence() throws Exception {
+        eventStore.storeEvents(Arrays.asList(createEvent("first"), createEvent("second")));
+
+        final ChunkedOutput<String> output = mock(ChunkedOutput.class);
+        broadcaster.subscribe(output, Long.valueOf(1));
+        waitForSubscribers(1);
+
+        eventStore.storeEvents(Collections.singletonList(createEvent("third")));
+
+        final ArgumentCaptor<String> chunkCaptor = ArgumentCaptor.forClass(String.class);
+        verify(output, timeout(5000).times(2)).write(chunkCaptor.capture());
+        assertThat(chunkCaptor.getAllValues().get(0)).startsWith("id: 2\n").contains("\"second\"").excludes("\"first\"");
+        assertThat(chunkCaptor.getAllValues().get(1)).startsWith("id: 3\n").contains("\"third\"");
+    }
+
+    /**
+     * Test that a subscriber that falls too far behind is disconnected without holding up other subscribers.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSlowSubscriberDisconnected() throws Exception {
+        broadcaster.close();
+        broadcaster = new EventStreamBroadcaster(eventStore, 1);
+
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final ChunkedOutput<String> slowOutput = mock(ChunkedOutput.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                releaseLatch.await(10, TimeUnit.SECONDS);
+                return null;
+            }
+        }).when(slowOutput).write(anyString());
+        final ChunkedOutput<String> fastOutput = mock(ChunkedOutput.class);
+
+        broadcaster.subscribe(slowOutput, null);
+        broadcaster.subscribe(fastOutput, null);
+        waitForSubscribers(2);
+
+        try {
+            for (int i = 0; i < 5; i++) {
+                eventStore.storeEvents(Collections.singletonList(createEvent("event-" + i)));
+                // Give the dispatcher a chance to offer each batch separately
+                Thread.sleep(50);
+            }
+
+            verify(slowOutput, timeout(5000)).close();
+            verify(fastOutput, timeout(5000).atLeast(1)).write(contains("event-4"));
+            waitForSubscribers(1);
+        } finally {
+            releaseLatch.countDown();
+        }
+    }
+
+    /**
+     * Create an event.
+     * 
+     * @param body
+     *            The body of the event.
+     * @return An {@link Event} with the given body and a header containing it.
+     * @throws Exception
+     *             If any errors occur during the creation.
+     */
+    private static Event createEvent(String body) throws Exception {
+        final Event event = new SimpleEvent();
+        event.setHeaders(Collections.singletonMap("name", body));
+        event.setBody(body.getBytes("utf-8"));
+        return event;
+    }
+
+    /**
+     * Wait for the broadcaster to have a number of subscribers.
+     * 
+     * @param subscriberCount
+     *            The number of subscribers for which to wait.
+     * @throws Exception
+     *             If the broadcaster does not reach the given number of subscribers.
+     */
+    private void waitForSubscribers(int subscriberCount) throws Exception {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (broadcaster.getSubscriberCount() != subscriberCount) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Broadcaster did not reach " + subscriberCount + " subscribers; it has " + broadcaster.getSubscriberCount());
+            }
+            Thread.sleep(10);
+        }
+    }
+}
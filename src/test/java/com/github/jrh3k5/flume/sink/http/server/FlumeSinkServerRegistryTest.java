@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.Closeable;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link FlumeSinkServerRegistry}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class FlumeSinkServerRegistryTest {
+    /**
+     * Test that a server is shared among acquisitions and stopped once all of them are released.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testAcquireRelease() throws Exception {
+        final FlumeSinkServer server = mock(FlumeSinkServer.class);
+        final EventStore eventStore = mock(EventStore.class, withSettings().extraInterfaces(Closeable.class));
+        when(server.getEventStore()).thenReturn(eventStore);
+        final FlumeSinkServerRegistry.ServerFactory serverFactory = mock(FlumeSinkServerRegistry.ServerFactory.class);
+        when(serverFactory.createServer()).thenReturn(server);
+
+        assertThat(FlumeSinkServerRegistry.acquire("localhost", 1234, serverFactory)).isSameAs(server);
+        assertThat(FlumeSinkServerRegistry.acquire("localhost", 1234, serverFactory)).isSameAs(server);
+        verify(serverFactory, times(1)).createServer();
+        verify(server, times(1)).start();
+        assertThat(FlumeSinkServerRegistry.getReferenceCount("localhost", 1234)).isEqualTo(2);
+
+        assertThat(FlumeSinkServerRegistry.release(server)).isFalse();
+        verify(server, never()).stop();
+
+        assertThat(FlumeSinkServerRegistry.release(server)).isTrue();
+        verify(server).stop();
+        verify((Closeable) eventStore).close();
+        assertThat(FlumeSinkServerRegistry.getReferenceCount("localhost", 1234)).isZero();
+    }
+
+    /**
+     * Test that servers on different ports are not shared.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testAcquireDifferentPorts() throws Exception {
+        final FlumeSinkServer first = mock(FlumeSinkServer.class);
+        final FlumeSinkServer second = mock(FlumeSinkServer.class);
+        final FlumeSinkServerRegistry.ServerFactory serverFactory = mock(FlumeSinkServerRegistry.ServerFactory.class);
+        when(serverFactory.createServer()).thenReturn(first, second);
+
+        assertThat(FlumeSinkServerRegistry.acquire("localhost", 2345, serverFactory)).isSameAs(first);
+        assertThat(FlumeSinkServerRegistry.acquire("localhost", 2346, serverFactory)).isSameAs(second);
+        assertThat(FlumeSinkServerRegistry.release(first)).isTrue();
+        assertThat(FlumeSinkServerRegistry.release(second)).isTrue();
+    }
+
+    /**
+     * Test that releasing a server that was not acquired fails.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testReleaseUnacquired() throws Exception {
+        FlumeSinkServerRegistry.release(mock(FlumeSinkServer.class));
+    }
+}
@@ -18,19 +18,41 @@
 package com.github.jrh3k5.flume.sink.http.server;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.List;
 
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.Variant;
 
 import org.apache.flume.Event;
 import org.apache.flume.event.SimpleEvent;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -44,10 +66,18 @@ import com.github.jrh3k5.flume.sink.http.server.FlumeSinkServerResource;
 
 @RunWith(MockitoJUnitRunner.class)
 public class FlumeSinkServerResourceTest {
-    private final FlumeSinkServerResource resource = new FlumeSinkServerResource();
+    private final RingBufferEventStore eventStore = new RingBufferEventStore();
+    private final HeaderIndex headerIndex = new HeaderIndex(eventStore, Collections.singleton("type"));
+    private final PendingEventReads pendingReads = new PendingEventReads(headerIndex);
+    private final EventStreamBroadcaster broadcaster = new EventStreamBroadcaster(eventStore);
+    private final ConsumerOffsets consumerOffsets = new ConsumerOffsets(eventStore);
+    private final FlumeSinkServerResource resource = new FlumeSinkServerResource(eventStore, headerIndex, pendingReads, broadcaster, consumerOffsets);
     private final URI baseUri = URI.create("http://localhost:8080");
+    private final MultivaluedMap<String, String> queryParameters = new MultivaluedHashMap<String, String>();
     @Mock
     private UriInfo uriInfo;
+    @Mock
+    private Request request;
 
     /**
      * Set up the {@link UriInfo} object for each test.
@@ -55,6 +85,52 @@ public class FlumeSinkServerResourceTest {
     @Before
     public void setUpUriInfo() {
         when(uriInfo.getBaseUri()).thenReturn(baseUri);
+        when(uriInfo.getQueryParameters()).thenReturn(queryParameters);
+        when(uriInfo.getAbsolutePath()).thenReturn(baseUri.resolve("consumers/indexer"));
+    }
+
+    /**
+     * Close the pending reads and broadcaster after each test.
+     * 
+     * @throws Exception
+     *             If any errors occur during the closure.
+     */
+    @After
+    public void closeResources() throws Exception {
+        pendingReads.close();
+        broadcaster.close();
+        headerIndex.close();
+    }
+
+    /**
+     * Test the registration of consumers and the commitment of their offsets.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testConsumers() throws Exception {
+        final SimpleEvent first = mock(SimpleEvent.class);
+        final SimpleEvent second = mock(SimpleEvent.class);
+        resource.storeEvents(new SimpleEvent[] { first, second }, uriInfo);
+
+        assertThat(resource.getConsumer("indexer").getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+        assertThat(resource.commitConsumer("indexer", Long.valueOf(1)).getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
+
+        assertThat(resource.registerConsumer("indexer", 0, uriInfo).getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
+        final Response reregistered = resource.registerConsumer("indexer", 2, uriInfo);
+        assertThat(reregistered.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(reregistered.getHeaderString(FlumeSinkServerResource.CURSOR_HEADER)).isEqualTo("0");
+
+        final Response committed = resource.commitConsumer("indexer", Long.valueOf(1));
+        assertThat(committed.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(committed.getHeaderString(FlumeSinkServerResource.CURSOR_HEADER)).isEqualTo("1");
+        assertThat(resource.getConsumer("indexer").getEntity()).isEqualTo("1");
+        assertThat(getEntityEvents(getEvents(0, null))).isEqualTo(Arrays.<Event> asList(second));
+
+        assertThat(resource.commitConsumer("indexer", null).getStatus()).isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+        assertThat(resource.deleteConsumer("indexer").getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(resource.deleteConsumer("indexer").getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
     }
 
     /**
@@ -68,9 +144,9 @@ public class FlumeSinkServerResourceTest {
         final SimpleEvent stored = mock(SimpleEvent.class);
         resource.storeEvents(new SimpleEvent[] { stored }, uriInfo);
 
-        assertThat(resource.getEvents().getEntity()).isEqualTo(new Event[] { stored });
+        assertThat(getEntityEvents(getEvents(0, null))).isEqualTo(Arrays.<Event> asList(stored));
         resource.deleteEvents();
-        assertThat((Object[]) resource.getEvents().getEntity()).isEmpty();
+        assertThat(getEntityEvents(getEvents(0, null))).isEmpty();
     }
 
     /**
@@ -84,9 +160,194 @@ public class FlumeSinkServerResourceTest {
         final SimpleEvent stored = mock(SimpleEvent.class);
         resource.storeEvents(new SimpleEvent[] { stored }, uriInfo);
 
-        final Response getResponse = resource.getEvents();
+        final Response getResponse = getEvents(0, null);
         assertThat(getResponse.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
-        assertThat(getResponse.getEntity()).isEqualTo(new Event[] { stored });
+        assertThat(getEntityEvents(getResponse)).isEqualTo(Arrays.<Event> asList(stored));
+        assertThat(getResponse.getHeaderString(FlumeSinkServerResource.CURSOR_HEADER)).isEqualTo("1");
+    }
+
+    /**
+     * Test that retrievals are tagged with the state of the store and that a retrieval whose preconditions match that state is answered as unmodified.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsEntityTag() throws Exception {
+        when(request.selectVariant(anyListOf(Variant.class))).thenReturn(Variant.mediaTypes(MediaType.APPLICATION_JSON_TYPE).build().get(0));
+        resource.storeEvents(new SimpleEvent[] { mock(SimpleEvent.class) }, uriInfo);
+
+        final Response firstResponse = getEvents(0, null);
+        final EntityTag entityTag = firstResponse.getEntityTag();
+        assertThat(entityTag).isNotNull();
+        assertThat(entityTag.isWeak()).isTrue();
+
+        when(request.evaluatePreconditions(eq(entityTag))).thenReturn(Response.notModified(entityTag));
+        final Response unmodifiedResponse = getEvents(0, null);
+        assertThat(unmodifiedResponse.getStatus()).isEqualTo(Response.Status.NOT_MODIFIED.getStatusCode());
+        assertThat(unmodifiedResponse.hasEntity()).isFalse();
+
+        resource.storeEvents(new SimpleEvent[] { mock(SimpleEvent.class) }, uriInfo);
+        final Response modifiedResponse = getEvents(0, null);
+        assertThat(modifiedResponse.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(getEntityEvents(modifiedResponse)).hasSize(2);
+        assertThat(modifiedResponse.getEntityTag()).isNotEqualTo(entityTag);
+
+        resource.deleteEvents();
+        assertThat(getEvents(0, null).getEntityTag()).isNotEqualTo(modifiedResponse.getEntityTag());
+    }
+
+    /**
+     * Test that retrievals that stop short of the last sequence number claimed in the store, whether at their limit or at events yet to be published, are not tagged.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsEntityTagIncomplete() throws Exception {
+        when(request.selectVariant(anyListOf(Variant.class))).thenReturn(Variant.mediaTypes(MediaType.APPLICATION_JSON_TYPE).build().get(0));
+        resource.storeEvents(new SimpleEvent[] { mock(SimpleEvent.class), mock(SimpleEvent.class) }, uriInfo);
+        assertThat(getEvents(0, Integer.valueOf(1)).getEntityTag()).isNull();
+        assertThat(getEvents(0, Integer.valueOf(2)).getEntityTag()).isNotNull();
+
+        // A third sequence number has been claimed by a writer that has yet to publish its event
+        final RingBufferEventStore claimedStore = spy(new RingBufferEventStore());
+        claimedStore.storeEvents(Collections.singletonList(mock(SimpleEvent.class)));
+        doReturn(Long.valueOf(2)).when(claimedStore).getLastSequence();
+        final HeaderIndex claimedIndex = new HeaderIndex(claimedStore, Collections.<String> emptySet());
+        final PendingEventReads claimedReads = new PendingEventReads(claimedIndex);
+        try {
+            final FlumeSinkServerResource claimedResource = new FlumeSinkServerResource(claimedStore, claimedIndex, claimedReads, broadcaster, new ConsumerOffsets(claimedStore));
+            final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+            claimedResource.getEvents(0, null, 0, uriInfo, request, asyncResponse);
+            final ArgumentCaptor<Response> responseCaptor = ArgumentCaptor.forClass(Response.class);
+            verify(asyncResponse).resume(responseCaptor.capture());
+            assertThat(getEntityEvents(responseCaptor.getValue())).hasSize(1);
+            assertThat(responseCaptor.getValue().getEntityTag()).isNull();
+        } finally {
+            claimedReads.close();
+        }
+    }
+
+    /**
+     * Test the retrieval of events filtered by indexed and unindexed header values.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsByHeader() throws Exception {
+        final SimpleEvent auditWeb = createEvent("audit", "web-12");
+        final SimpleEvent accessWeb = createEvent("access", "web-12");
+        final SimpleEvent auditDb = createEvent("audit", "db-1");
+        resource.storeEvents(new SimpleEvent[] { auditWeb, accessWeb, auditDb }, uriInfo);
+
+        queryParameters.putSingle("header.type", "audit");
+        assertThat(getEntityEvents(getEvents(0, null))).isEqualTo(Arrays.<Event> asList(auditWeb, auditDb));
+
+        queryParameters.putSingle("header.host", "web-12");
+        final Response bothResponse = getEvents(0, null);
+        assertThat(getEntityEvents(bothResponse)).isEqualTo(Arrays.<Event> asList(auditWeb));
+        // The cursor moves past the events that were examined, even though they were filtered out
+        assertThat(bothResponse.getHeaderString(FlumeSinkServerResource.CURSOR_HEADER)).isEqualTo("3");
+
+        queryParameters.remove("header.type");
+        assertThat(getEntityEvents(getEvents(0, null))).isEqualTo(Arrays.<Event> asList(auditWeb, accessWeb));
+
+        queryParameters.clear();
+        queryParameters.putSingle("header.type", "unknown");
+        final Response noneResponse = getEvents(0, null);
+        assertThat(getEntityEvents(noneResponse)).isEmpty();
+        assertThat(noneResponse.getHeaderString(FlumeSinkServerResource.CURSOR_HEADER)).isEqualTo("3");
+    }
+
+    /**
+     * Test that a filtered retrieval waits for an event with the requested header values.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsByHeaderWait() throws Exception {
+        queryParameters.putSingle("header.type", "audit");
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.getEvents(0, null, 60000, uriInfo, request, asyncResponse);
+
+        resource.storeEvents(new SimpleEvent[] { createEvent("access", "web-12") }, uriInfo);
+        final SimpleEvent audit = createEvent("audit", "web-12");
+        resource.storeEvents(new SimpleEvent[] { audit }, uriInfo);
+
+        final ArgumentCaptor<Response> responseCaptor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse, timeout(5000)).resume(responseCaptor.capture());
+        assertThat(getEntityEvents(responseCaptor.getValue())).isEqualTo(Arrays.<Event> asList(audit));
+    }
+
+    /**
+     * Test the retrieval of events after a cursor.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsAfterCursor() throws Exception {
+        final SimpleEvent first = mock(SimpleEvent.class);
+        final SimpleEvent second = mock(SimpleEvent.class);
+        final SimpleEvent third = mock(SimpleEvent.class);
+        resource.storeEvents(new SimpleEvent[] { first, second, third }, uriInfo);
+
+        final Response getResponse = getEvents(1, 1);
+        assertThat(getResponse.getStatus()).isEqualTo(Response.Status.OK.getStatusCode());
+        assertThat(getEntityEvents(getResponse)).isEqualTo(Arrays.<Event> asList(second));
+        assertThat(getResponse.getHeaderString(FlumeSinkServerResource.CURSOR_HEADER)).isEqualTo("2");
+    }
+
+    /**
+     * Test that a non-positive limit is rejected.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsInvalidLimit() throws Exception {
+        assertThat(getEvents(0, 0).getStatus()).isEqualTo(Response.Status.BAD_REQUEST.getStatusCode());
+    }
+
+    /**
+     * Test that a retrieval with a wait is completed once events are stored.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsWaitForEvents() throws Exception {
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.getEvents(0, null, 60000, uriInfo, request, asyncResponse);
+        verify(asyncResponse, never()).resume(any(Response.class));
+
+        final SimpleEvent stored = mock(SimpleEvent.class);
+        resource.storeEvents(new SimpleEvent[] { stored }, uriInfo);
+
+        final ArgumentCaptor<Response> responseCaptor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse, timeout(5000)).resume(responseCaptor.capture());
+        assertThat(getEntityEvents(responseCaptor.getValue())).isEqualTo(Arrays.<Event> asList(stored));
+        assertThat(responseCaptor.getValue().getHeaderString(FlumeSinkServerResource.CURSOR_HEADER)).isEqualTo("1");
+    }
+
+    /**
+     * Test that a retrieval with a wait is completed with no events if none are stored within the wait.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsWaitTimeout() throws Exception {
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.getEvents(0, null, 50, uriInfo, request, asyncResponse);
+
+        final ArgumentCaptor<Response> responseCaptor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse, timeout(5000)).resume(responseCaptor.capture());
+        assertThat(getEntityEvents(responseCaptor.getValue())).isEmpty();
+        assertThat(responseCaptor.getValue().getHeaderString(FlumeSinkServerResource.CURSOR_HEADER)).isEqualTo("0");
     }
 
     /**
@@ -102,4 +363,53 @@ public class FlumeSinkServerResourceTest {
         assertThat(postResponse.getStatus()).isEqualTo(Response.Status.CREATED.getStatusCode());
         assertThat(postResponse.getLocation()).isEqualTo(baseUri.resolve("events"));
     }
+
+    /**
+     * Retrieve events from the resource without waiting.
+     * 
+     * @param afterSequence
+     *            The sequence number after which events are to be retrieved.
+     * @param limit
+     *            The maximum number of events to be retrieved; can be {@code null}.
+     * @return The {@link Response} with which the resource completed the retrieval.
+     * @throws Exception
+     *             If any errors occur during the retrieval.
+     */
+    private Response getEvents(long afterSequence, Integer limit) throws Exception {
+        final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.getEvents(afterSequence, limit, 0, uriInfo, request, asyncResponse);
+
+        final ArgumentCaptor<Response> responseCaptor = ArgumentCaptor.forClass(Response.class);
+        verify(asyncResponse).resume(responseCaptor.capture());
+        return responseCaptor.getValue();
+    }
+
+    /**
+     * Get the events contained in a response.
+     * 
+     * @param response
+     *            The {@link Response} whose events are to be retrieved.
+     * @return A {@link List} of the {@link Event} objects in the {@link EventBatch} that is the entity of the given response.
+     */
+    private static List<Event> getEntityEvents(Response response) {
+        return ((EventBatch) response.getEntity()).getEvents();
+    }
+
+    /**
+     * Create an event.
+     * 
+     * @param type
+     *            The value of the event's {@code type} header.
+     * @param host
+     *            The value of the event's {@code host} header.
+     * @return A {@link SimpleEvent} with the given headers.
+     */
+    private static SimpleEvent createEvent(String type, String host) {
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put("type", type);
+        headers.put("host", host);
+        final SimpleEvent event = new SimpleEvent();
+        event.setHeaders(headers);
+        return event;
+    }
 }
@@ -18,21 +18,38 @@
 package com.github.jrh3k5.flume.sink.http.server;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
+import java.lang.management.ManagementFactory;
 import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.ws.rs.Priorities;
+
+import org.apache.flume.event.SimpleEvent;
+import org.glassfish.grizzly.http.KeepAlive;
 import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransportBuilder;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.message.GZipEncoder;
 import org.glassfish.jersey.server.ResourceConfig;
+import org.glassfish.jersey.server.filter.EncodingFilter;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
@@ -47,11 +64,15 @@ import com.github.jrh3k5.flume.sink.http.server.FlumeSinkServerResource;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({ FlumeSinkServer.class, GrizzlyHttpServerFactory.class, ResourceConfig.class })
+@PowerMockIgnore("javax.management.*")
 public class FlumeSinkServerTest {
     private final String bindAddress = "a.server";
     private final int serverPort = 748392;
     @Mock
     private HttpServer httpServer;
+    @Mock
+    private EventStore eventStore;
+    private ResourceConfig resourceConfig;
     private FlumeSinkServer sinkServer;
 
     /**
@@ -61,18 +82,143 @@ public class FlumeSinkServerTest {
      */
     @Before
     public void setUpServer() throws Exception {
-
-        final String resourcePackageName = FlumeSinkServerResource.class.getPackage().getName();
-        final ResourceConfig resourceConfig = mock(ResourceConfig.class);
+        resourceConfig = mock(ResourceConfig.class);
         whenNew(ResourceConfig.class).withNoArguments().thenReturn(resourceConfig);
-        when(resourceConfig.packages(resourcePackageName)).thenReturn(resourceConfig);
 
         mockStatic(GrizzlyHttpServerFactory.class);
-        when(GrizzlyHttpServerFactory.createHttpServer(URI.create(String.format("http://%s:%d", bindAddress, serverPort)), resourceConfig)).thenReturn(httpServer);
+        when(GrizzlyHttpServerFactory.createHttpServer(URI.create(String.format("http://%s:%d", bindAddress, serverPort)), resourceConfig, false)).thenReturn(httpServer);
 
-        sinkServer = new FlumeSinkServer(bindAddress, serverPort);
+        sinkServer = new FlumeSinkServer(bindAddress, serverPort, createConfig(eventStore));
 
-        verify(resourceConfig).packages(resourcePackageName);
+        verify(resourceConfig).register(isA(FlumeSinkServerResource.class));
+        verify(resourceConfig).register(isA(MetricsResource.class));
+        verify(resourceConfig).register(isA(RequestMetricsFeature.class));
+        verify(resourceConfig).register(EventBatchJsonWriter.class);
+        verify(resourceConfig).register(BinaryEventsProvider.class);
+        verify(resourceConfig, never()).register(EncodingFilter.class);
+    }
+
+    /**
+     * Test that a server created with compression registers the encoding of request and response bodies.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCompression() throws Exception {
+        final FlumeSinkServerConfig config = createConfig(eventStore);
+        config.setCompression(Compression.GZIP);
+        new FlumeSinkServer(bindAddress, serverPort, config);
+
+        verify(resourceConfig).register(EncodingFilter.class);
+        verify(resourceConfig).register(GZipEncoder.class, Priorities.ENTITY_CODER);
+        verify(resourceConfig).register(EventStreamEncodingFilter.class);
+    }
+
+    /**
+     * Test that a server with a partitioned store exposes its partitions.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testPartitioned() throws Exception {
+        final PartitionedEventStore partitionedStore = new PartitionedEventStore(Arrays.asList(new RingBufferEventStore(), new RingBufferEventStore()), "user");
+        new FlumeSinkServer(bindAddress, serverPort, createConfig(partitionedStore));
+
+        verify(resourceConfig).register(isA(PartitionedServerResource.class));
+    }
+
+    /**
+     * Test that a retainer is created for each partition of a partitioned store when retention limits are set, and for none otherwise.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRetention() throws Exception {
+        final PartitionedEventStore partitionedStore = new PartitionedEventStore(Arrays.asList(new RingBufferEventStore(), new RingBufferEventStore()), "user");
+        final RetentionConfig retentionConfig = new RetentionConfig();
+        final FlumeSinkServerConfig config = createConfig(partitionedStore);
+        config.setRetentionConfig(retentionConfig);
+        assertThat(new FlumeSinkServer(bindAddress, serverPort, config).getEventRetainers()).isEmpty();
+
+        retentionConfig.setMaxCount(Long.valueOf(100));
+        final FlumeSinkServer retainingServer = new FlumeSinkServer(bindAddress, serverPort, config);
+        try {
+            assertThat(retainingServer.getEventRetainers().keySet()).containsOnly("/partitions/0", "/partitions/1");
+            assertThat(retainingServer.getEventRetainers().get("/partitions/1").getRetentionConfig()).isSameAs(retentionConfig);
+        } finally {
+            retainingServer.stop();
+        }
+    }
+
+    /**
+     * Test that the retainers only evict events while the server is started, including after it is restarted.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRetentionRestart() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore();
+        final RetentionConfig retentionConfig = new RetentionConfig();
+        retentionConfig.setMaxCount(Long.valueOf(1));
+        retentionConfig.setIntervalMillis(10);
+        final FlumeSinkServerConfig config = createConfig(store);
+        config.setRetentionConfig(retentionConfig);
+        final FlumeSinkServer retainingServer = new FlumeSinkServer(bindAddress, serverPort, config);
+        store.storeEvents(Arrays.asList(new SimpleEvent(), new SimpleEvent()));
+        Thread.sleep(50);
+        assertThat(store.getEventCount()).isEqualTo(2);
+
+        for (int i = 0; i < 2; i++) {
+            retainingServer.start();
+            try {
+                final long deadline = System.currentTimeMillis() + 5000;
+                while (store.getEventCount() > 1 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertThat(store.getEventCount()).isEqualTo(1);
+            } finally {
+                retainingServer.stop();
+            }
+            store.storeEvents(Arrays.asList(new SimpleEvent(), new SimpleEvent()));
+        }
+        Thread.sleep(50);
+        assertThat(store.getEventCount()).isEqualTo(3);
+    }
+
+    /**
+     * Test that the transport settings are applied to the listeners of the server.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testTransportConfig() throws Exception {
+        final NetworkListener listener = mock(NetworkListener.class);
+        final TCPNIOTransport transport = TCPNIOTransportBuilder.newInstance().build();
+        final KeepAlive keepAlive = new KeepAlive();
+        when(httpServer.getListeners()).thenReturn(Collections.singleton(listener));
+        when(listener.getTransport()).thenReturn(transport);
+        when(listener.getKeepAlive()).thenReturn(keepAlive);
+
+        final ServerTransportConfig transportConfig = new ServerTransportConfig();
+        transportConfig.setSelectorRunners(2);
+        transportConfig.setWorkerPoolSize(64);
+        transportConfig.setKeepAliveTimeoutSeconds(10);
+        transportConfig.setMaxRequestBytes(1024L);
+        final FlumeSinkServerConfig config = createConfig(eventStore);
+        config.setTransportConfig(transportConfig);
+        new FlumeSinkServer(bindAddress, serverPort, config);
+
+        assertThat(transport.getSelectorRunnersCount()).isEqualTo(2);
+        assertThat(transport.getWorkerThreadPoolConfig().getCorePoolSize()).isEqualTo(64);
+        assertThat(transport.getWorkerThreadPoolConfig().getMaxPoolSize()).isEqualTo(64);
+        assertThat(keepAlive.getIdleTimeoutInSeconds()).isEqualTo(10);
+        assertThat(keepAlive.getMaxRequestsCount()).isEqualTo(new KeepAlive().getMaxRequestsCount());
+        verify(resourceConfig).register(isA(RequestSizeLimitFilter.class));
     }
 
     /**
@@ -87,7 +233,18 @@ public class FlumeSinkServerTest {
     }
 
     /**
-     * Test the starting of the server.
+     * Test the retrieval of the event store.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventStore() throws Exception {
+        assertThat(sinkServer.getEventStore()).isEqualTo(eventStore);
+    }
+
+    /**
+     * Test the starting of the server, which publishes its request metrics over JMX until it is stopped.
      * 
      * @throws Exception
      *             If any errors occur during the test run.
@@ -96,6 +253,15 @@ public class FlumeSinkServerTest {
     public void testStart() throws Exception {
         sinkServer.start();
         verify(httpServer).start();
+
+        final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName getEventsName = new ObjectName(String.format("%s:type=RequestMetrics,server=%s,resource=%s,method=getEvents", FlumeSinkServer.METRICS_DOMAIN,
+                ObjectName.quote(bindAddress + ":" + serverPort), ObjectName.quote("/")));
+        assertThat(mbeanServer.getAttribute(getEventsName, "RequestCount")).isEqualTo(Long.valueOf(0));
+        assertThat(mbeanServer.queryNames(new ObjectName(FlumeSinkServer.METRICS_DOMAIN + ":*"), null)).hasSize(ResourceMetrics.MEASURED_METHODS.size());
+
+        sinkServer.stop();
+        assertThat(mbeanServer.isRegistered(getEventsName)).isFalse();
     }
 
     /**
@@ -109,4 +275,17 @@ public class FlumeSinkServerTest {
         sinkServer.stop();
         verify(httpServer).shutdown();
     }
+
+    /**
+     * Create the settings of a server.
+     * 
+     * @param eventStore
+     *            The {@link EventDestination} to be exposed by the server.
+     * @return A {@link FlumeSinkServerConfig} with the given store and otherwise default settings.
+     */
+    private static FlumeSinkServerConfig createConfig(EventDestination eventStore) {
+        final FlumeSinkServerConfig config = new FlumeSinkServerConfig();
+        config.setEventStore(eventStore);
+        return config;
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link HeaderIndex}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class HeaderIndexTest {
+    private final Map<String, String> auditFilter = Collections.singletonMap("type", "audit");
+
+    /**
+     * Test that events already in the store when the index is created are indexed.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testIndexExistingEvents() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore();
+        final List<Event> events = createEvents(10);
+        store.storeEvents(events);
+
+        final HeaderIndex index = new HeaderIndex(store, Collections.singleton("type"));
+        try {
+            final EventBatch batch = index.getEvents(0, Integer.MAX_VALUE, auditFilter);
+            assertThat(batch.getEvents()).isEqualTo(filterAudit(events));
+            assertThat(batch.getCursor()).isEqualTo(10);
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Test that a limited retrieval stops at the last matching event returned.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsLimit() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore();
+        final HeaderIndex index = new HeaderIndex(store, Collections.singleton("type"));
+        try {
+            final List<Event> events = createEvents(1000);
+            store.storeEvents(events);
+            final List<Event> audits = filterAudit(events);
+
+            final EventBatch firstBatch = index.getEvents(0, 2, auditFilter);
+            assertThat(firstBatch.getEvents()).isEqualTo(audits.subList(0, 2));
+            // The second audit event is the fourth event stored
+            assertThat(firstBatch.getCursor()).isEqualTo(4);
+
+            final EventBatch secondBatch = index.getEvents(firstBatch.getCursor(), Integer.MAX_VALUE, auditFilter);
+            assertThat(secondBatch.getEvents()).isEqualTo(audits.subList(2, audits.size()));
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Test that only events still retained by the store are retrieved once older events have been discarded.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDiscardedEvents() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore(100, OverflowPolicy.DROP_OLDEST);
+        final HeaderIndex index = new HeaderIndex(store, Collections.singleton("type"));
+        try {
+            final List<Event> events = createEvents(10000);
+            for (int i = 0; i < events.size(); i += 50) {
+                store.storeEvents(events.subList(i, i + 50));
+            }
+
+            final EventBatch batch = index.getEvents(0, Integer.MAX_VALUE, auditFilter);
+            assertThat(batch.getEvents()).isEqualTo(filterAudit(events.subList(9900, 10000)));
+            assertThat(batch.getCursor()).isEqualTo(10000);
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * Test that a retrieval filtering on a header that is not indexed scans the store.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsUnindexed() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore();
+        final HeaderIndex index = new HeaderIndex(store, Collections.<String> emptySet());
+        final List<Event> events = createEvents(10);
+        store.storeEvents(events);
+
+        final EventBatch batch = index.getEvents(0, Integer.MAX_VALUE, auditFilter);
+        assertThat(batch.getEvents()).isEqualTo(filterAudit(events));
+        assertThat(batch.getCursor()).isEqualTo(10);
+        assertThat(index.getEvents(0, Integer.MAX_VALUE, Collections.<String, String> emptyMap()).getEvents()).isEqualTo(events);
+    }
+
+    /**
+     * Create events, every other one of which has a {@code type} header of {@code audit}.
+     * 
+     * @param count
+     *            The number of events to be created.
+     * @return A {@link List} of {@link Event} objects.
+     */
+    private static List<Event> createEvents(int count) {
+        final List<Event> events = new ArrayList<Event>(count);
+        for (int i = 0; i < count; i++) {
+            final SimpleEvent event = new SimpleEvent();
+            event.setHeaders(Collections.singletonMap("type", i % 2 == 1 ? "audit" : "access"));
+            events.add(event);
+        }
+        return events;
+    }
+
+    /**
+     * Select the audit events.
+     * 
+     * @param events
+     *            The {@link Event} objects to be filtered.
+     * @return A {@link List} of the given events that have a {@code type} header of {@code audit}.
+     */
+    private static List<Event> filterAudit(List<Event> events) {
+        final List<Event> audits = new ArrayList<Event>();
+        for (Event event : events) {
+            if ("audit".equals(event.getHeaders().get("type"))) {
+                audits.add(event);
+            }
+        }
+        return audits;
+    }
+}
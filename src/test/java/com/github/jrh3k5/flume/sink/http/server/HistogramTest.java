@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Histogram}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class HistogramTest {
+    private final Histogram histogram = new Histogram();
+
+    /**
+     * Test the count, mean and maximum of recorded values.
+     */
+    @Test
+    public void testRecord() {
+        histogram.record(2);
+        histogram.record(4);
+        histogram.record(-3);
+
+        assertThat(histogram.getCount()).isEqualTo(3);
+        assertThat(histogram.getMean()).isEqualTo(2.0);
+        assertThat(histogram.getMax()).isEqualTo(4);
+    }
+
+    /**
+     * Test that small values are reported exactly and large values to within the precision of their buckets.
+     */
+    @Test
+    public void testGetPercentile() {
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(1000000);
+
+        assertThat(histogram.getPercentile(0)).isEqualTo(1);
+        final long median = histogram.getPercentile(50);
+        assertThat(median).isGreaterThanOrEqualTo(51).isLessThanOrEqualTo(51 + 51 / Histogram.SUB_BUCKET_COUNT);
+        final long ninetyNinth = histogram.getPercentile(99);
+        assertThat(ninetyNinth).isGreaterThanOrEqualTo(100).isLessThanOrEqualTo(100 + 100 / Histogram.SUB_BUCKET_COUNT);
+        // The highest percentile is capped by the largest value rather than its bucket
+        assertThat(histogram.getPercentile(100)).isEqualTo(1000000);
+    }
+
+    /**
+     * Test the recording of the largest possible value.
+     */
+    @Test
+    public void testRecordMaxValue() {
+        histogram.record(Long.MAX_VALUE);
+        assertThat(histogram.getPercentile(50)).isEqualTo(Long.MAX_VALUE);
+    }
+
+    /**
+     * Test the percentiles of an empty histogram.
+     */
+    @Test
+    public void testGetPercentileEmpty() {
+        assertThat(histogram.getPercentile(99)).isZero();
+        assertThat(histogram.getMean()).isZero();
+    }
+
+    /**
+     * Test the summary of the recorded values.
+     */
+    @Test
+    public void testGetSummary() {
+        histogram.record(7);
+
+        final Map<String, Object> summary = histogram.getSummary();
+        assertThat(summary.keySet()).containsOnly("count", "mean", "p50", "p90", "p99", "p999", "max");
+        assertThat(summary.get("count")).isEqualTo(Long.valueOf(1));
+        assertThat(summary.get("p99")).isEqualTo(Long.valueOf(7));
+    }
+}
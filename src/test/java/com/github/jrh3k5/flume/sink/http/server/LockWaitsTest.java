@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LockWaits}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class LockWaitsTest {
+    /**
+     * Test that acquiring an uncontended lock adds nothing to the wait of the thread.
+     */
+    @Test
+    public void testLockUncontended() {
+        final ReentrantLock lock = new ReentrantLock();
+        final long waitNanos = LockWaits.getWaitNanos();
+        LockWaits.lock(lock);
+        try {
+            assertThat(lock.isHeldByCurrentThread()).isTrue();
+        } finally {
+            lock.unlock();
+        }
+        assertThat(LockWaits.getWaitNanos()).isEqualTo(waitNanos);
+    }
+
+    /**
+     * Test that the time spent waiting for a lock held by another thread is added to the wait of the waiting thread only.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testLockContended() throws Exception {
+        final ReentrantLock lock = new ReentrantLock();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final long[] holderWaitNanos = new long[1];
+        final Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                LockWaits.lock(lock);
+                try {
+                    locked.countDown();
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lock.unlock();
+                }
+                holderWaitNanos[0] = LockWaits.getWaitNanos();
+            }
+        });
+        holder.start();
+        locked.await();
+
+        final long waitNanos = LockWaits.getWaitNanos();
+        LockWaits.lock(lock);
+        lock.unlock();
+        holder.join();
+        assertThat(LockWaits.getWaitNanos() - waitNanos).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(holderWaitNanos[0]).isZero();
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static com.github.jrh3k5.flume.sink.http.server.TestEvents.createEvents;
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link MappedSegmentEventStore}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class MappedSegmentEventStoreTest {
+    /**
+     * A segment size that fits a handful of the events created by {@link TestEvents#createEvents(int)}.
+     */
+    private static final int SEGMENT_SIZE = 512;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private MappedSegmentEventStore store;
+
+    /**
+     * Create the store to be tested.
+     * 
+     * @throws Exception
+     *             If any errors occur during the setup.
+     */
+    @Before
+    public void setUpStore() throws Exception {
+        store = new MappedSegmentEventStore(temporaryFolder.getRoot(), SEGMENT_SIZE, Long.MAX_VALUE, 0);
+    }
+
+    /**
+     * Close the store after each test.
+     */
+    @After
+    public void closeStore() {
+        store.close();
+    }
+
+    /**
+     * Test the storage and retrieval of events, including those without headers or bodies.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEvents() throws Exception {
+        final Map<String, String> headers = new HashMap<String, String>();
+        headers.put("unicode", "\u00e9\ud83d\ude00");
+        headers.put("null", null);
+        final SimpleEvent withHeaders = new SimpleEvent();
+        withHeaders.setHeaders(headers);
+        withHeaders.setBody(new byte[] { 0, 1, 2, (byte) 0xff });
+        final SimpleEvent empty = new SimpleEvent();
+
+        store.storeEvents(Arrays.asList(withHeaders, empty));
+
+        final EventBatch batch = store.getEvents(0, Integer.MAX_VALUE);
+        assertThat(batch.getCursor()).isEqualTo(2);
+        final List<Event> stored = batch.getEvents();
+        assertThat(stored).hasSize(2);
+        assertThat(stored.get(0).getHeaders()).isEqualTo(headers);
+        assertThat(stored.get(0).getBody()).isEqualTo(withHeaders.getBody());
+        assertThat(stored.get(1).getHeaders()).isEmpty();
+        assertThat(stored.get(1).getBody()).isEmpty();
+        // Bodies are read out of the mapped files
+        assertThat(((ByteBufferEvent) stored.get(0)).getBodyBuffer().isDirect()).isTrue();
+    }
+
+    /**
+     * Test that each event read back carries the time at which it was stored.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoredMillis() throws Exception {
+        final long before = System.currentTimeMillis();
+        store.storeEvents(createEvents(20));
+        final long after = System.currentTimeMillis();
+
+        for (StoredEvent storedEvent : store.getEvents(0, Integer.MAX_VALUE).getStoredEvents()) {
+            assertThat(storedEvent.getStoredMillis()).isGreaterThanOrEqualTo(before).isLessThanOrEqualTo(after);
+        }
+    }
+
+    /**
+     * Test that events are written across segments and read back in order.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testSegmentRollover() throws Exception {
+        final List<Event> events = createEvents(50);
+        store.storeEvents(events);
+        assertThat(store.getSegmentCount()).isGreaterThan(1);
+        assertBodies(store.getEvents(0, Integer.MAX_VALUE), events);
+
+        final EventBatch firstBatch = store.getEvents(0, 7);
+        assertThat(firstBatch.getCursor()).isEqualTo(7);
+        assertBodies(store.getEvents(firstBatch.getCursor(), Integer.MAX_VALUE), events.subList(7, 50));
+    }
+
+    /**
+     * Test that an event larger than a segment is stored in a segment of its own.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testOversizedEvent() throws Exception {
+        final SimpleEvent event = new SimpleEvent();
+        event.setBody(new byte[SEGMENT_SIZE * 3]);
+        store.storeEvents(Collections.singletonList(event));
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents().get(0).getBody()).hasSize(SEGMENT_SIZE * 3);
+    }
+
+    /**
+     * Test that a store created over the segments of a previous store resumes from where it left off.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRecovery() throws Exception {
+        final List<Event> events = createEvents(30);
+        store.storeEvents(events.subList(0, 20));
+        store.close();
+
+        store = new MappedSegmentEventStore(temporaryFolder.getRoot(), SEGMENT_SIZE, Long.MAX_VALUE, 0);
+        assertThat(store.getLastSequence()).isEqualTo(20);
+        assertThat(store.getRetainedBytes()).isEqualTo((long) SEGMENT_SIZE * store.getSegmentCount());
+        assertBodies(store.getEvents(0, Integer.MAX_VALUE), events.subList(0, 20));
+
+        store.storeEvents(events.subList(20, 30));
+        assertBodies(store.getEvents(0, Integer.MAX_VALUE), events);
+        assertThat(store.getLastSequence()).isEqualTo(30);
+    }
+
+    /**
+     * Test that recovery stops at a torn record, keeping the events before it and numbering the next stored event after them.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRecoveryTornRecord() throws Exception {
+        final List<Event> events = createEvents(5);
+        store.storeEvents(events);
+        assertThat(store.getSegmentCount()).isEqualTo(1);
+        store.close();
+
+        int tornOffset = 0;
+        for (Event event : events.subList(0, 3)) {
+            tornOffset += RecordBuffer.recordSize(event);
+        }
+        final File segmentFile = temporaryFolder.getRoot().listFiles()[0];
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(segmentFile, "rw");
+        try {
+            // Flip a byte within the body of the fourth event
+            randomAccessFile.seek(tornOffset + RecordBuffer.RECORD_HEADER_SIZE + 6);
+            final int original = randomAccessFile.read();
+            randomAccessFile.seek(tornOffset + RecordBuffer.RECORD_HEADER_SIZE + 6);
+            randomAccessFile.write(original ^ 0xff);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        store = new MappedSegmentEventStore(temporaryFolder.getRoot(), SEGMENT_SIZE, Long.MAX_VALUE, 0);
+        assertThat(store.getLastSequence()).isEqualTo(3);
+        assertBodies(store.getEvents(0, Integer.MAX_VALUE), events.subList(0, 3));
+
+        store.storeEvents(events.subList(3, 5));
+        assertBodies(store.getEvents(0, Integer.MAX_VALUE), events);
+    }
+
+    /**
+     * Test that the age of a recovered segment is taken from the records in it rather than from the modification time of its file.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testRecoveryAge() throws Exception {
+        final File directory = temporaryFolder.newFolder("recovered-age");
+        store = new MappedSegmentEventStore(directory, SEGMENT_SIZE, Long.MAX_VALUE, 0);
+        store.storeEvents(createEvents(20));
+        final int segmentCount = store.getSegmentCount();
+        assertThat(segmentCount).isGreaterThan(2);
+        store.close();
+        Thread.sleep(100);
+        for (File segmentFile : directory.listFiles()) {
+            assertThat(segmentFile.setLastModified(System.currentTimeMillis())).isTrue();
+        }
+
+        store = new MappedSegmentEventStore(directory, SEGMENT_SIZE, Long.MAX_VALUE, 50);
+        store.storeEvents(createEvents(1));
+        assertThat(store.getDeletedSegmentCount()).isEqualTo(segmentCount - 1);
+    }
+
+    /**
+     * Test that the oldest segments are deleted once the store exceeds its maximum size.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testMaxBytes() throws Exception {
+        store = new MappedSegmentEventStore(temporaryFolder.newFolder("bounded"), SEGMENT_SIZE, SEGMENT_SIZE * 2, 0);
+        final List<Event> events = createEvents(100);
+        store.storeEvents(events);
+
+        assertThat(store.getRetainedBytes()).isLessThanOrEqualTo(SEGMENT_SIZE * 3);
+        assertThat(store.getDeletedSegmentCount()).isGreaterThan(0);
+        final EventBatch batch = store.getEvents(0, Integer.MAX_VALUE);
+        assertThat(batch.getCursor()).isEqualTo(100);
+        // Whatever is retained is the newest of the events
+        final List<Event> retained = batch.getEvents();
+        assertBodies(batch, events.subList(100 - retained.size(), 100));
+        assertThat(store.getEventCount()).isEqualTo(retained.size());
+        assertThat(store.getDroppedCount()).isEqualTo(100 - retained.size());
+    }
+
+    /**
+     * Test that segments older than the maximum age are deleted.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testMaxAge() throws Exception {
+        store = new MappedSegmentEventStore(temporaryFolder.newFolder("aged"), SEGMENT_SIZE, Long.MAX_VALUE, 50);
+        store.storeEvents(createEvents(20));
+        final int segmentCount = store.getSegmentCount();
+        Thread.sleep(100);
+
+        // Age is enforced when events are stored, and only the segment being written to survives
+        store.storeEvents(createEvents(1));
+        assertThat(store.getSegmentCount()).isEqualTo(1);
+        assertThat(store.getDeletedSegmentCount()).isEqualTo(segmentCount - 1);
+        assertThat(store.getEventCount()).isEqualTo(store.getEvents(0, Integer.MAX_VALUE).getEvents().size());
+        assertThat(store.getDroppedCount()).isEqualTo(21 - store.getEventCount());
+    }
+
+    /**
+     * Test the deletion of events.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDeleteEvents() throws Exception {
+        store.storeEvents(createEvents(20));
+        store.deleteEvents();
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEmpty();
+        assertThat(store.getSegmentCount()).isEqualTo(1);
+        assertThat(store.getRetainedBytes()).isEqualTo(SEGMENT_SIZE);
+
+        final List<Event> events = createEvents(2);
+        store.storeEvents(events);
+        final EventBatch batch = store.getEvents(0, Integer.MAX_VALUE);
+        assertBodies(batch, events);
+        assertThat(batch.getCursor()).isEqualTo(22);
+
+        // The sequence numbers carry on after a restart following a deletion
+        store.deleteEvents();
+        store.close();
+        store = new MappedSegmentEventStore(temporaryFolder.getRoot(), SEGMENT_SIZE, Long.MAX_VALUE, 0);
+        assertThat(store.getLastSequence()).isEqualTo(22);
+    }
+
+    /**
+     * Test that deleting events through a sequence number deletes only the segments holding no retained events.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDeleteEventsThrough() throws Exception {
+        final List<Event> events = createEvents(20);
+        store.storeEvents(events);
+        final int segmentCount = store.getSegmentCount();
+        assertThat(segmentCount).isGreaterThan(2);
+
+        store.deleteEventsThrough(10);
+        assertBodies(store.getEvents(0, Integer.MAX_VALUE), events.subList(10, 20));
+        assertThat(store.getSegmentCount()).isLessThan(segmentCount).isGreaterThan(0);
+
+        // The segment being written to is kept
+        store.deleteEventsThrough(20);
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEmpty();
+        assertThat(store.getSegmentCount()).isEqualTo(1);
+        assertThat(store.getDeletedSegmentCount()).isZero();
+    }
+
+    /**
+     * Assert that a batch holds events with the expected bodies.
+     * 
+     * @param batch
+     *            The {@link EventBatch} to be verified.
+     * @param expected
+     *            The {@link Event} objects whose bodies are expected in the batch.
+     */
+    private static void assertBodies(EventBatch batch, List<Event> expected) {
+        final List<Event> actual = batch.getEvents();
+        assertThat(actual).hasSize(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getBody()).isEqualTo(expected.get(i).getBody());
+            assertThat(actual.get(i).getHeaders()).isEqualTo(expected.get(i).getHeaders());
+        }
+    }
+}
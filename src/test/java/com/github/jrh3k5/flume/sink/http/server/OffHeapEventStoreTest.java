@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static com.github.jrh3k5.flume.sink.http.server.TestEvents.createEvents;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link OffHeapEventStore}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class OffHeapEventStoreTest {
+    /**
+     * A slab size that fits a handful of the events created by {@link TestEvents#createEvents(int)}.
+     */
+    private static final int SLAB_SIZE = 512;
+
+    /**
+     * Test the storage and retrieval of events across slabs.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEvents() throws Exception {
+        final OffHeapEventStore store = new OffHeapEventStore(SLAB_SIZE * 100, SLAB_SIZE, OverflowPolicy.DROP_OLDEST);
+        final List<Event> events = createEvents(50);
+        store.storeEvents(events);
+        assertThat(store.getAllocatedSlabCount()).isGreaterThan(1);
+        assertEvents(store.getEvents(0, Integer.MAX_VALUE), events);
+
+        final EventBatch firstBatch = store.getEvents(0, 7);
+        assertThat(firstBatch.getCursor()).isEqualTo(7);
+        assertEvents(store.getEvents(firstBatch.getCursor(), Integer.MAX_VALUE), events.subList(7, 50));
+        assertThat(store.getDroppedCount()).isZero();
+    }
+
+    /**
+     * Test that each event read back carries the time at which it was stored.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoredMillis() throws Exception {
+        final OffHeapEventStore store = new OffHeapEventStore(SLAB_SIZE * 100, SLAB_SIZE, OverflowPolicy.DROP_OLDEST);
+        final long before = System.currentTimeMillis();
+        store.storeEvents(createEvents(20));
+        final long after = System.currentTimeMillis();
+
+        for (StoredEvent storedEvent : store.getEvents(0, Integer.MAX_VALUE).getStoredEvents()) {
+            assertThat(storedEvent.getStoredMillis()).isGreaterThanOrEqualTo(before).isLessThanOrEqualTo(after);
+        }
+    }
+
+    /**
+     * Test that a read stops copying events once it has copied the maximum number of read bytes, leaving the rest to be read from its cursor.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsMaxReadBytes() throws Exception {
+        final OffHeapEventStore store = new OffHeapEventStore(SLAB_SIZE * 100, SLAB_SIZE, OverflowPolicy.DROP_OLDEST, 1);
+        final List<Event> events = createEvents(20);
+        store.storeEvents(events);
+
+        // Every read copies at least one event, even one larger than the maximum
+        final EventBatch firstBatch = store.getEvents(0, Integer.MAX_VALUE);
+        assertEvents(firstBatch, events.subList(0, 1));
+        assertThat(firstBatch.getCursor()).isEqualTo(1);
+
+        final List<StoredEvent> read = new ArrayList<StoredEvent>(firstBatch.getStoredEvents());
+        EventBatch batch;
+        long cursor = firstBatch.getCursor();
+        while (!(batch = store.getEvents(cursor, Integer.MAX_VALUE)).isEmpty()) {
+            assertThat(batch.getStoredEvents()).hasSize(1);
+            read.addAll(batch.getStoredEvents());
+            cursor = batch.getCursor();
+        }
+        assertEvents(new EventBatch(read, cursor), events);
+    }
+
+    /**
+     * Test that the oldest slab is reused once the store is full.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDropOldest() throws Exception {
+        final OffHeapEventStore store = new OffHeapEventStore(SLAB_SIZE * 3, SLAB_SIZE, OverflowPolicy.DROP_OLDEST);
+        final List<Event> events = createEvents(100);
+        store.storeEvents(events);
+        assertThat(store.getAllocatedSlabCount()).isEqualTo(3);
+
+        final EventBatch batch = store.getEvents(0, Integer.MAX_VALUE);
+        assertThat(batch.getCursor()).isEqualTo(100);
+        final int retained = batch.getEvents().size();
+        assertEvents(batch, events.subList(100 - retained, 100));
+        assertThat(store.getDroppedCount()).isEqualTo(100 - retained);
+    }
+
+    /**
+     * Test that deleting events through a sequence number returns the slabs holding no retained events to the pool.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDeleteEventsThrough() throws Exception {
+        final OffHeapEventStore store = new OffHeapEventStore(SLAB_SIZE * 3, SLAB_SIZE, OverflowPolicy.BLOCK);
+        final List<Event> events = createEvents(20);
+        store.storeEvents(events);
+
+        store.deleteEventsThrough(15);
+        assertEvents(store.getEvents(0, Integer.MAX_VALUE), events.subList(15, 20));
+
+        // The released slabs should have made room for more events without discarding any
+        final List<Event> moreEvents = createEvents(10);
+        store.storeEvents(moreEvents);
+        assertEvents(store.getEvents(20, Integer.MAX_VALUE), moreEvents);
+        assertThat(store.getAllocatedSlabCount()).isLessThanOrEqualTo(3);
+        assertThat(store.getDroppedCount()).isZero();
+    }
+
+    /**
+     * Test that events that do not fit are discarded under {@link OverflowPolicy#DROP_NEWEST}.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDropNewest() throws Exception {
+        final OffHeapEventStore store = new OffHeapEventStore(SLAB_SIZE * 2, SLAB_SIZE, OverflowPolicy.DROP_NEWEST);
+        final List<Event> events = createEvents(100);
+        store.storeEvents(events);
+
+        final EventBatch batch = store.getEvents(0, Integer.MAX_VALUE);
+        final int retained = batch.getEvents().size();
+        assertEvents(batch, events.subList(0, retained));
+        assertThat(store.getDroppedCount()).isEqualTo(100 - retained);
+    }
+
+    /**
+     * Test that events that do not all fit are refused under {@link OverflowPolicy#BLOCK}.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testBlock() throws Exception {
+        final OffHeapEventStore store = new OffHeapEventStore(SLAB_SIZE * 2, SLAB_SIZE, OverflowPolicy.BLOCK);
+        assertThat(store.hasRoomFor(createEvents(10))).isTrue();
+        assertThat(store.hasRoomFor(createEvents(100))).isFalse();
+        try {
+            store.storeEvents(createEvents(100));
+            fail("Storing more events than fit should have failed.");
+        } catch (EventStoreFullException e) {
+            // Expected
+        }
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEmpty();
+
+        // Deleting events makes room again
+        final List<Event> events = createEvents(10);
+        store.storeEvents(events);
+        store.deleteEvents();
+        store.storeEvents(events);
+        assertEvents(store.getEvents(10, Integer.MAX_VALUE), events);
+    }
+
+    /**
+     * Test that an event larger than a slab is stored.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testOversizedEvent() throws Exception {
+        final OffHeapEventStore store = new OffHeapEventStore(SLAB_SIZE, SLAB_SIZE, OverflowPolicy.DROP_OLDEST);
+        final SimpleEvent event = new SimpleEvent();
+        event.setBody(new byte[SLAB_SIZE * 3]);
+        store.storeEvents(Collections.singletonList(event));
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents().get(0).getBody()).hasSize(SLAB_SIZE * 3);
+    }
+
+    /**
+     * Test that readers see intact events while slabs are reused beneath them.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testConcurrentReuse() throws Exception {
+        final OffHeapEventStore store = new OffHeapEventStore(SLAB_SIZE * 2, SLAB_SIZE, OverflowPolicy.DROP_OLDEST);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> writer = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int i = 0; i < 200; i++) {
+                        store.storeEvents(createEvents(10));
+                    }
+                    return null;
+                }
+            });
+
+            while (!writer.isDone()) {
+                for (StoredEvent storedEvent : store.getEvents(0, Integer.MAX_VALUE).getStoredEvents()) {
+                    final String index = storedEvent.getEvent().getHeaders().get("index");
+                    assertThat(new String(storedEvent.getEvent().getBody(), "utf-8")).isEqualTo("event body number " + index);
+                }
+            }
+            writer.get();
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Assert that a batch holds the expected events.
+     * 
+     * @param batch
+     *            The {@link EventBatch} to be verified.
+     * @param expected
+     *            The {@link Event} objects expected in the batch.
+     */
+    private static void assertEvents(EventBatch batch, List<Event> expected) {
+        final List<Event> actual = batch.getEvents();
+        assertThat(actual).hasSize(expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getBody()).isEqualTo(expected.get(i).getBody());
+            assertThat(actual.get(i).getHeaders()).isEqualTo(expected.get(i).getHeaders());
+        }
+    }
+}
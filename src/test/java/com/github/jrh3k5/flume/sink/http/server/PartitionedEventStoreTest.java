@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PartitionedEventStore}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class PartitionedEventStoreTest {
+    private final List<RingBufferEventStore> partitions = Arrays.asList(new RingBufferEventStore(), new RingBufferEventStore(), new RingBufferEventStore());
+    private final PartitionedEventStore store = new PartitionedEventStore(partitions, "user");
+
+    /**
+     * Test that events with the same partition key are stored, in order, in the same partition.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEvents() throws Exception {
+        final List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < 30; i++) {
+            events.add(createEvent("user-" + (i % 5)));
+        }
+        store.storeEvents(events);
+        assertThat(store.getEventCount()).isEqualTo(30);
+
+        for (int i = 0; i < partitions.size(); i++) {
+            final List<Event> expected = new ArrayList<Event>();
+            for (Event event : events) {
+                if (store.partitionOf(event) == i) {
+                    expected.add(event);
+                }
+            }
+            assertThat(partitions.get(i).getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(expected);
+        }
+    }
+
+    /**
+     * Test that events without the partition key are spread among the partitions.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEventsUnkeyed() throws Exception {
+        store.storeEvents(Arrays.asList(createEvent(null), createEvent(null), createEvent(null)));
+        for (RingBufferEventStore partition : partitions) {
+            assertThat(partition.getLastSequence()).isEqualTo(1);
+        }
+    }
+
+    /**
+     * Test that a refusal by any partition refuses the whole batch, leaving the other partitions untouched.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEventsFull() throws Exception {
+        final RingBufferEventStore roomyPartition = new RingBufferEventStore(10, OverflowPolicy.BLOCK);
+        final RingBufferEventStore smallPartition = new RingBufferEventStore(1, OverflowPolicy.BLOCK);
+        final PartitionedEventStore smallStore = new PartitionedEventStore(Arrays.asList(roomyPartition, smallPartition), "user");
+        // Two events for each partition; the small partition has room for only one of its own
+        final List<Event> events = new ArrayList<Event>();
+        final int[] partitionCounts = new int[2];
+        for (int i = 0; events.size() < 4; i++) {
+            final Event event = createEvent("user-" + i);
+            if (partitionCounts[smallStore.partitionOf(event)]++ < 2) {
+                events.add(event);
+            }
+        }
+
+        try {
+            smallStore.storeEvents(events);
+            fail("A batch for which a partition has no room should have been refused.");
+        } catch (EventStoreFullException e) {
+            assertThat(e.getMessage()).contains("partition 1");
+        }
+        assertThat(roomyPartition.getLastSequence()).isZero();
+        assertThat(smallPartition.getLastSequence()).isZero();
+    }
+
+    /**
+     * Test that a partition that discards events to make room never causes a batch to be refused, but is still left untouched when a blocking partition refuses the batch.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEventsMixedPolicies() throws Exception {
+        final RingBufferEventStore droppingPartition = new RingBufferEventStore(1, OverflowPolicy.DROP_OLDEST);
+        final RingBufferEventStore blockingPartition = new RingBufferEventStore(1, OverflowPolicy.BLOCK);
+        final PartitionedEventStore mixedStore = new PartitionedEventStore(Arrays.asList(droppingPartition, blockingPartition), "user");
+        // Two events for each partition; neither has room for both of its own
+        final List<Event> events = new ArrayList<Event>();
+        final List<Event> droppingEvents = new ArrayList<Event>();
+        final int[] partitionCounts = new int[2];
+        for (int i = 0; events.size() < 4; i++) {
+            final Event event = createEvent("user-" + i);
+            final int partition = mixedStore.partitionOf(event);
+            if (partitionCounts[partition]++ < 2) {
+                events.add(event);
+                if (partition == 0) {
+                    droppingEvents.add(event);
+                }
+            }
+        }
+
+        try {
+            mixedStore.storeEvents(events);
+            fail("A batch for which a blocking partition has no room should have been refused.");
+        } catch (EventStoreFullException e) {
+            assertThat(e.getMessage()).contains("partition 1");
+        }
+        assertThat(droppingPartition.getLastSequence()).isZero();
+        assertThat(blockingPartition.getLastSequence()).isZero();
+
+        mixedStore.storeEvents(droppingEvents);
+        assertThat(droppingPartition.getLastSequence()).isEqualTo(2);
+        assertThat(droppingPartition.getDroppedCount()).isEqualTo(1);
+    }
+
+    /**
+     * Test the deletion of the events of all partitions.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDeleteEvents() throws Exception {
+        store.storeEvents(Arrays.asList(createEvent("a"), createEvent("b"), createEvent("c"), createEvent("d")));
+        store.deleteEvents();
+        for (RingBufferEventStore partition : partitions) {
+            assertThat(partition.getEvents(0, Integer.MAX_VALUE).getEvents()).isEmpty();
+        }
+    }
+
+    /**
+     * Test the retrieval of the partitions.
+     */
+    @Test
+    public void testGetPartitions() {
+        assertThat(store.getPartitions()).isEqualTo(partitions);
+        assertThat(store.getPartitionCount()).isEqualTo(partitions.size());
+        assertThat(store.getPartition(2)).isSameAs(partitions.get(2));
+    }
+
+    /**
+     * Create an event.
+     * 
+     * @param user
+     *            The value of the partition key header; {@code null} to create an event without it.
+     * @return An {@link Event}.
+     */
+    private static Event createEvent(String user) {
+        final SimpleEvent event = new SimpleEvent();
+        event.setHeaders(user == null ? Collections.<String, String> emptyMap() : Collections.singletonMap("user", user));
+        return event;
+    }
+}
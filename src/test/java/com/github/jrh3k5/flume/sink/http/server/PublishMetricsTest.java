@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PublishMetrics}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class PublishMetricsTest {
+    private final RingBufferEventStore eventStore = new RingBufferEventStore(2, OverflowPolicy.DROP_OLDEST);
+    private final PublishMetrics metrics = new PublishMetrics(eventStore);
+
+    /**
+     * Test the recording of takes.
+     */
+    @Test
+    public void testRecordTake() {
+        metrics.recordTake(0, TimeUnit.MICROSECONDS.toNanos(3));
+        metrics.recordTake(5, TimeUnit.MICROSECONDS.toNanos(7));
+
+        assertThat(metrics.getEmptyTakeCount()).isEqualTo(1);
+        assertThat(metrics.getBatchSizes().getCount()).isEqualTo(1);
+        assertThat(metrics.getBatchSizes().getMax()).isEqualTo(5);
+        assertThat(metrics.getTakeLatencies().getCount()).isEqualTo(2);
+        assertThat(metrics.getTakeLatencies().getMax()).isEqualTo(7);
+    }
+
+    /**
+     * Test the recording of publications.
+     */
+    @Test
+    public void testRecordPublish() {
+        metrics.recordPublish(Arrays.asList(createEvent(3), createEvent(4), new SimpleEvent()), TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertThat(metrics.getPublishedBatchCount()).isEqualTo(1);
+        assertThat(metrics.getPublishedEventCount()).isEqualTo(3);
+        assertThat(metrics.getPublishedByteCount()).isEqualTo(7);
+        assertThat(metrics.getPublishLatencies().getMax()).isEqualTo(2000);
+    }
+
+    /**
+     * Test the recording of rejected and rolled-back batches.
+     */
+    @Test
+    public void testRecordRejection() {
+        metrics.recordRejection();
+        metrics.recordRollback();
+
+        assertThat(metrics.getRejectedBatchCount()).isEqualTo(1);
+        assertThat(metrics.getRolledBackBatchCount()).isEqualTo(2);
+    }
+
+    /**
+     * Test that the measurements include the occupancy of the store.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testToMap() throws Exception {
+        eventStore.storeEvents(Arrays.asList(createEvent(1), createEvent(1), createEvent(1)));
+
+        final Map<String, Object> map = metrics.toMap();
+        assertThat(map.get("storedEvents")).isEqualTo(Long.valueOf(2));
+        assertThat(map.get("droppedEvents")).isEqualTo(Long.valueOf(1));
+        assertThat(map.get("lastSequence")).isEqualTo(Long.valueOf(3));
+        assertThat(map.get("publishLatencyMicros")).isInstanceOf(Map.class);
+    }
+
+    /**
+     * Create an event.
+     * 
+     * @param bodySize
+     *            The size of the body of the event.
+     * @return An {@link Event} with a body of the given size.
+     */
+    private static Event createEvent(int bodySize) {
+        final SimpleEvent event = new SimpleEvent();
+        event.setBody(new byte[bodySize]);
+        return event;
+    }
+}
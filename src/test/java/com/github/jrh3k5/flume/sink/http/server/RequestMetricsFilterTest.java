@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit tests for {@link RequestMetricsFilter}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class RequestMetricsFilterTest {
+    private final Object resource = new Object();
+    private final ResourceMetrics resourceMetrics = new ResourceMetrics("/");
+    private final Map<String, Object> properties = new HashMap<String, Object>();
+    private final ContainerRequestContext requestContext = mock(ContainerRequestContext.class);
+    private final ContainerResponseContext responseContext = mock(ContainerResponseContext.class);
+    private final UriInfo uriInfo = mock(UriInfo.class);
+
+    /**
+     * Back the properties of the request with a map, and match the request to the resource.
+     */
+    @Before
+    public void setUp() {
+        when(requestContext.getUriInfo()).thenReturn(uriInfo);
+        when(uriInfo.getMatchedResources()).thenReturn(Collections.singletonList(resource));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                properties.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(requestContext).setProperty(anyString(), any());
+        when(requestContext.getProperty(anyString())).thenAnswer(new PropertyAnswer());
+    }
+
+    /**
+     * Test the measurement of a request without a response body.
+     */
+    @Test
+    public void testFilterWithoutEntity() {
+        final RequestMetricsFilter filter = createFilter("deleteEvents");
+        filter.filter(requestContext);
+        when(responseContext.getStatus()).thenReturn(503);
+        filter.filter(requestContext, responseContext);
+
+        final RequestMetrics metrics = resourceMetrics.getRequestMetrics("deleteEvents");
+        assertThat(metrics.getRequestCount()).isEqualTo(1);
+        assertThat(metrics.getErrorCount()).isEqualTo(1);
+        assertThat(metrics.getLatencies().getCount()).isEqualTo(1);
+        assertThat(metrics.getEventsReturned().getCount()).isZero();
+        assertThat(resourceMetrics.getRequestMetrics("getEvents").getRequestCount()).isZero();
+    }
+
+    /**
+     * Test that the time for which a request waits for a store's lock is attributed to it.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testFilterLockWait() throws Exception {
+        final ReentrantLock lock = new ReentrantLock();
+        final CountDownLatch locked = new CountDownLatch(1);
+        final Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                lock.lock();
+                try {
+                    locked.countDown();
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+        holder.start();
+        locked.await();
+
+        final RequestMetricsFilter filter = createFilter("deleteEvents");
+        filter.filter(requestContext);
+        LockWaits.lock(lock);
+        lock.unlock();
+        when(responseContext.getStatus()).thenReturn(200);
+        filter.filter(requestContext, responseContext);
+        holder.join();
+
+        final RequestMetrics metrics = resourceMetrics.getRequestMetrics("deleteEvents");
+        assertThat(metrics.getLockWaits().getCount()).isEqualTo(1);
+        assertThat(metrics.getLockWaits().getMax()).isGreaterThanOrEqualTo(100);
+    }
+
+    /**
+     * Test the measurement of a retrieval of events, which is complete once its body is written.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testFilterWithEntity() throws Exception {
+        final RequestMetricsFilter filter = createFilter("getEvents");
+        filter.filter(requestContext);
+        when(responseContext.getStatus()).thenReturn(200);
+        when(responseContext.hasEntity()).thenReturn(true);
+        when(responseContext.getEntity()).thenReturn(new EventBatch(Arrays.asList(new StoredEvent(1, new SimpleEvent()), new StoredEvent(2, new SimpleEvent())), 2));
+        filter.filter(requestContext, responseContext);
+
+        final RequestMetrics metrics = resourceMetrics.getRequestMetrics("getEvents");
+        assertThat(metrics.getRequestCount()).isZero();
+        assertThat(metrics.getEventsReturned().getMax()).isEqualTo(2);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final WriterInterceptorContext writerContext = mock(WriterInterceptorContext.class);
+        when(writerContext.getProperty(anyString())).thenAnswer(new PropertyAnswer());
+        when(writerContext.getOutputStream()).thenReturn(outputStream);
+        final ArgumentCaptor<OutputStream> countingStream = ArgumentCaptor.forClass(OutputStream.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception {
+                verify(writerContext).setOutputStream(countingStream.capture());
+                countingStream.getValue().write(new byte[5]);
+                countingStream.getValue().write(1);
+                return null;
+            }
+        }).when(writerContext).proceed();
+        filter.aroundWriteTo(writerContext);
+
+        assertThat(outputStream.size()).isEqualTo(6);
+        assertThat(metrics.getResponseBytes()).isEqualTo(6);
+        assertThat(metrics.getWriteLatencies().getCount()).isEqualTo(1);
+        assertThat(metrics.getRequestCount()).isEqualTo(1);
+        assertThat(metrics.getErrorCount()).isZero();
+    }
+
+    /**
+     * Test the counting of the bytes of a request body.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testAroundReadFrom() throws Exception {
+        final RequestMetricsFilter filter = createFilter("storeEvents");
+        filter.filter(requestContext);
+
+        final ReaderInterceptorContext readerContext = mock(ReaderInterceptorContext.class);
+        when(readerContext.getProperty(anyString())).thenAnswer(new PropertyAnswer());
+        when(readerContext.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[10]));
+        final ArgumentCaptor<InputStream> countingStream = ArgumentCaptor.forClass(InputStream.class);
+        when(readerContext.proceed()).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Exception {
+                verify(readerContext).setInputStream(countingStream.capture());
+                return Integer.valueOf(countingStream.getValue().read(new byte[7]) + countingStream.getValue().read());
+            }
+        });
+        filter.aroundReadFrom(readerContext);
+
+        assertThat(resourceMetrics.getRequestMetrics("storeEvents").getRequestBytes()).isEqualTo(8);
+    }
+
+    /**
+     * Test that requests of resources without metrics are not measured.
+     */
+    @Test
+    public void testFilterUnmeasuredResource() {
+        when(uriInfo.getMatchedResources()).thenReturn(Collections.singletonList(new Object()));
+        final RequestMetricsFilter filter = createFilter("getEvents");
+        filter.filter(requestContext);
+        filter.filter(requestContext, responseContext);
+
+        verify(requestContext, never()).setProperty(anyString(), any());
+        assertThat(resourceMetrics.getRequestMetrics("getEvents").getRequestCount()).isZero();
+    }
+
+    /**
+     * Create a filter of the requests of the resource.
+     * 
+     * @param methodName
+     *            The name of the method whose requests are to be measured.
+     * @return A {@link RequestMetricsFilter} measuring requests of the given method of the resource.
+     */
+    private RequestMetricsFilter createFilter(String methodName) {
+        return new RequestMetricsFilter(methodName, Collections.<Object, ResourceMetrics> singletonMap(resource, resourceMetrics));
+    }
+
+    /**
+     * An {@link Answer} that returns the property of the request named by its argument.
+     * 
+     * @author Joshua Hyde
+     */
+
+    private class PropertyAnswer implements Answer<Object> {
+        @Override
+        public Object answer(InvocationOnMock invocation) {
+            return properties.get(invocation.getArguments()[0]);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit tests for {@link RequestSizeLimitFilter}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class RequestSizeLimitFilterTest {
+    private final RequestSizeLimitFilter filter = new RequestSizeLimitFilter(8);
+    private final ContainerRequestContext requestContext = mock(ContainerRequestContext.class);
+
+    /**
+     * Test that a request declaring a body over the maximum is refused.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testFilterContentLength() throws Exception {
+        when(requestContext.getLength()).thenReturn(9);
+        filter.filter(requestContext);
+
+        final ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(requestContext).abortWith(response.capture());
+        assertThat(response.getValue().getStatus()).isEqualTo(413);
+    }
+
+    /**
+     * Test that reading a body of undeclared length past the maximum fails.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testFilterChunked() throws Exception {
+        when(requestContext.getLength()).thenReturn(-1);
+        when(requestContext.hasEntity()).thenReturn(true);
+        when(requestContext.getEntityStream()).thenReturn(new ByteArrayInputStream(new byte[16]));
+        filter.filter(requestContext);
+        verify(requestContext, never()).abortWith(any(Response.class));
+
+        final ArgumentCaptor<InputStream> entityStream = ArgumentCaptor.forClass(InputStream.class);
+        verify(requestContext).setEntityStream(entityStream.capture());
+        assertThat(entityStream.getValue().read(new byte[8])).isEqualTo(8);
+        try {
+            entityStream.getValue().read();
+            throw new AssertionError("Reading past the maximum should have failed.");
+        } catch (WebApplicationException e) {
+            assertThat(e.getResponse().getStatus()).isEqualTo(413);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RingBufferEventStore}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class RingBufferEventStoreTest {
+    /**
+     * Test the storage and retrieval of events.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEvents() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore(5, OverflowPolicy.DROP_OLDEST);
+        final List<Event> events = createEvents(3);
+        store.storeEvents(events);
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(events);
+        assertThat(store.getDroppedCount()).isZero();
+        assertThat(store.getEventCount()).isEqualTo(3);
+    }
+
+    /**
+     * Test the retrieval of events after a cursor.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsAfterCursor() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore(10, OverflowPolicy.DROP_OLDEST);
+        final List<Event> events = createEvents(5);
+        store.storeEvents(events);
+
+        final EventBatch firstBatch = store.getEvents(0, 2);
+        assertThat(firstBatch.getEvents()).isEqualTo(events.subList(0, 2));
+        assertThat(firstBatch.getCursor()).isEqualTo(2);
+
+        final EventBatch secondBatch = store.getEvents(firstBatch.getCursor(), Integer.MAX_VALUE);
+        assertThat(secondBatch.getEvents()).isEqualTo(events.subList(2, 5));
+        assertThat(secondBatch.getCursor()).isEqualTo(5);
+
+        // Nothing new has been stored, so the cursor should not move
+        final EventBatch emptyBatch = store.getEvents(secondBatch.getCursor(), Integer.MAX_VALUE);
+        assertThat(emptyBatch.getEvents()).isEmpty();
+        assertThat(emptyBatch.getCursor()).isEqualTo(5);
+    }
+
+    /**
+     * Test that a cursor for events that have since been discarded resumes from the oldest retained event.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testGetEventsAfterDiscardedCursor() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore(3, OverflowPolicy.DROP_OLDEST);
+        final List<Event> events = createEvents(6);
+        store.storeEvents(events);
+
+        final EventBatch batch = store.getEvents(1, Integer.MAX_VALUE);
+        assertThat(batch.getEvents()).isEqualTo(events.subList(3, 6));
+        assertThat(batch.getCursor()).isEqualTo(6);
+    }
+
+    /**
+     * Test the deletion of events.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDeleteEvents() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore(5, OverflowPolicy.DROP_NEWEST);
+        store.storeEvents(createEvents(5));
+        store.deleteEvents();
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEmpty();
+
+        // The deletion should have made room for new events
+        final List<Event> events = createEvents(5);
+        store.storeEvents(events);
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(events);
+        assertThat(store.getDroppedCount()).isZero();
+    }
+
+    /**
+     * Test the deletion of events through a sequence number.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testDeleteEventsThrough() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore(5, OverflowPolicy.BLOCK);
+        final List<Event> events = createEvents(5);
+        store.storeEvents(events);
+        store.deleteEventsThrough(3);
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(events.subList(3, 5));
+
+        // The deletion should have made room for exactly as many new events as were deleted
+        final List<Event> moreEvents = createEvents(3);
+        store.storeEvents(moreEvents);
+        assertThat(store.getEvents(5, Integer.MAX_VALUE).getEvents()).isEqualTo(moreEvents);
+
+        // Deleting past the last stored event deletes only the stored events
+        store.deleteEventsThrough(100);
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEmpty();
+        assertThat(store.getLastSequence()).isEqualTo(8);
+    }
+
+    /**
+     * Test that the oldest events are discarded when using the {@link OverflowPolicy#DROP_OLDEST} policy.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEventsDropOldest() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore(3, OverflowPolicy.DROP_OLDEST);
+        final List<Event> events = createEvents(5);
+        store.storeEvents(events.subList(0, 2));
+        store.storeEvents(events.subList(2, 5));
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(events.subList(2, 5));
+        assertThat(store.getDroppedCount()).isEqualTo(2);
+        assertThat(store.getEventCount()).isEqualTo(3);
+    }
+
+    /**
+     * Test that a single batch larger than the store retains only its trailing events when using the {@link OverflowPolicy#DROP_OLDEST} policy.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEventsDropOldestOversizedBatch() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore(3, OverflowPolicy.DROP_OLDEST);
+        final List<Event> events = createEvents(7);
+        store.storeEvents(events);
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(events.subList(4, 7));
+        assertThat(store.getDroppedCount()).isEqualTo(4);
+    }
+
+    /**
+     * Test that incoming events are discarded when using the {@link OverflowPolicy#DROP_NEWEST} policy.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEventsDropNewest() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore(3, OverflowPolicy.DROP_NEWEST);
+        final List<Event> events = createEvents(5);
+        store.storeEvents(events.subList(0, 2));
+        store.storeEvents(events.subList(2, 5));
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(events.subList(0, 3));
+        assertThat(store.getDroppedCount()).isEqualTo(2);
+        assertThat(store.getEventCount()).isEqualTo(3);
+    }
+
+    /**
+     * Test that incoming events are refused when using the {@link OverflowPolicy#BLOCK} policy.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEventsBlock() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore(3, OverflowPolicy.BLOCK);
+        final List<Event> events = createEvents(5);
+        store.storeEvents(events.subList(0, 2));
+        assertThat(store.hasRoomFor(events.subList(2, 3))).isTrue();
+        assertThat(store.hasRoomFor(events.subList(2, 5))).isFalse();
+        try {
+            store.storeEvents(events.subList(2, 5));
+            fail("An exception should have been thrown for a batch that does not fit.");
+        } catch (EventStoreFullException e) {
+            assertThat(e.getMessage()).contains("only 1 of 3");
+        }
+        // None of the refused batch should have been stored
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(events.subList(0, 2));
+        assertThat(store.getDroppedCount()).isZero();
+    }
+
+    /**
+     * Test that concurrent writers do not lose or reorder each other's events.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEventsConcurrently() throws Exception {
+        final int writerCount = 4;
+        final int batchCount = 250;
+        final RingBufferEventStore store = new RingBufferEventStore(writerCount * batchCount * 2, OverflowPolicy.BLOCK);
+        final ExecutorService executor = Executors.newFixedThreadPool(writerCount);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < writerCount; i++) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            startLatch.await();
+                            for (int b = 0; b < batchCount; b++) {
+                                store.storeEvents(createEvents(2));
+                                store.getEvents(0, Integer.MAX_VALUE).getEvents();
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }));
+            }
+            startLatch.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).hasSize(writerCount * batchCount * 2);
+    }
+
+    /**
+     * Test that events claimed but not yet published are not counted as stored, and that the slot of an event published after it was deleted is reused without counting a drop.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testStoreEventsPublishedAfterDeletion() throws Exception {
+        final RingBufferEventStore store = new RingBufferEventStore(2, OverflowPolicy.DROP_OLDEST);
+        final List<Event> events = createEvents(4);
+        final CountDownLatch firstPublished = new CountDownLatch(1);
+        final CountDownLatch deleted = new CountDownLatch(1);
+        // A batch whose writer stalls between publishing its first and second events
+        final List<Event> stallingBatch = new AbstractList<Event>() {
+            @Override
+            public Event get(int index) {
+                if (index == 1) {
+                    firstPublished.countDown();
+                    try {
+                        deleted.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return events.get(index);
+            }
+
+            @Override
+            public int size() {
+                return 2;
+            }
+        };
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> writer = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    store.storeEvents(stallingBatch);
+                    return null;
+                }
+            });
+            firstPublished.await(5, TimeUnit.SECONDS);
+            // A batch is counted once its writer has published all of it
+            assertThat(store.getEventCount()).isZero();
+
+            store.deleteEvents();
+            deleted.countDown();
+            writer.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(store.getEventCount()).isZero();
+
+        store.storeEvents(events.subList(2, 4));
+        assertThat(store.getEvents(0, Integer.MAX_VALUE).getEvents()).isEqualTo(events.subList(2, 4));
+        assertThat(store.getEventCount()).isEqualTo(2);
+        assertThat(store.getDroppedCount()).isZero();
+    }
+
+    /**
+     * Test that a non-positive capacity is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructZeroCapacity() {
+        new RingBufferEventStore(0, OverflowPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Create events.
+     * 
+     * @param count
+     *            The number of events to be created.
+     * @return A {@link List} of distinct {@link Event} objects.
+     */
+    private static List<Event> createEvents(int count) {
+        final Event[] events = new Event[count];
+        for (int i = 0; i < count; i++) {
+            events[i] = new SimpleEvent();
+        }
+        return Arrays.asList(events);
+    }
+}
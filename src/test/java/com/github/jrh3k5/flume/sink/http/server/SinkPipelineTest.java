@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.Transaction;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.flume.event.SimpleEvent;
+import org.apache.flume.instrumentation.SinkCounter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SinkPipeline}.
+ * 
+ * @author Joshua Hyde
+ */
+
+public class SinkPipelineTest {
+    private final MemoryChannel channel = new MemoryChannel();
+    private SinkPipeline pipeline;
+
+    /**
+     * Start the channel for each test.
+     */
+    @Before
+    public void startChannel() {
+        channel.configure(new Context());
+        channel.start();
+    }
+
+    /**
+     * Close the pipeline and channel after each test.
+     */
+    @After
+    public void stopChannel() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+        channel.stop();
+    }
+
+    /**
+     * Test that the pipeline moves events from the channel to the store.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testPublish() throws Exception {
+        final List<Event> events = putEvents(95);
+        final RingBufferEventStore store = new RingBufferEventStore();
+        final SinkInstrumentation instrumentation = new SinkInstrumentation(new SinkCounter("testPublish"), new PublishMetrics(store));
+        pipeline = new SinkPipeline(channel, store, new EventBatcher(10, 0), instrumentation, 3);
+        pipeline.start();
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (store.getLastSequence() < events.size() && System.currentTimeMillis() < deadline) {
+            pipeline.awaitPublication(100);
+        }
+
+        final List<Event> stored = store.getEvents(0, Integer.MAX_VALUE).getEvents();
+        assertThat(stored).hasSize(events.size());
+        assertThat(stored).containsOnly(events.toArray());
+        assertThat(pipeline.getPublishedBatchCount()).isGreaterThanOrEqualTo(10);
+
+        // The last transaction is committed only after its batch is seen in the store
+        while (instrumentation.getSinkCounter().getEventDrainSuccessCount() < events.size() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(instrumentation.getPublishMetrics().getPublishedEventCount()).isEqualTo(events.size());
+        assertThat(instrumentation.getPublishMetrics().getPublishedBatchCount()).isEqualTo(pipeline.getPublishedBatchCount());
+        assertThat(instrumentation.getSinkCounter().getEventDrainSuccessCount()).isEqualTo(events.size());
+    }
+
+    /**
+     * Test that batches refused by the store are left in the channel.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testPublishStoreFull() throws Exception {
+        putEvents(10);
+        final RingBufferEventStore store = new RingBufferEventStore(5, OverflowPolicy.BLOCK);
+        final SinkInstrumentation instrumentation = new SinkInstrumentation(new SinkCounter("testPublishStoreFull"), new PublishMetrics(store));
+        pipeline = new SinkPipeline(channel, store, new EventBatcher(10, 0), instrumentation, 1);
+        pipeline.start();
+
+        assertThat(pipeline.awaitPublication(300)).isFalse();
+        pipeline.close();
+        assertThat(store.getLastSequence()).isZero();
+        assertThat(instrumentation.getPublishMetrics().getRejectedBatchCount()).isGreaterThanOrEqualTo(1);
+        assertThat(instrumentation.getSinkCounter().getEventDrainSuccessCount()).isZero();
+
+        // The rolled-back events are still in the channel
+        final Transaction transaction = channel.getTransaction();
+        transaction.begin();
+        try {
+            for (int i = 0; i < 10; i++) {
+                assertThat(channel.take()).isNotNull();
+            }
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+    }
+
+    /**
+     * Test that closing the pipeline while one batch is being stored and another is queued behind it commits the first and rolls back the second, so that no event is both stored and left in the
+     * channel.
+     * 
+     * @throws Exception
+     *             If any errors occur during the test run.
+     */
+    @Test
+    public void testCloseInFlight() throws Exception {
+        putEvents(10);
+        final CountDownLatch storing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final RingBufferEventStore store = new RingBufferEventStore() {
+            @Override
+            public void storeEvents(Collection<? extends Event> events) throws EventStoreFullException {
+                storing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException("Interrupted while storing events.", e);
+                }
+                super.storeEvents(events);
+            }
+        };
+        final SinkInstrumentation instrumentation = new SinkInstrumentation(new SinkCounter("testCloseInFlight"), new PublishMetrics(store));
+        pipeline = new SinkPipeline(channel, store, new EventBatcher(5, 0), instrumentation, 2);
+        pipeline.start();
+        assertThat(storing.await(5, TimeUnit.SECONDS)).isTrue();
+        // Give the second take thread time to queue its batch behind the first
+        Thread.sleep(200);
+
+        final Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.close();
+            }
+        });
+        closer.start();
+        Thread.sleep(200);
+        release.countDown();
+        closer.join(15000);
+        assertThat(closer.isAlive()).isFalse();
+
+        assertThat(store.getLastSequence()).isEqualTo(5);
+        assertThat(instrumentation.getSinkCounter().getEventDrainSuccessCount()).isEqualTo(5);
+        final Transaction transaction = channel.getTransaction();
+        transaction.begin();
+        try {
+            for (int i = 0; i < 5; i++) {
+                assertThat(channel.take()).isNotNull();
+            }
+            assertThat(channel.take()).isNull();
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+    }
+
+    /**
+     * Test that a pipeline cannot be created without depth.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructZeroDepth() {
+        final RingBufferEventStore store = new RingBufferEventStore();
+        new SinkPipeline(channel, store, new EventBatcher(10, 0), new SinkInstrumentation(new SinkCounter("testConstructZeroDepth"), new PublishMetrics(store)), 0);
+    }
+
+    /**
+     * Put events into the channel.
+     * 
+     * @param count
+     *            The number of events to be put.
+     * @return A {@link List} of the {@link Event} objects put into the channel.
+     */
+    private List<Event> putEvents(int count) {
+        final List<Event> events = new ArrayList<Event>(count);
+        final Transaction transaction = channel.getTransaction();
+        transaction.begin();
+        try {
+            for (int i = 0; i < count; i++) {
+                final SimpleEvent event = new SimpleEvent();
+                event.setBody(new byte[] { (byte) i });
+                channel.put(event);
+                events.add(event);
+            }
+            transaction.commit();
+        } finally {
+            transaction.close();
+        }
+        return events;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jrh3k5.flume.sink.http.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.SimpleEvent;
+
+/**
+ * Events shared by the tests of the stores that encode their events into records.
+ * 
+ * @author Joshua Hyde
+ */
+
+final class TestEvents {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private TestEvents() {
+    }
+
+    /**
+     * Create events.
+     * 
+     * @param count
+     *            The number of events to be created.
+     * @return A {@link List} of {@link Event} objects, each with a distinct header and body.
+     * @throws Exception
+     *             If any errors occur while creating the events.
+     */
+    static List<Event> createEvents(int count) throws Exception {
+        final List<Event> events = new ArrayList<Event>(count);
+        for (int i = 0; i < count; i++) {
+            final SimpleEvent event = new SimpleEvent();
+            event.setHeaders(Collections.singletonMap("index", Integer.toString(i)));
+            event.setBody(String.format("event body number %d", i).getBytes("utf-8"));
+            events.add(event);
+        }
+        return events;
+    }
+}